@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.TextMessage;
+
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.provider.amqp.AmqpConsumer;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageBuilder;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageFacade;
+import org.apache.qpid.jms.provider.amqp.message.AmqpLazyDecodedMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of encoding an outbound message from its AMQP facade and of
+ * decoding the bytes of an inbound transfer back into a JMS message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmqpMessageCodecBenchmark {
+
+    @Param({ "0", "10" })
+    private int propertyCount;
+
+    private AmqpJmsMessageFacade facade;
+    private AmqpConsumer consumer;
+    private ByteBuf encodeBuffer;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        facade = (AmqpJmsMessageFacade) BenchmarkSupport.createTextMessage(propertyCount).getFacade();
+        consumer = BenchmarkSupport.createAmqpConsumer();
+        encodeBuffer = Unpooled.buffer(1024);
+
+        facade.encodeMessage(encodeBuffer);
+        encoded = new byte[encodeBuffer.readableBytes()];
+        encodeBuffer.readBytes(encoded);
+    }
+
+    @Benchmark
+    public ByteBuf encode() {
+        encodeBuffer.clear();
+        facade.encodeMessage(encodeBuffer);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public JmsMessage decode() throws Exception {
+        AmqpLazyDecodedMessage message = new AmqpLazyDecodedMessage();
+        message.decode(encoded, 0, encoded.length);
+        return AmqpJmsMessageBuilder.createJmsMessage(consumer, message);
+    }
+
+    @Benchmark
+    public String decodeAndReadBody() throws Exception {
+        AmqpLazyDecodedMessage message = new AmqpLazyDecodedMessage();
+        message.decode(encoded, 0, encoded.length);
+        return ((TextMessage) AmqpJmsMessageBuilder.createJmsMessage(consumer, message)).getText();
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.benchmarks;
+
+import java.net.URI;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.JmsQueue;
+import org.apache.qpid.jms.message.JmsTextMessage;
+import org.apache.qpid.jms.meta.JmsConnectionId;
+import org.apache.qpid.jms.meta.JmsConnectionInfo;
+import org.apache.qpid.jms.meta.JmsConsumerInfo;
+import org.apache.qpid.jms.meta.JmsSessionInfo;
+import org.apache.qpid.jms.provider.amqp.AmqpConnection;
+import org.apache.qpid.jms.provider.amqp.AmqpConsumer;
+import org.apache.qpid.jms.provider.amqp.AmqpProvider;
+import org.apache.qpid.jms.provider.amqp.AmqpSession;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsTextMessageFacade;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Session;
+
+/**
+ * Helpers shared by the benchmarks that work with messages outside of a live connection.
+ */
+final class BenchmarkSupport {
+
+    static final JmsDestination DESTINATION = new JmsQueue("benchmark");
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Creates an AmqpConnection for message facades created outside a connection.  The
+     * connection is backed by an unconnected provider and proton connection, so no I/O
+     * is ever performed through it.
+     *
+     * @return a new AmqpConnection that is never opened.
+     */
+    static AmqpConnection createAmqpConnection() {
+        return createAmqpConnection(Proton.connection());
+    }
+
+    /**
+     * Creates an AmqpConsumer that can be used to build inbound JMS messages.  Like its
+     * connection the consumer is never attached, it only supplies the connection and
+     * destination that the message builder asks for.
+     *
+     * @return a new AmqpConsumer for the benchmark destination.
+     */
+    static AmqpConsumer createAmqpConsumer() {
+        Connection protonConnection = Proton.connection();
+        AmqpConnection connection = createAmqpConnection(protonConnection);
+        Session protonSession = protonConnection.session();
+
+        JmsSessionInfo sessionInfo = new JmsSessionInfo(connection.getResourceInfo(), 1);
+        AmqpSession session = new AmqpSession(connection, sessionInfo, protonSession);
+
+        JmsConsumerInfo consumerInfo = new JmsConsumerInfo(sessionInfo, 1);
+        consumerInfo.setDestination(DESTINATION);
+
+        return new AmqpConsumer(session, consumerInfo, protonSession.receiver("benchmark"));
+    }
+
+    private static AmqpConnection createAmqpConnection(Connection protonConnection) {
+        JmsConnectionInfo connectionInfo = new JmsConnectionInfo(new JmsConnectionId("ID:benchmark:1"));
+        AmqpProvider provider = new AmqpProvider(URI.create("amqp://localhost:5672"));
+        return new AmqpConnection(provider, connectionInfo, protonConnection);
+    }
+
+    /**
+     * Creates a text message populated the way a typical application would before sending.
+     *
+     * @param propertyCount
+     *        the number of application properties to add to the message.
+     *
+     * @return a new JmsTextMessage backed by an AMQP message facade.
+     *
+     * @throws JMSException if an error occurs while populating the message.
+     */
+    static JmsTextMessage createTextMessage(int propertyCount) throws JMSException {
+        AmqpJmsTextMessageFacade facade = new AmqpJmsTextMessageFacade(createAmqpConnection());
+        JmsTextMessage message = new JmsTextMessage(facade);
+
+        message.setJMSMessageID("ID:benchmark:1:1:1");
+        message.setJMSDestination(DESTINATION);
+        message.setJMSCorrelationID("correlation");
+        message.setJMSPriority(4);
+        message.setText("Hello World, this is the text of a benchmark message");
+
+        for (int i = 0; i < propertyCount; ++i) {
+            message.setStringProperty("property" + i, "value" + i);
+        }
+
+        return message;
+    }
+}
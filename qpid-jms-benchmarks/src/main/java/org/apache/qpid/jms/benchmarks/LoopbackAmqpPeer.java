@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.engine.Collector;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A minimal AMQP peer that listens on a loopback port for benchmark connections.
+ * Messages sent to it are accepted and discarded, receivers attached to it are sent
+ * copies of a fixed message as fast as their credit allows.  The peer does not offer
+ * SASL so clients must connect with amqp.saslLayer=false.
+ */
+public class LoopbackAmqpPeer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoopbackAmqpPeer.class);
+
+    private static final int CREDIT_WINDOW = 1000;
+
+    private final ServerSocketChannel serverChannel;
+    private final Thread acceptor;
+    private final Set<SocketChannel> clients = Collections.synchronizedSet(new HashSet<SocketChannel>());
+    private final byte[] encodedMessage;
+
+    private volatile boolean closed;
+
+    public LoopbackAmqpPeer() throws IOException {
+        Message message = Proton.message();
+        message.setBody(new AmqpValue("Hello World, this is the text of a benchmark message"));
+        byte[] buffer = new byte[1024];
+        encodedMessage = Arrays.copyOf(buffer, message.encode(buffer, 0, buffer.length));
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("localhost", 0));
+
+        acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "LoopbackAmqpPeer: acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the URI a client should use to connect to this peer.
+     */
+    public String getConnectionURI() throws IOException {
+        int port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        return "amqp://localhost:" + port + "?amqp.saslLayer=false";
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverChannel.close();
+
+        synchronized (clients) {
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                final SocketChannel client = serverChannel.accept();
+                client.socket().setTcpNoDelay(true);
+                clients.add(client);
+
+                Thread handler = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            new ConnectionHandler(client).run();
+                        } catch (IOException e) {
+                            if (!closed) {
+                                LOG.debug("Loopback connection failed: {}", e.getMessage());
+                            }
+                        } finally {
+                            clients.remove(client);
+                        }
+                    }
+                }, "LoopbackAmqpPeer: " + client.socket().getRemoteSocketAddress());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.warn("Loopback peer stopped accepting connections: {}", e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    /*
+     * Drives a proton server side transport for one client connection, reading from
+     * the socket, reacting to the resulting events and writing any output.
+     */
+    private final class ConnectionHandler {
+
+        private final SocketChannel channel;
+        private final Transport transport = Proton.transport();
+        private final Connection connection = Proton.connection();
+        private final Collector collector = Proton.collector();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        private final byte[] discard = new byte[64 * 1024];
+        private long nextTag;
+
+        public ConnectionHandler(SocketChannel channel) {
+            this.channel = channel;
+            transport.bind(connection);
+            connection.collect(collector);
+        }
+
+        public void run() throws IOException {
+            while (!closed && channel.read(readBuffer) >= 0) {
+                readBuffer.flip();
+                while (readBuffer.hasRemaining()) {
+                    ByteBuffer input = transport.getInputBuffer();
+                    int count = Math.min(input.remaining(), readBuffer.remaining());
+                    int limit = readBuffer.limit();
+                    readBuffer.limit(readBuffer.position() + count);
+                    input.put(readBuffer);
+                    readBuffer.limit(limit);
+                    transport.processInput().checkIsOk();
+                }
+                readBuffer.clear();
+
+                processEvents();
+                writeOutput();
+
+                if (connection.getLocalState() == EndpointState.CLOSED) {
+                    break;
+                }
+            }
+
+            channel.close();
+        }
+
+        private void processEvents() {
+            Event event = null;
+            while ((event = collector.peek()) != null) {
+                switch (event.getType()) {
+                    case CONNECTION_REMOTE_OPEN:
+                        connection.setContainer("loopback");
+                        connection.open();
+                        break;
+                    case CONNECTION_REMOTE_CLOSE:
+                        connection.close();
+                        break;
+                    case SESSION_REMOTE_OPEN:
+                        event.getSession().open();
+                        break;
+                    case SESSION_REMOTE_CLOSE:
+                        event.getSession().close();
+                        break;
+                    case LINK_REMOTE_OPEN:
+                        onLinkOpen(event.getLink());
+                        break;
+                    case LINK_REMOTE_CLOSE:
+                    case LINK_REMOTE_DETACH:
+                        event.getLink().close();
+                        break;
+                    case LINK_FLOW:
+                        if (event.getLink() instanceof Sender) {
+                            sendToCredit((Sender) event.getLink());
+                        }
+                        break;
+                    case DELIVERY:
+                        onDelivery(event.getDelivery());
+                        break;
+                    default:
+                        break;
+                }
+                collector.pop();
+            }
+        }
+
+        private void onLinkOpen(Link link) {
+            link.setSource(link.getRemoteSource());
+            link.setTarget(link.getRemoteTarget());
+            link.open();
+
+            if (link instanceof Receiver) {
+                ((Receiver) link).flow(CREDIT_WINDOW);
+            }
+        }
+
+        private void onDelivery(Delivery delivery) {
+            Link link = delivery.getLink();
+            if (link instanceof Receiver) {
+                if (delivery.isReadable() && !delivery.isPartial()) {
+                    Receiver receiver = (Receiver) link;
+                    while (receiver.recv(discard, 0, discard.length) > 0) {
+                        // The payload is of no interest, only the transfer.
+                    }
+                    receiver.advance();
+
+                    if (!delivery.remotelySettled()) {
+                        delivery.disposition(Accepted.getInstance());
+                    }
+                    delivery.settle();
+
+                    if (receiver.getCredit() <= CREDIT_WINDOW / 2) {
+                        receiver.flow(CREDIT_WINDOW - receiver.getCredit());
+                    }
+                }
+            } else if (delivery.remotelySettled()) {
+                delivery.settle();
+            }
+        }
+
+        private void sendToCredit(Sender sender) {
+            while (sender.getCredit() > 0 && sender.getLocalState() == EndpointState.ACTIVE) {
+                sender.delivery(Long.toString(nextTag++).getBytes());
+                sender.send(encodedMessage, 0, encodedMessage.length);
+                sender.advance();
+            }
+        }
+
+        private void writeOutput() throws IOException {
+            ByteBuffer output = null;
+            while ((output = transport.getOutputBuffer()) != null && output.hasRemaining()) {
+                while (output.hasRemaining()) {
+                    channel.write(output);
+                }
+                transport.outputConsumed();
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.jms.message.JmsMessagePropertyIntercepter;
+import org.apache.qpid.jms.message.facade.JmsMessageFacade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the property intercepter that routes JMS header and vendor property
+ * names to the facade and everything else to the application properties.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyIntercepterBenchmark {
+
+    private JmsMessageFacade facade;
+
+    @Setup
+    public void setUp() throws Exception {
+        facade = BenchmarkSupport.createTextMessage(10).getFacade();
+    }
+
+    @Benchmark
+    public Object getHeaderProperty() throws Exception {
+        return JmsMessagePropertyIntercepter.getProperty(facade, "JMSCorrelationID");
+    }
+
+    @Benchmark
+    public Object getApplicationProperty() throws Exception {
+        return JmsMessagePropertyIntercepter.getProperty(facade, "property5");
+    }
+
+    @Benchmark
+    public void setHeaderProperty() throws Exception {
+        JmsMessagePropertyIntercepter.setProperty(facade, "JMSType", "type");
+    }
+
+    @Benchmark
+    public void setApplicationProperty() throws Exception {
+        JmsMessagePropertyIntercepter.setProperty(facade, "property5", "value");
+    }
+
+    @Benchmark
+    public boolean propertyExists() throws Exception {
+        return JmsMessagePropertyIntercepter.propertyExists(facade, "property9");
+    }
+}
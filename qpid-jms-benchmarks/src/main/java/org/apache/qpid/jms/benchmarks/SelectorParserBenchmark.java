@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.jms.selector.SelectorParser;
+import org.apache.qpid.jms.selector.filter.BooleanExpression;
+import org.apache.qpid.jms.selector.filter.FilterException;
+import org.apache.qpid.jms.selector.filter.Filterable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing of message selectors, with and without the parser cache, and
+ * the evaluation of a parsed selector against a set of message properties.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorParserBenchmark {
+
+    private static final String SELECTOR =
+        "JMSType = 'order' AND (region IN ('EU', 'US') OR priority > 5) AND symbol LIKE 'QP%'";
+
+    private BooleanExpression expression;
+    private Filterable filterable;
+
+    @Setup
+    public void setUp() throws Exception {
+        expression = SelectorParser.parse(SELECTOR);
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("JMSType", "order");
+        properties.put("region", "US");
+        properties.put("priority", 3);
+        properties.put("symbol", "QPID");
+        filterable = new MapFilterable(properties);
+    }
+
+    @Benchmark
+    public BooleanExpression parse() throws Exception {
+        SelectorParser.clearCache();
+        return SelectorParser.parse(SELECTOR);
+    }
+
+    @Benchmark
+    public BooleanExpression parseCached() throws Exception {
+        return SelectorParser.parse(SELECTOR);
+    }
+
+    @Benchmark
+    public boolean matches() throws Exception {
+        return expression.matches(filterable);
+    }
+
+    private static final class MapFilterable implements Filterable {
+
+        private final Map<String, Object> properties;
+
+        public MapFilterable(Map<String, Object> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public <T> T getBodyAs(Class<T> type) throws FilterException {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return properties.get(name);
+        }
+
+        @Override
+        public Object getLocalConnectionId() {
+            return null;
+        }
+    }
+}
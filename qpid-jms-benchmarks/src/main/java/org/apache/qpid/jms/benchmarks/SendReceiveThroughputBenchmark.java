@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures end to end send and receive throughput of the client against the
+ * in-process LoopbackAmqpPeer, which takes the broker out of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendReceiveThroughputBenchmark {
+
+    @Param({ "AUTO_ACKNOWLEDGE", "DUPS_OK_ACKNOWLEDGE" })
+    private String ackMode;
+
+    private LoopbackAmqpPeer peer;
+    private Connection connection;
+    private MessageProducer persistentProducer;
+    private MessageProducer nonPersistentProducer;
+    private MessageConsumer consumer;
+    private TextMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        peer = new LoopbackAmqpPeer();
+
+        JmsConnectionFactory factory = new JmsConnectionFactory(peer.getConnectionURI());
+        connection = factory.createConnection();
+        connection.start();
+
+        int acknowledgeMode = ackMode.equals("DUPS_OK_ACKNOWLEDGE") ?
+            Session.DUPS_OK_ACKNOWLEDGE : Session.AUTO_ACKNOWLEDGE;
+
+        Session session = connection.createSession(false, acknowledgeMode);
+        Queue queue = session.createQueue("benchmark");
+
+        persistentProducer = session.createProducer(queue);
+        persistentProducer.setDeliveryMode(DeliveryMode.PERSISTENT);
+
+        nonPersistentProducer = session.createProducer(queue);
+        nonPersistentProducer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+
+        consumer = session.createConsumer(queue);
+
+        message = session.createTextMessage("Hello World, this is the text of a benchmark message");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+        peer.close();
+    }
+
+    @Benchmark
+    public void sendPersistent() throws Exception {
+        persistentProducer.send(message);
+    }
+
+    @Benchmark
+    public void sendNonPersistent() throws Exception {
+        nonPersistentProducer.send(message);
+    }
+
+    @Benchmark
+    public Message receive() throws Exception {
+        return consumer.receive();
+    }
+}
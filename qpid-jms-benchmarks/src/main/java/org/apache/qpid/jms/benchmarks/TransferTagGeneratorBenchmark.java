@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.jms.provider.amqp.AmqpTransferTagGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the delivery tag generator used for each message sent by a producer.
+ * Tags are returned to the generator after a fixed number of sends to mimic a
+ * producer with that many sends awaiting settlement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferTagGeneratorBenchmark {
+
+    @Param({ "true", "false" })
+    private boolean pooled;
+
+    @Param({ "1", "100" })
+    private int inFlight;
+
+    private AmqpTransferTagGenerator generator;
+    private ArrayDeque<byte[]> unsettled;
+
+    @Setup
+    public void setUp() {
+        generator = new AmqpTransferTagGenerator(pooled);
+        unsettled = new ArrayDeque<byte[]>(inFlight);
+    }
+
+    @Benchmark
+    public byte[] nextTagAndSettle() {
+        byte[] tag = generator.getNextTag();
+        unsettled.add(tag);
+        if (unsettled.size() >= inFlight) {
+            generator.returnTag(unsettled.poll());
+        }
+
+        return tag;
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms;
+
+import java.util.List;
+
+import javax.jms.Message;
+
+/**
+ * Listener used to receive messages asynchronously from a JmsMessageConsumer in
+ * batches rather than one at a time.
+ *
+ * @see JmsMessageConsumer#setBatchMessageListener(JmsBatchMessageListener, int, long)
+ */
+public interface JmsBatchMessageListener {
+
+    /**
+     * Called with the next batch of messages for the consumer, in the order they were
+     * received.  In the AUTO_ACKNOWLEDGE and DUPS_OK_ACKNOWLEDGE modes the whole batch
+     * is acknowledged once this method returns, or released for redelivery should it
+     * throw a RuntimeException.
+     *
+     * @param messages
+     *        the batch of messages, never empty.
+     */
+    void onMessages(List<Message> messages);
+
+}
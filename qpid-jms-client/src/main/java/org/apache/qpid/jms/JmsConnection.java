@@ -18,12 +18,20 @@ package org.apache.qpid.jms;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +60,8 @@ import javax.jms.TopicSession;
 
 import org.apache.qpid.jms.exceptions.JmsConnectionFailedException;
 import org.apache.qpid.jms.exceptions.JmsExceptionSupport;
+import org.apache.qpid.jms.exceptions.JmsSendBatchException;
+import org.apache.qpid.jms.exceptions.JmsSendTimedOutException;
 import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
 import org.apache.qpid.jms.message.JmsMessage;
 import org.apache.qpid.jms.message.JmsMessageFactory;
@@ -71,8 +81,11 @@ import org.apache.qpid.jms.provider.Provider;
 import org.apache.qpid.jms.provider.ProviderClosedException;
 import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
 import org.apache.qpid.jms.provider.ProviderFuture;
+import org.apache.qpid.jms.provider.WrappedAsyncResult;
 import org.apache.qpid.jms.provider.ProviderListener;
 import org.apache.qpid.jms.util.IdGenerator;
+import org.apache.qpid.jms.util.SendWindow;
+import org.apache.qpid.jms.util.SerialExecutor;
 import org.apache.qpid.jms.util.ThreadPoolUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -112,6 +125,10 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
     private final AtomicLong transactionIdGenerator = new AtomicLong();
 
     private final ConcurrentMap<AsyncResult, AsyncResult> requests = new ConcurrentHashMap<AsyncResult, AsyncResult>();
+    private final AsyncResult asyncAckResult = new AsyncAcknowledgeResult();
+    private volatile SendWindow sendWindow;
+    private volatile ThreadPoolExecutor dispatchPool;
+    private volatile ScheduledThreadPoolExecutor timer;
 
     protected JmsConnection(final String connectionId, Provider provider, IdGenerator clientIdGenerator) throws JMSException {
 
@@ -169,6 +186,7 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
                     session.shutdown();
                 }
 
+                resetSendWindow();
                 sessions.clear();
                 tempDestinations.clear();
 
@@ -207,6 +225,17 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
                 LOG.warn("Error shutting down thread pool: " + executor + ". This exception will be ignored.", e);
             }
 
+            // Let any deliveries already queued finish, close may be called from a listener.
+            ThreadPoolExecutor pool = dispatchPool;
+            if (pool != null) {
+                pool.shutdown();
+            }
+
+            ScheduledThreadPoolExecutor scheduled = timer;
+            if (scheduled != null) {
+                scheduled.shutdownNow();
+            }
+
             if (provider != null) {
                 provider.close();
                 provider = null;
@@ -305,6 +334,7 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
         }
 
         this.connectionInfo.setClientId(clientID);
+        this.connectionInfo.setExplicitClientID(true);
         this.clientIdSet = true;
 
         // We weren't connected if we got this far, we should now connect to ensure the
@@ -693,6 +723,7 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
         //        JMS 2.0 style async sends where we signal a callback, then
         //        we can manage order of callback events to async senders at
         //        this level.
+        acquireSendPermit(envelope);
         try {
             ProviderFuture request = new ProviderFuture();
             requests.put(request, request);
@@ -703,23 +734,324 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
                 requests.remove(request);
             }
         } catch (Exception ioe) {
+            releaseSendPermit(envelope);
             throw JmsExceptionSupport.create(ioe);
         }
     }
 
-    void acknowledge(JmsInboundMessageDispatch envelope, ACK_TYPE ackType) throws JMSException {
+    /*
+     * Hands the envelope to the provider without waiting, the given request is signaled
+     * once the outcome of the send is known or the connection fails.
+     */
+    void send(final JmsOutboundMessageDispatch envelope, AsyncResult request) throws JMSException {
         checkClosedOrFailed();
         connect();
+        acquireSendPermit(envelope);
+
+        AsyncResult tracked = new WrappedAsyncResult(request) {
+
+            @Override
+            public void onSuccess() {
+                requests.remove(this);
+                super.onSuccess();
+            }
+
+            @Override
+            public void onFailure(Throwable result) {
+                requests.remove(this);
+                releaseSendPermit(envelope);
+                super.onFailure(result);
+            }
+        };
 
+        requests.put(tracked, tracked);
         try {
+            provider.send(envelope, tracked);
+        } catch (Exception ioe) {
+            requests.remove(tracked);
+            releaseSendPermit(envelope);
+            throw JmsExceptionSupport.create(ioe);
+        }
+    }
+
+    void send(List<JmsOutboundMessageDispatch> envelopes) throws JMSException {
+        checkClosedOrFailed();
+        connect();
+
+        // Room for the whole batch is had before any of it is sent so a batch that
+        // times out waiting on the window is not left partly sent.
+        for (int i = 0; i < envelopes.size(); ++i) {
+            try {
+                acquireSendPermit(envelopes.get(i));
+            } catch (JMSException ex) {
+                for (int j = 0; j < i; ++j) {
+                    releaseSendPermit(envelopes.get(j));
+                }
+                throw ex;
+            }
+        }
+
+        List<ProviderFuture> pending = new ArrayList<ProviderFuture>(envelopes.size());
+        for (int i = 0; i < envelopes.size(); ++i) {
             ProviderFuture request = new ProviderFuture();
-            provider.acknowledge(envelope, ackType, request);
-            request.sync();
+            requests.put(request, request);
+            pending.add(request);
+        }
+
+        try {
+            provider.send(envelopes, pending);
+
+            // Every transfer is already on its way so the outcomes are all awaited
+            // together, failures are gathered so each message's result is reported.
+            List<JMSException> failures = null;
+            for (int i = 0; i < pending.size(); ++i) {
+                try {
+                    pending.get(i).sync();
+                } catch (Exception error) {
+                    if (failures == null) {
+                        failures = new ArrayList<JMSException>(Collections.<JMSException>nCopies(pending.size(), null));
+                    }
+                    failures.set(i, JmsExceptionSupport.create(error));
+                    releaseSendPermit(envelopes.get(i));
+                }
+            }
+
+            if (failures != null) {
+                throw new JmsSendBatchException(failures);
+            }
+        } catch (JmsSendBatchException sendFailures) {
+            throw sendFailures;
+        } catch (Exception ioe) {
+            for (JmsOutboundMessageDispatch envelope : envelopes) {
+                releaseSendPermit(envelope);
+            }
+            throw JmsExceptionSupport.create(ioe);
+        } finally {
+            for (ProviderFuture request : pending) {
+                requests.remove(request);
+            }
+        }
+    }
+
+    /*
+     * Takes room in the envelope's send window for it, waiting up to the send timeout
+     * should the window be full.  The Permit is returned by the provider once the send
+     * is settled, or here should the send fail before it gets that far.
+     */
+    private void acquireSendPermit(JmsOutboundMessageDispatch envelope) throws JMSException {
+        SendWindow window = envelope.getSendWindow();
+        if (window == null) {
+            return;
+        }
+
+        SendWindow.Permit permit = null;
+        try {
+            permit = window.acquire(getSendTimeout());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw JmsExceptionSupport.create(ie);
+        }
+
+        if (permit == null) {
+            throw new JmsSendTimedOutException("Timed out waiting for room to send, in flight: " + window);
+        }
+
+        envelope.setSendPermit(permit);
+    }
+
+    private static void releaseSendPermit(JmsOutboundMessageDispatch envelope) {
+        SendWindow.Permit permit = envelope.getSendPermit();
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    /**
+     * Creates the executor a session uses to deliver to its listeners, which either runs on
+     * the dispatch pool shared by all sessions or has a dispatcher thread of its own.
+     *
+     * @param sessionId
+     *        the id of the session the executor dispatches for.
+     *
+     * @return a new executor that runs its tasks one at a time and in order.
+     */
+    ExecutorService createSessionExecutor(final JmsSessionId sessionId) {
+        Executor pool = getDispatchPool();
+        if (pool != null) {
+            return new SerialExecutor(pool);
+        }
+
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runner) {
+                Thread executor = new Thread(runner);
+                executor.setName("JmsSession ["+ sessionId + "] dispatcher");
+                executor.setDaemon(true);
+                return executor;
+            }
+        });
+    }
+
+    /**
+     * Runs the given task once after the given delay on a timer thread shared by the
+     * sessions of this connection.  The task should only hand work off to the thread
+     * that is to do it, it must not block.
+     *
+     * @param task
+     *        the task to run once the delay has passed.
+     * @param delay
+     *        the time in milliseconds to wait before running the task.
+     *
+     * @return a future that can be used to cancel the task.
+     */
+    ScheduledFuture<?> schedule(Runnable task, long delay) {
+        ScheduledThreadPoolExecutor scheduler = timer;
+        if (scheduler == null) {
+            synchronized (connectionInfo) {
+                if (timer == null) {
+                    timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runner) {
+                            Thread thread = new Thread(runner, "QpidJMS Connection Timer: " + connectionInfo.getId());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    timer.setRemoveOnCancelPolicy(true);
+                }
+                scheduler = timer;
+            }
+        }
+
+        return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private Executor getDispatchPool() {
+        ThreadPoolExecutor pool = dispatchPool;
+        if (pool == null && getDispatchPoolSize() > 0) {
+            synchronized (connectionInfo) {
+                if (dispatchPool == null) {
+                    final int poolSize = getDispatchPoolSize();
+                    final AtomicLong threadCount = new AtomicLong();
+                    dispatchPool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runner) {
+                            Thread thread = new Thread(runner, "QpidJMS Session Dispatcher: " +
+                                connectionInfo.getId() + ":" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    // Idle sessions should cost no threads at all.
+                    dispatchPool.allowCoreThreadTimeOut(true);
+                }
+                pool = dispatchPool;
+            }
+        }
+
+        return pool;
+    }
+
+    /**
+     * @return a window bounding the sends of a new producer, or null if they are unbounded.
+     */
+    SendWindow createProducerSendWindow() {
+        SendWindow connectionWindow = sendWindow;
+        if (connectionWindow == null && (getConnectionMaxInFlightSends() > 0 || getConnectionMaxInFlightBytes() > 0)) {
+            synchronized (connectionInfo) {
+                if (sendWindow == null) {
+                    sendWindow = new SendWindow(getConnectionMaxInFlightSends(), getConnectionMaxInFlightBytes(), null);
+                }
+                connectionWindow = sendWindow;
+            }
+        }
+
+        if (getMaxInFlightSends() > 0 || getMaxInFlightBytes() > 0) {
+            return new SendWindow(getMaxInFlightSends(), getMaxInFlightBytes(), connectionWindow);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the window bounding the sends of the whole connection, or null if unbounded.
+     */
+    SendWindow getSendWindow() {
+        return sendWindow;
+    }
+
+    private void resetSendWindow() {
+        SendWindow window = sendWindow;
+        if (window != null) {
+            window.reset();
+        }
+    }
+
+    void acknowledge(JmsInboundMessageDispatch envelope, ACK_TYPE ackType) throws JMSException {
+        checkClosedOrFailed();
+        connect();
+
+        try {
+            if (isAcknowledgedAsync(envelope)) {
+                provider.acknowledge(envelope, ackType, asyncAckResult);
+            } else {
+                ProviderFuture request = new ProviderFuture();
+                provider.acknowledge(envelope, ackType, request);
+                request.sync();
+            }
+        } catch (Exception ioe) {
+            throw JmsExceptionSupport.create(ioe);
+        }
+    }
+
+    void acknowledge(List<JmsInboundMessageDispatch> envelopes, ACK_TYPE ackType) throws JMSException {
+        checkClosedOrFailed();
+        connect();
+
+        try {
+            if (isAcknowledgedAsync(envelopes.get(0))) {
+                for (JmsInboundMessageDispatch envelope : envelopes) {
+                    provider.acknowledge(envelope, ackType, asyncAckResult);
+                }
+            } else {
+                // Hand every ack to the provider before waiting so that they are all
+                // written together and the batch costs a single round of waiting.
+                List<ProviderFuture> requests = new ArrayList<ProviderFuture>(envelopes.size());
+                for (JmsInboundMessageDispatch envelope : envelopes) {
+                    ProviderFuture request = new ProviderFuture();
+                    provider.acknowledge(envelope, ackType, request);
+                    requests.add(request);
+                }
+
+                for (ProviderFuture request : requests) {
+                    request.sync();
+                }
+            }
         } catch (Exception ioe) {
             throw JmsExceptionSupport.create(ioe);
         }
     }
 
+    /*
+     * Acknowledgements for non-transacted sessions that were configured to send acks
+     * asynchronously, or that use DUPS_OK_ACKNOWLEDGE with batching enabled, are handed to
+     * the provider without waiting, any failure is then reported to the connection
+     * ExceptionListener.  Transacted sessions always wait so that an ack failure is seen
+     * before the transaction is committed.
+     */
+    private boolean isAcknowledgedAsync(JmsInboundMessageDispatch envelope) {
+        JmsSession session = sessions.get(envelope.getConsumerId().getParentId());
+        if (session == null || session.isTransacted()) {
+            return false;
+        }
+
+        if (session.isDupsOkAcknowledge() && getDupsOkBatchSize() > 1) {
+            return true;
+        }
+
+        return session.getSessionInfo().isSendAcksAsync();
+    }
+
     void acknowledge(JmsSessionId sessionId, ACK_TYPE ackType) throws JMSException {
         checkClosedOrFailed();
         connect();
@@ -1051,6 +1383,70 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
         connectionInfo.setLocalMessageExpiry(localMessageExpiry);
     }
 
+    public int getDupsOkBatchSize() {
+        return connectionInfo.getDupsOkBatchSize();
+    }
+
+    public void setDupsOkBatchSize(int dupsOkBatchSize) {
+        connectionInfo.setDupsOkBatchSize(dupsOkBatchSize);
+    }
+
+    public long getDupsOkBatchTimeout() {
+        return connectionInfo.getDupsOkBatchTimeout();
+    }
+
+    public void setDupsOkBatchTimeout(long dupsOkBatchTimeout) {
+        connectionInfo.setDupsOkBatchTimeout(dupsOkBatchTimeout);
+    }
+
+    public int getMaxInFlightSends() {
+        return connectionInfo.getMaxInFlightSends();
+    }
+
+    public void setMaxInFlightSends(int maxInFlightSends) {
+        connectionInfo.setMaxInFlightSends(maxInFlightSends);
+    }
+
+    public long getMaxInFlightBytes() {
+        return connectionInfo.getMaxInFlightBytes();
+    }
+
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        connectionInfo.setMaxInFlightBytes(maxInFlightBytes);
+    }
+
+    public int getConnectionMaxInFlightSends() {
+        return connectionInfo.getConnectionMaxInFlightSends();
+    }
+
+    public void setConnectionMaxInFlightSends(int connectionMaxInFlightSends) {
+        connectionInfo.setConnectionMaxInFlightSends(connectionMaxInFlightSends);
+    }
+
+    public long getConnectionMaxInFlightBytes() {
+        return connectionInfo.getConnectionMaxInFlightBytes();
+    }
+
+    public void setConnectionMaxInFlightBytes(long connectionMaxInFlightBytes) {
+        connectionInfo.setConnectionMaxInFlightBytes(connectionMaxInFlightBytes);
+    }
+
+    public long getPrefetchMemoryLimit() {
+        return connectionInfo.getPrefetchMemoryLimit();
+    }
+
+    public void setPrefetchMemoryLimit(long prefetchMemoryLimit) {
+        connectionInfo.setPrefetchMemoryLimit(prefetchMemoryLimit);
+    }
+
+    public int getDispatchPoolSize() {
+        return connectionInfo.getDispatchPoolSize();
+    }
+
+    public void setDispatchPoolSize(int dispatchPoolSize) {
+        connectionInfo.setDispatchPoolSize(dispatchPoolSize);
+    }
+
     public JmsMessageIDBuilder getMessageIDBuilder() {
         return messageIDBuilder;
     }
@@ -1099,6 +1495,8 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
             session.onConnectionInterrupted();
         }
 
+        resetSendWindow();
+
         // Run the application callbacks on the connection executor to allow the provider to
         // return to its normal processing without waiting for client level processing to finish.
         for (final JmsConnectionListener listener : connectionListeners) {
@@ -1182,6 +1580,7 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
     @Override
     public void onConnectionFailure(final IOException ex) {
         providerFailed(ex);
+        resetSendWindow();
 
         onProviderException(ex);
 
@@ -1314,4 +1713,22 @@ public class JmsConnection implements Connection, TopicConnection, QueueConnecti
             firstFailureError = error;
         }
     }
+
+    private final class AsyncAcknowledgeResult implements AsyncResult {
+
+        @Override
+        public void onFailure(Throwable result) {
+            LOG.debug("Asynchronous acknowledge failed: {}", result.getMessage());
+            onAsyncException(result);
+        }
+
+        @Override
+        public void onSuccess() {
+        }
+
+        @Override
+        public boolean isComplete() {
+            return true;
+        }
+    }
 }
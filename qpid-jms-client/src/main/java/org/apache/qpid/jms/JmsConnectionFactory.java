@@ -71,6 +71,14 @@ public class JmsConnectionFactory extends JNDIStorable implements ConnectionFact
     private long requestTimeout = JmsConnectionInfo.DEFAULT_REQUEST_TIMEOUT;
     private long closeTimeout = JmsConnectionInfo.DEFAULT_CLOSE_TIMEOUT;
     private long connectTimeout = JmsConnectionInfo.DEFAULT_CONNECT_TIMEOUT;
+    private int dupsOkBatchSize = JmsConnectionInfo.DEFAULT_DUPS_OK_BATCH_SIZE;
+    private long dupsOkBatchTimeout = JmsConnectionInfo.DEFAULT_DUPS_OK_BATCH_TIMEOUT;
+    private int maxInFlightSends;
+    private long maxInFlightBytes;
+    private int connectionMaxInFlightSends;
+    private long connectionMaxInFlightBytes;
+    private long prefetchMemoryLimit;
+    private int dispatchPoolSize;
     private IdGenerator clientIdGenerator;
     private String clientIDPrefix;
     private IdGenerator connectionIdGenerator;
@@ -490,6 +498,14 @@ public class JmsConnectionFactory extends JNDIStorable implements ConnectionFact
         return sendTimeout;
     }
 
+    /**
+     * Sets the time in milliseconds that a send may wait for room in the send window, or
+     * be held by the client waiting for credit from the remote, before it fails.  A value
+     * of -1 means wait forever.
+     *
+     * @param sendTimeout
+     *        the time in milliseconds a send may be held before it fails.
+     */
     public void setSendTimeout(long sendTimeout) {
         this.sendTimeout = sendTimeout;
     }
@@ -672,6 +688,165 @@ public class JmsConnectionFactory extends JNDIStorable implements ConnectionFact
         this.localMessageExpiry = localMessageExpiry;
     }
 
+    /**
+     * @return the number of DUPS_OK_ACKNOWLEDGE messages a consumer accepts in a single batch.
+     */
+    public int getDupsOkBatchSize() {
+        return dupsOkBatchSize;
+    }
+
+    /**
+     * Sets the number of messages consumed in a DUPS_OK_ACKNOWLEDGE session that a consumer
+     * will leave unsettled before accepting them all at once.  Should the connection fail
+     * before a batch is settled those messages will be redelivered.  A value of one or less,
+     * the default, causes each message to be accepted as soon as it is consumed.
+     *
+     * @param dupsOkBatchSize
+     *        the number of consumed messages to accept in a single batch.
+     */
+    public void setDupsOkBatchSize(int dupsOkBatchSize) {
+        this.dupsOkBatchSize = dupsOkBatchSize;
+    }
+
+    /**
+     * @return the time in milliseconds that a partial DUPS_OK_ACKNOWLEDGE batch is held.
+     */
+    public long getDupsOkBatchTimeout() {
+        return dupsOkBatchTimeout;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds that a consumer in a DUPS_OK_ACKNOWLEDGE session
+     * will hold a partially filled batch of consumed messages before accepting them.  A value
+     * of zero or less means a partial batch is only accepted when the consumer is closed.
+     *
+     * @param dupsOkBatchTimeout
+     *        the time in milliseconds to wait before accepting a partial batch.
+     */
+    public void setDupsOkBatchTimeout(long dupsOkBatchTimeout) {
+        this.dupsOkBatchTimeout = dupsOkBatchTimeout;
+    }
+
+    /**
+     * @return the number of sends each producer may have awaiting settlement.
+     */
+    public int getMaxInFlightSends() {
+        return maxInFlightSends;
+    }
+
+    /**
+     * Sets the number of sends that a single producer may have in flight, that is sent or
+     * held for credit but not yet settled by the remote.  A send made while the limit is
+     * reached blocks for up to the send timeout waiting for an earlier one to be settled.
+     * A value of zero or less places no limit on the producer.
+     *
+     * @param maxInFlightSends
+     *        the number of sends a producer may have awaiting settlement.
+     */
+    public void setMaxInFlightSends(int maxInFlightSends) {
+        this.maxInFlightSends = maxInFlightSends;
+    }
+
+    /**
+     * @return the number of encoded bytes each producer may have awaiting settlement.
+     */
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Sets the number of encoded message bytes that a single producer may have in flight.
+     * A send is allowed to proceed while the producer is below this limit, so the bytes in
+     * flight can exceed it by at most one message.  A value of zero or less places no limit
+     * on the producer.
+     *
+     * @param maxInFlightBytes
+     *        the number of encoded bytes a producer may have awaiting settlement.
+     */
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    /**
+     * @return the number of sends all producers of a connection may have awaiting settlement.
+     */
+    public int getConnectionMaxInFlightSends() {
+        return connectionMaxInFlightSends;
+    }
+
+    /**
+     * Sets the number of sends that all the producers of a connection together may have
+     * in flight, applied in addition to any per producer limit.  A value of zero or less
+     * places no limit on the connection.
+     *
+     * @param connectionMaxInFlightSends
+     *        the number of sends a connection may have awaiting settlement.
+     */
+    public void setConnectionMaxInFlightSends(int connectionMaxInFlightSends) {
+        this.connectionMaxInFlightSends = connectionMaxInFlightSends;
+    }
+
+    /**
+     * @return the number of encoded bytes all producers of a connection may have in flight.
+     */
+    public long getConnectionMaxInFlightBytes() {
+        return connectionMaxInFlightBytes;
+    }
+
+    /**
+     * Sets the number of encoded message bytes that all the producers of a connection
+     * together may have in flight, applied in addition to any per producer limit.  A value
+     * of zero or less places no limit on the connection.
+     *
+     * @param connectionMaxInFlightBytes
+     *        the number of encoded bytes a connection may have awaiting settlement.
+     */
+    public void setConnectionMaxInFlightBytes(long connectionMaxInFlightBytes) {
+        this.connectionMaxInFlightBytes = connectionMaxInFlightBytes;
+    }
+
+    /**
+     * @return the number of encoded message bytes the consumers of a connection may buffer.
+     */
+    public long getPrefetchMemoryLimit() {
+        return prefetchMemoryLimit;
+    }
+
+    /**
+     * Sets the number of encoded message bytes that all the consumers of a connection
+     * together may hold in their prefetch buffers.  Once the limit is reached consumers
+     * grant no further credit until enough of the buffered messages are consumed, messages
+     * already covered by granted credit may still arrive.  A value of zero or less places
+     * no limit on the connection.
+     *
+     * @param prefetchMemoryLimit
+     *        the number of encoded bytes a connection's consumers may buffer.
+     */
+    public void setPrefetchMemoryLimit(long prefetchMemoryLimit) {
+        this.prefetchMemoryLimit = prefetchMemoryLimit;
+    }
+
+    /**
+     * @return the number of threads shared by the sessions of a connection to deliver to their listeners.
+     */
+    public int getDispatchPoolSize() {
+        return dispatchPoolSize;
+    }
+
+    /**
+     * Sets the number of threads that the sessions of a connection share to deliver messages
+     * to their MessageListeners and CompletionListeners.  Each session still delivers one message
+     * at a time and in order, but it only occupies a thread of the pool while it has work to
+     * do, so a connection with many sessions needs no more threads than this.  A value of zero
+     * or less gives each session its own dispatcher thread.
+     *
+     * @param dispatchPoolSize
+     *        the number of threads the sessions of a connection share for dispatch.
+     */
+    public void setDispatchPoolSize(int dispatchPoolSize) {
+        this.dispatchPoolSize = dispatchPoolSize;
+    }
+
     /**
      * Sets the type of the Message IDs used to populate the outgoing Messages
      *
@@ -27,6 +27,7 @@ import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
 import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
 import org.apache.qpid.jms.meta.JmsTransactionId;
 import org.apache.qpid.jms.meta.JmsTransactionInfo;
+import org.apache.qpid.jms.provider.AsyncResult;
 import org.apache.qpid.jms.provider.Provider;
 import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
 import org.apache.qpid.jms.provider.ProviderFuture;
@@ -60,6 +61,25 @@ public class JmsLocalTransactionContext implements JmsTransactionContext {
         }
     }
 
+    @Override
+    public void send(JmsConnection connection, List<JmsOutboundMessageDispatch> envelopes) throws JMSException {
+        if (!isFailed()) {
+            begin();
+            connection.send(envelopes);
+        }
+    }
+
+    @Override
+    public void send(JmsConnection connection, JmsOutboundMessageDispatch envelope, AsyncResult request) throws JMSException {
+        if (!isFailed()) {
+            begin();
+            connection.send(envelope, request);
+        } else {
+            // As with the other sends the failure is reported when the transaction is committed.
+            request.onSuccess();
+        }
+    }
+
     @Override
     public void acknowledge(JmsConnection connection, JmsInboundMessageDispatch envelope, ACK_TYPE ackType) throws JMSException {
         // Consumed or delivered messages fall into a transaction so we must check
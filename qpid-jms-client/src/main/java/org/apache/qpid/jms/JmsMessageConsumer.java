@@ -16,8 +16,12 @@
  */
 package org.apache.qpid.jms;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
@@ -39,7 +43,7 @@ import org.apache.qpid.jms.meta.JmsConsumerInfo;
 import org.apache.qpid.jms.provider.Provider;
 import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
 import org.apache.qpid.jms.provider.ProviderFuture;
-import org.apache.qpid.jms.util.FifoMessageQueue;
+import org.apache.qpid.jms.util.ArrayMessageQueue;
 import org.apache.qpid.jms.util.MessageQueue;
 import org.apache.qpid.jms.util.PriorityMessageQueue;
 import org.slf4j.Logger;
@@ -59,6 +63,12 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
     protected final AtomicBoolean closed = new AtomicBoolean();
     protected boolean started;
     protected MessageListener messageListener;
+    protected JmsBatchMessageListener batchMessageListener;
+    protected int maxBatchSize;
+    protected long batchLingerTime;
+    private volatile long batchDeadline;
+    private volatile ScheduledFuture<?> batchFlushTask;
+    private volatile boolean batchFlushPending;
     protected JmsMessageAvailableListener availableListener;
     protected final MessageQueue messageQueue;
     protected final Lock lock = new ReentrantLock();
@@ -102,15 +112,16 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
             connection.checkConsumeFromTemporaryDestination((JmsTemporaryDestination) destination);
         }
 
+        JmsPrefetchPolicy policy = connection.getPrefetchPolicy();
+        JmsRedeliveryPolicy redeliveryPolicy = connection.getRedeliveryPolicy().copy();
+        int prefetch = getConfiguredPrefetch(destination, policy);
+
         if (connection.isLocalMessagePriority()) {
             this.messageQueue = new PriorityMessageQueue();
         } else {
-            this.messageQueue = new FifoMessageQueue();
+            this.messageQueue = new ArrayMessageQueue(prefetch);
         }
 
-        JmsPrefetchPolicy policy = connection.getPrefetchPolicy();
-        JmsRedeliveryPolicy redeliveryPolicy = connection.getRedeliveryPolicy().copy();
-
         consumerInfo = new JmsConsumerInfo(consumerId);
         consumerInfo.setClientId(connection.getClientID());
         consumerInfo.setSelector(selector);
@@ -119,9 +130,13 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
         consumerInfo.setAcknowledgementMode(acknowledgementMode);
         consumerInfo.setNoLocal(noLocal);
         consumerInfo.setBrowser(isBrowser());
-        consumerInfo.setPrefetchSize(getConfiguredPrefetch(destination, policy));
+        consumerInfo.setPrefetchSize(prefetch);
+        consumerInfo.setAdaptivePrefetch(policy.isAdaptive() && prefetch > 0 && !isBrowser());
+        consumerInfo.setAdaptivePrefetchMinimum(policy.getAdaptiveMinimum());
         consumerInfo.setRedeliveryPolicy(redeliveryPolicy);
         consumerInfo.setLocalMessageExpiry(connection.isLocalMessageExpiry());
+        consumerInfo.setDupsOkBatchSize(connection.getDupsOkBatchSize());
+        consumerInfo.setDupsOkBatchTimeout(connection.getDupsOkBatchTimeout());
 
         session.getConnection().createResource(consumerInfo);
     }
@@ -244,6 +259,57 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
         return copy(ackFromReceive(dequeue(0, connection.isReceiveNoWaitLocalOnly())));
     }
 
+    /**
+     * Receives up to the given number of messages in one call.  The call waits for the
+     * first message as {@link #receive(long)} would, any further messages that are then
+     * already in the prefetch buffer are taken together without waiting and the whole
+     * batch is acknowledged at once.
+     *
+     * @param maxMessages
+     *        the maximum number of messages to return, must be greater than zero.
+     * @param timeout
+     *        the time in milliseconds to wait for the first message, zero waits forever.
+     *
+     * @return a List of the received Messages which is empty if none arrived in time.
+     *
+     * @throws JMSException if an error occurs while receiving the messages.
+     */
+    public List<Message> receive(int maxMessages, long timeout) throws JMSException {
+        checkClosed();
+        checkMessageListener();
+
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("The maximum number of messages must be greater than zero");
+        }
+
+        // Configure for infinite wait when timeout is zero (JMS Spec)
+        if (timeout == 0) {
+            timeout = -1;
+        }
+
+        JmsInboundMessageDispatch first = dequeue(timeout, connection.isReceiveLocalOnly());
+        if (first == null || first.getMessage() == null) {
+            return Collections.emptyList();
+        }
+
+        List<JmsInboundMessageDispatch> batch = new ArrayList<JmsInboundMessageDispatch>(maxMessages);
+        batch.add(first);
+        if (maxMessages > 1) {
+            List<JmsInboundMessageDispatch> drained = new ArrayList<JmsInboundMessageDispatch>(maxMessages - 1);
+            messageQueue.dequeueNoWait(drained, maxMessages - 1);
+            addDeliverable(drained, batch);
+        }
+
+        ackFromReceive(batch);
+
+        List<Message> messages = new ArrayList<Message>(batch.size());
+        for (JmsInboundMessageDispatch envelope : batch) {
+            messages.add(copy(envelope));
+        }
+
+        return messages;
+    }
+
     /**
      * Used to get an enqueued message from the unconsumedMessages list. The
      * amount of time this method blocks is based on the timeout value.
@@ -280,13 +346,15 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
                     envelope = messageQueue.dequeue(timeout);
                 }
 
-                if (failureCause.get() != null) {
-                    LOG.debug("{} receive failed: {}", getConsumerId(), failureCause.get().getMessage());
-                    throw JmsExceptionSupport.create(failureCause.get());
-                }
+                checkFailureCause();
 
                 if (envelope == null) {
-                    if ((timeout == 0 && (pullForced || localCheckOnly)) || pullConsumer || messageQueue.isClosed()) {
+                    if (messageQueue.isClosed()) {
+                        // The cause is set before the queue is closed, a failure that
+                        // landed after the check above must still be reported.
+                        checkFailureCause();
+                        return null;
+                    } else if ((timeout == 0 && (pullForced || localCheckOnly)) || pullConsumer) {
                         return null;
                     } else if (timeout > 0) {
                         timeout = Math.max(deadline - System.currentTimeMillis(), 0);
@@ -337,6 +405,26 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
         }
     }
 
+    /*
+     * Moves the messages taken from the queue into the batch, acknowledging any that are
+     * expired or exceed the redelivery limit instead of delivering them.
+     */
+    private void addDeliverable(List<JmsInboundMessageDispatch> envelopes, List<JmsInboundMessageDispatch> batch) throws JMSException {
+        for (JmsInboundMessageDispatch envelope : envelopes) {
+            if (envelope.getMessage() == null) {
+                continue;
+            } else if (consumeExpiredMessage(envelope)) {
+                LOG.trace("{} filtered expired message: {}", getConsumerId(), envelope);
+                doAckExpired(envelope);
+            } else if (redeliveryExceeded(envelope)) {
+                LOG.debug("{} filtered message with excessive redelivery count: {}", getConsumerId(), envelope);
+                doAckUndeliverable(envelope);
+            } else {
+                batch.add(envelope);
+            }
+        }
+    }
+
     private boolean consumeExpiredMessage(JmsInboundMessageDispatch dispatch) {
         if (!isBrowser() && consumerInfo.isLocalMessageExpiry() && dispatch.getMessage().isExpired()) {
             return true;
@@ -369,6 +457,14 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
         }
     }
 
+    private void checkFailureCause() throws JMSException {
+        Exception cause = failureCause.get();
+        if (cause != null) {
+            LOG.debug("{} receive failed: {}", getConsumerId(), cause.getMessage());
+            throw JmsExceptionSupport.create(cause);
+        }
+    }
+
     JmsMessage copy(final JmsInboundMessageDispatch envelope) throws JMSException {
         if (envelope == null || envelope.getMessage() == null) {
             return null;
@@ -393,6 +489,27 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
         return envelope;
     }
 
+    private void ackFromReceive(final List<JmsInboundMessageDispatch> envelopes) throws JMSException {
+        // Messages only carry an acknowledge callback in CLIENT_ACKNOWLEDGE mode so the
+        // first message decides the ack type for the whole batch.
+        ACK_TYPE ackType = ACK_TYPE.CONSUMED;
+        if (envelopes.get(0).getMessage().getAcknowledgeCallback() != null) {
+            ackType = ACK_TYPE.DELIVERED;
+        } else {
+            checkClosed();
+        }
+
+        try {
+            session.acknowledge(envelopes, ackType);
+        } catch (JMSException ex) {
+            session.onException(ex);
+            throw ex;
+        }
+
+        // Tags that we have delivered and can't close if in a TX Session.
+        delivered.set(true);
+    }
+
     private JmsInboundMessageDispatch doAckConsumed(final JmsInboundMessageDispatch envelope) throws JMSException {
         checkClosed();
         try {
@@ -471,8 +588,8 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
                 this.messageQueue.enqueue(envelope);
             }
 
-            if (this.messageListener != null && this.started) {
-                session.getExecutor().execute(new MessageDeliverTask());
+            if (hasMessageListener() && this.started) {
+                session.getExecutor().execute(createDeliverTask());
             } else {
                 if (availableListener != null) {
                     session.getExecutor().execute(new Runnable() {
@@ -511,6 +628,11 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
             this.started = false;
             if (closeMessageQueue) {
                 this.messageQueue.close();
+
+                ScheduledFuture<?> flush = batchFlushTask;
+                if (flush != null) {
+                    flush.cancel(false);
+                }
             } else {
                 this.messageQueue.stop();
             }
@@ -540,8 +662,16 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
     }
 
     void drainMessageQueueToListener() {
-        if (this.messageListener != null && this.started) {
-            session.getExecutor().execute(new MessageDeliverTask());
+        if (hasMessageListener() && this.started) {
+            session.getExecutor().execute(createDeliverTask());
+        }
+    }
+
+    private Runnable createDeliverTask() {
+        if (this.batchMessageListener != null) {
+            return new BatchDeliverTask();
+        } else {
+            return new MessageDeliverTask();
         }
     }
 
@@ -577,10 +707,68 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
             throw new JMSException("Illegal prefetch size of zero. This setting is not supported" +
                                    "for asynchronous consumers please set a value of at least 1");
         }
+        if (listener != null && this.batchMessageListener != null) {
+            throw new IllegalStateException("Cannot set a MessageListener when a JmsBatchMessageListener is set");
+        }
         this.messageListener = listener;
         drainMessageQueueToListener();
     }
 
+    /**
+     * @return the batch message listener currently assigned to this consumer, or null.
+     *
+     * @throws JMSException if the consumer is closed.
+     */
+    public JmsBatchMessageListener getBatchMessageListener() throws JMSException {
+        checkClosed();
+        return this.batchMessageListener;
+    }
+
+    /**
+     * Sets a listener that is given the messages for this consumer in batches.  A batch is
+     * delivered once it holds maxBatchSize messages, or once lingerTime has passed since
+     * its first message arrived, whichever comes first.  A lingering batch does not hold
+     * the session's dispatch thread, it stays queued until a timer delivers it, so other
+     * consumers on the session are dispatched to in the meantime.  A consumer can have
+     * either a MessageListener or a JmsBatchMessageListener assigned but not both.
+     *
+     * @param listener
+     *        the batch listener to assign, or null to clear the current one.
+     * @param maxBatchSize
+     *        the maximum number of messages given to the listener at once.
+     * @param lingerTime
+     *        the time in milliseconds to wait for a partial batch to fill, zero delivers
+     *        whatever messages are already available.
+     *
+     * @throws JMSException if the consumer is closed or the listener cannot be set.
+     */
+    public void setBatchMessageListener(JmsBatchMessageListener listener, int maxBatchSize, long lingerTime) throws JMSException {
+        checkClosed();
+        if (consumerInfo.getPrefetchSize() == 0) {
+            throw new JMSException("Illegal prefetch size of zero. This setting is not supported " +
+                                   "for asynchronous consumers please set a value of at least 1");
+        }
+        if (listener != null && this.messageListener != null) {
+            throw new IllegalStateException("Cannot set a JmsBatchMessageListener when a MessageListener is set");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The maximum batch size must be greater than zero");
+        }
+        if (lingerTime < 0) {
+            throw new IllegalArgumentException("The batch linger time cannot be negative");
+        }
+
+        lock.lock();
+        try {
+            this.maxBatchSize = maxBatchSize;
+            this.batchLingerTime = lingerTime;
+            this.batchMessageListener = listener;
+        } finally {
+            lock.unlock();
+        }
+        drainMessageQueueToListener();
+    }
+
     /**
      * @return the Message Selector
      * @throws JMSException
@@ -600,12 +788,22 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
         return this.consumerInfo.getPrefetchSize();
     }
 
+    /**
+     * Gets the prefetch this consumer is currently using, when the prefetch policy is
+     * adaptive this moves between the adaptive minimum and the configured prefetch size.
+     *
+     * @return the prefetch size currently in use by this consumer.
+     */
+    public int getCurrentPrefetchSize() {
+        return this.consumerInfo.getCurrentPrefetchSize();
+    }
+
     protected void checkMessageListener() throws JMSException {
         session.checkMessageListener();
     }
 
     boolean hasMessageListener() {
-        return this.messageListener != null;
+        return this.messageListener != null || this.batchMessageListener != null;
     }
 
     boolean isUsingDestination(JmsDestination destination) {
@@ -709,6 +907,15 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
     private final class MessageDeliverTask implements Runnable {
         @Override
         public void run() {
+            session.setDeliveryThread(true);
+            try {
+                deliverPending();
+            } finally {
+                session.setDeliveryThread(false);
+            }
+        }
+
+        private void deliverPending() {
             JmsInboundMessageDispatch envelope;
             while (session.isStarted() && (envelope = messageQueue.dequeueNoWait()) != null) {
                 try {
@@ -755,4 +962,118 @@ public class JmsMessageConsumer implements MessageConsumer, JmsMessageAvailableC
             }
         }
     }
+
+    private final class BatchDeliverTask implements Runnable {
+        @Override
+        public void run() {
+            session.setDeliveryThread(true);
+            try {
+                deliverBatches();
+            } finally {
+                session.setDeliveryThread(false);
+            }
+        }
+
+        private void deliverBatches() {
+            JmsBatchMessageListener listener = batchMessageListener;
+            while (listener != null && session.isStarted() && messageQueue.isRunning()) {
+                try {
+                    int queued = messageQueue.size();
+                    if (queued == 0) {
+                        batchDeadline = 0;
+                        return;
+                    }
+
+                    // A partial batch waits for more messages until its linger time is up,
+                    // rather than holding the dispatch thread the timer delivers it later.
+                    if (queued < maxBatchSize && batchLingerTime > 0) {
+                        long now = System.currentTimeMillis();
+                        if (batchDeadline == 0) {
+                            batchDeadline = now + batchLingerTime;
+                        }
+                        if (now < batchDeadline) {
+                            scheduleBatchFlush(batchDeadline - now);
+                            return;
+                        }
+                    }
+
+                    batchDeadline = 0;
+
+                    List<JmsInboundMessageDispatch> batch = collectBatch(maxBatchSize);
+                    if (!batch.isEmpty()) {
+                        deliverBatch(listener, batch);
+                    }
+                } catch (Exception e) {
+                    session.getConnection().onException(e);
+                }
+            }
+        }
+
+        private List<JmsInboundMessageDispatch> collectBatch(int batchSize) throws JMSException {
+            List<JmsInboundMessageDispatch> batch = new ArrayList<JmsInboundMessageDispatch>(batchSize);
+            List<JmsInboundMessageDispatch> drained = new ArrayList<JmsInboundMessageDispatch>(batchSize);
+
+            while (batch.size() < batchSize) {
+                drained.clear();
+                if (messageQueue.dequeueNoWait(drained, batchSize - batch.size()) == 0) {
+                    break;
+                }
+
+                addDeliverable(drained, batch);
+            }
+
+            return batch;
+        }
+
+        private void scheduleBatchFlush(long delay) {
+            if (batchFlushPending) {
+                return;
+            }
+
+            batchFlushPending = true;
+            batchFlushTask = connection.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    batchFlushPending = false;
+                    try {
+                        drainMessageQueueToListener();
+                    } catch (RejectedExecutionException ree) {
+                        LOG.trace("{} session closed before its lingering batch was flushed", getConsumerId());
+                    }
+                }
+            }, delay);
+        }
+
+        private void deliverBatch(JmsBatchMessageListener listener, List<JmsInboundMessageDispatch> batch) throws JMSException {
+            boolean deliveryFailed = false;
+            boolean autoAckOrDupsOk = acknowledgementMode == Session.AUTO_ACKNOWLEDGE ||
+                                      acknowledgementMode == Session.DUPS_OK_ACKNOWLEDGE;
+            if (autoAckOrDupsOk) {
+                session.acknowledge(batch, ACK_TYPE.DELIVERED);
+            } else {
+                ackFromReceive(batch);
+            }
+            session.clearSessionRecovered();
+
+            List<Message> messages = new ArrayList<Message>(batch.size());
+            for (JmsInboundMessageDispatch envelope : batch) {
+                messages.add(copy(envelope));
+            }
+
+            try {
+                listener.onMessages(messages);
+            } catch (RuntimeException rte) {
+                deliveryFailed = true;
+            }
+
+            if (autoAckOrDupsOk && !session.isSessionRecovered()) {
+                if (!deliveryFailed) {
+                    session.acknowledge(batch, ACK_TYPE.CONSUMED);
+                } else {
+                    session.acknowledge(batch, ACK_TYPE.RELEASED);
+                }
+            }
+        }
+    }
 }
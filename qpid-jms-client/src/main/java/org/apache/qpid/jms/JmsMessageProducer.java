@@ -16,6 +16,7 @@
  */
 package org.apache.qpid.jms;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -31,6 +32,7 @@ import org.apache.qpid.jms.meta.JmsProducerId;
 import org.apache.qpid.jms.meta.JmsProducerInfo;
 import org.apache.qpid.jms.provider.Provider;
 import org.apache.qpid.jms.provider.ProviderFuture;
+import org.apache.qpid.jms.util.SendWindow;
 
 /**
  * Implementation of a JMS MessageProducer
@@ -49,6 +51,7 @@ public class JmsMessageProducer implements MessageProducer {
     protected boolean disableTimestamp;
     protected final AtomicLong messageSequence = new AtomicLong();
     protected Exception failureCause;
+    protected final SendWindow sendWindow;
 
     protected JmsMessageProducer(JmsProducerId producerId, JmsSession session, JmsDestination destination) throws JMSException {
         this.session = session;
@@ -56,6 +59,7 @@ public class JmsMessageProducer implements MessageProducer {
         this.flexibleDestination = destination == null;
         this.producerInfo = new JmsProducerInfo(producerId);
         this.producerInfo.setDestination(destination);
+        this.sendWindow = connection.createProducerSendWindow();
 
         session.getConnection().createResource(producerInfo);
     }
@@ -100,6 +104,11 @@ public class JmsMessageProducer implements MessageProducer {
         if (closed.compareAndSet(false, true)) {
             failureCause = cause;
             session.remove(this);
+
+            // Wake any sender waiting on the window, its send now fails as closed.
+            if (sendWindow != null) {
+                sendWindow.reset();
+            }
         }
     }
 
@@ -231,6 +240,122 @@ public class JmsMessageProducer implements MessageProducer {
         sendMessage(destination, message, deliveryMode, priority, timeToLive);
     }
 
+    /**
+     * Sends a message using the producer's default delivery mode, priority and time to
+     * live without waiting for the remote peer to accept it.  The listener is told of the
+     * outcome once it is known, listeners are called in the order the messages were sent
+     * within the Session.
+     *
+     * @param message
+     *        the message to send.
+     * @param listener
+     *        the listener that is notified of the outcome of the send.
+     *
+     * @throws JMSException if the message cannot be handed over for sending.
+     */
+    public void send(Message message, JmsCompletionListener listener) throws JMSException {
+        checkClosed();
+
+        if (flexibleDestination) {
+            throw new UnsupportedOperationException("Using this method is not supported on producers created without an explicit Destination");
+        }
+
+        sendMessage(producerInfo.getDestination(), message, listener);
+    }
+
+    /**
+     * Sends a message to the given destination using the producer's default delivery mode,
+     * priority and time to live without waiting for the remote peer to accept it.
+     *
+     * @param destination
+     *        the destination to send the message to.
+     * @param message
+     *        the message to send.
+     * @param listener
+     *        the listener that is notified of the outcome of the send.
+     *
+     * @throws JMSException if the message cannot be handed over for sending.
+     *
+     * @see #send(Message, JmsCompletionListener)
+     */
+    public void send(Destination destination, Message message, JmsCompletionListener listener) throws JMSException {
+        checkClosed();
+
+        if (!flexibleDestination) {
+            throw new UnsupportedOperationException("Using this method is not supported on producers created with an explicit Destination.");
+        }
+
+        sendMessage(destination, message, listener);
+    }
+
+    private void sendMessage(Destination destination, Message message, JmsCompletionListener listener) throws JMSException {
+        if (destination == null) {
+            throw new InvalidDestinationException("Don't understand null destinations");
+        }
+
+        if (listener == null) {
+            throw new IllegalArgumentException("JmsCompletionListener cannot be null");
+        }
+
+        this.session.send(this, destination, message, deliveryMode, priority, timeToLive, disableMessageId, disableTimestamp, listener);
+    }
+
+    /**
+     * Sends a batch of messages using the producer's default delivery mode, priority
+     * and time to live.  The messages are all handed to the connection before any
+     * outcome is awaited, so a synchronous send of the batch waits once instead of
+     * once per message.
+     *
+     * @param messages
+     *        the messages to send, in the order they should be sent.
+     *
+     * @throws JMSException if the batch cannot be sent, a JmsSendBatchException
+     *         reports which messages failed when only part of the batch was sent.
+     */
+    public void send(List<Message> messages) throws JMSException {
+        checkClosed();
+
+        if (flexibleDestination) {
+            throw new UnsupportedOperationException("Using this method is not supported on producers created without an explicit Destination");
+        }
+
+        sendMessages(producerInfo.getDestination(), messages);
+    }
+
+    /**
+     * Sends a batch of messages to the given destination using the producer's default
+     * delivery mode, priority and time to live.
+     *
+     * @param destination
+     *        the destination to send the messages to.
+     * @param messages
+     *        the messages to send, in the order they should be sent.
+     *
+     * @throws JMSException if the batch cannot be sent, a JmsSendBatchException
+     *         reports which messages failed when only part of the batch was sent.
+     *
+     * @see #send(List)
+     */
+    public void send(Destination destination, List<Message> messages) throws JMSException {
+        checkClosed();
+
+        if (!flexibleDestination) {
+            throw new UnsupportedOperationException("Using this method is not supported on producers created with an explicit Destination.");
+        }
+
+        sendMessages(destination, messages);
+    }
+
+    private void sendMessages(Destination destination, List<Message> messages) throws JMSException {
+        if (destination == null) {
+            throw new InvalidDestinationException("Don't understand null destinations");
+        }
+
+        if (!messages.isEmpty()) {
+            this.session.send(this, destination, messages, deliveryMode, priority, timeToLive, disableMessageId, disableTimestamp);
+        }
+    }
+
     private void sendMessage(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
         if (destination == null) {
             throw new InvalidDestinationException("Don't understand null destinations");
@@ -308,6 +433,13 @@ public class JmsMessageProducer implements MessageProducer {
         return this.messageSequence.incrementAndGet();
     }
 
+    /**
+     * @return the window that bounds this Producer's in-flight sends, or null if unbounded.
+     */
+    protected SendWindow getSendWindow() {
+        return sendWindow != null ? sendWindow : connection.getSendWindow();
+    }
+
     protected void checkClosed() throws IllegalStateException {
         if (closed.get()) {
             IllegalStateException jmsEx = null;
@@ -328,6 +460,11 @@ public class JmsMessageProducer implements MessageProducer {
     ////////////////////////////////////////////////////////////////////////////
 
     protected void onConnectionInterrupted() {
+        // Unsettled sends are either lost or sent again after recovery, in neither
+        // case are they to be counted against the window any longer.
+        if (sendWindow != null) {
+            sendWindow.reset();
+        }
     }
 
     protected void onConnectionRecovery(Provider provider) throws Exception {
@@ -16,12 +16,15 @@
  */
 package org.apache.qpid.jms;
 
+import java.util.List;
+
 import javax.jms.JMSException;
 
 import org.apache.qpid.jms.exceptions.JmsExceptionSupport;
 import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
 import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
 import org.apache.qpid.jms.meta.JmsTransactionId;
+import org.apache.qpid.jms.provider.AsyncResult;
 import org.apache.qpid.jms.provider.Provider;
 import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
 
@@ -36,6 +39,16 @@ public class JmsNoTxTransactionContext implements JmsTransactionContext {
         connection.send(envelope);
     }
 
+    @Override
+    public void send(JmsConnection connection, List<JmsOutboundMessageDispatch> envelopes) throws JMSException {
+        connection.send(envelopes);
+    }
+
+    @Override
+    public void send(JmsConnection connection, JmsOutboundMessageDispatch envelope, AsyncResult request) throws JMSException {
+        connection.send(envelope, request);
+    }
+
     @Override
     public void acknowledge(JmsConnection connection, JmsInboundMessageDispatch envelope, ACK_TYPE ackType) throws JMSException {
         connection.acknowledge(envelope, ackType);
@@ -29,6 +29,7 @@ public class JmsPrefetchPolicy {
     public static final int DEFAULT_QUEUE_BROWSER_PREFETCH = DEFAULT_QUEUE_PREFETCH;
     public static final int DEFAULT_DURABLE_TOPIC_PREFETCH = DEFAULT_QUEUE_PREFETCH;
     public static final int DEFAULT_TOPIC_PREFETCH = DEFAULT_QUEUE_PREFETCH;
+    public static final int DEFAULT_ADAPTIVE_MINIMUM = 10;
 
     private static final Logger LOG = LoggerFactory.getLogger(JmsPrefetchPolicy.class);
 
@@ -37,6 +38,8 @@ public class JmsPrefetchPolicy {
     private int topicPrefetch;
     private int durableTopicPrefetch;
     private int maxPrefetchSize = MAX_PREFETCH_SIZE;
+    private boolean adaptive;
+    private int adaptiveMinimum = DEFAULT_ADAPTIVE_MINIMUM;
 
     /**
      * Initialize default prefetch policies
@@ -60,6 +63,8 @@ public class JmsPrefetchPolicy {
         this.topicPrefetch = source.getTopicPrefetch();
         this.durableTopicPrefetch = source.getDurableTopicPrefetch();
         this.maxPrefetchSize = source.getMaxPrefetchSize();
+        this.adaptive = source.isAdaptive();
+        this.adaptiveMinimum = source.getAdaptiveMinimum();
     }
 
     /**
@@ -152,6 +157,44 @@ public class JmsPrefetchPolicy {
         this.maxPrefetchSize = maxPrefetchSize;
     }
 
+    /**
+     * @return true if consumers adapt their prefetch to the rate they consume messages.
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Sets whether consumers adapt their prefetch to the rate they consume messages and the
+     * time the remote takes to respond to new credit.  When enabled the prefetch value that
+     * applies to a consumer is the most it will prefetch and the adaptive minimum the least,
+     * a consumer with a prefetch of zero is never given credit ahead of a receive.
+     *
+     * @param adaptive
+     *        true if consumer prefetch should adapt to consumption.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * @return the smallest prefetch an adaptive consumer will use.
+     */
+    public int getAdaptiveMinimum() {
+        return adaptiveMinimum;
+    }
+
+    /**
+     * Sets the smallest prefetch that an adaptive consumer will shrink to, a consumer
+     * starts with this prefetch and grows it as it measures its consumption rate.
+     *
+     * @param adaptiveMinimum
+     *        the smallest prefetch to use when adapting.
+     */
+    public void setAdaptiveMinimum(int adaptiveMinimum) {
+        this.adaptiveMinimum = getMaxPrefetchLimit(adaptiveMinimum);
+    }
+
     /**
      * Sets the prefetch values for all options in this policy to the set limit.  If the value
      * given is larger than the max prefetch value of this policy the new limit will be capped
@@ -176,6 +219,8 @@ public class JmsPrefetchPolicy {
         result = prime * result + queueBrowserPrefetch;
         result = prime * result + queuePrefetch;
         result = prime * result + topicPrefetch;
+        result = prime * result + (adaptive ? 1231 : 1237);
+        result = prime * result + adaptiveMinimum;
         return result;
     }
 
@@ -196,7 +241,9 @@ public class JmsPrefetchPolicy {
         return this.queuePrefetch == other.queuePrefetch &&
                this.queueBrowserPrefetch == other.queueBrowserPrefetch &&
                this.topicPrefetch == other.topicPrefetch &&
-               this.durableTopicPrefetch == other.durableTopicPrefetch;
+               this.durableTopicPrefetch == other.durableTopicPrefetch &&
+               this.adaptive == other.adaptive &&
+               this.adaptiveMinimum == other.adaptiveMinimum;
     }
 
     private int getMaxPrefetchLimit(int value) {
@@ -17,14 +17,16 @@
 package org.apache.qpid.jms;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
@@ -57,6 +59,7 @@ import javax.jms.TopicPublisher;
 import javax.jms.TopicSession;
 import javax.jms.TopicSubscriber;
 
+import org.apache.qpid.jms.exceptions.JmsExceptionSupport;
 import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
 import org.apache.qpid.jms.message.JmsMessage;
 import org.apache.qpid.jms.message.JmsMessageIDBuilder;
@@ -69,6 +72,7 @@ import org.apache.qpid.jms.meta.JmsProducerInfo;
 import org.apache.qpid.jms.meta.JmsResource;
 import org.apache.qpid.jms.meta.JmsSessionId;
 import org.apache.qpid.jms.meta.JmsSessionInfo;
+import org.apache.qpid.jms.provider.AsyncResult;
 import org.apache.qpid.jms.provider.Provider;
 import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
 import org.apache.qpid.jms.provider.ProviderFuture;
@@ -98,6 +102,10 @@ public class JmsSession implements Session, QueueSession, TopicSession, JmsMessa
     private final JmsSessionInfo sessionInfo;
     private volatile ExecutorService executor;
     private final ReentrantLock sendLock = new ReentrantLock();
+    private final ArrayDeque<SendCompletion> pendingCompletions = new ArrayDeque<SendCompletion>();
+    private final Runnable completionTask = new CompletionTask();
+    private volatile Thread completionThread;
+    private volatile Thread deliveryThread;
 
     private final AtomicLong consumerIdGenerator = new AtomicLong();
     private final AtomicLong producerIdGenerator = new AtomicLong();
@@ -252,6 +260,16 @@ public class JmsSession implements Session, QueueSession, TopicSession, JmsMessa
     }
 
     protected void shutdown(Exception cause) throws JMSException {
+        if (Thread.currentThread() == completionThread) {
+            throw new IllegalStateException("Cannot close the Session from within a JmsCompletionListener");
+        }
+
+        // A listener closing its own session runs on the dispatcher the completions need.
+        boolean onDeliveryThread = Thread.currentThread() == deliveryThread;
+        if (cause == null && !closed.get() && !onDeliveryThread) {
+            awaitPendingCompletions();
+        }
+
         if (closed.compareAndSet(false, true)) {
             stop();
             failureCause = cause;
@@ -262,6 +280,8 @@ public class JmsSession implements Session, QueueSession, TopicSession, JmsMessa
             for (JmsMessageProducer producer : new ArrayList<JmsMessageProducer>(this.producers.values())) {
                 producer.shutdown(cause);
             }
+
+            failPendingCompletions(cause, onDeliveryThread);
         }
     }
 
@@ -678,82 +698,150 @@ public class JmsSession implements Session, QueueSession, TopicSession, JmsMessa
     }
 
     protected void send(JmsMessageProducer producer, Destination dest, Message msg, int deliveryMode, int priority, long timeToLive, boolean disableMsgId, boolean disableTimestamp) throws JMSException {
+        send(producer, dest, msg, deliveryMode, priority, timeToLive, disableMsgId, disableTimestamp, null);
+    }
+
+    protected void send(JmsMessageProducer producer, Destination dest, Message msg, int deliveryMode, int priority, long timeToLive, boolean disableMsgId, boolean disableTimestamp, JmsCompletionListener listener) throws JMSException {
+        JmsDestination destination = checkSendDestination(dest);
+
+        sendLock.lock();
+        try {
+            JmsOutboundMessageDispatch envelope =
+                createOutboundDispatch(producer, destination, msg, deliveryMode, priority, timeToLive, disableMsgId, disableTimestamp);
+
+            if (listener == null) {
+                transactionContext.send(connection, envelope);
+            } else {
+                // The send completes when its outcome arrives rather than when it is written,
+                // the caller is not blocked and the listener is told of the outcome.
+                envelope.setSendAsync(false);
+
+                SendCompletion completion = new SendCompletion(msg, listener);
+                synchronized (pendingCompletions) {
+                    pendingCompletions.addLast(completion);
+                }
+
+                try {
+                    transactionContext.send(connection, envelope, completion);
+                } catch (JMSException ex) {
+                    synchronized (pendingCompletions) {
+                        pendingCompletions.remove(completion);
+                    }
+                    throw ex;
+                }
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    protected void send(JmsMessageProducer producer, Destination dest, List<Message> messages, int deliveryMode, int priority, long timeToLive, boolean disableMsgId, boolean disableTimestamp) throws JMSException {
+        JmsDestination destination = checkSendDestination(dest);
+
+        sendLock.lock();
+        try {
+            List<JmsOutboundMessageDispatch> envelopes = new ArrayList<JmsOutboundMessageDispatch>(messages.size());
+            for (Message message : messages) {
+                envelopes.add(createOutboundDispatch(producer, destination, message, deliveryMode, priority, timeToLive, disableMsgId, disableTimestamp));
+            }
+
+            transactionContext.send(connection, envelopes);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private JmsDestination checkSendDestination(Destination dest) throws JMSException {
         JmsDestination destination = JmsMessageTransformation.transformDestination(connection, dest);
 
         if(destination.isTemporary() && ((JmsTemporaryDestination) destination).isDeleted()) {
             throw new IllegalStateException("Temporary destination has been deleted");
         }
 
-        send(producer, destination, msg, deliveryMode, priority, timeToLive, disableMsgId, disableTimestamp);
+        return destination;
     }
 
-    private void send(JmsMessageProducer producer, JmsDestination destination, Message original, int deliveryMode, int priority, long timeToLive, boolean disableMsgId, boolean disableTimestamp) throws JMSException {
-        sendLock.lock();
-        try {
-            original.setJMSDeliveryMode(deliveryMode);
-            original.setJMSPriority(priority);
-            original.setJMSRedelivered(false);
+    private JmsOutboundMessageDispatch createOutboundDispatch(JmsMessageProducer producer, JmsDestination destination, Message original, int deliveryMode, int priority, long timeToLive, boolean disableMsgId, boolean disableTimestamp) throws JMSException {
+        original.setJMSDeliveryMode(deliveryMode);
+        original.setJMSPriority(priority);
+        original.setJMSRedelivered(false);
 
-            long timeStamp = System.currentTimeMillis();
-            boolean hasTTL = timeToLive > 0;
+        long timeStamp = System.currentTimeMillis();
+        boolean hasTTL = timeToLive > 0;
 
-            if (!disableTimestamp) {
-                original.setJMSTimestamp(timeStamp);
-            } else {
-                original.setJMSTimestamp(0);
-            }
+        if (!disableTimestamp) {
+            original.setJMSTimestamp(timeStamp);
+        } else {
+            original.setJMSTimestamp(0);
+        }
 
-            if (hasTTL) {
-                original.setJMSExpiration(timeStamp + timeToLive);
-            } else {
-                original.setJMSExpiration(0);
-            }
+        if (hasTTL) {
+            original.setJMSExpiration(timeStamp + timeToLive);
+        } else {
+            original.setJMSExpiration(0);
+        }
 
-            Object msgId = messageIDBuilder.createMessageID(producer.getProducerId().toString(), producer.getNextMessageSequence());
-            if (!disableMsgId) {
-                original.setJMSMessageID(msgId.toString());
-            }
+        Object msgId = messageIDBuilder.createMessageID(producer.getProducerId().toString(), producer.getNextMessageSequence());
+        if (!disableMsgId) {
+            original.setJMSMessageID(msgId.toString());
+        }
 
-            boolean isJmsMessageType = original instanceof JmsMessage;
-            if (isJmsMessageType) {
-                ((JmsMessage) original).setConnection(connection);
-                original.setJMSDestination(destination);
-            }
+        boolean isJmsMessageType = original instanceof JmsMessage;
+        if (isJmsMessageType) {
+            ((JmsMessage) original).setConnection(connection);
+            original.setJMSDestination(destination);
+        }
 
-            JmsMessage copy = JmsMessageTransformation.transformMessage(connection, original);
+        JmsMessage copy = JmsMessageTransformation.transformMessage(connection, original);
 
-            // Ensure original message gets the destination as per spec.
-            if (!isJmsMessageType) {
-                original.setJMSDestination(destination);
-                copy.setJMSDestination(destination);
-            }
+        // Ensure original message gets the destination as per spec.
+        if (!isJmsMessageType) {
+            original.setJMSDestination(destination);
+            copy.setJMSDestination(destination);
+        }
 
-            // We always set these on the copy, broker might require them even if client
-            // has asked to not include them.
-            copy.getFacade().setMessageId(msgId);
-            copy.setJMSTimestamp(timeStamp);
+        // We always set these on the copy, broker might require them even if client
+        // has asked to not include them.
+        copy.getFacade().setMessageId(msgId);
+        copy.setJMSTimestamp(timeStamp);
 
-            boolean sync = connection.isAlwaysSyncSend() ||
-                           (!connection.isForceAsyncSend() && deliveryMode == DeliveryMode.PERSISTENT && !getTransacted());
+        boolean sync = connection.isAlwaysSyncSend() ||
+                       (!connection.isForceAsyncSend() && deliveryMode == DeliveryMode.PERSISTENT && !getTransacted());
 
-            copy.onSend(disableMsgId, disableTimestamp, timeToLive);
-            JmsOutboundMessageDispatch envelope = new JmsOutboundMessageDispatch();
-            envelope.setMessage(copy);
-            envelope.setProducerId(producer.getProducerId());
-            envelope.setDestination(destination);
-            envelope.setSendAsync(!sync);
-            envelope.setDispatchId(msgId);
+        copy.onSend(disableMsgId, disableTimestamp, timeToLive);
+        copy.getFacade().prepareForSend();
+        JmsOutboundMessageDispatch envelope = new JmsOutboundMessageDispatch();
+        envelope.setMessage(copy);
+        envelope.setProducerId(producer.getProducerId());
+        envelope.setDestination(destination);
+        envelope.setSendAsync(!sync);
+        envelope.setDispatchId(msgId);
+        envelope.setSendWindow(producer.getSendWindow());
 
-            transactionContext.send(connection, envelope);
-        } finally {
-            sendLock.unlock();
-        }
+        return envelope;
     }
 
     void acknowledge(JmsInboundMessageDispatch envelope, ACK_TYPE ackType) throws JMSException {
         transactionContext.acknowledge(connection, envelope, ackType);
     }
 
+    /**
+     * Acknowledges a batch of messages received together by one consumer.  Outside of a
+     * transaction the acknowledgements are handed to the connection as a single batch,
+     * inside one each is added to the transaction in turn.
+     *
+     * @throws JMSException if an error occurs while the acknowledge is processed.
+     */
+    void acknowledge(List<JmsInboundMessageDispatch> envelopes, ACK_TYPE ackType) throws JMSException {
+        if (isTransacted()) {
+            for (JmsInboundMessageDispatch envelope : envelopes) {
+                transactionContext.acknowledge(connection, envelope, ackType);
+            }
+        } else {
+            connection.acknowledge(envelopes, ackType);
+        }
+    }
+
     /**
      * Acknowledge all previously delivered messages in this Session as consumed.  This
      * method is usually only called when the Session is in the CLIENT_ACKNOWLEDGE mode.
@@ -875,6 +963,99 @@ public class JmsSession implements Session, QueueSession, TopicSession, JmsMessa
         return started.get();
     }
 
+    /*
+     * Waits, at most for the connection close timeout, for the outcome of every send
+     * made with a completion listener so that they are reported before the close.
+     */
+    private void awaitPendingCompletions() {
+        long deadline = System.currentTimeMillis() + connection.getCloseTimeout();
+        synchronized (pendingCompletions) {
+            while (!pendingCompletions.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    LOG.debug("Timed out waiting for {} sends to complete on close", pendingCompletions.size());
+                    return;
+                }
+
+                try {
+                    pendingCompletions.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+     * Any send still outstanding once the session is shut down will never learn its outcome,
+     * each is failed and the listeners are signaled in send order from a dispatcher of their
+     * own, the session's having been stopped, or directly when closed from the session's own
+     * dispatcher.  On a local close the listeners have returned before this does.
+     */
+    private void failPendingCompletions(Exception cause, boolean inline) {
+        List<SendCompletion> remaining = null;
+        synchronized (pendingCompletions) {
+            if (pendingCompletions.isEmpty()) {
+                return;
+            }
+
+            remaining = new ArrayList<SendCompletion>(pendingCompletions);
+        }
+
+        Exception failure = cause;
+        if (failure == null) {
+            failure = new IllegalStateException("The Session was closed before the send completed");
+        }
+
+        for (SendCompletion completion : remaining) {
+            completion.onFailure(failure);
+        }
+
+        if (inline) {
+            completionTask.run();
+        } else {
+            dispatchCompletions();
+        }
+
+        ExecutorService exec = null;
+        synchronized (sessionInfo) {
+            exec = executor;
+            executor = null;
+        }
+
+        if (exec != null) {
+            exec.shutdown();
+            if (cause == null) {
+                try {
+                    exec.awaitTermination(connection.getCloseTimeout(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void scheduleCompletions() {
+        if (!closed.get()) {
+            dispatchCompletions();
+        }
+    }
+
+    private void dispatchCompletions() {
+        try {
+            getExecutor().execute(completionTask);
+        } catch (RejectedExecutionException ex) {
+            // The dispatcher was replaced by a concurrent stop, hand over to the new one.
+            try {
+                getExecutor().execute(completionTask);
+            } catch (RejectedExecutionException rex) {
+                LOG.trace("Session dispatcher rejected completions, signaling them inline");
+                completionTask.run();
+            }
+        }
+    }
+
     public JmsConnection getConnection() {
         return connection;
     }
@@ -884,15 +1065,7 @@ public class JmsSession implements Session, QueueSession, TopicSession, JmsMessa
         if(exec == null) {
             synchronized (sessionInfo) {
                 if (executor == null) {
-                    executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
-                        @Override
-                        public Thread newThread(Runnable runner) {
-                            Thread executor = new Thread(runner);
-                            executor.setName("JmsSession ["+ sessionInfo.getId() + "] dispatcher");
-                            executor.setDaemon(true);
-                            return executor;
-                        }
-                    });
+                    executor = connection.createSessionExecutor(sessionInfo.getId());
                 }
 
                 exec = executor;
@@ -1052,6 +1225,14 @@ public class JmsSession implements Session, QueueSession, TopicSession, JmsMessa
         return transactionContext;
     }
 
+    /*
+     * Marks the calling thread as delivering messages to a listener of this session until
+     * called again with false, a close from that thread must not wait on the dispatcher.
+     */
+    void setDeliveryThread(boolean delivering) {
+        deliveryThread = delivering ? Thread.currentThread() : null;
+    }
+
     boolean isSessionRecovered() {
         return sessionRecovered;
     }
@@ -1059,4 +1240,97 @@ public class JmsSession implements Session, QueueSession, TopicSession, JmsMessa
     void clearSessionRecovered() {
         sessionRecovered = false;
     }
+
+    private final class CompletionTask implements Runnable {
+
+        // Only one dispatcher signals at a time so that listeners fire in send order even
+        // while a stopped dispatcher is still finishing up.
+        @Override
+        public synchronized void run() {
+            completionThread = Thread.currentThread();
+            try {
+                while (true) {
+                    SendCompletion completion = null;
+                    synchronized (pendingCompletions) {
+                        completion = pendingCompletions.peekFirst();
+                        if (completion == null || !completion.isComplete()) {
+                            return;
+                        }
+
+                        pendingCompletions.removeFirst();
+                        if (pendingCompletions.isEmpty()) {
+                            pendingCompletions.notifyAll();
+                        }
+                    }
+
+                    completion.signalListener();
+                }
+            } finally {
+                completionThread = null;
+            }
+        }
+    }
+
+    /*
+     * Tracks one send made with a completion listener, outcomes may arrive in any order
+     * but listeners are only signaled once every earlier send has been signaled.
+     */
+    private final class SendCompletion implements AsyncResult {
+
+        private final Message message;
+        private final JmsCompletionListener listener;
+        private boolean complete;
+        private Throwable error;
+
+        public SendCompletion(Message message, JmsCompletionListener listener) {
+            this.message = message;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onFailure(Throwable result) {
+            synchronized (pendingCompletions) {
+                if (complete) {
+                    return;
+                }
+
+                error = result;
+                complete = true;
+            }
+
+            scheduleCompletions();
+        }
+
+        @Override
+        public void onSuccess() {
+            synchronized (pendingCompletions) {
+                if (complete) {
+                    return;
+                }
+
+                complete = true;
+            }
+
+            scheduleCompletions();
+        }
+
+        @Override
+        public boolean isComplete() {
+            synchronized (pendingCompletions) {
+                return complete;
+            }
+        }
+
+        public void signalListener() {
+            try {
+                if (error == null) {
+                    listener.onCompletion(message);
+                } else {
+                    listener.onException(message, JmsExceptionSupport.create(error));
+                }
+            } catch (Throwable t) {
+                LOG.debug("Ignoring exception thrown from JmsCompletionListener", t);
+            }
+        }
+    }
 }
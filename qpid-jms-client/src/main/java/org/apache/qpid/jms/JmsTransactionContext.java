@@ -16,11 +16,14 @@
  */
 package org.apache.qpid.jms;
 
+import java.util.List;
+
 import javax.jms.JMSException;
 
 import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
 import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
 import org.apache.qpid.jms.meta.JmsTransactionId;
+import org.apache.qpid.jms.provider.AsyncResult;
 import org.apache.qpid.jms.provider.Provider;
 import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
 
@@ -59,6 +62,36 @@ public interface JmsTransactionContext {
      */
     void send(JmsConnection connection, JmsOutboundMessageDispatch envelope) throws JMSException;
 
+    /**
+     * Allows the context to intercept and perform any additional logic
+     * prior to a batch of messages being sent on to the connection and
+     * subsequently the remote peer.
+     *
+     * @param connection
+     *        the connection that will be do the send of the messages
+     * @param envelopes
+     *        the envelopes that contain the messages to be sent.
+     *
+     * @throws JMSException if an error occurs during the send.
+     */
+    void send(JmsConnection connection, List<JmsOutboundMessageDispatch> envelopes) throws JMSException;
+
+    /**
+     * Allows the context to intercept and perform any additional logic
+     * prior to a message being sent on to the connection without waiting
+     * for the outcome of the send.
+     *
+     * @param connection
+     *        the connection that will be do the send of the message
+     * @param envelope
+     *        the envelope that contains the message to be sent.
+     * @param request
+     *        the request that is signaled once the outcome of the send is known.
+     *
+     * @throws JMSException if an error occurs during the send.
+     */
+    void send(JmsConnection connection, JmsOutboundMessageDispatch envelope, AsyncResult request) throws JMSException;
+
     /**
      * Adds the given Transaction synchronization to the current list. The
      * registered synchronization will be notified of various event points
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.exceptions;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.jms.JMSException;
+
+/**
+ * Thrown from a batch send when one or more messages of the batch could not be sent,
+ * the messages whose entry in the failures list is null were sent successfully.
+ */
+public class JmsSendBatchException extends JMSException {
+
+    private static final long serialVersionUID = 4867154297350472418L;
+
+    private final List<JMSException> failures;
+    private final int failedCount;
+
+    public JmsSendBatchException(List<JMSException> failures) {
+        super("Failed to send " + countFailures(failures) + " of " + failures.size() + " messages in the batch");
+
+        this.failures = Collections.unmodifiableList(failures);
+        this.failedCount = countFailures(failures);
+
+        for (JMSException failure : failures) {
+            if (failure != null) {
+                initCause(failure);
+                setLinkedException(failure);
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the send failure of each message in batch order, null for those that were sent.
+     */
+    public List<JMSException> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the number of messages in the batch that could not be sent.
+     */
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    private static int countFailures(List<JMSException> failures) {
+        int count = 0;
+        for (JMSException failure : failures) {
+            if (failure != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -29,6 +29,7 @@ public class JmsInboundMessageDispatch extends JmsAbstractResourceId {
     private final long sequence;
     private JmsMessage message;
     private boolean enqueueFirst;
+    private int prefetchCharge;
 
     public JmsInboundMessageDispatch(long sequence) {
         this.sequence = sequence;
@@ -62,6 +63,18 @@ public class JmsInboundMessageDispatch extends JmsAbstractResourceId {
         return enqueueFirst;
     }
 
+    /**
+     * @return the bytes this message holds in the connection's prefetch budget, zero once
+     *         the message no longer counts against it.
+     */
+    public int getPrefetchCharge() {
+        return prefetchCharge;
+    }
+
+    public void setPrefetchCharge(int prefetchCharge) {
+        this.prefetchCharge = prefetchCharge;
+    }
+
     public int getRedeliveryCount() {
         int redeliveryCount = 0;
 
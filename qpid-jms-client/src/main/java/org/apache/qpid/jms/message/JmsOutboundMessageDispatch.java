@@ -18,6 +18,7 @@ package org.apache.qpid.jms.message;
 
 import org.apache.qpid.jms.JmsDestination;
 import org.apache.qpid.jms.meta.JmsProducerId;
+import org.apache.qpid.jms.util.SendWindow;
 
 /**
  * Envelope that wraps the objects involved in a Message send operation.
@@ -29,6 +30,8 @@ public class JmsOutboundMessageDispatch {
     private JmsDestination destination;
     private boolean sendAsync;
     private Object dispatchId;
+    private SendWindow sendWindow;
+    private SendWindow.Permit sendPermit;
 
     public JmsDestination getDestination() {
         return destination;
@@ -70,6 +73,22 @@ public class JmsOutboundMessageDispatch {
         this.dispatchId = dispatchId;
     }
 
+    public SendWindow getSendWindow() {
+        return sendWindow;
+    }
+
+    public void setSendWindow(SendWindow sendWindow) {
+        this.sendWindow = sendWindow;
+    }
+
+    public SendWindow.Permit getSendPermit() {
+        return sendPermit;
+    }
+
+    public void setSendPermit(SendWindow.Permit sendPermit) {
+        this.sendPermit = sendPermit;
+    }
+
     @Override
     public String toString() {
         String result = "JmsOutboundMessageDispatch {dispatchId = ";
@@ -97,6 +97,16 @@ public interface JmsMessageFacade {
      */
     void onSend(boolean disableMessageId, boolean disableTimestamp, long producerTtl) throws JMSException;
 
+    /**
+     * Called on the sending thread once the message is complete and about to be handed to
+     * the provider, no further changes are made to it after this point.  This allows the
+     * facade to do expensive work such as encoding the message for transmission on the
+     * thread of the application, rather than leaving it to the provider.
+     *
+     * @throws JMSException if an error occurs while preparing the message for send.
+     */
+    void prepareForSend() throws JMSException;
+
     /**
      * Called before a message is dispatched to its intended consumer to allow for
      * any necessary processing of message data such as setting read-only state etc.
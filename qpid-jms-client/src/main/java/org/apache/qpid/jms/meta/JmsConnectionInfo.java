@@ -33,12 +33,15 @@ public final class JmsConnectionInfo implements JmsResource, Comparable<JmsConne
     public static final long DEFAULT_CLOSE_TIMEOUT = 15000;
     public static final long DEFAULT_SEND_TIMEOUT = INFINITE;
     public static final long DEFAULT_REQUEST_TIMEOUT = INFINITE;
+    public static final int DEFAULT_DUPS_OK_BATCH_SIZE = 1;
+    public static final long DEFAULT_DUPS_OK_BATCH_TIMEOUT = 1000;
 
     private final JmsConnectionId connectionId;
 
     private URI configuredURI;
     private URI connectedURI;
     private String clientId;
+    private boolean explicitClientID;
     private String username;
     private String password;
     private boolean forceAsyncSend;
@@ -53,6 +56,14 @@ public final class JmsConnectionInfo implements JmsResource, Comparable<JmsConne
     private long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
     private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
     private long closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+    private int dupsOkBatchSize = DEFAULT_DUPS_OK_BATCH_SIZE;
+    private long dupsOkBatchTimeout = DEFAULT_DUPS_OK_BATCH_TIMEOUT;
+    private int maxInFlightSends;
+    private long maxInFlightBytes;
+    private int connectionMaxInFlightSends;
+    private long connectionMaxInFlightBytes;
+    private long prefetchMemoryLimit;
+    private int dispatchPoolSize;
     private String queuePrefix = null;
     private String topicPrefix = null;
 
@@ -75,6 +86,7 @@ public final class JmsConnectionInfo implements JmsResource, Comparable<JmsConne
 
     private void copy(JmsConnectionInfo copy) {
         copy.clientId = clientId;
+        copy.explicitClientID = explicitClientID;
         copy.username = username;
         copy.password = password;
         copy.forceAsyncSend = forceAsyncSend;
@@ -86,6 +98,14 @@ public final class JmsConnectionInfo implements JmsResource, Comparable<JmsConne
         copy.topicPrefix = topicPrefix;
         copy.connectTimeout = connectTimeout;
         copy.validatePropertyNames = validatePropertyNames;
+        copy.dupsOkBatchSize = dupsOkBatchSize;
+        copy.dupsOkBatchTimeout = dupsOkBatchTimeout;
+        copy.maxInFlightSends = maxInFlightSends;
+        copy.maxInFlightBytes = maxInFlightBytes;
+        copy.connectionMaxInFlightSends = connectionMaxInFlightSends;
+        copy.connectionMaxInFlightBytes = connectionMaxInFlightBytes;
+        copy.prefetchMemoryLimit = prefetchMemoryLimit;
+        copy.dispatchPoolSize = dispatchPoolSize;
     }
 
     public boolean isForceAsyncSend() {
@@ -133,6 +153,17 @@ public final class JmsConnectionInfo implements JmsResource, Comparable<JmsConne
         this.clientId = clientId;
     }
 
+    /**
+     * @return true if the ClientID was set by the application rather than generated.
+     */
+    public boolean isExplicitClientID() {
+        return explicitClientID;
+    }
+
+    public void setExplicitClientID(boolean explicitClientID) {
+        this.explicitClientID = explicitClientID;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -245,6 +276,70 @@ public final class JmsConnectionInfo implements JmsResource, Comparable<JmsConne
         this.localMessageExpiry = localMessageExpiry;
     }
 
+    public int getDupsOkBatchSize() {
+        return dupsOkBatchSize;
+    }
+
+    public void setDupsOkBatchSize(int dupsOkBatchSize) {
+        this.dupsOkBatchSize = dupsOkBatchSize;
+    }
+
+    public long getDupsOkBatchTimeout() {
+        return dupsOkBatchTimeout;
+    }
+
+    public void setDupsOkBatchTimeout(long dupsOkBatchTimeout) {
+        this.dupsOkBatchTimeout = dupsOkBatchTimeout;
+    }
+
+    public int getMaxInFlightSends() {
+        return maxInFlightSends;
+    }
+
+    public void setMaxInFlightSends(int maxInFlightSends) {
+        this.maxInFlightSends = maxInFlightSends;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    public int getConnectionMaxInFlightSends() {
+        return connectionMaxInFlightSends;
+    }
+
+    public void setConnectionMaxInFlightSends(int connectionMaxInFlightSends) {
+        this.connectionMaxInFlightSends = connectionMaxInFlightSends;
+    }
+
+    public long getConnectionMaxInFlightBytes() {
+        return connectionMaxInFlightBytes;
+    }
+
+    public void setConnectionMaxInFlightBytes(long connectionMaxInFlightBytes) {
+        this.connectionMaxInFlightBytes = connectionMaxInFlightBytes;
+    }
+
+    public long getPrefetchMemoryLimit() {
+        return prefetchMemoryLimit;
+    }
+
+    public void setPrefetchMemoryLimit(long prefetchMemoryLimit) {
+        this.prefetchMemoryLimit = prefetchMemoryLimit;
+    }
+
+    public int getDispatchPoolSize() {
+        return dispatchPoolSize;
+    }
+
+    public void setDispatchPoolSize(int dispatchPoolSize) {
+        this.dispatchPoolSize = dispatchPoolSize;
+    }
+
     public JmsPrefetchPolicy getPrefetchPolicy() {
         return prefetchPolicy;
     }
@@ -32,12 +32,19 @@ public final class JmsConsumerInfo implements JmsResource, Comparable<JmsConsume
     protected boolean noLocal;
     protected int acknowledgementMode;
     protected boolean localMessageExpiry;
+    protected int dupsOkBatchSize;
+    protected long dupsOkBatchTimeout;
+    protected boolean adaptivePrefetch;
+    protected int adaptivePrefetchMinimum;
 
     protected JmsRedeliveryPolicy redeliveryPolicy;
 
     // Can be used to track the last consumed message.
     private transient long lastDeliveredSequenceId;
 
+    // Updated by the provider as an adaptive prefetch changes.
+    private transient volatile int currentPrefetchSize;
+
     public JmsConsumerInfo(JmsConsumerId consumerId) {
         if (consumerId == null) {
             throw new IllegalArgumentException("Consumer ID cannot be null");
@@ -68,6 +75,10 @@ public final class JmsConsumerInfo implements JmsResource, Comparable<JmsConsume
         info.subscriptionName = subscriptionName;
         info.noLocal = noLocal;
         info.acknowledgementMode = acknowledgementMode;
+        info.dupsOkBatchSize = dupsOkBatchSize;
+        info.dupsOkBatchTimeout = dupsOkBatchTimeout;
+        info.adaptivePrefetch = adaptivePrefetch;
+        info.adaptivePrefetchMinimum = adaptivePrefetchMinimum;
         info.lastDeliveredSequenceId = lastDeliveredSequenceId;
     }
 
@@ -104,6 +115,34 @@ public final class JmsConsumerInfo implements JmsResource, Comparable<JmsConsume
         this.prefetchSize = prefetchSize;
     }
 
+    public boolean isAdaptivePrefetch() {
+        return adaptivePrefetch;
+    }
+
+    public void setAdaptivePrefetch(boolean adaptivePrefetch) {
+        this.adaptivePrefetch = adaptivePrefetch;
+    }
+
+    public int getAdaptivePrefetchMinimum() {
+        return adaptivePrefetchMinimum;
+    }
+
+    public void setAdaptivePrefetchMinimum(int adaptivePrefetchMinimum) {
+        this.adaptivePrefetchMinimum = adaptivePrefetchMinimum;
+    }
+
+    /**
+     * @return the prefetch currently in use, which differs from the configured size
+     *         only when the prefetch is adaptive.
+     */
+    public int getCurrentPrefetchSize() {
+        return adaptivePrefetch ? currentPrefetchSize : prefetchSize;
+    }
+
+    public void setCurrentPrefetchSize(int currentPrefetchSize) {
+        this.currentPrefetchSize = currentPrefetchSize;
+    }
+
     public String getSelector() {
         return selector;
     }
@@ -164,6 +203,22 @@ public final class JmsConsumerInfo implements JmsResource, Comparable<JmsConsume
         this.localMessageExpiry = localMessageExpiry;
     }
 
+    public int getDupsOkBatchSize() {
+        return dupsOkBatchSize;
+    }
+
+    public void setDupsOkBatchSize(int dupsOkBatchSize) {
+        this.dupsOkBatchSize = dupsOkBatchSize;
+    }
+
+    public long getDupsOkBatchTimeout() {
+        return dupsOkBatchTimeout;
+    }
+
+    public void setDupsOkBatchTimeout(long dupsOkBatchTimeout) {
+        this.dupsOkBatchTimeout = dupsOkBatchTimeout;
+    }
+
     public JmsRedeliveryPolicy getRedeliveryPolicy() {
         return redeliveryPolicy;
     }
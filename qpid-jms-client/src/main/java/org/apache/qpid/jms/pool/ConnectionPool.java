@@ -0,0 +1,323 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.pool;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.JmsConnectionListener;
+import org.apache.qpid.jms.JmsSession;
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds one underlying connection of a JmsPoolConnectionFactory along with its idle
+ * sessions, and counts the pooled Connection handles currently using it.
+ *
+ * Idle sessions are kept per acknowledgement mode and reused most recently used first.
+ * Once the connection fails it is expired: it hands out nothing further and is closed as
+ * soon as the last handle using it is closed.  When failover restores the connection the
+ * idle sessions are checked and any that did not survive are dropped.
+ */
+final class ConnectionPool implements JmsConnectionListener, ExceptionListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final JmsConnection connection;
+    private final JmsPoolStatistics statistics;
+    private final int maxIdleSessions;
+    private final int maxCachedProducers;
+    private final Map<Integer, Deque<PooledSessionHolder>> idleSessions = new HashMap<Integer, Deque<PooledSessionHolder>>();
+    private final List<JmsPoolConnection> handles = new CopyOnWriteArrayList<JmsPoolConnection>();
+
+    private int references;
+    private long lastUsed = System.currentTimeMillis();
+    private boolean started;
+    private boolean expired;
+    private boolean closed;
+
+    ConnectionPool(JmsConnection connection, JmsPoolStatistics statistics, int maxIdleSessions, int maxCachedProducers) throws JMSException {
+        this.connection = connection;
+        this.statistics = statistics;
+        this.maxIdleSessions = maxIdleSessions;
+        this.maxCachedProducers = maxCachedProducers;
+
+        connection.addConnectionListener(this);
+        connection.setExceptionListener(this);
+    }
+
+    JmsConnection getConnection() {
+        return connection;
+    }
+
+    JmsPoolStatistics getStatistics() {
+        return statistics;
+    }
+
+    //----- Pooled Connection handle tracking --------------------------------//
+
+    synchronized void addHandle(JmsPoolConnection handle) {
+        references++;
+        lastUsed = System.currentTimeMillis();
+        handles.add(handle);
+    }
+
+    void removeHandle(JmsPoolConnection handle) {
+        boolean closeNow = false;
+
+        synchronized (this) {
+            if (handles.remove(handle)) {
+                references--;
+                lastUsed = System.currentTimeMillis();
+                closeNow = references == 0 && expired;
+            }
+        }
+
+        if (closeNow) {
+            close();
+        }
+    }
+
+    synchronized int getReferenceCount() {
+        return references;
+    }
+
+    /**
+     * @return true if the connection should no longer be handed out.
+     */
+    synchronized boolean isExpired() {
+        if (!expired && (connection.isFailed() || connection.isClosed())) {
+            expired = true;
+        }
+
+        return expired || closed;
+    }
+
+    /**
+     * @return true if no handle uses the connection and it has been idle for the timeout.
+     */
+    synchronized boolean isIdle(long now, long idleTimeout) {
+        return references == 0 && idleTimeout > 0 && now - lastUsed >= idleTimeout;
+    }
+
+    void start() throws JMSException {
+        synchronized (this) {
+            if (started) {
+                return;
+            }
+            started = true;
+        }
+
+        connection.start();
+    }
+
+    //----- Session pooling --------------------------------------------------//
+
+    /**
+     * Lends out an idle session with the given mode, or creates one if there is none.
+     */
+    PooledSessionHolder borrowSession(boolean transacted, int acknowledgeMode) throws JMSException {
+        int mode = transacted ? Session.SESSION_TRANSACTED : acknowledgeMode;
+        List<PooledSessionHolder> stale = new ArrayList<PooledSessionHolder>();
+        PooledSessionHolder holder = null;
+
+        synchronized (this) {
+            Deque<PooledSessionHolder> idle = idleSessions.get(mode);
+            while (idle != null && !idle.isEmpty()) {
+                PooledSessionHolder candidate = idle.pollFirst();
+                if (candidate.isClosed()) {
+                    stale.add(candidate);
+                } else {
+                    holder = candidate;
+                    break;
+                }
+            }
+        }
+
+        discard(stale);
+
+        if (holder != null) {
+            statistics.recordSessionReused();
+            return holder;
+        }
+
+        JmsSession session = (JmsSession) connection.createSession(transacted, acknowledgeMode);
+        statistics.recordSessionCreated();
+        return new PooledSessionHolder(this, session, mode, maxCachedProducers);
+    }
+
+    /**
+     * Takes back a session that is no longer in use, closing it if it cannot be kept.
+     */
+    void returnSession(PooledSessionHolder holder) {
+        boolean keep = false;
+
+        synchronized (this) {
+            if (!expired && !closed && !holder.isClosed()) {
+                Deque<PooledSessionHolder> idle = idleSessions.get(holder.getMode());
+                if (idle == null) {
+                    idle = new ArrayDeque<PooledSessionHolder>();
+                    idleSessions.put(holder.getMode(), idle);
+                }
+
+                if (idle.size() < maxIdleSessions) {
+                    holder.setLastUsed(System.currentTimeMillis());
+                    idle.addFirst(holder);
+                    keep = true;
+                }
+            }
+        }
+
+        if (!keep) {
+            holder.close();
+        }
+    }
+
+    /**
+     * Closes the idle sessions that have not been used for the given time.
+     */
+    void evictIdleSessions(long now, long idleTimeout) {
+        if (idleTimeout <= 0) {
+            return;
+        }
+
+        List<PooledSessionHolder> evicted = new ArrayList<PooledSessionHolder>();
+        synchronized (this) {
+            for (Deque<PooledSessionHolder> idle : idleSessions.values()) {
+                // Least recently used sessions are at the tail.
+                while (!idle.isEmpty() && now - idle.peekLast().getLastUsed() >= idleTimeout) {
+                    evicted.add(idle.pollLast());
+                }
+            }
+        }
+
+        discard(evicted);
+    }
+
+    synchronized int getIdleSessionCount() {
+        int count = 0;
+        for (Deque<PooledSessionHolder> idle : idleSessions.values()) {
+            count += idle.size();
+        }
+
+        return count;
+    }
+
+    void close() {
+        List<PooledSessionHolder> idle = new ArrayList<PooledSessionHolder>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            for (Deque<PooledSessionHolder> sessions : idleSessions.values()) {
+                idle.addAll(sessions);
+            }
+            idleSessions.clear();
+        }
+
+        connection.removeConnectionListener(this);
+        try {
+            connection.close();
+        } catch (JMSException ex) {
+            LOG.debug("Error while closing pooled connection: {}", ex.getMessage());
+        }
+
+        statistics.recordConnectionClosed();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool { " + connection.getId() + ", references = " + getReferenceCount() + " }";
+    }
+
+    //----- Underlying connection events -------------------------------------//
+
+    @Override
+    public void onException(JMSException error) {
+        synchronized (this) {
+            expired = true;
+        }
+
+        for (JmsPoolConnection handle : handles) {
+            handle.onException(error);
+        }
+    }
+
+    @Override
+    public void onConnectionFailure(Throwable error) {
+        LOG.debug("Pooled connection {} failed and will not be handed out again", connection.getId());
+        synchronized (this) {
+            expired = true;
+        }
+    }
+
+    @Override
+    public void onConnectionRestored(URI remoteURI) {
+        // Check that the idle sessions made it through the reconnect before lending them again.
+        List<PooledSessionHolder> stale = new ArrayList<PooledSessionHolder>();
+        synchronized (this) {
+            for (Deque<PooledSessionHolder> idle : idleSessions.values()) {
+                Iterator<PooledSessionHolder> iterator = idle.iterator();
+                while (iterator.hasNext()) {
+                    PooledSessionHolder holder = iterator.next();
+                    if (holder.isClosed()) {
+                        iterator.remove();
+                        stale.add(holder);
+                    }
+                }
+            }
+        }
+
+        discard(stale);
+    }
+
+    @Override
+    public void onConnectionEstablished(URI remoteURI) {
+    }
+
+    @Override
+    public void onConnectionInterrupted(URI remoteURI) {
+    }
+
+    @Override
+    public void onInboundMessage(JmsInboundMessageDispatch envelope) {
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void discard(List<PooledSessionHolder> holders) {
+        for (PooledSessionHolder holder : holders) {
+            statistics.recordSessionEvicted();
+            holder.close();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.pool;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionConsumer;
+import javax.jms.ConnectionMetaData;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.Queue;
+import javax.jms.QueueConnection;
+import javax.jms.QueueSession;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import javax.jms.TemporaryTopic;
+import javax.jms.Topic;
+import javax.jms.TopicConnection;
+import javax.jms.TopicSession;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Connection handed out by a JmsPoolConnectionFactory, which shares an underlying
+ * connection with the other handles created on it.
+ *
+ * Closing the handle returns the sessions created through it to the pool, closes the
+ * ConnectionConsumers it created and deletes the temporary destinations it created,
+ * leaving the underlying connection open for reuse.
+ *
+ * Since the underlying connection is shared its ClientID cannot be set through a handle.
+ * For the same reason the handles of an underlying connection cannot be started and
+ * stopped on their own: starting any handle starts the delivery of messages to the
+ * consumers of every handle sharing the connection, and stopping a handle does nothing,
+ * delivery carries on until the underlying connection is closed.  Applications that need
+ * to suspend delivery should close their consumers or use a non-pooled Connection.
+ */
+public class JmsPoolConnection implements Connection, QueueConnection, TopicConnection {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsPoolConnection.class);
+
+    private final ConnectionPool pool;
+    private final List<JmsPoolSession> sessions = new CopyOnWriteArrayList<JmsPoolSession>();
+    private final List<JmsPoolConnectionConsumer> connectionConsumers = new CopyOnWriteArrayList<JmsPoolConnectionConsumer>();
+    private final List<Destination> temporaryDestinations = new CopyOnWriteArrayList<Destination>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile ExceptionListener exceptionListener;
+
+    JmsPoolConnection(ConnectionPool pool) {
+        this.pool = pool;
+        this.pool.addHandle(this);
+    }
+
+    @Override
+    public void close() throws JMSException {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                for (JmsPoolSession session : sessions) {
+                    session.close();
+                }
+                sessions.clear();
+
+                for (JmsPoolConnectionConsumer consumer : connectionConsumers) {
+                    try {
+                        consumer.close();
+                    } catch (JMSException ex) {
+                        LOG.debug("Error while closing connection consumer {}: {}", consumer, ex.getMessage());
+                    }
+                }
+                connectionConsumers.clear();
+
+                for (Destination destination : temporaryDestinations) {
+                    try {
+                        if (destination instanceof TemporaryQueue) {
+                            ((TemporaryQueue) destination).delete();
+                        } else if (destination instanceof TemporaryTopic) {
+                            ((TemporaryTopic) destination).delete();
+                        }
+                    } catch (JMSException ex) {
+                        LOG.debug("Error while deleting temporary destination {}: {}", destination, ex.getMessage());
+                    }
+                }
+                temporaryDestinations.clear();
+            } finally {
+                pool.removeHandle(this);
+            }
+        }
+    }
+
+    /**
+     * Starts the underlying connection, and so the delivery of messages to the consumers
+     * of every handle that shares it.
+     */
+    @Override
+    public void start() throws JMSException {
+        checkClosed();
+        pool.start();
+    }
+
+    /**
+     * Does nothing, the underlying connection is shared with other handles and is left
+     * running.  Messages continue to be delivered to the consumers of this handle until
+     * they are closed.
+     */
+    @Override
+    public void stop() throws JMSException {
+        checkClosed();
+    }
+
+    @Override
+    public Session createSession(boolean transacted, int acknowledgeMode) throws JMSException {
+        checkClosed();
+        JmsPoolSession session = new JmsPoolSession(this, pool.borrowSession(transacted, acknowledgeMode));
+        sessions.add(session);
+        return session;
+    }
+
+    @Override
+    public QueueSession createQueueSession(boolean transacted, int acknowledgeMode) throws JMSException {
+        return (QueueSession) createSession(transacted, acknowledgeMode);
+    }
+
+    @Override
+    public TopicSession createTopicSession(boolean transacted, int acknowledgeMode) throws JMSException {
+        return (TopicSession) createSession(transacted, acknowledgeMode);
+    }
+
+    @Override
+    public String getClientID() throws JMSException {
+        checkClosed();
+        return pool.getConnection().getClientID();
+    }
+
+    @Override
+    public void setClientID(String clientID) throws JMSException {
+        checkClosed();
+        throw new IllegalStateException(
+            "Cannot set the ClientID of a pooled Connection, configure it on the pooled ConnectionFactory instead");
+    }
+
+    @Override
+    public ConnectionMetaData getMetaData() throws JMSException {
+        checkClosed();
+        return pool.getConnection().getMetaData();
+    }
+
+    @Override
+    public ExceptionListener getExceptionListener() throws JMSException {
+        checkClosed();
+        return exceptionListener;
+    }
+
+    @Override
+    public void setExceptionListener(ExceptionListener listener) throws JMSException {
+        checkClosed();
+        this.exceptionListener = listener;
+    }
+
+    @Override
+    public ConnectionConsumer createConnectionConsumer(Destination destination, String messageSelector,
+                                                       ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        checkClosed();
+        return trackConnectionConsumer(pool.getConnection().createConnectionConsumer(destination, messageSelector, sessionPool, maxMessages));
+    }
+
+    @Override
+    public ConnectionConsumer createConnectionConsumer(Queue queue, String messageSelector,
+                                                       ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        checkClosed();
+        return trackConnectionConsumer(pool.getConnection().createConnectionConsumer(queue, messageSelector, sessionPool, maxMessages));
+    }
+
+    @Override
+    public ConnectionConsumer createConnectionConsumer(Topic topic, String messageSelector,
+                                                       ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        checkClosed();
+        return trackConnectionConsumer(pool.getConnection().createConnectionConsumer(topic, messageSelector, sessionPool, maxMessages));
+    }
+
+    @Override
+    public ConnectionConsumer createDurableConnectionConsumer(Topic topic, String subscriptionName, String messageSelector,
+                                                              ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        checkClosed();
+        return trackConnectionConsumer(pool.getConnection().createDurableConnectionConsumer(topic, subscriptionName, messageSelector, sessionPool, maxMessages));
+    }
+
+    /**
+     * @return the underlying connection this handle shares with others.
+     */
+    public JmsConnection getConnection() {
+        return pool.getConnection();
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "JmsPoolConnection { " + pool + " }";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    void onSessionClosed(JmsPoolSession session) {
+        sessions.remove(session);
+    }
+
+    void onConnectionConsumerClosed(JmsPoolConnectionConsumer consumer) {
+        connectionConsumers.remove(consumer);
+    }
+
+    void onTemporaryDestinationCreated(Destination destination) {
+        temporaryDestinations.add(destination);
+    }
+
+    void onException(JMSException error) {
+        ExceptionListener listener = exceptionListener;
+        if (listener != null && !closed.get()) {
+            listener.onException(error);
+        }
+    }
+
+    private ConnectionConsumer trackConnectionConsumer(ConnectionConsumer consumer) {
+        JmsPoolConnectionConsumer pooled = new JmsPoolConnectionConsumer(this, consumer);
+        connectionConsumers.add(pooled);
+        return pooled;
+    }
+
+    private void checkClosed() throws IllegalStateException {
+        if (closed.get()) {
+            throw new IllegalStateException("The Connection is closed");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.pool;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.ConnectionConsumer;
+import javax.jms.JMSException;
+import javax.jms.ServerSessionPool;
+
+/**
+ * A ConnectionConsumer created through a pooled Connection.
+ *
+ * The underlying connection outlives the pooled Connection, so the consumer is closed
+ * along with the pooled Connection that created it if it was not closed before.
+ */
+public class JmsPoolConnectionConsumer implements ConnectionConsumer {
+
+    private final JmsPoolConnection connection;
+    private final ConnectionConsumer consumer;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    JmsPoolConnectionConsumer(JmsPoolConnection connection, ConnectionConsumer consumer) {
+        this.connection = connection;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public ServerSessionPool getServerSessionPool() throws JMSException {
+        return consumer.getServerSessionPool();
+    }
+
+    @Override
+    public void close() throws JMSException {
+        if (closed.compareAndSet(false, true)) {
+            connection.onConnectionConsumerClosed(this);
+            consumer.close();
+        }
+    }
+
+    /**
+     * @return the ConnectionConsumer of the underlying connection.
+     */
+    public ConnectionConsumer getConnectionConsumer() {
+        return consumer;
+    }
+
+    @Override
+    public String toString() {
+        return "JmsPoolConnectionConsumer { " + consumer + " }";
+    }
+}
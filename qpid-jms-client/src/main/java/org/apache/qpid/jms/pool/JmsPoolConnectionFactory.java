@@ -0,0 +1,437 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.pool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.QueueConnection;
+import javax.jms.QueueConnectionFactory;
+import javax.jms.TopicConnection;
+import javax.jms.TopicConnectionFactory;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A ConnectionFactory that keeps the connections it creates open and shares them,
+ * together with idle sessions and their producers, between the Connections it hands out.
+ *
+ * Code that creates a Connection, Session and MessageProducer for every message it sends
+ * then pays for the network round trips of opening them only the first time.  Each
+ * Connection returned is a handle on one of at most maxConnections underlying connections
+ * per set of credentials, which are handed out in turn once that many exist.  Closing a
+ * handle returns its sessions to an idle cache of the underlying connection, keyed by
+ * acknowledgement mode, and a session keeps the producers created on it cached by
+ * destination.  Connections and sessions left unused for the idle timeout are closed, and
+ * a connection that fails is no longer handed out and is closed once its last handle is.
+ */
+public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnectionFactory, TopicConnectionFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsPoolConnectionFactory.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 1;
+    public static final int DEFAULT_MAX_IDLE_SESSIONS_PER_CONNECTION = 100;
+    public static final int DEFAULT_MAX_CACHED_PRODUCERS_PER_SESSION = 32;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    private final Map<ConnectionKey, List<ConnectionPool>> pools = new HashMap<ConnectionKey, List<ConnectionPool>>();
+    private final Map<ConnectionKey, Integer> nextPool = new HashMap<ConnectionKey, Integer>();
+    private final JmsPoolStatistics statistics = new JmsPoolStatistics();
+
+    private JmsConnectionFactory connectionFactory;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxIdleSessionsPerConnection = DEFAULT_MAX_IDLE_SESSIONS_PER_CONNECTION;
+    private int maxCachedProducersPerSession = DEFAULT_MAX_CACHED_PRODUCERS_PER_SESSION;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private ScheduledThreadPoolExecutor evictor;
+
+    public JmsPoolConnectionFactory() {
+    }
+
+    public JmsPoolConnectionFactory(JmsConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    @Override
+    public Connection createConnection() throws JMSException {
+        JmsConnectionFactory factory = getRequiredConnectionFactory();
+        return createPooledConnection(factory, factory.getUsername(), factory.getPassword());
+    }
+
+    @Override
+    public Connection createConnection(String username, String password) throws JMSException {
+        return createPooledConnection(getRequiredConnectionFactory(), username, password);
+    }
+
+    @Override
+    public QueueConnection createQueueConnection() throws JMSException {
+        return (QueueConnection) createConnection();
+    }
+
+    @Override
+    public QueueConnection createQueueConnection(String username, String password) throws JMSException {
+        return (QueueConnection) createConnection(username, password);
+    }
+
+    @Override
+    public TopicConnection createTopicConnection() throws JMSException {
+        return (TopicConnection) createConnection();
+    }
+
+    @Override
+    public TopicConnection createTopicConnection(String username, String password) throws JMSException {
+        return (TopicConnection) createConnection(username, password);
+    }
+
+    /**
+     * Closes every pooled connection, whether or not it is in use.  The factory can be
+     * used again afterwards and creates new connections as they are needed.
+     */
+    public void stop() {
+        List<ConnectionPool> closing = new ArrayList<ConnectionPool>();
+        ScheduledThreadPoolExecutor stopped;
+
+        synchronized (this) {
+            for (List<ConnectionPool> keyed : pools.values()) {
+                closing.addAll(keyed);
+            }
+            pools.clear();
+            nextPool.clear();
+
+            stopped = evictor;
+            evictor = null;
+        }
+
+        if (stopped != null) {
+            stopped.shutdownNow();
+        }
+
+        for (ConnectionPool pool : closing) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Closes the connections and sessions that have been idle for longer than the idle
+     * timeout, along with any failed connection no longer in use.  This is done
+     * periodically while the factory has connections open.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<ConnectionPool> closing = new ArrayList<ConnectionPool>();
+        List<ConnectionPool> remaining = new ArrayList<ConnectionPool>();
+
+        synchronized (this) {
+            for (List<ConnectionPool> keyed : pools.values()) {
+                Iterator<ConnectionPool> iterator = keyed.iterator();
+                while (iterator.hasNext()) {
+                    ConnectionPool pool = iterator.next();
+                    boolean unused = pool.getReferenceCount() == 0;
+                    if (unused && (pool.isExpired() || pool.isIdle(now, idleTimeout))) {
+                        iterator.remove();
+                        closing.add(pool);
+                    } else {
+                        remaining.add(pool);
+                    }
+                }
+            }
+
+            Iterator<Map.Entry<ConnectionKey, List<ConnectionPool>>> keys = pools.entrySet().iterator();
+            while (keys.hasNext()) {
+                Map.Entry<ConnectionKey, List<ConnectionPool>> entry = keys.next();
+                if (entry.getValue().isEmpty()) {
+                    nextPool.remove(entry.getKey());
+                    keys.remove();
+                }
+            }
+        }
+
+        for (ConnectionPool pool : closing) {
+            LOG.debug("Closing idle pooled connection {}", pool);
+            pool.close();
+        }
+
+        for (ConnectionPool pool : remaining) {
+            pool.evictIdleSessions(now, idleTimeout);
+        }
+    }
+
+    /**
+     * @return the number of underlying connections currently held by the pool.
+     */
+    public synchronized int getNumConnections() {
+        int count = 0;
+        for (List<ConnectionPool> keyed : pools.values()) {
+            count += keyed.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of idle sessions waiting for reuse across all pooled connections.
+     */
+    public int getNumIdleSessions() {
+        List<ConnectionPool> current = new ArrayList<ConnectionPool>();
+        synchronized (this) {
+            for (List<ConnectionPool> keyed : pools.values()) {
+                current.addAll(keyed);
+            }
+        }
+
+        int count = 0;
+        for (ConnectionPool pool : current) {
+            count += pool.getIdleSessionCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the counters of the work done by this pool.
+     */
+    public JmsPoolStatistics getStatistics() {
+        return statistics;
+    }
+
+    //----- Property setters and getters -------------------------------------//
+
+    public synchronized JmsConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    /**
+     * Sets the factory used to create the underlying connections, which carries the URI,
+     * credentials and any other connection configuration including the ClientID.  Only a
+     * single connection can use a given ClientID at a time, so one set on the factory
+     * should be used with a maxConnections of one.
+     *
+     * @param connectionFactory
+     *        the factory that creates the pooled connections.
+     */
+    public synchronized void setConnectionFactory(JmsConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public synchronized int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the number of underlying connections created for each set of credentials,
+     * the Connections handed out being spread across them in turn.
+     *
+     * @param maxConnections
+     *        the number of connections to pool per set of credentials, default is 1.
+     */
+    public synchronized void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("The maximum number of connections must be at least one");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public synchronized int getMaxIdleSessionsPerConnection() {
+        return maxIdleSessionsPerConnection;
+    }
+
+    /**
+     * Sets how many idle sessions of each acknowledgement mode a connection keeps for
+     * reuse, sessions closed beyond that are closed on the underlying connection.
+     *
+     * @param maxIdleSessionsPerConnection
+     *        the idle sessions kept per connection and mode, zero disables session pooling.
+     */
+    public synchronized void setMaxIdleSessionsPerConnection(int maxIdleSessionsPerConnection) {
+        this.maxIdleSessionsPerConnection = maxIdleSessionsPerConnection;
+    }
+
+    public synchronized int getMaxCachedProducersPerSession() {
+        return maxCachedProducersPerSession;
+    }
+
+    /**
+     * Sets how many destinations a pooled session keeps an open producer for.  Producers
+     * for further destinations, and for temporary destinations, are closed along with
+     * the pooled producer that uses them.
+     *
+     * @param maxCachedProducersPerSession
+     *        the producers cached per session, zero disables producer caching.
+     */
+    public synchronized void setMaxCachedProducersPerSession(int maxCachedProducersPerSession) {
+        this.maxCachedProducersPerSession = maxCachedProducersPerSession;
+    }
+
+    public synchronized long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds an unused connection or idle session is kept before
+     * it is closed.
+     *
+     * @param idleTimeout
+     *        the idle timeout in milliseconds, zero or less keeps them until stopped.
+     */
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private synchronized JmsConnectionFactory getRequiredConnectionFactory() throws IllegalStateException {
+        if (connectionFactory == null) {
+            throw new IllegalStateException("No ConnectionFactory has been configured for the pool");
+        }
+
+        return connectionFactory;
+    }
+
+    private Connection createPooledConnection(JmsConnectionFactory factory, String username, String password) throws JMSException {
+        evictIdle();
+
+        ConnectionKey key = new ConnectionKey(username, password);
+        List<ConnectionPool> stale = new ArrayList<ConnectionPool>();
+        JmsPoolConnection result;
+
+        synchronized (this) {
+            List<ConnectionPool> keyed = pools.get(key);
+            if (keyed == null) {
+                keyed = new ArrayList<ConnectionPool>();
+                pools.put(key, keyed);
+            }
+
+            // Failed connections still in use are closed by their last handle.
+            Iterator<ConnectionPool> iterator = keyed.iterator();
+            while (iterator.hasNext()) {
+                ConnectionPool pool = iterator.next();
+                if (pool.isExpired()) {
+                    iterator.remove();
+                    if (pool.getReferenceCount() == 0) {
+                        stale.add(pool);
+                    }
+                }
+            }
+
+            ConnectionPool pool;
+            if (keyed.size() < maxConnections) {
+                JmsConnection connection = (JmsConnection) factory.createConnection(username, password);
+                try {
+                    pool = new ConnectionPool(connection, statistics, maxIdleSessionsPerConnection, maxCachedProducersPerSession);
+                } catch (JMSException ex) {
+                    connection.close();
+                    throw ex;
+                }
+
+                keyed.add(pool);
+                statistics.recordConnectionCreated();
+                startEvictor();
+            } else {
+                Integer next = nextPool.get(key);
+                int index = next == null ? 0 : next % keyed.size();
+                nextPool.put(key, index + 1);
+                pool = keyed.get(index);
+            }
+
+            statistics.recordConnectionBorrowed();
+            result = new JmsPoolConnection(pool);
+        }
+
+        for (ConnectionPool pool : stale) {
+            pool.close();
+        }
+
+        return result;
+    }
+
+    private void startEvictor() {
+        if (evictor != null || idleTimeout <= 0) {
+            return;
+        }
+
+        evictor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runner) {
+                Thread thread = new Thread(runner, "QpidJMS Pool Evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        evictor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        long period = Math.max(idleTimeout / 2, 1);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    evictIdle();
+                } catch (Throwable error) {
+                    LOG.debug("Error while evicting idle pooled resources: {}", error.getMessage());
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * The credentials a pooled connection was created with.
+     */
+    private static final class ConnectionKey {
+
+        private final String username;
+        private final String password;
+
+        public ConnectionKey(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = username == null ? 0 : username.hashCode();
+            return 31 * result + (password == null ? 0 : password.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ConnectionKey)) {
+                return false;
+            }
+
+            ConnectionKey key = (ConnectionKey) other;
+            return (username == null ? key.username == null : username.equals(key.username)) &&
+                   (password == null ? key.password == null : password.equals(key.password));
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.pool;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
+import javax.jms.QueueReceiver;
+import javax.jms.QueueSender;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+import javax.jms.StreamMessage;
+import javax.jms.TemporaryQueue;
+import javax.jms.TemporaryTopic;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import javax.jms.TopicPublisher;
+import javax.jms.TopicSession;
+import javax.jms.TopicSubscriber;
+
+import org.apache.qpid.jms.JmsSession;
+import org.apache.qpid.jms.pool.PooledSessionHolder.CachedProducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Session lent out by a pooled Connection.
+ *
+ * Closing the session closes the producers, consumers and browsers created through it,
+ * rolls back any open transaction and gives the underlying session back to the pool
+ * together with its cached producers.  A session that had a MessageListener set on it, or that could
+ * not be cleaned up, is closed instead of being pooled.
+ */
+public class JmsPoolSession implements Session, QueueSession, TopicSession {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsPoolSession.class);
+
+    private final JmsPoolConnection connection;
+    private final PooledSessionHolder holder;
+    private final JmsSession session;
+    private final List<MessageConsumer> consumers = new CopyOnWriteArrayList<MessageConsumer>();
+    private final List<QueueBrowser> browsers = new CopyOnWriteArrayList<QueueBrowser>();
+    private final List<JmsPoolMessageProducer> producers = new CopyOnWriteArrayList<JmsPoolMessageProducer>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile boolean invalidated;
+
+    JmsPoolSession(JmsPoolConnection connection, PooledSessionHolder holder) {
+        this.connection = connection;
+        this.holder = holder;
+        this.session = holder.getSession();
+    }
+
+    @Override
+    public void close() throws JMSException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        connection.onSessionClosed(this);
+
+        try {
+            for (JmsPoolMessageProducer producer : producers) {
+                producer.close();
+            }
+            for (MessageConsumer consumer : consumers) {
+                consumer.close();
+            }
+            for (QueueBrowser browser : browsers) {
+                browser.close();
+            }
+
+            if (!invalidated && session.getTransacted()) {
+                session.rollback();
+            }
+        } catch (JMSException ex) {
+            LOG.debug("Error while cleaning up pooled session, it will be closed: {}", ex.getMessage());
+            invalidated = true;
+        } finally {
+            producers.clear();
+            consumers.clear();
+            browsers.clear();
+        }
+
+        if (invalidated) {
+            holder.close();
+        } else {
+            holder.getPool().returnSession(holder);
+        }
+    }
+
+    //----- Message creation -------------------------------------------------//
+
+    @Override
+    public BytesMessage createBytesMessage() throws JMSException {
+        return getSession().createBytesMessage();
+    }
+
+    @Override
+    public MapMessage createMapMessage() throws JMSException {
+        return getSession().createMapMessage();
+    }
+
+    @Override
+    public Message createMessage() throws JMSException {
+        return getSession().createMessage();
+    }
+
+    @Override
+    public ObjectMessage createObjectMessage() throws JMSException {
+        return getSession().createObjectMessage();
+    }
+
+    @Override
+    public ObjectMessage createObjectMessage(Serializable object) throws JMSException {
+        return getSession().createObjectMessage(object);
+    }
+
+    @Override
+    public StreamMessage createStreamMessage() throws JMSException {
+        return getSession().createStreamMessage();
+    }
+
+    @Override
+    public TextMessage createTextMessage() throws JMSException {
+        return getSession().createTextMessage();
+    }
+
+    @Override
+    public TextMessage createTextMessage(String text) throws JMSException {
+        return getSession().createTextMessage(text);
+    }
+
+    //----- Session state ----------------------------------------------------//
+
+    @Override
+    public boolean getTransacted() throws JMSException {
+        return getSession().getTransacted();
+    }
+
+    @Override
+    public int getAcknowledgeMode() throws JMSException {
+        return getSession().getAcknowledgeMode();
+    }
+
+    @Override
+    public void commit() throws JMSException {
+        getSession().commit();
+    }
+
+    @Override
+    public void rollback() throws JMSException {
+        getSession().rollback();
+    }
+
+    @Override
+    public void recover() throws JMSException {
+        getSession().recover();
+    }
+
+    @Override
+    public MessageListener getMessageListener() throws JMSException {
+        return getSession().getMessageListener();
+    }
+
+    /**
+     * A session used with a MessageListener is not returned to the pool when closed.
+     */
+    @Override
+    public void setMessageListener(MessageListener listener) throws JMSException {
+        getSession().setMessageListener(listener);
+        invalidated = true;
+    }
+
+    @Override
+    public void run() {
+        session.run();
+    }
+
+    @Override
+    public void unsubscribe(String name) throws JMSException {
+        getSession().unsubscribe(name);
+    }
+
+    //----- Destinations -----------------------------------------------------//
+
+    @Override
+    public Queue createQueue(String queueName) throws JMSException {
+        return getSession().createQueue(queueName);
+    }
+
+    @Override
+    public Topic createTopic(String topicName) throws JMSException {
+        return getSession().createTopic(topicName);
+    }
+
+    @Override
+    public TemporaryQueue createTemporaryQueue() throws JMSException {
+        TemporaryQueue queue = getSession().createTemporaryQueue();
+        connection.onTemporaryDestinationCreated(queue);
+        return queue;
+    }
+
+    @Override
+    public TemporaryTopic createTemporaryTopic() throws JMSException {
+        TemporaryTopic topic = getSession().createTemporaryTopic();
+        connection.onTemporaryDestinationCreated(topic);
+        return topic;
+    }
+
+    //----- Producers --------------------------------------------------------//
+
+    @Override
+    public MessageProducer createProducer(Destination destination) throws JMSException {
+        return createPooledProducer(destination);
+    }
+
+    @Override
+    public QueueSender createSender(Queue queue) throws JMSException {
+        return createPooledProducer(queue);
+    }
+
+    @Override
+    public TopicPublisher createPublisher(Topic topic) throws JMSException {
+        return createPooledProducer(topic);
+    }
+
+    //----- Consumers --------------------------------------------------------//
+
+    @Override
+    public MessageConsumer createConsumer(Destination destination) throws JMSException {
+        return addConsumer(getSession().createConsumer(destination));
+    }
+
+    @Override
+    public MessageConsumer createConsumer(Destination destination, String messageSelector) throws JMSException {
+        return addConsumer(getSession().createConsumer(destination, messageSelector));
+    }
+
+    @Override
+    public MessageConsumer createConsumer(Destination destination, String messageSelector, boolean noLocal) throws JMSException {
+        return addConsumer(getSession().createConsumer(destination, messageSelector, noLocal));
+    }
+
+    @Override
+    public TopicSubscriber createDurableSubscriber(Topic topic, String name) throws JMSException {
+        return addConsumer(getSession().createDurableSubscriber(topic, name));
+    }
+
+    @Override
+    public TopicSubscriber createDurableSubscriber(Topic topic, String name, String messageSelector, boolean noLocal) throws JMSException {
+        return addConsumer(getSession().createDurableSubscriber(topic, name, messageSelector, noLocal));
+    }
+
+    @Override
+    public QueueReceiver createReceiver(Queue queue) throws JMSException {
+        return addConsumer(getSession().createReceiver(queue));
+    }
+
+    @Override
+    public QueueReceiver createReceiver(Queue queue, String messageSelector) throws JMSException {
+        return addConsumer(getSession().createReceiver(queue, messageSelector));
+    }
+
+    @Override
+    public TopicSubscriber createSubscriber(Topic topic) throws JMSException {
+        return addConsumer(getSession().createSubscriber(topic));
+    }
+
+    @Override
+    public TopicSubscriber createSubscriber(Topic topic, String messageSelector, boolean noLocal) throws JMSException {
+        return addConsumer(getSession().createSubscriber(topic, messageSelector, noLocal));
+    }
+
+    @Override
+    public QueueBrowser createBrowser(Queue queue) throws JMSException {
+        return addBrowser(getSession().createBrowser(queue));
+    }
+
+    @Override
+    public QueueBrowser createBrowser(Queue queue, String messageSelector) throws JMSException {
+        return addBrowser(getSession().createBrowser(queue, messageSelector));
+    }
+
+    /**
+     * @return the underlying session lent to this pooled session.
+     */
+    public JmsSession getInternalSession() {
+        return session;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "JmsPoolSession { " + session + " }";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    void onProducerClosed(JmsPoolMessageProducer producer) {
+        producers.remove(producer);
+    }
+
+    private JmsSession getSession() throws IllegalStateException {
+        if (closed.get()) {
+            throw new IllegalStateException("The Session is closed");
+        }
+
+        return session;
+    }
+
+    private JmsPoolMessageProducer createPooledProducer(Destination destination) throws JMSException {
+        getSession();
+        CachedProducer cached = holder.getProducer(destination);
+        JmsPoolMessageProducer producer = new JmsPoolMessageProducer(this, cached.getProducer(), destination, !cached.isCached());
+        producers.add(producer);
+        return producer;
+    }
+
+    private <T extends MessageConsumer> T addConsumer(T consumer) {
+        consumers.add(consumer);
+        return consumer;
+    }
+
+    private QueueBrowser addBrowser(QueueBrowser browser) {
+        browsers.add(browser);
+        return browser;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.pool;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the work done by a JmsPoolConnectionFactory and how much of it was saved
+ * by reusing pooled resources.
+ */
+public class JmsPoolStatistics {
+
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsClosed = new AtomicLong();
+    private final AtomicLong connectionsBorrowed = new AtomicLong();
+    private final AtomicLong sessionsCreated = new AtomicLong();
+    private final AtomicLong sessionsReused = new AtomicLong();
+    private final AtomicLong sessionsEvicted = new AtomicLong();
+    private final AtomicLong producersCreated = new AtomicLong();
+    private final AtomicLong producersReused = new AtomicLong();
+
+    /**
+     * @return the number of underlying connections that have been created.
+     */
+    public long getConnectionsCreated() {
+        return connectionsCreated.get();
+    }
+
+    /**
+     * @return the number of underlying connections closed as idle, failed or on stop.
+     */
+    public long getConnectionsClosed() {
+        return connectionsClosed.get();
+    }
+
+    /**
+     * @return the number of pooled Connection handles handed out.
+     */
+    public long getConnectionsBorrowed() {
+        return connectionsBorrowed.get();
+    }
+
+    /**
+     * @return the number of underlying sessions that have been created.
+     */
+    public long getSessionsCreated() {
+        return sessionsCreated.get();
+    }
+
+    /**
+     * @return the number of sessions handed out from the idle session cache.
+     */
+    public long getSessionsReused() {
+        return sessionsReused.get();
+    }
+
+    /**
+     * @return the number of idle sessions closed because they went unused or failed a check.
+     */
+    public long getSessionsEvicted() {
+        return sessionsEvicted.get();
+    }
+
+    /**
+     * @return the number of underlying producers that have been created.
+     */
+    public long getProducersCreated() {
+        return producersCreated.get();
+    }
+
+    /**
+     * @return the number of producers handed out from a session's producer cache.
+     */
+    public long getProducersReused() {
+        return producersReused.get();
+    }
+
+    @Override
+    public String toString() {
+        return "JmsPoolStatistics { connectionsCreated = " + connectionsCreated +
+               ", connectionsClosed = " + connectionsClosed +
+               ", connectionsBorrowed = " + connectionsBorrowed +
+               ", sessionsCreated = " + sessionsCreated +
+               ", sessionsReused = " + sessionsReused +
+               ", sessionsEvicted = " + sessionsEvicted +
+               ", producersCreated = " + producersCreated +
+               ", producersReused = " + producersReused + " }";
+    }
+
+    //----- Recording of pool events -----------------------------------------//
+
+    void recordConnectionCreated() {
+        connectionsCreated.incrementAndGet();
+    }
+
+    void recordConnectionClosed() {
+        connectionsClosed.incrementAndGet();
+    }
+
+    void recordConnectionBorrowed() {
+        connectionsBorrowed.incrementAndGet();
+    }
+
+    void recordSessionCreated() {
+        sessionsCreated.incrementAndGet();
+    }
+
+    void recordSessionReused() {
+        sessionsReused.incrementAndGet();
+    }
+
+    void recordSessionEvicted() {
+        sessionsEvicted.incrementAndGet();
+    }
+
+    void recordProducerCreated() {
+        producersCreated.incrementAndGet();
+    }
+
+    void recordProducerReused() {
+        producersReused.incrementAndGet();
+    }
+}
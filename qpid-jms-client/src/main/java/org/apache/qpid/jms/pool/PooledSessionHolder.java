@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.pool;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.TemporaryQueue;
+import javax.jms.TemporaryTopic;
+
+import org.apache.qpid.jms.JmsMessageProducer;
+import org.apache.qpid.jms.JmsSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds an underlying session of a pooled connection together with the producers
+ * cached for it, whether the session is idle in the pool or lent out.
+ */
+final class PooledSessionHolder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledSessionHolder.class);
+
+    private final ConnectionPool pool;
+    private final JmsSession session;
+    private final int mode;
+    private final int maxCachedProducers;
+    private final Map<Destination, JmsMessageProducer> producers = new HashMap<Destination, JmsMessageProducer>();
+
+    private long lastUsed = System.currentTimeMillis();
+
+    PooledSessionHolder(ConnectionPool pool, JmsSession session, int mode, int maxCachedProducers) {
+        this.pool = pool;
+        this.session = session;
+        this.mode = mode;
+        this.maxCachedProducers = maxCachedProducers;
+    }
+
+    ConnectionPool getPool() {
+        return pool;
+    }
+
+    JmsSession getSession() {
+        return session;
+    }
+
+    /**
+     * @return the acknowledgement mode of the session, SESSION_TRANSACTED if transacted.
+     */
+    int getMode() {
+        return mode;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void setLastUsed(long lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+
+    /**
+     * Returns a producer for the given destination, the anonymous producer when it is
+     * null, which is cached with the session when there is room.  Producers for temporary
+     * destinations are never cached as they do not outlive the pooled Connection that
+     * created the destination.
+     *
+     * @return a producer to wrap, which the caller must close if it was not cached.
+     */
+    synchronized CachedProducer getProducer(Destination destination) throws JMSException {
+        JmsMessageProducer producer = producers.get(destination);
+        if (producer != null) {
+            pool.getStatistics().recordProducerReused();
+            return new CachedProducer(producer, true);
+        }
+
+        producer = (JmsMessageProducer) session.createProducer(destination);
+        pool.getStatistics().recordProducerCreated();
+
+        boolean cacheable = !(destination instanceof TemporaryQueue || destination instanceof TemporaryTopic);
+        if (cacheable && producers.size() < maxCachedProducers) {
+            producers.put(destination, producer);
+            return new CachedProducer(producer, true);
+        }
+
+        return new CachedProducer(producer, false);
+    }
+
+    boolean isClosed() {
+        return session.isClosed();
+    }
+
+    void close() {
+        try {
+            session.close();
+        } catch (JMSException ex) {
+            LOG.debug("Error while closing pooled session: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledSessionHolder { " + session + ", producers = " + producers.size() + " }";
+    }
+
+    /*
+     * A producer handed out by the holder and whether the holder keeps it open.
+     */
+    static final class CachedProducer {
+
+        private final JmsMessageProducer producer;
+        private final boolean cached;
+
+        CachedProducer(JmsMessageProducer producer, boolean cached) {
+            this.producer = producer;
+            this.cached = cached;
+        }
+
+        JmsMessageProducer getProducer() {
+            return producer;
+        }
+
+        boolean isCached() {
+            return cached;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.qpid.jms.provider;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 
 import javax.jms.JMSException;
 
@@ -183,6 +184,21 @@ public interface Provider {
      */
     void send(JmsOutboundMessageDispatch envelope, AsyncResult request) throws IOException, JMSException;
 
+    /**
+     * Sends each JmsMessage contained in the given outbound dispatch envelopes as one
+     * batch, the transfers are all written before any outcome is waited on.  Each request
+     * is signaled with the outcome of the send of the envelope at the same position.
+     *
+     * @param envelopes
+     *        the message envelopes containing the JmsMessages to send.
+     * @param requests
+     *        The request objects that should be signaled as each send completes.
+     *
+     * @throws IOException if an error occurs or the Provider is already closed.
+     * @throws JMSException if an error that maps to JMS occurs such as not authorized.
+     */
+    void send(List<JmsOutboundMessageDispatch> envelopes, List<? extends AsyncResult> requests) throws IOException, JMSException;
+
     /**
      * Called to acknowledge all messages that have been delivered in a given session.
      *
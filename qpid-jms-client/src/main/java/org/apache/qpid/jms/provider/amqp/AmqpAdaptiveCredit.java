@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.amqp;
+
+/**
+ * Sizes the credit window of a consumer from the rate at which it consumes messages and
+ * the time it takes the remote to respond to new credit.
+ *
+ * Credit is topped up once it falls to a fraction of the window, so the credit that is
+ * left at that point must last for the round trip it takes new credit to bring messages
+ * back.  The window is therefore the number of messages the consumer gets through in one
+ * round trip divided by that fraction, kept within the configured bounds.  A fast consumer
+ * on a slow link ends up with a large window while a slow consumer holds no more than the
+ * minimum, leaving the rest for other consumers of the same source.
+ *
+ * The service time of the consumer is only sampled while it has further messages already
+ * waiting, so time spent idle for want of messages does not make it look slow.  The round
+ * trip is sampled when credit is granted to a link that has none and no messages queued,
+ * it is the time until the first message arrives.  That time only reflects the link while
+ * the remote has messages to send, so the round trip is only sampled once deliveries have
+ * used up the credit granted before, never on the first grant to an idle link, and each
+ * sample is limited to a multiple of the current average so that one idle gap cannot
+ * dominate it.  Both are smoothed with a moving average, and the window at most doubles
+ * with each round trip sampled so that a single poor sample cannot open it up fully.
+ *
+ * Instances are used only from the provider thread, the current window may be read from
+ * any thread.
+ */
+public class AmqpAdaptiveCredit {
+
+    /**
+     * The fraction of the window at or below which more credit is granted.
+     */
+    public static final double REFILL_THRESHOLD = 0.3;
+
+    private static final int SAMPLE_WEIGHT = 8;
+    private static final int OUTLIER_LIMIT = 4;
+
+    private final int minimum;
+    private final int maximum;
+    private volatile int window;
+    private int limit;
+
+    private int outstanding;
+    private boolean backlogged;
+    private long lastConsumed;
+    private boolean deliveredSinceFlow;
+    private boolean flowPending;
+    private long flowSentAt;
+    private double serviceTime;
+    private double roundTrip;
+
+    /**
+     * Creates a window that starts at its minimum and adapts within the given bounds.
+     *
+     * @param minimum
+     *        the smallest window to use, at least one.
+     * @param maximum
+     *        the largest window to use, normally the configured prefetch.
+     */
+    public AmqpAdaptiveCredit(int minimum, int maximum) {
+        this.maximum = Math.max(1, maximum);
+        this.minimum = Math.max(1, Math.min(minimum, this.maximum));
+        this.window = this.minimum;
+        this.limit = this.minimum;
+    }
+
+    /**
+     * @return the number of credits the link should currently be opened up to.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    public int getMinimum() {
+        return minimum;
+    }
+
+    public int getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Records that credit is being granted.
+     *
+     * @param starved
+     *        true if the link has no credit and no messages queued as the credit is granted,
+     *        the round trip is then sampled if deliveries used up the previous credit.
+     */
+    public void onFlow(boolean starved) {
+        onFlow(starved, System.nanoTime());
+    }
+
+    /**
+     * Records the arrival of a message that is dispatched to the consumer.
+     */
+    public void onDelivery() {
+        onDelivery(System.nanoTime());
+    }
+
+    /**
+     * Records that the consumer has taken a message from those dispatched to it.
+     */
+    public void onConsumed() {
+        onConsumed(System.nanoTime());
+    }
+
+    /**
+     * Records that a dispatched message was dropped without being consumed, such as an
+     * expired message that was filtered.
+     */
+    public void onDiscarded() {
+        if (outstanding > 0) {
+            outstanding--;
+        }
+        backlogged &= outstanding > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "AmqpAdaptiveCredit { window = " + window + ", serviceTime = " + (long) serviceTime +
+               "ns, roundTrip = " + (long) roundTrip + "ns }";
+    }
+
+    //----- Implementation, time given in nanoseconds for testing ------------//
+
+    void onFlow(boolean starved, long now) {
+        if (starved && deliveredSinceFlow && !flowPending) {
+            flowPending = true;
+            flowSentAt = now;
+        }
+
+        deliveredSinceFlow = false;
+    }
+
+    void onDelivery(long now) {
+        outstanding++;
+        deliveredSinceFlow = true;
+
+        if (flowPending) {
+            long sample = Math.max(1, now - flowSentAt);
+            if (roundTrip != 0) {
+                sample = (long) Math.min(sample, roundTrip * OUTLIER_LIMIT);
+            }
+
+            roundTrip = smooth(roundTrip, sample);
+            flowPending = false;
+            limit = window * 2;
+            update();
+        }
+    }
+
+    void onConsumed(long now) {
+        if (backlogged) {
+            serviceTime = smooth(serviceTime, Math.max(1, now - lastConsumed));
+            update();
+        }
+
+        if (outstanding > 0) {
+            outstanding--;
+        }
+        backlogged = outstanding > 0;
+        lastConsumed = now;
+    }
+
+    private static double smooth(double average, long sample) {
+        if (average == 0) {
+            return sample;
+        }
+
+        return average + (sample - average) / SAMPLE_WEIGHT;
+    }
+
+    private void update() {
+        if (serviceTime == 0 || roundTrip == 0) {
+            return;
+        }
+
+        double inRoundTrip = roundTrip / serviceTime;
+        double target = Math.ceil(inRoundTrip / REFILL_THRESHOLD);
+
+        target = Math.min(target, limit);
+
+        window = (int) Math.max(minimum, Math.min(maximum, target));
+    }
+}
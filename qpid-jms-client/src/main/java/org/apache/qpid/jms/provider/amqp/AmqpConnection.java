@@ -49,6 +49,7 @@ public class AmqpConnection extends AmqpAbstractResource<JmsConnectionInfo, Conn
     private final AmqpProvider provider;
     private final AmqpConnectionProperties properties;
     private AmqpConnectionSession connectionSession;
+    private final AmqpPrefetchBudget prefetchBudget;
 
     private boolean objectMessageUsesAmqpTypes = false;
     private boolean anonymousProducerCache = false;
@@ -63,6 +64,12 @@ public class AmqpConnection extends AmqpAbstractResource<JmsConnectionInfo, Conn
 
         // Create connection properties initialized with defaults from the JmsConnectionInfo
         this.properties = new AmqpConnectionProperties(info);
+
+        if (info.getPrefetchMemoryLimit() > 0) {
+            this.prefetchBudget = new AmqpPrefetchBudget(info.getPrefetchMemoryLimit());
+        } else {
+            this.prefetchBudget = null;
+        }
     }
 
     public void createSession(JmsSessionInfo sessionInfo, AsyncResult request) {
@@ -123,6 +130,13 @@ public class AmqpConnection extends AmqpAbstractResource<JmsConnectionInfo, Conn
         return provider;
     }
 
+    /**
+     * @return the budget shared by the consumers for prefetched message bytes, or null if unlimited.
+     */
+    public AmqpPrefetchBudget getPrefetchBudget() {
+        return prefetchBudget;
+    }
+
     public String getQueuePrefix() {
         return properties.getQueuePrefix();
     }
@@ -18,12 +18,11 @@ package org.apache.qpid.jms.provider.amqp;
 
 import static org.apache.qpid.jms.provider.amqp.AmqpSupport.MODIFIED_FAILED;
 import static org.apache.qpid.jms.provider.amqp.AmqpSupport.MODIFIED_UNDELIVERABLE;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.ListIterator;
@@ -32,6 +31,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jms.JMSException;
+import javax.jms.Session;
 
 import org.apache.qpid.jms.JmsDestination;
 import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
@@ -42,6 +42,7 @@ import org.apache.qpid.jms.provider.AsyncResult;
 import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
 import org.apache.qpid.jms.provider.ProviderListener;
 import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageBuilder;
+import org.apache.qpid.jms.provider.amqp.message.AmqpLazyDecodedMessage;
 import org.apache.qpid.jms.util.IOExceptionSupport;
 import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
@@ -50,6 +51,7 @@ import org.apache.qpid.proton.amqp.messaging.Released;
 import org.apache.qpid.proton.amqp.transaction.TransactionalState;
 import org.apache.qpid.proton.amqp.transport.DeliveryState;
 import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
 import org.apache.qpid.proton.engine.Receiver;
 import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
@@ -62,20 +64,33 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
 
     private static final Logger LOG = LoggerFactory.getLogger(AmqpConsumer.class);
 
-    private static final int INITIAL_BUFFER_CAPACITY = 1024 * 128;
-
     protected final AmqpSession session;
     protected final Map<JmsInboundMessageDispatch, Delivery> delivered = new LinkedHashMap<JmsInboundMessageDispatch, Delivery>();
     protected boolean presettle;
     protected AsyncResult stopRequest;
     protected AsyncResult pullRequest;
-    protected final ByteBuf incomingBuffer = Unpooled.buffer(INITIAL_BUFFER_CAPACITY);
     protected final AtomicLong incomingSequence = new AtomicLong(0);
+    protected final ArrayList<Delivery> dupsOkPending = new ArrayList<Delivery>();
+    protected ScheduledFuture<?> dupsOkSettleTask;
+    protected final AmqpAdaptiveCredit adaptiveCredit;
+    protected final AmqpPrefetchBudget prefetchBudget;
+    protected long prefetchCharged;
+    protected int prefetchCredit;
+    protected boolean prefetchBudgetReleased;
 
     public AmqpConsumer(AmqpSession session, JmsConsumerInfo info, Receiver receiver) {
         super(info, receiver, session);
 
         this.session = session;
+
+        if (info.isAdaptivePrefetch() && info.getPrefetchSize() > 0) {
+            adaptiveCredit = new AmqpAdaptiveCredit(info.getAdaptivePrefetchMinimum(), info.getPrefetchSize());
+            info.setCurrentPrefetchSize(adaptiveCredit.getWindow());
+        } else {
+            adaptiveCredit = null;
+        }
+
+        this.prefetchBudget = session.getConnection().getPrefetchBudget();
     }
 
     /**
@@ -151,6 +166,8 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
 
         LOG.trace("Consumer {} flow updated, remote credit = {}", getConsumerId(), getEndpoint().getRemoteCredit());
 
+        reservePrefetchCredit();
+
         super.processFlowUpdates(provider);
     }
 
@@ -221,11 +238,13 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
                 delivered.put(envelope, delivery);
             }
             setDefaultDeliveryState(delivery, MODIFIED_FAILED);
+            recordConsumed(envelope);
             sendFlowIfNeeded();
         } else if (ackType.equals(ACK_TYPE.CONSUMED)) {
             // A Consumer may not always send a DELIVERED ack so we need to
             // check to ensure we don't add too much credit to the link.
             if (isPresettle() || delivered.remove(envelope) == null) {
+                recordConsumed(envelope);
                 sendFlowIfNeeded();
             }
             LOG.debug("Consumed Ack of message: {}", envelope);
@@ -240,16 +259,21 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
                         delivery.settle();
                         session.getTransactionContext().registerTxConsumer(this);
                     }
+                } else if (isDupsOkBatching()) {
+                    deferDupsOkAccept(delivery);
                 } else {
                     delivery.disposition(Accepted.getInstance());
                     delivery.settle();
                 }
             }
         } else if (ackType.equals(ACK_TYPE.POISONED)) {
+            recordDiscarded(envelope);
             deliveryFailed(delivery);
         } else if (ackType.equals(ACK_TYPE.EXPIRED)) {
+            recordDiscarded(envelope);
             deliveryFailed(delivery);
         } else if (ackType.equals(ACK_TYPE.RELEASED)) {
+            releasePrefetchCharge(envelope);
             delivery.disposition(Released.getInstance());
             delivery.settle();
         } else {
@@ -257,10 +281,143 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
         }
     }
 
+    private boolean isDupsOkBatching() {
+        return getResourceInfo().getAcknowledgementMode() == Session.DUPS_OK_ACKNOWLEDGE &&
+               getResourceInfo().getDupsOkBatchSize() > 1;
+    }
+
+    /*
+     * Consumed messages in a DUPS_OK session are left unsettled until a full batch has
+     * been consumed, or the batch timeout expires, and then all are accepted together.
+     * The credit for these messages has already been granted so the link keeps flowing
+     * while the batch fills.
+     */
+    private void deferDupsOkAccept(Delivery delivery) {
+        dupsOkPending.add(delivery);
+
+        if (dupsOkPending.size() >= getResourceInfo().getDupsOkBatchSize()) {
+            acceptDupsOkBatch();
+        } else if (dupsOkSettleTask == null && getResourceInfo().getDupsOkBatchTimeout() > 0) {
+            dupsOkSettleTask = getSession().schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    dupsOkSettleTask = null;
+                    if (!dupsOkPending.isEmpty() && getEndpoint().getLocalState() == EndpointState.ACTIVE) {
+                        LOG.trace("Consumer {} accepting DUPS_OK batch after timeout", getConsumerId());
+                        acceptDupsOkBatch();
+                        session.getProvider().pumpToProtonTransport();
+                    }
+                }
+            }, getResourceInfo().getDupsOkBatchTimeout());
+        }
+    }
+
+    private void acceptDupsOkBatch() {
+        if (dupsOkSettleTask != null) {
+            dupsOkSettleTask.cancel(false);
+            dupsOkSettleTask = null;
+        }
+
+        for (Delivery delivery : dupsOkPending) {
+            delivery.disposition(Accepted.getInstance());
+            delivery.settle();
+        }
+        dupsOkPending.clear();
+    }
+
+    private void recordConsumed(JmsInboundMessageDispatch envelope) {
+        releasePrefetchCharge(envelope);
+        if (adaptiveCredit != null) {
+            adaptiveCredit.onConsumed();
+            getResourceInfo().setCurrentPrefetchSize(adaptiveCredit.getWindow());
+        }
+    }
+
+    private void recordDiscarded(JmsInboundMessageDispatch envelope) {
+        releasePrefetchCharge(envelope);
+        if (adaptiveCredit != null) {
+            adaptiveCredit.onDiscarded();
+        }
+    }
+
+    private void chargePrefetchBudget(JmsInboundMessageDispatch envelope, int size) {
+        if (prefetchBudget != null) {
+            envelope.setPrefetchCharge(size);
+            prefetchCharged += size;
+            prefetchBudget.charge(size);
+            reservePrefetchCredit();
+        }
+    }
+
+    /*
+     * Brings the credit this consumer holds in the budget in line with its link credit,
+     * which is used as messages arrive and withdrawn once a drain completes.
+     */
+    private void reservePrefetchCredit() {
+        if (prefetchBudget != null && !prefetchBudgetReleased) {
+            int credit = Math.max(0, getEndpoint().getCredit());
+            if (credit != prefetchCredit) {
+                int delta = credit - prefetchCredit;
+                prefetchCredit = credit;
+                prefetchBudget.reserve(delta);
+            }
+        }
+    }
+
+    /*
+     * A message counts against the budget from its arrival until the consumer first takes
+     * it from its buffer or it is dropped, whichever ack comes first releases the charge.
+     */
+    private void releasePrefetchCharge(JmsInboundMessageDispatch envelope) {
+        int charge = envelope.getPrefetchCharge();
+        if (prefetchBudget != null && charge > 0) {
+            envelope.setPrefetchCharge(0);
+            if (!prefetchBudgetReleased) {
+                prefetchCharged -= charge;
+                prefetchBudget.release(charge);
+            }
+        }
+    }
+
+    /*
+     * Returns everything this consumer holds in the budget when it is closed, as whatever
+     * remains in its buffer is discarded along with it.
+     */
+    private void releasePrefetchBudget() {
+        if (prefetchBudget != null && !prefetchBudgetReleased) {
+            prefetchBudgetReleased = true;
+            prefetchBudget.remove(this);
+            prefetchBudget.reserve(-prefetchCredit);
+            prefetchBudget.release(prefetchCharged);
+            prefetchCharged = 0;
+            prefetchCredit = 0;
+        }
+    }
+
+    /**
+     * Called by the connection's prefetch budget when a consumer that withheld credit
+     * because the budget was spent may now grant it.
+     */
+    void onPrefetchBudgetAvailable() {
+        if (getEndpoint().getLocalState() == EndpointState.ACTIVE) {
+            sendFlowIfNeeded();
+        }
+    }
+
+    /**
+     * @return the adaptive credit window of this consumer, or null if its prefetch is fixed.
+     */
+    public AmqpAdaptiveCredit getAdaptiveCredit() {
+        return adaptiveCredit;
+    }
+
     /**
      * We only send more credits as the credit window dwindles to a certain point and
-     * then we open the window back up to full prefetch size.  If this is a pull consumer
-     * or we are stopping then we never send credit here.
+     * then we open the window back up to full prefetch size, or to the current adaptive
+     * window size when the prefetch is adaptive, but never beyond what the connection's
+     * prefetch budget has room for.  If this is a pull consumer or we are stopping then
+     * we never send credit here.
      */
     private void sendFlowIfNeeded() {
         if (getResourceInfo().getPrefetchSize() == 0 || isStopping()) {
@@ -271,11 +428,33 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
             return;
         }
 
+        int prefetch = getResourceInfo().getPrefetchSize();
+        if (adaptiveCredit != null) {
+            prefetch = adaptiveCredit.getWindow();
+        }
+
         int currentCredit = getEndpoint().getCredit();
-        if (currentCredit <= getResourceInfo().getPrefetchSize() * 0.3) {
-            int newCredit = getResourceInfo().getPrefetchSize() - currentCredit;
+        if (currentCredit <= prefetch * AmqpAdaptiveCredit.REFILL_THRESHOLD) {
+            int newCredit = prefetch - currentCredit;
+            if (prefetchBudget != null) {
+                int grantable = prefetchBudget.getGrantable(newCredit);
+                if (grantable < newCredit) {
+                    LOG.trace("Consumer {} withholding credit while prefetch budget is spent: {}", getConsumerId(), prefetchBudget);
+                    prefetchBudget.await(this);
+                }
+
+                newCredit = grantable;
+                if (newCredit == 0) {
+                    return;
+                }
+            }
+
             LOG.trace("Consumer {} granting additional credit: {}", getConsumerId(), newCredit);
+            if (adaptiveCredit != null) {
+                adaptiveCredit.onFlow(currentCredit <= 0 && getEndpoint().getQueued() == 0);
+            }
             getEndpoint().flow(newCredit);
+            reservePrefetchCredit();
         }
     }
 
@@ -355,7 +534,7 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
     }
 
     @Override
-    public void processDeliveryUpdates(AmqpProvider provider) throws IOException {
+    public void processDeliveryUpdates(AmqpProvider provider, Delivery delivery) throws IOException {
         Delivery incoming = null;
         do {
             incoming = getEndpoint().current();
@@ -390,11 +569,12 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
             }
         } while (incoming != null);
 
-        super.processDeliveryUpdates(provider);
+        super.processDeliveryUpdates(provider, delivery);
     }
 
     private boolean processDelivery(Delivery incoming) throws Exception {
         setDefaultDeliveryState(incoming, Released.getInstance());
+        int encodedSize = incoming.pending();
         Message amqpMessage = decodeIncomingMessage(incoming);
         JmsMessage message = null;
         try {
@@ -427,6 +607,12 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
         // Store reference to envelope in delivery context for recovery
         incoming.setContext(envelope);
 
+        if (adaptiveCredit != null) {
+            adaptiveCredit.onDelivery();
+        }
+
+        chargePrefetchBudget(envelope, encodedSize);
+
         deliver(envelope);
 
         return true;
@@ -449,6 +635,9 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
 
     @Override
     protected void closeOrDetachEndpoint() {
+        acceptDupsOkBatch();
+        releasePrefetchBudget();
+
         if (getResourceInfo().isDurable()) {
             getEndpoint().detach();
         } else {
@@ -456,6 +645,12 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
         }
     }
 
+    @Override
+    public void remotelyClosed(AmqpProvider provider) {
+        releasePrefetchBudget();
+        super.remotelyClosed(provider);
+    }
+
     public AmqpConnection getConnection() {
         return session.getConnection();
     }
@@ -512,22 +707,40 @@ public class AmqpConsumer extends AmqpAbstractResource<JmsConsumerInfo, Receiver
     }
 
     protected Message decodeIncomingMessage(Delivery incoming) {
+        // The encoded bytes are retained by the message so that its sections can be
+        // decoded on first use outside of the provider thread.
+        byte[] encoded = readIncomingBytes(incoming);
+
+        Message protonMessage = new AmqpLazyDecodedMessage();
+        protonMessage.decode(encoded, 0, encoded.length);
+        return protonMessage;
+    }
+
+    /**
+     * Reads the payload of a completed delivery from proton.  As the delivery is complete
+     * its full size is known, so the bytes are read in one pass into an array of exactly
+     * that size, with no intermediate receive buffer to grow or copy out of.
+     *
+     * @param incoming
+     *        the completed delivery whose payload is to be read.
+     *
+     * @return an array holding the encoded message.
+     */
+    protected byte[] readIncomingBytes(Delivery incoming) {
+        byte[] encoded = new byte[incoming.pending()];
+        int offset = 0;
         int count;
 
-        while ((count = getEndpoint().recv(incomingBuffer.array(), incomingBuffer.writerIndex(), incomingBuffer.writableBytes())) > 0) {
-            incomingBuffer.writerIndex(incomingBuffer.writerIndex() + count);
-            if (!incomingBuffer.isWritable()) {
-                incomingBuffer.capacity((int) (incomingBuffer.capacity() * 1.5));
-            }
+        while (offset < encoded.length &&
+               (count = getEndpoint().recv(encoded, offset, encoded.length - offset)) > 0) {
+            offset += count;
         }
 
-        try {
-            Message protonMessage = Message.Factory.create();
-            protonMessage.decode(incomingBuffer.array(), 0, incomingBuffer.readableBytes());
-            return protonMessage;
-        } finally {
-            incomingBuffer.clear();
+        if (offset < encoded.length) {
+            encoded = Arrays.copyOf(encoded, offset);
         }
+
+        return encoded;
     }
 
     public void preCommit() {
@@ -16,21 +16,26 @@
  */
 package org.apache.qpid.jms.provider.amqp;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
 
 import javax.jms.JMSException;
 
+import org.apache.qpid.jms.exceptions.JmsSendTimedOutException;
 import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
 import org.apache.qpid.jms.message.facade.JmsMessageFacade;
 import org.apache.qpid.jms.meta.JmsProducerInfo;
 import org.apache.qpid.jms.provider.AsyncResult;
 import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageFacade;
 import org.apache.qpid.jms.util.IOExceptionSupport;
+import org.apache.qpid.jms.util.SendWindow;
 import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.messaging.Modified;
@@ -42,7 +47,6 @@ import org.apache.qpid.proton.amqp.transport.DeliveryState;
 import org.apache.qpid.proton.amqp.transport.ErrorCondition;
 import org.apache.qpid.proton.engine.Delivery;
 import org.apache.qpid.proton.engine.Sender;
-import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,8 +63,9 @@ public class AmqpFixedProducer extends AmqpProducer {
     private final AmqpTransferTagGenerator tagGenerator = new AmqpTransferTagGenerator(true);
     private final Set<Delivery> pending = new LinkedHashSet<Delivery>();
     private final LinkedList<PendingSend> pendingSends = new LinkedList<PendingSend>();
-    private byte[] encodeBuffer = new byte[1024 * 8];
+    private final ByteBuf encodeBuffer = Unpooled.buffer(1024 * 8);
     private boolean presettle = false;
+    private ScheduledFuture<?> heldSendTimeoutTask;
 
     public AmqpFixedProducer(AmqpSession session, JmsProducerInfo info) {
         super(session, info);
@@ -83,23 +88,25 @@ public class AmqpFixedProducer extends AmqpProducer {
 
     @Override
     public boolean send(JmsOutboundMessageDispatch envelope, AsyncResult request) throws IOException, JMSException {
-        // TODO - Handle the case where remote has no credit which means we can't send to it.
-        //        We need to hold the send until remote credit becomes available but we should
-        //        also have a send timeout option and filter timed out sends.
+        PendingSend send = new PendingSend(envelope, request);
+
         if (getEndpoint().getCredit() <= 0) {
             LOG.trace("Holding Message send until credit is available.");
             // Once a message goes into a held mode we no longer can send it async, so
             // we clear the async flag if set to avoid the sender never getting notified.
             envelope.setSendAsync(false);
-            this.pendingSends.addLast(new PendingSend(envelope, request));
+            this.pendingSends.addLast(send);
+            scheduleHeldSendTimeout();
             return false;
         } else {
-            doSend(envelope, request);
+            doSend(send);
             return true;
         }
     }
 
-    private void doSend(JmsOutboundMessageDispatch envelope, AsyncResult request) throws IOException, JMSException {
+    private void doSend(PendingSend send) throws IOException, JMSException {
+        JmsOutboundMessageDispatch envelope = send.envelope;
+        AsyncResult request = send.request;
         JmsMessageFacade facade = envelope.getMessage().getFacade();
 
         LOG.trace("Producer sending message: {}", envelope);
@@ -113,7 +120,7 @@ public class AmqpFixedProducer extends AmqpProducer {
             delivery = getEndpoint().delivery(tag, 0, tag.length);
         }
 
-        delivery.setContext(request);
+        delivery.setContext(send);
 
         if (session.isTransacted()) {
             Binary amqpTxId = session.getTransactionContext().getAmqpTransactionId();
@@ -123,11 +130,13 @@ public class AmqpFixedProducer extends AmqpProducer {
         }
 
         AmqpJmsMessageFacade amqpMessageFacade = (AmqpJmsMessageFacade) facade;
-        encodeAndSend(amqpMessageFacade.getAmqpMessage(), delivery);
+        int encodedSize = encodeAndSend(amqpMessageFacade, delivery);
 
         if (presettle) {
             delivery.settle();
+            send.releasePermit();
         } else {
+            send.addBytes(encodedSize);
             pending.add(delivery);
             getEndpoint().advance();
         }
@@ -137,33 +146,86 @@ public class AmqpFixedProducer extends AmqpProducer {
         }
     }
 
-    private void encodeAndSend(Message message, Delivery delivery) throws IOException {
+    private int encodeAndSend(AmqpJmsMessageFacade facade, Delivery delivery) throws IOException {
+        ByteBuf encoded = facade.takeEncodedForSend();
 
-        int encodedSize;
-        while (true) {
-            try {
-                encodedSize = message.encode(encodeBuffer, 0, encodeBuffer.length);
-                break;
-            } catch (java.nio.BufferOverflowException e) {
-                encodeBuffer = new byte[encodeBuffer.length * 2];
+        if (encoded == null) {
+            // Normally the message was encoded by the thread that sent it, a send that is
+            // repeated after failover finds the bytes taken and encodes the message again.
+            // The buffer grows as needed while encoding so no retry on overflow is required.
+            encodeBuffer.clear();
+            facade.encodeMessage(encodeBuffer);
+            encoded = encodeBuffer;
+        }
+
+        // A message whose cached sections were re-used is made up of several heap buffers,
+        // each is written to the link in turn so none of them are copied here.
+        for (ByteBuffer section : encoded.nioBuffers()) {
+            if (!section.hasRemaining()) {
+                continue;
             }
+
+            writeToLink(section.array(), section.arrayOffset() + section.position(), section.remaining());
         }
 
+        return encoded.readableBytes();
+    }
+
+    private void writeToLink(byte[] encoded, int offset, int length) {
         int sentSoFar = 0;
 
-        while (true) {
-            int sent = getEndpoint().send(encodeBuffer, sentSoFar, encodedSize - sentSoFar);
+        while (sentSoFar < length) {
+            int sent = getEndpoint().send(encoded, offset + sentSoFar, length - sentSoFar);
             if (sent > 0) {
                 sentSoFar += sent;
-                if ((encodedSize - sentSoFar) == 0) {
-                    break;
-                }
             } else {
                 LOG.warn("{} failed to send any data from current Message.", this);
             }
         }
     }
 
+    /*
+     * Held sends are queued in the order they arrived and all wait the same time, so only
+     * the oldest needs checking and the sweep is armed for the time it would expire.
+     */
+    private void scheduleHeldSendTimeout() {
+        final long sendTimeout = connection.getProvider().getSendTimeout();
+        if (heldSendTimeoutTask != null || pendingSends.isEmpty() || sendTimeout < 0) {
+            return;
+        }
+
+        long delay = Math.max(0, pendingSends.peek().heldSince + sendTimeout - System.currentTimeMillis());
+        heldSendTimeoutTask = getSession().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                heldSendTimeoutTask = null;
+                long now = System.currentTimeMillis();
+                while (!pendingSends.isEmpty() && pendingSends.peek().heldSince + sendTimeout <= now) {
+                    PendingSend held = pendingSends.pop();
+                    LOG.trace("{} failing held send after {} ms without credit", AmqpFixedProducer.this, sendTimeout);
+                    held.releasePermit();
+                    held.request.onFailure(new JmsSendTimedOutException(
+                        "Timed out waiting for credit to send Message: " + held.envelope.getDispatchId()));
+                }
+
+                if (pendingSends.isEmpty() && isAwaitingClose()) {
+                    AmqpFixedProducer.super.close(closeRequest);
+                    session.getProvider().pumpToProtonTransport();
+                } else {
+                    scheduleHeldSendTimeout();
+                }
+            }
+        }, delay);
+    }
+
+    private void cancelHeldSendTimeout() {
+        if (heldSendTimeoutTask != null && pendingSends.isEmpty()) {
+            heldSendTimeoutTask.cancel(false);
+            heldSendTimeoutTask = null;
+        }
+    }
+
     @Override
     public void processFlowUpdates(AmqpProvider provider) throws IOException {
         if (!pendingSends.isEmpty() && getEndpoint().getCredit() > 0) {
@@ -171,11 +233,13 @@ public class AmqpFixedProducer extends AmqpProducer {
                 LOG.trace("Dispatching previously held send");
                 PendingSend held = pendingSends.pop();
                 try {
-                    doSend(held.envelope, held.request);
+                    doSend(held);
                 } catch (JMSException e) {
                     throw IOExceptionSupport.create(e);
                 }
             }
+
+            cancelHeldSendTimeout();
         }
 
         // Once the pending sends queue is drained we can propagate the close request.
@@ -187,15 +251,11 @@ public class AmqpFixedProducer extends AmqpProducer {
     }
 
     @Override
-    public void processDeliveryUpdates(AmqpProvider provider) throws IOException {
-        List<Delivery> toRemove = new ArrayList<Delivery>();
-
-        for (Delivery delivery : pending) {
-            DeliveryState state = delivery.getRemoteState();
-            if (state == null) {
-                continue;
-            }
-
+    public void processDeliveryUpdates(AmqpProvider provider, Delivery delivery) throws IOException {
+        // Proton signals each delivery whose remote state changed, so only that one needs
+        // to be looked at rather than walking every in-flight send for each update.
+        DeliveryState state = delivery.getRemoteState();
+        if (state != null && pending.remove(delivery)) {
             Outcome outcome = null;
             if (state instanceof TransactionalState) {
                 LOG.trace("State of delivery is Transactional, retrieving outcome: {}", state);
@@ -207,9 +267,13 @@ public class AmqpFixedProducer extends AmqpProducer {
                 outcome = null;
             }
 
-            AsyncResult request = (AsyncResult) delivery.getContext();
+            PendingSend send = (PendingSend) delivery.getContext();
+            AsyncResult request = send.request;
             Exception deliveryError = null;
 
+            // The outcome is known so the send no longer counts against its window.
+            send.releasePermit();
+
             if (outcome instanceof Accepted) {
                 LOG.trace("Outcome of delivery was accepted: {}", delivery);
                 if (request != null && !request.isComplete()) {
@@ -240,13 +304,10 @@ public class AmqpFixedProducer extends AmqpProducer {
             }
 
             tagGenerator.returnTag(delivery.getTag());
-            toRemove.add(delivery);
             delivery.settle();
         }
 
-        pending.removeAll(toRemove);
-
-        super.processDeliveryUpdates(provider);
+        super.processDeliveryUpdates(provider, delivery);
     }
 
     public AmqpSession getSession() {
@@ -273,15 +334,34 @@ public class AmqpFixedProducer extends AmqpProducer {
         return "AmqpFixedProducer { " + getProducerId() + " }";
     }
 
+    /*
+     * A send that is held for credit or awaiting its outcome, in the latter case it is
+     * the context of the send's Delivery.
+     */
     private static class PendingSend {
 
-        public JmsOutboundMessageDispatch envelope;
-        public AsyncResult request;
+        public final JmsOutboundMessageDispatch envelope;
+        public final AsyncResult request;
+        public final long heldSince = System.currentTimeMillis();
 
         public PendingSend(JmsOutboundMessageDispatch envelope, AsyncResult request) {
             this.envelope = envelope;
             this.request = request;
         }
+
+        public void addBytes(int encodedSize) {
+            SendWindow.Permit permit = envelope.getSendPermit();
+            if (permit != null) {
+                permit.addBytes(encodedSize);
+            }
+        }
+
+        public void releasePermit() {
+            SendWindow.Permit permit = envelope.getSendPermit();
+            if (permit != null) {
+                permit.release();
+            }
+        }
     }
 
     @Override
@@ -296,10 +376,11 @@ public class AmqpFixedProducer extends AmqpProducer {
 
         for (Delivery delivery : pending) {
             try {
-                AsyncResult request = (AsyncResult) delivery.getContext();
+                PendingSend send = (PendingSend) delivery.getContext();
+                send.releasePermit();
 
-                if (request != null && !request.isComplete()) {
-                    request.onFailure(ex);
+                if (send.request != null && !send.request.isComplete()) {
+                    send.request.onFailure(ex);
                 }
 
                 delivery.settle();
@@ -310,5 +391,14 @@ public class AmqpFixedProducer extends AmqpProducer {
         }
 
         pending.clear();
+
+        // Sends held for credit can no longer be made on this link either.
+        while (!pendingSends.isEmpty()) {
+            PendingSend held = pendingSends.pop();
+            held.releasePermit();
+            held.request.onFailure(ex);
+        }
+
+        cancelHeldSendTimeout();
     }
 }
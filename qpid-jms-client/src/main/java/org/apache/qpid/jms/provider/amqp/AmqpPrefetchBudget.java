@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.amqp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks the encoded bytes of the messages that have arrived for the consumers of a
+ * connection and not yet been consumed from their prefetch buffers, along with the link
+ * credit the consumers have outstanding.
+ *
+ * A consumer charges the budget for each message that arrives and credits it back once
+ * the message is consumed or dropped, and reserves the link credit it grants until that
+ * credit is used or withdrawn.  Each credit is counted as the largest message seen so far,
+ * so the credit granted is sized to what remains of the limit and the bytes buffered once
+ * it is used stay within the limit as long as messages are no larger than those already
+ * seen.  Until a message has been seen, and whenever nothing at all is outstanding, a
+ * single credit may be granted so that consumers can make progress even when a message
+ * is larger than the limit.
+ *
+ * A consumer that cannot grant all the credit it wants waits on the budget and is given
+ * the chance to grant credit again, in the order they started waiting, once consumption
+ * or the use of credit frees up room.
+ *
+ * Instances are used only from the provider thread.
+ */
+public class AmqpPrefetchBudget {
+
+    private final long limit;
+    private final Set<AmqpConsumer> waiting = new LinkedHashSet<AmqpConsumer>();
+    private long used;
+    private long credit;
+    private long messageSize;
+
+    /**
+     * @param limit
+     *        the number of encoded message bytes the connection's consumers may buffer.
+     */
+    public AmqpPrefetchBudget(long limit) {
+        this.limit = limit;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the encoded bytes of the messages currently buffered.
+     */
+    public long getUsed() {
+        return used;
+    }
+
+    /**
+     * @return the link credit currently reserved by the connection's consumers.
+     */
+    public long getCredit() {
+        return credit;
+    }
+
+    /**
+     * @return the encoded bytes the buffered messages and outstanding credit may come to.
+     */
+    public long getOutstanding() {
+        return used + credit * getMessageSize();
+    }
+
+    /**
+     * @return true if no further link credit should be granted.
+     */
+    public boolean isExhausted() {
+        return getGrantable(1) == 0;
+    }
+
+    /**
+     * Returns how much of the wanted credit may be granted without the buffered messages
+     * growing past the limit.
+     *
+     * @param wanted
+     *        the credit a consumer would like to grant.
+     *
+     * @return the credit that may be granted, from zero up to the wanted credit.
+     */
+    public int getGrantable(int wanted) {
+        long grantable = Math.max(0, limit - getOutstanding()) / getMessageSize();
+        if (grantable == 0 && used == 0 && credit == 0) {
+            grantable = 1;
+        }
+
+        return (int) Math.min(wanted, grantable);
+    }
+
+    /**
+     * Charges the budget for a message that has arrived.
+     *
+     * @param bytes
+     *        the encoded size of the message.
+     */
+    public void charge(long bytes) {
+        used += bytes;
+        messageSize = Math.max(messageSize, bytes);
+    }
+
+    /**
+     * Credits the budget for buffered messages that are gone, waking any waiting consumers
+     * should there now be room for more credit.
+     *
+     * @param bytes
+     *        the encoded size of the messages.
+     */
+    public void release(long bytes) {
+        used = Math.max(0, used - bytes);
+        wakeWaiting();
+    }
+
+    /**
+     * Adjusts the link credit reserved by a consumer, waking any waiting consumers once
+     * credit that was used or withdrawn frees up room.
+     *
+     * @param delta
+     *        the credit granted, or if negative the credit used or withdrawn.
+     */
+    public void reserve(long delta) {
+        credit = Math.max(0, credit + delta);
+        if (delta < 0) {
+            wakeWaiting();
+        }
+    }
+
+    /**
+     * Registers a consumer that withheld credit because the budget was spent.
+     */
+    public void await(AmqpConsumer consumer) {
+        waiting.add(consumer);
+    }
+
+    /**
+     * Removes a consumer that no longer needs to be told when the budget frees up.
+     */
+    public void remove(AmqpConsumer consumer) {
+        waiting.remove(consumer);
+    }
+
+    @Override
+    public String toString() {
+        return "AmqpPrefetchBudget { used = " + used + ", credit = " + credit + ", limit = " + limit +
+               ", waiting = " + waiting.size() + " }";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private long getMessageSize() {
+        // Until a message has been seen any one credit may use all of the limit.
+        return Math.max(1, messageSize > 0 ? messageSize : limit);
+    }
+
+    private void wakeWaiting() {
+        if (!waiting.isEmpty() && !isExhausted()) {
+            // A woken consumer that finds the budget spent again starts waiting anew.
+            List<AmqpConsumer> woken = new ArrayList<AmqpConsumer>(waiting);
+            waiting.clear();
+            for (AmqpConsumer consumer : woken) {
+                consumer.onPrefetchBudgetAvailable();
+            }
+        }
+    }
+}
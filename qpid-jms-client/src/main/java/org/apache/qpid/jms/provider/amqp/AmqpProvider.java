@@ -25,7 +25,12 @@ import java.lang.reflect.Field;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
@@ -99,6 +104,7 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
     // NOTE: Limit default channel max to signed short range to deal with
     //       brokers that don't currently handle the unsigned range well.
     private static final int DEFAULT_CHANNEL_MAX = 32767;
+    private static final int DEFAULT_COALESCE_WRITES_THRESHOLD = 64 * 1024;
     private static final AtomicInteger PROVIDER_SEQUENCE = new AtomicInteger();
     private static final NoOpAsyncResult NOOP_REQUEST = new NoOpAsyncResult();
 
@@ -122,10 +128,14 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
     private int idleTimeout = 240000;
     private long sessionOutoingWindow = -1; //Use proton default
     private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private boolean coalesceWrites;
+    private int coalesceWritesThreshold = DEFAULT_COALESCE_WRITES_THRESHOLD;
+    private boolean useEventLoop;
 
     private final URI remoteURI;
     private final AtomicBoolean closed = new AtomicBoolean();
-    private final ScheduledExecutorService serializer;
+    private volatile ScheduledExecutorService serializer;
+    private volatile boolean serializedOnEventLoop;
     private final Transport protonTransport = Transport.Factory.create();
     private final Collector protonCollector = new CollectorImpl();
     private final Connection protonConnection = Connection.Factory.create();
@@ -133,6 +143,14 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
     private AsyncResult connectionOpenRequest;
     private ScheduledFuture<?> nextIdleTimeoutCheck;
 
+    private final Queue<PendingAcknowledge> pendingAcks = new ConcurrentLinkedQueue<PendingAcknowledge>();
+    private final AtomicBoolean ackProcessingScheduled = new AtomicBoolean();
+    private final Runnable processAcksTask = new ProcessPendingAcksTask();
+
+    private final Runnable flushTask = new FlushPendingWritesTask();
+    private boolean flushScheduled;
+    private int unflushedBytes;
+
     /**
      * Create a new instance of an AmqpProvider bonded to the given remote URI.
      *
@@ -168,6 +186,10 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
         }
         transport.setTransportListener(this);
         transport.connect();
+
+        if (isUseEventLoop() && transport.getEventLoop() != null) {
+            moveToEventLoop(transport.getEventLoop());
+        }
     }
 
     @Override
@@ -239,7 +261,10 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
                     }
                 }
 
-                serializer.shutdown();
+                // The event loop belongs to the transport which shuts it down as it closes.
+                if (!serializedOnEventLoop) {
+                    serializer.shutdown();
+                }
             }
         }
     }
@@ -471,15 +496,7 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
                 try {
                     checkClosed();
 
-                    JmsProducerId producerId = envelope.getProducerId();
-                    AmqpProducer producer = null;
-
-                    if (producerId.getProviderHint() instanceof AmqpFixedProducer) {
-                        producer = (AmqpFixedProducer) producerId.getProviderHint();
-                    } else {
-                        AmqpSession session = connection.getSession(producerId.getParentId());
-                        producer = session.getProducer(producerId);
-                    }
+                    AmqpProducer producer = getProducer(envelope.getProducerId());
 
                     boolean couldSend = producer.send(envelope, request);
                     pumpToProtonTransport(request);
@@ -494,27 +511,52 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
     }
 
     @Override
-    public void acknowledge(final JmsSessionId sessionId, final ACK_TYPE ackType, final AsyncResult request) throws IOException {
+    public void send(final List<JmsOutboundMessageDispatch> envelopes, final List<? extends AsyncResult> requests) throws IOException {
         checkClosed();
         serializer.execute(new Runnable() {
 
             @Override
             public void run() {
-                try {
-                    checkClosed();
-                    AmqpSession amqpSession = connection.getSession(sessionId);
-                    amqpSession.acknowledge(ackType);
-                    pumpToProtonTransport(request);
-                    request.onSuccess();
-                } catch (Exception error) {
-                    request.onFailure(error);
+                List<AsyncResult> completeOnWrite = new ArrayList<AsyncResult>(requests.size());
+
+                for (int i = 0; i < envelopes.size(); ++i) {
+                    JmsOutboundMessageDispatch envelope = envelopes.get(i);
+                    AsyncResult request = requests.get(i);
+
+                    try {
+                        checkClosed();
+
+                        AmqpProducer producer = getProducer(envelope.getProducerId());
+                        if (producer.send(envelope, request) && envelope.isSendAsync()) {
+                            completeOnWrite.add(request);
+                        }
+                    } catch (Exception error) {
+                        request.onFailure(error);
+                    }
+                }
+
+                // All transfers in the batch are written out together, any failure to write
+                // fails the connection and with it every request still outstanding.
+                if (pumpToProtonTransport()) {
+                    for (AsyncResult request : completeOnWrite) {
+                        request.onSuccess();
+                    }
                 }
             }
         });
     }
 
+    private AmqpProducer getProducer(JmsProducerId producerId) {
+        if (producerId.getProviderHint() instanceof AmqpFixedProducer) {
+            return (AmqpFixedProducer) producerId.getProviderHint();
+        } else {
+            AmqpSession session = connection.getSession(producerId.getParentId());
+            return session.getProducer(producerId);
+        }
+    }
+
     @Override
-    public void acknowledge(final JmsInboundMessageDispatch envelope, final ACK_TYPE ackType, final AsyncResult request) throws IOException {
+    public void acknowledge(final JmsSessionId sessionId, final ACK_TYPE ackType, final AsyncResult request) throws IOException {
         checkClosed();
         serializer.execute(new Runnable() {
 
@@ -522,26 +564,10 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
             public void run() {
                 try {
                     checkClosed();
-
-                    JmsConsumerId consumerId = envelope.getConsumerId();
-                    AmqpConsumer consumer = null;
-
-                    if (consumerId.getProviderHint() instanceof AmqpConsumer) {
-                        consumer = (AmqpConsumer) consumerId.getProviderHint();
-                    } else {
-                        AmqpSession session = connection.getSession(consumerId.getParentId());
-                        consumer = session.getConsumer(consumerId);
-                    }
-
-                    consumer.acknowledge(envelope, ackType);
-
-                    if (consumer.getSession().isAsyncAck()) {
-                        request.onSuccess();
-                        pumpToProtonTransport(request);
-                    } else {
-                        pumpToProtonTransport(request);
-                        request.onSuccess();
-                    }
+                    AmqpSession amqpSession = connection.getSession(sessionId);
+                    amqpSession.acknowledge(ackType);
+                    pumpToProtonTransport(request);
+                    request.onSuccess();
                 } catch (Exception error) {
                     request.onFailure(error);
                 }
@@ -549,6 +575,15 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
         });
     }
 
+    @Override
+    public void acknowledge(final JmsInboundMessageDispatch envelope, final ACK_TYPE ackType, final AsyncResult request) throws IOException {
+        checkClosed();
+        pendingAcks.add(new PendingAcknowledge(envelope, ackType, request));
+        if (ackProcessingScheduled.compareAndSet(false, true)) {
+            serializer.execute(processAcksTask);
+        }
+    }
+
     @Override
     public void commit(final JmsSessionId sessionId, final AsyncResult request) throws IOException {
         checkClosed();
@@ -673,6 +708,13 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
     @Override
     public void onData(final ByteBuf input) {
 
+        // The transport delivers data on its event loop, when that is also the serializer
+        // the data can be processed right away without handing it to another thread.
+        if (serializedOnEventLoop) {
+            processInput(input);
+            return;
+        }
+
         // We need to retain until the serializer gets around to processing it.
         ReferenceCountUtil.retain(input);
 
@@ -680,30 +722,57 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
 
             @Override
             public void run() {
-                if (isTraceBytes()) {
-                    TRACE_BYTES.info("Received: {}", ByteBufUtil.hexDump(input));
+                try {
+                    processInput(input);
+                } finally {
+                    ReferenceCountUtil.release(input);
                 }
+            }
+        });
+    }
 
-                ByteBuffer source = input.nioBuffer();
+    private void processInput(ByteBuf input) {
+        if (isTraceBytes()) {
+            TRACE_BYTES.info("Received: {}", ByteBufUtil.hexDump(input));
+        }
 
-                do {
-                    ByteBuffer buffer = protonTransport.getInputBuffer();
-                    int limit = Math.min(buffer.remaining(), source.remaining());
-                    ByteBuffer duplicate = source.duplicate();
-                    duplicate.limit(source.position() + limit);
-                    buffer.put(duplicate);
-                    protonTransport.processInput();
-                    source.position(source.position() + limit);
-                } while (source.hasRemaining());
+        // Feed each of the underlying NIO buffers to proton in turn, this avoids
+        // merging a composite buffer into a new single buffer before the copy into
+        // the proton input buffer and doesn't allocate per chunk.
+        for (ByteBuffer source : input.nioBuffers()) {
+            while (source.hasRemaining()) {
+                ByteBuffer buffer = protonTransport.getInputBuffer();
+                int limit = source.limit();
+                source.limit(source.position() + Math.min(buffer.remaining(), source.remaining()));
+                buffer.put(source);
+                source.limit(limit);
+                protonTransport.processInput();
+            }
+        }
 
-                ReferenceCountUtil.release(input);
+        // Process the state changes from the latest data and then answer back
+        // any pending updates to the Broker.
+        processUpdates();
+        pumpToProtonTransport();
+    }
 
-                // Process the state changes from the latest data and then answer back
-                // any pending updates to the Broker.
-                processUpdates();
-                pumpToProtonTransport();
-            }
-        });
+    /*
+     * Makes the event loop of the transport the serializer of this provider.  This happens
+     * as the connect completes and before anything is written, so the remote has no reason
+     * to send data yet and the dedicated serializer has no work, anything that did find
+     * its way there is handed over to the event loop in the order it was queued.
+     */
+    private void moveToEventLoop(ScheduledExecutorService eventLoop) {
+        ScheduledExecutorService dedicated = serializer;
+
+        serializer = eventLoop;
+        serializedOnEventLoop = true;
+
+        for (Runnable pending : dedicated.shutdownNow()) {
+            eventLoop.execute(pending);
+        }
+
+        LOG.debug("Provider for {} now serialized on the transport event loop", getRemoteURI());
     }
 
     /**
@@ -803,7 +872,7 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
                         break;
                     case DELIVERY:
                         amqpEventSink = (AmqpEventSink) protonEvent.getLink().getContext();
-                        amqpEventSink.processDeliveryUpdates(this);
+                        amqpEventSink.processDeliveryUpdates(this, protonEvent.getDelivery());
                         break;
                     default:
                         break;
@@ -856,12 +925,21 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
                         TRACE_BYTES.info("Sending: {}", ByteBufUtil.hexDump(outbound));
                     }
 
-                    transport.send(outbound);
+                    if (coalesceWrites) {
+                        unflushedBytes += outbound.readableBytes();
+                        transport.write(outbound);
+                    } else {
+                        transport.send(outbound);
+                    }
                     protonTransport.outputConsumed();
                 } else {
                     done = true;
                 }
             }
+
+            if (unflushedBytes > 0) {
+                scheduleFlushOfPendingWrites();
+            }
         } catch (IOException e) {
             fireProviderException(e);
             request.onFailure(e);
@@ -871,6 +949,34 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
         return true;
     }
 
+    /*
+     * When coalescing writes the flush is deferred to a task queued on the serializer
+     * so that all work already queued (e.g. a burst of async sends) is written before
+     * a single flush is performed.  Should the unflushed bytes exceed the threshold, or
+     * the serializer no longer accept new work, the flush happens immediately.
+     */
+    private void scheduleFlushOfPendingWrites() throws IOException {
+        if (unflushedBytes >= coalesceWritesThreshold) {
+            flushPendingWrites();
+        } else if (!flushScheduled) {
+            try {
+                serializer.execute(flushTask);
+                flushScheduled = true;
+            } catch (RejectedExecutionException ree) {
+                flushPendingWrites();
+            }
+        }
+    }
+
+    private void flushPendingWrites() throws IOException {
+        if (unflushedBytes > 0) {
+            unflushedBytes = 0;
+            if (transport.isConnected()) {
+                transport.flush();
+            }
+        }
+    }
+
     void fireConnectionEstablished() {
         // The request onSuccess calls this method
         connectionOpenRequest = null;
@@ -1034,6 +1140,53 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
         this.maxFrameSize = maxFrameSize;
     }
 
+    public boolean isCoalesceWrites() {
+        return coalesceWrites;
+    }
+
+    /**
+     * Sets whether writes to the transport are coalesced.  When enabled the output
+     * of each unit of work is written without being flushed and a single flush is
+     * performed once the work queued at the time of the write has been processed,
+     * or sooner if the unflushed data exceeds the configured threshold.
+     *
+     * @param coalesceWrites true to coalesce writes into fewer flushes.
+     */
+    public void setCoalesceWrites(boolean coalesceWrites) {
+        this.coalesceWrites = coalesceWrites;
+    }
+
+    public int getCoalesceWritesThreshold() {
+        return coalesceWritesThreshold;
+    }
+
+    /**
+     * Sets the number of unflushed bytes (default 64k) at which a flush is forced
+     * when coalescing of writes is enabled.
+     *
+     * @param coalesceWritesThreshold the flush threshold in bytes.
+     */
+    public void setCoalesceWritesThreshold(int coalesceWritesThreshold) {
+        this.coalesceWritesThreshold = coalesceWritesThreshold;
+    }
+
+    public boolean isUseEventLoop() {
+        return useEventLoop;
+    }
+
+    /**
+     * Sets whether the provider does its work on the event loop of the transport rather
+     * than on a thread of its own.  Incoming data is then processed on the thread that read
+     * it and outgoing data written on the thread that sends it, removing the hand off between
+     * threads in each direction, while the timed tasks of the provider are scheduled on the
+     * event loop as well.  The option has no effect for a transport without an event loop.
+     *
+     * @param useEventLoop true to serialize the provider on the transport event loop.
+     */
+    public void setUseEventLoop(boolean useEventLoop) {
+        this.useEventLoop = useEventLoop;
+    }
+
     public long getSessionOutgoingWindow() {
         return sessionOutoingWindow;
     }
@@ -1168,6 +1321,102 @@ public class AmqpProvider implements Provider, TransportListener , AmqpResourceP
         }
     }
 
+    private final class FlushPendingWritesTask implements Runnable {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            try {
+                flushPendingWrites();
+            } catch (IOException e) {
+                fireProviderException(e);
+            }
+        }
+    }
+
+    private static final class PendingAcknowledge {
+
+        private final JmsInboundMessageDispatch envelope;
+        private final ACK_TYPE ackType;
+        private final AsyncResult request;
+
+        public PendingAcknowledge(JmsInboundMessageDispatch envelope, ACK_TYPE ackType, AsyncResult request) {
+            this.envelope = envelope;
+            this.ackType = ackType;
+            this.request = request;
+        }
+    }
+
+    /*
+     * Applies every acknowledgement queued since the task was scheduled and then writes
+     * the resulting dispositions with a single pump of the proton transport.  Requests
+     * for sessions that ack asynchronously are completed as soon as the disposition is
+     * applied, the others once the batch has been written.  Acks queued while the task
+     * is finishing up are picked up here rather than waiting on another task.
+     */
+    private final class ProcessPendingAcksTask implements Runnable, AsyncResult {
+
+        private final List<AsyncResult> awaitingWrite = new ArrayList<AsyncResult>();
+
+        @Override
+        public void run() {
+            do {
+                PendingAcknowledge pending = null;
+                while ((pending = pendingAcks.poll()) != null) {
+                    try {
+                        checkClosed();
+
+                        JmsConsumerId consumerId = pending.envelope.getConsumerId();
+                        AmqpConsumer consumer = null;
+
+                        if (consumerId.getProviderHint() instanceof AmqpConsumer) {
+                            consumer = (AmqpConsumer) consumerId.getProviderHint();
+                        } else {
+                            AmqpSession session = connection.getSession(consumerId.getParentId());
+                            consumer = session.getConsumer(consumerId);
+                        }
+
+                        consumer.acknowledge(pending.envelope, pending.ackType);
+
+                        if (consumer.getSession().isAsyncAck()) {
+                            pending.request.onSuccess();
+                        } else {
+                            awaitingWrite.add(pending.request);
+                        }
+                    } catch (Exception error) {
+                        pending.request.onFailure(error);
+                    }
+                }
+
+                if (pumpToProtonTransport(this)) {
+                    onSuccess();
+                }
+
+                ackProcessingScheduled.set(false);
+            } while (!pendingAcks.isEmpty() && ackProcessingScheduled.compareAndSet(false, true));
+        }
+
+        @Override
+        public void onFailure(Throwable result) {
+            for (AsyncResult request : awaitingWrite) {
+                request.onFailure(result);
+            }
+            awaitingWrite.clear();
+        }
+
+        @Override
+        public void onSuccess() {
+            for (AsyncResult request : awaitingWrite) {
+                request.onSuccess();
+            }
+            awaitingWrite.clear();
+        }
+
+        @Override
+        public boolean isComplete() {
+            return awaitingWrite.isEmpty();
+        }
+    }
+
     Principal getLocalPrincipal() {
         if (transport instanceof SSLTransport) {
             return ((SSLTransport) transport).getLocalPrincipal();
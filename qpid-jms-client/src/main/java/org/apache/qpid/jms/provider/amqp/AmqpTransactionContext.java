@@ -79,7 +79,7 @@ public class AmqpTransactionContext extends AmqpAbstractResource<JmsSessionInfo,
     }
 
     @Override
-    public void processDeliveryUpdates(AmqpProvider provider) throws IOException {
+    public void processDeliveryUpdates(AmqpProvider provider, Delivery delivery) throws IOException {
         try {
             if (pendingDelivery != null && pendingDelivery.remotelySettled()) {
                 DeliveryState state = pendingDelivery.getRemoteState();
@@ -122,7 +122,7 @@ public class AmqpTransactionContext extends AmqpAbstractResource<JmsSessionInfo,
                 }
             }
 
-            super.processDeliveryUpdates(provider);
+            super.processDeliveryUpdates(provider, delivery);
         } catch (Exception e) {
             throw IOExceptionSupport.create(e);
         }
@@ -93,6 +93,7 @@ public class AmqpJmsBytesMessageFacade extends AmqpJmsMessageFacade implements J
             copy.message.setBody(EMPTY_BODY);
         }
 
+        shareEncodedSections(copy);
         return copy;
     }
 
@@ -120,6 +121,7 @@ public class AmqpJmsBytesMessageFacade extends AmqpJmsMessageFacade implements J
         }
 
         message.setBody(EMPTY_BODY);
+        invalidateEncodedSections();
     }
 
     @Override
@@ -147,6 +149,7 @@ public class AmqpJmsBytesMessageFacade extends AmqpJmsMessageFacade implements J
         if (bytesOut == null) {
             bytesOut = new ByteBufOutputStream(Unpooled.buffer());
             message.setBody(EMPTY_BODY);
+            invalidateEncodedSections();
         }
 
         return bytesOut;
@@ -158,6 +161,7 @@ public class AmqpJmsBytesMessageFacade extends AmqpJmsMessageFacade implements J
             ByteBuf writeBuf = bytesOut.buffer();
             Binary body = new Binary(writeBuf.array(), writeBuf.arrayOffset(), writeBuf.readableBytes());
             message.setBody(new Data(body));
+            invalidateEncodedSections();
             try {
                 bytesOut.close();
             } catch (IOException e) {
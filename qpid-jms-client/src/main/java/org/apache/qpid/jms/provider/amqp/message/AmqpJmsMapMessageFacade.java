@@ -96,6 +96,7 @@ public class AmqpJmsMapMessageFacade extends AmqpJmsMessageFacade implements Jms
         AmqpJmsMapMessageFacade copy = new AmqpJmsMapMessageFacade(connection);
         copyInto(copy);
         copy.messageBodyMap.putAll(messageBodyMap);
+        shareEncodedSections(copy);
         return copy;
     }
 
@@ -129,16 +130,19 @@ public class AmqpJmsMapMessageFacade extends AmqpJmsMessageFacade implements Jms
         }
 
         messageBodyMap.put(key, entry);
+        invalidateEncodedSections();
     }
 
     @Override
     public Object remove(String key) {
+        invalidateEncodedSections();
         return messageBodyMap.remove(key);
     }
 
     @Override
     public void clearBody() {
         messageBodyMap.clear();
+        invalidateEncodedSections();
     }
 
     private void initializeEmptyBody() {
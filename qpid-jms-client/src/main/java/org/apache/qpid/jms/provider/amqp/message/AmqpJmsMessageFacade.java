@@ -20,6 +20,9 @@ import static org.apache.qpid.jms.provider.amqp.message.AmqpMessageSupport.JMS_A
 import static org.apache.qpid.jms.provider.amqp.message.AmqpMessageSupport.JMS_MESSAGE;
 import static org.apache.qpid.jms.provider.amqp.message.AmqpMessageSupport.JMS_MSG_TYPE;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
@@ -46,6 +49,10 @@ import org.apache.qpid.proton.amqp.messaging.Footer;
 import org.apache.qpid.proton.amqp.messaging.Header;
 import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
 import org.apache.qpid.proton.amqp.messaging.Properties;
+import org.apache.qpid.proton.codec.AMQPDefinedTypes;
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+import org.apache.qpid.proton.codec.WritableBuffer;
 import org.apache.qpid.proton.message.Message;
 
 /**
@@ -57,6 +64,29 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
     private static final Charset UTF8 = Charset.forName("UTF-8");
     private static final long UINT_MAX = 0xFFFFFFFFL;
 
+    private static final int MAX_SEND_SIZE_HINT = 1024 * 1024;
+    private static final int SEND_SIZE_HEADROOM = 64;
+    private static final int LEADING_SECTIONS_SIZE = 256;
+
+    private static final ThreadLocal<SendSizeHint> TLS_SEND_SIZE_HINT = new ThreadLocal<SendSizeHint>() {
+
+        @Override
+        protected SendSizeHint initialValue() {
+            return new SendSizeHint();
+        }
+    };
+
+    private static final ThreadLocal<EncoderImpl> TLS_ENCODER = new ThreadLocal<EncoderImpl>() {
+
+        @Override
+        protected EncoderImpl initialValue() {
+            DecoderImpl decoder = new DecoderImpl();
+            EncoderImpl encoder = new EncoderImpl(decoder);
+            AMQPDefinedTypes.registerAllTypes(decoder, encoder);
+            return encoder;
+        }
+    };
+
     protected final Message message;
     protected final AmqpConnection connection;
 
@@ -69,6 +99,17 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
 
     private Long syntheticExpiration;
 
+    /**
+     * Holds the encoded application-properties and body sections, shared between this
+     * message and the copies made of it while neither section has been modified.
+     */
+    private EncodedSections encodedSections;
+
+    /**
+     * The complete encoded message, set on the sending thread and read by the provider.
+     */
+    private volatile ByteBuf encodedForSend;
+
     /**
      * Used to record the value of JMS_AMQP_TTL property
      * if it is explicitly set by the application
@@ -108,10 +149,6 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
             messageAnnotationsMap = message.getMessageAnnotations().getValue();
         }
 
-        if (message.getApplicationProperties() != null) {
-            applicationPropertiesMap = message.getApplicationProperties().getValue();
-        }
-
         Long ttl = getTtl();
         Long absoluteExpiryTime = getAbsoluteExpiryTime();
         if (absoluteExpiryTime == null && ttl != null) {
@@ -147,8 +184,9 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
     }
 
     public boolean applicationPropertyExists(String key) throws JMSException {
-        if (applicationPropertiesMap != null) {
-            return applicationPropertiesMap.containsKey(key);
+        Map<String, Object> properties = getApplicationPropertiesMap();
+        if (properties != null) {
+            return properties.containsKey(key);
         }
 
         return false;
@@ -167,8 +205,9 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
     }
 
     public Set<String> getApplicationPropertyNames(Set<String> propertyNames) {
-        if (applicationPropertiesMap != null) {
-            propertyNames.addAll(applicationPropertiesMap.keySet());
+        Map<String, Object> properties = getApplicationPropertiesMap();
+        if (properties != null) {
+            propertyNames.addAll(properties.keySet());
         }
 
         return propertyNames;
@@ -180,8 +219,9 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
     }
 
     public Object getApplicationProperty(String key) throws JMSException {
-        if (applicationPropertiesMap != null) {
-            return applicationPropertiesMap.get(key);
+        Map<String, Object> properties = getApplicationPropertiesMap();
+        if (properties != null) {
+            return properties.get(key);
         }
 
         return null;
@@ -199,6 +239,7 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
     public void setApplicationProperty(String key, Object value) throws JMSException {
         lazyCreateApplicationProperties();
         applicationPropertiesMap.put(key, value);
+        invalidateEncodedSections();
     }
 
     @Override
@@ -240,6 +281,7 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
     @Override
     public void clearBody() {
         message.setBody(null);
+        invalidateEncodedSections();
     }
 
     @Override
@@ -251,6 +293,7 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
     public AmqpJmsMessageFacade copy() throws JMSException {
         AmqpJmsMessageFacade copy = new AmqpJmsMessageFacade(connection);
         copyInto(copy);
+        shareEncodedSections(copy);
         return copy;
     }
 
@@ -320,9 +363,10 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
             targetMsg.setFooter(new Footer(newDeliveryAnnotations));
         }
 
-        if (applicationPropertiesMap != null) {
+        Map<String, Object> properties = getApplicationPropertiesMap();
+        if (properties != null) {
             target.lazyCreateApplicationProperties();
-            target.applicationPropertiesMap.putAll(applicationPropertiesMap);
+            target.applicationPropertiesMap.putAll(properties);
         }
 
         if (messageAnnotationsMap != null) {
@@ -732,6 +776,120 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
         }
     }
 
+    /**
+     * Encodes the AMQP Message wrapped by this Facade into the given buffer.
+     *
+     * The application-properties and body sections are the same for every copy of a
+     * message that is sent more than once, so their encoded form is retained after the
+     * second time they are encoded and re-used from then on.  The remaining sections
+     * are encoded on every call as they change with each send.
+     *
+     * @param buffer
+     *        the buffer to write the encoded message into, it grows as needed.
+     */
+    public void encodeMessage(ByteBuf buffer) {
+        EncoderImpl encoder = TLS_ENCODER.get();
+        encoder.setByteBuffer(new AmqpWritableBuffer(buffer));
+
+        try {
+            encodeLeadingSections(encoder);
+
+            EncodedSections cache = encodedSections;
+            byte[] encoded = cache != null ? cache.encoded : null;
+
+            if (encoded != null) {
+                buffer.writeBytes(encoded);
+            } else {
+                int start = buffer.writerIndex();
+
+                if (message.getApplicationProperties() != null) {
+                    encoder.writeObject(message.getApplicationProperties());
+                }
+                if (message.getBody() != null) {
+                    encoder.writeObject(message.getBody());
+                }
+
+                if (cache != null) {
+                    // Only retain a copy once the sections have been encoded a second
+                    // time, a message that is sent once pays nothing for the cache.
+                    if (cache.encodedOnce) {
+                        encoded = new byte[buffer.writerIndex() - start];
+                        buffer.getBytes(start, encoded);
+                        cache.encoded = encoded;
+                    } else {
+                        cache.encodedOnce = true;
+                    }
+                }
+            }
+
+            if (message.getFooter() != null) {
+                encoder.writeObject(message.getFooter());
+            }
+        } finally {
+            encoder.setByteBuffer((WritableBuffer) null);
+        }
+    }
+
+    /**
+     * Encodes the message on the sending thread so that the provider only has to hand the
+     * encoded bytes to the link, letting producers on many threads encode in parallel.
+     *
+     * When the application-properties and body sections are already cached only the other
+     * sections are encoded and the cached bytes are handed on as they are, otherwise the
+     * message is encoded into a buffer sized from the last message sent by this thread.
+     * The buffer is given to the provider as it is rather than copied, it cannot be kept
+     * for re-use by the thread since the provider reads it on its own thread.
+     */
+    @Override
+    public void prepareForSend() {
+        EncodedSections cache = encodedSections;
+        byte[] cached = cache != null ? cache.encoded : null;
+
+        if (cached == null) {
+            SendSizeHint hint = TLS_SEND_SIZE_HINT.get();
+            ByteBuf buffer = Unpooled.buffer(hint.size);
+            encodeMessage(buffer);
+            // Leave room for the message ID and other properties growing a little.
+            hint.size = Math.min(buffer.readableBytes() + SEND_SIZE_HEADROOM, MAX_SEND_SIZE_HINT);
+            encodedForSend = buffer;
+            return;
+        }
+
+        EncoderImpl encoder = TLS_ENCODER.get();
+        ByteBuf leading = Unpooled.buffer(LEADING_SECTIONS_SIZE);
+        ByteBuf footer = Unpooled.EMPTY_BUFFER;
+
+        try {
+            encoder.setByteBuffer(new AmqpWritableBuffer(leading));
+            encodeLeadingSections(encoder);
+
+            if (message.getFooter() != null) {
+                footer = Unpooled.buffer(LEADING_SECTIONS_SIZE);
+                encoder.setByteBuffer(new AmqpWritableBuffer(footer));
+                encoder.writeObject(message.getFooter());
+            }
+        } finally {
+            encoder.setByteBuffer((WritableBuffer) null);
+        }
+
+        encodedForSend = Unpooled.wrappedBuffer(leading, Unpooled.wrappedBuffer(cached), footer);
+    }
+
+    /**
+     * Hands over the message as encoded by {@link #prepareForSend()}, the facade gives up its
+     * reference so the bytes are not held for as long as the send remains unsettled.
+     *
+     * The returned buffer is heap backed but may be made up of more than one component
+     * when the cached sections of the message were used.
+     *
+     * @return the encoded message, or null if it was not encoded or has already been taken.
+     */
+    public ByteBuf takeEncodedForSend() {
+        ByteBuf encoded = encodedForSend;
+        encodedForSend = null;
+        return encoded;
+    }
+
     /**
      * @return the true AMQP Message instance wrapped by this Facade.
      */
@@ -827,6 +985,7 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
     void clearAllApplicationProperties() {
         applicationPropertiesMap = null;
         message.setApplicationProperties(null);
+        invalidateEncodedSections();
     }
 
     String getToAddress() {
@@ -886,10 +1045,76 @@ public class AmqpJmsMessageFacade implements JmsMessageFacade {
         }
     }
 
+    /**
+     * Shares the holder of the encoded application-properties and body sections of this
+     * message with a copy of it, called once the copy's body has been populated.
+     *
+     * @param target
+     *        the copy of this message whose sections match this message's.
+     */
+    protected void shareEncodedSections(AmqpJmsMessageFacade target) {
+        if (encodedSections == null) {
+            encodedSections = new EncodedSections();
+        }
+
+        target.encodedSections = encodedSections;
+    }
+
+    /**
+     * Called when the application-properties or the body of this message are modified
+     * so that any previously encoded form of those sections is no longer used.
+     */
+    protected void invalidateEncodedSections() {
+        encodedSections = null;
+    }
+
+    /*
+     * Writes the sections that precede the application-properties, these are never cached
+     * since the header, annotations and properties are updated on each send.
+     */
+    private void encodeLeadingSections(EncoderImpl encoder) {
+        if (message.getHeader() != null) {
+            encoder.writeObject(message.getHeader());
+        }
+        if (message.getDeliveryAnnotations() != null) {
+            encoder.writeObject(message.getDeliveryAnnotations());
+        }
+        if (message.getMessageAnnotations() != null) {
+            encoder.writeObject(message.getMessageAnnotations());
+        }
+        if (message.getProperties() != null) {
+            encoder.writeObject(message.getProperties());
+        }
+    }
+
+    /*
+     * The application properties of a received message are only looked up on first
+     * use so that the section is not decoded for messages whose properties are never read.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getApplicationPropertiesMap() {
+        if (applicationPropertiesMap == null && message.getApplicationProperties() != null) {
+            applicationPropertiesMap = message.getApplicationProperties().getValue();
+        }
+
+        return applicationPropertiesMap;
+    }
+
     private void lazyCreateApplicationProperties() {
-        if (applicationPropertiesMap == null) {
+        if (getApplicationPropertiesMap() == null) {
             applicationPropertiesMap = new HashMap<String, Object>();
             message.setApplicationProperties(new ApplicationProperties(applicationPropertiesMap));
         }
     }
+
+    private static class EncodedSections {
+
+        private volatile boolean encodedOnce;
+        private volatile byte[] encoded;
+    }
+
+    private static class SendSizeHint {
+
+        private int size = 1024 * 8;
+    }
 }
@@ -92,6 +92,12 @@ public class AmqpJmsObjectMessageFacade extends AmqpJmsMessageFacade implements
             throw JmsExceptionSupport.create("Failed to copy object value", e);
         }
 
+        // An AMQP typed body holds a reference to the application's object which can
+        // change without the facade knowing, so only serialized bodies are shared.
+        if (!isAmqpTypedEncoding()) {
+            shareEncodedSections(copy);
+        }
+
         return copy;
     }
 
@@ -103,6 +109,7 @@ public class AmqpJmsObjectMessageFacade extends AmqpJmsMessageFacade implements
     @Override
     public void setObject(Serializable value) throws IOException {
         delegate.setObject(value);
+        invalidateEncodedSections();
     }
 
     @Override
@@ -134,6 +141,7 @@ public class AmqpJmsObjectMessageFacade extends AmqpJmsMessageFacade implements
                 newDelegate.setObject(existingObject);
 
                 delegate = newDelegate;
+                invalidateEncodedSections();
             } catch (ClassNotFoundException | IOException e) {
                 throw JmsExceptionSupport.create(e);
             }
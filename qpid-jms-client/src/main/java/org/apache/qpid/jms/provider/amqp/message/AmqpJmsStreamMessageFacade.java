@@ -99,6 +99,7 @@ public class AmqpJmsStreamMessageFacade extends AmqpJmsMessageFacade implements
         AmqpJmsStreamMessageFacade copy = new AmqpJmsStreamMessageFacade(connection);
         copyInto(copy);
         copy.list.addAll(list);
+        shareEncodedSections(copy);
         return copy;
     }
 
@@ -148,6 +149,7 @@ public class AmqpJmsStreamMessageFacade extends AmqpJmsMessageFacade implements
         }
 
         list.add(entry);
+        invalidateEncodedSections();
     }
 
     @Override
@@ -159,6 +161,7 @@ public class AmqpJmsStreamMessageFacade extends AmqpJmsMessageFacade implements
     public void clearBody() {
         list.clear();
         position = 0;
+        invalidateEncodedSections();
     }
 
     private List<Object> initializeEmptyBodyList(boolean useSequenceBody) {
@@ -87,6 +87,7 @@ public class AmqpJmsTextMessageFacade extends AmqpJmsMessageFacade implements Jm
         AmqpJmsTextMessageFacade copy = new AmqpJmsTextMessageFacade(connection);
         copyInto(copy);
         copy.setText(getText());
+        shareEncodedSections(copy);
         return copy;
     }
 
@@ -128,6 +129,7 @@ public class AmqpJmsTextMessageFacade extends AmqpJmsMessageFacade implements Jm
     public void setText(String value) {
         AmqpValue body = new AmqpValue(value);
         getAmqpMessage().setBody(body);
+        invalidateEncodedSections();
     }
 
     @Override
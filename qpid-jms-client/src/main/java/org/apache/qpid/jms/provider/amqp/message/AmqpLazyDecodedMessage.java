@@ -0,0 +1,678 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.amqp.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.DeliveryAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Footer;
+import org.apache.qpid.proton.amqp.messaging.Header;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Properties;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.apache.qpid.proton.codec.AMQPDefinedTypes;
+import org.apache.qpid.proton.codec.DecodeException;
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+import org.apache.qpid.proton.codec.WritableBuffer;
+import org.apache.qpid.proton.message.impl.MessageImpl;
+
+/**
+ * Proton Message implementation that retains the encoded bytes of an incoming
+ * message and only decodes each of its sections the first time it is accessed.
+ *
+ * Decoding only walks the encoded bytes to find where each section begins and
+ * ends, the contents of a section are decoded when the section or one of the
+ * convenience accessors that read from it is first used.  Sections that are never
+ * read are never decoded.  A section that is replaced by a setter is never decoded
+ * from the original bytes.  Sections are assigned exactly as MessageImpl assigns
+ * them, so repeated or out of order sections give the same message as an eager decode.
+ */
+public class AmqpLazyDecodedMessage extends MessageImpl {
+
+    private static final int HEADER = 0;
+    private static final int DELIVERY_ANNOTATIONS = 1;
+    private static final int MESSAGE_ANNOTATIONS = 2;
+    private static final int PROPERTIES = 3;
+    private static final int APPLICATION_PROPERTIES = 4;
+    private static final int BODY = 5;
+    private static final int FOOTER = 6;
+
+    private static final int SECTION_COUNT = 7;
+
+    private static final byte DESCRIBED_TYPE_INDICATOR = 0x00;
+    private static final byte ULONG_0 = 0x44;
+    private static final byte SMALL_ULONG = 0x53;
+    private static final byte ULONG = (byte) 0x80;
+    private static final byte SYM8 = (byte) 0xa3;
+    private static final byte SYM32 = (byte) 0xb3;
+
+    private static final ThreadLocal<DecoderImpl> TLS_DECODER = new ThreadLocal<DecoderImpl>() {
+
+        @Override
+        protected DecoderImpl initialValue() {
+            DecoderImpl decoder = new DecoderImpl();
+            AMQPDefinedTypes.registerAllTypes(decoder, new EncoderImpl(decoder));
+            return decoder;
+        }
+    };
+
+    private byte[] encoded;
+    private final int[] sectionOffsets = new int[SECTION_COUNT];
+    private final int[] sectionLengths = new int[SECTION_COUNT];
+
+    /**
+     * Creates a new empty message, the contents are populated by a call to decode.
+     */
+    public AmqpLazyDecodedMessage() {
+        Arrays.fill(sectionOffsets, -1);
+    }
+
+    //----- Decode and Encode ------------------------------------------------//
+
+    @Override
+    public int decode(byte[] data, int offset, int length) {
+        super.clear();
+        Arrays.fill(sectionOffsets, -1);
+
+        encoded = data;
+
+        int position = offset;
+        int limit = offset + length;
+
+        // The index of the first section slot that can still be filled.  Sections are
+        // assigned the way MessageImpl decodes them, in a single pass in the order the
+        // specification gives, the first section that does not fit that order is taken
+        // as the body and anything after the body other than a footer ends the message.
+        int next = HEADER;
+
+        try {
+            while (position < limit && next < SECTION_COUNT) {
+                int start = position;
+                if (data[position++] != DESCRIBED_TYPE_INDICATOR) {
+                    throw new DecodeException("Message section is not a described type");
+                }
+
+                long descriptor = -1;
+                byte code = data[position++];
+                switch (code) {
+                    case ULONG_0:
+                        descriptor = 0;
+                        break;
+                    case SMALL_ULONG:
+                        descriptor = data[position++] & 0xff;
+                        break;
+                    case ULONG:
+                        descriptor = ByteBuffer.wrap(data, position, 8).getLong();
+                        position += 8;
+                        break;
+                    case SYM8:
+                    case SYM32:
+                        int symbolLength = readSize(data, position, code == SYM32);
+                        position += code == SYM32 ? 4 : 1;
+                        descriptor = getSymbolicDescriptorCode(new String(data, position, symbolLength, StandardCharsets.US_ASCII));
+                        position += symbolLength;
+                        break;
+                    default:
+                        throw new DecodeException("Unexpected message section descriptor constructor: " + code);
+                }
+
+                position = skipEncodedValue(data, position);
+                if (position > limit) {
+                    throw new DecodeException("Message section exceeds the encoded message size");
+                }
+
+                int section = getSectionIndex(descriptor);
+                if (section < 0) {
+                    throw new DecodeException("Unknown message section descriptor: " + descriptor);
+                }
+
+                if (section == FOOTER) {
+                    next = SECTION_COUNT;
+                } else if (section >= next && section != BODY) {
+                    next = section + 1;
+                } else if (next <= BODY) {
+                    section = BODY;
+                    next = FOOTER;
+                } else {
+                    next = SECTION_COUNT;
+                    continue;
+                }
+
+                sectionOffsets[section] = start;
+                sectionLengths[section] = position - start;
+            }
+        } catch (IndexOutOfBoundsException ioobe) {
+            throw new DecodeException("Encoded message is truncated", ioobe);
+        }
+
+        return position - offset;
+    }
+
+    @Override
+    public void decode(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        byte[] data = new byte[length];
+        buffer.get(data);
+        decode(data, 0, length);
+    }
+
+    @Override
+    public int encode(byte[] data, int offset, int length) {
+        decodeAll();
+        return super.encode(data, offset, length);
+    }
+
+    @Override
+    public int encode2(byte[] data, int offset, int length) {
+        decodeAll();
+        return super.encode2(data, offset, length);
+    }
+
+    @Override
+    public int encode(WritableBuffer buffer) {
+        decodeAll();
+        return super.encode(buffer);
+    }
+
+    @Override
+    public Object save() {
+        decodeAll();
+        return super.save();
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(sectionOffsets, -1);
+        encoded = null;
+        super.clear();
+    }
+
+    @Override
+    public String toString() {
+        decodeAll();
+        return super.toString();
+    }
+
+    //----- Section access ---------------------------------------------------//
+
+    @Override
+    public Header getHeader() {
+        decodeSection(HEADER);
+        return super.getHeader();
+    }
+
+    @Override
+    public void setHeader(Header header) {
+        discardSection(HEADER);
+        super.setHeader(header);
+    }
+
+    @Override
+    public DeliveryAnnotations getDeliveryAnnotations() {
+        decodeSection(DELIVERY_ANNOTATIONS);
+        return super.getDeliveryAnnotations();
+    }
+
+    @Override
+    public void setDeliveryAnnotations(DeliveryAnnotations deliveryAnnotations) {
+        discardSection(DELIVERY_ANNOTATIONS);
+        super.setDeliveryAnnotations(deliveryAnnotations);
+    }
+
+    @Override
+    public MessageAnnotations getMessageAnnotations() {
+        decodeSection(MESSAGE_ANNOTATIONS);
+        return super.getMessageAnnotations();
+    }
+
+    @Override
+    public void setMessageAnnotations(MessageAnnotations messageAnnotations) {
+        discardSection(MESSAGE_ANNOTATIONS);
+        super.setMessageAnnotations(messageAnnotations);
+    }
+
+    @Override
+    public Properties getProperties() {
+        decodeSection(PROPERTIES);
+        return super.getProperties();
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+        discardSection(PROPERTIES);
+        super.setProperties(properties);
+    }
+
+    @Override
+    public ApplicationProperties getApplicationProperties() {
+        decodeSection(APPLICATION_PROPERTIES);
+        return super.getApplicationProperties();
+    }
+
+    @Override
+    public void setApplicationProperties(ApplicationProperties applicationProperties) {
+        discardSection(APPLICATION_PROPERTIES);
+        super.setApplicationProperties(applicationProperties);
+    }
+
+    @Override
+    public Section getBody() {
+        decodeSection(BODY);
+        return super.getBody();
+    }
+
+    @Override
+    public void setBody(Section body) {
+        discardSection(BODY);
+        super.setBody(body);
+    }
+
+    @Override
+    public Footer getFooter() {
+        decodeSection(FOOTER);
+        return super.getFooter();
+    }
+
+    @Override
+    public void setFooter(Footer footer) {
+        discardSection(FOOTER);
+        super.setFooter(footer);
+    }
+
+    //----- Header convenience accessors -------------------------------------//
+
+    @Override
+    public boolean isDurable() {
+        decodeSection(HEADER);
+        return super.isDurable();
+    }
+
+    @Override
+    public long getDeliveryCount() {
+        decodeSection(HEADER);
+        return super.getDeliveryCount();
+    }
+
+    @Override
+    public short getPriority() {
+        decodeSection(HEADER);
+        return super.getPriority();
+    }
+
+    @Override
+    public boolean isFirstAcquirer() {
+        decodeSection(HEADER);
+        return super.isFirstAcquirer();
+    }
+
+    @Override
+    public long getTtl() {
+        decodeSection(HEADER);
+        return super.getTtl();
+    }
+
+    @Override
+    public void setDurable(boolean durable) {
+        decodeSection(HEADER);
+        super.setDurable(durable);
+    }
+
+    @Override
+    public void setTtl(long ttl) {
+        decodeSection(HEADER);
+        super.setTtl(ttl);
+    }
+
+    @Override
+    public void setDeliveryCount(long deliveryCount) {
+        decodeSection(HEADER);
+        super.setDeliveryCount(deliveryCount);
+    }
+
+    @Override
+    public void setFirstAcquirer(boolean firstAcquirer) {
+        decodeSection(HEADER);
+        super.setFirstAcquirer(firstAcquirer);
+    }
+
+    @Override
+    public void setPriority(short priority) {
+        decodeSection(HEADER);
+        super.setPriority(priority);
+    }
+
+    //----- Properties convenience accessors ---------------------------------//
+
+    @Override
+    public Object getMessageId() {
+        decodeSection(PROPERTIES);
+        return super.getMessageId();
+    }
+
+    @Override
+    public long getGroupSequence() {
+        decodeSection(PROPERTIES);
+        return super.getGroupSequence();
+    }
+
+    @Override
+    public String getReplyToGroupId() {
+        decodeSection(PROPERTIES);
+        return super.getReplyToGroupId();
+    }
+
+    @Override
+    public long getCreationTime() {
+        decodeSection(PROPERTIES);
+        return super.getCreationTime();
+    }
+
+    @Override
+    public String getAddress() {
+        decodeSection(PROPERTIES);
+        return super.getAddress();
+    }
+
+    @Override
+    public byte[] getUserId() {
+        decodeSection(PROPERTIES);
+        return super.getUserId();
+    }
+
+    @Override
+    public String getReplyTo() {
+        decodeSection(PROPERTIES);
+        return super.getReplyTo();
+    }
+
+    @Override
+    public String getGroupId() {
+        decodeSection(PROPERTIES);
+        return super.getGroupId();
+    }
+
+    @Override
+    public String getContentType() {
+        decodeSection(PROPERTIES);
+        return super.getContentType();
+    }
+
+    @Override
+    public long getExpiryTime() {
+        decodeSection(PROPERTIES);
+        return super.getExpiryTime();
+    }
+
+    @Override
+    public Object getCorrelationId() {
+        decodeSection(PROPERTIES);
+        return super.getCorrelationId();
+    }
+
+    @Override
+    public String getContentEncoding() {
+        decodeSection(PROPERTIES);
+        return super.getContentEncoding();
+    }
+
+    @Override
+    public String getSubject() {
+        decodeSection(PROPERTIES);
+        return super.getSubject();
+    }
+
+    @Override
+    public void setGroupSequence(long groupSequence) {
+        decodeSection(PROPERTIES);
+        super.setGroupSequence(groupSequence);
+    }
+
+    @Override
+    public void setUserId(byte[] userId) {
+        decodeSection(PROPERTIES);
+        super.setUserId(userId);
+    }
+
+    @Override
+    public void setCreationTime(long creationTime) {
+        decodeSection(PROPERTIES);
+        super.setCreationTime(creationTime);
+    }
+
+    @Override
+    public void setSubject(String subject) {
+        decodeSection(PROPERTIES);
+        super.setSubject(subject);
+    }
+
+    @Override
+    public void setGroupId(String groupId) {
+        decodeSection(PROPERTIES);
+        super.setGroupId(groupId);
+    }
+
+    @Override
+    public void setAddress(String to) {
+        decodeSection(PROPERTIES);
+        super.setAddress(to);
+    }
+
+    @Override
+    public void setExpiryTime(long absoluteExpiryTime) {
+        decodeSection(PROPERTIES);
+        super.setExpiryTime(absoluteExpiryTime);
+    }
+
+    @Override
+    public void setReplyToGroupId(String replyToGroupId) {
+        decodeSection(PROPERTIES);
+        super.setReplyToGroupId(replyToGroupId);
+    }
+
+    @Override
+    public void setContentEncoding(String contentEncoding) {
+        decodeSection(PROPERTIES);
+        super.setContentEncoding(contentEncoding);
+    }
+
+    @Override
+    public void setContentType(String contentType) {
+        decodeSection(PROPERTIES);
+        super.setContentType(contentType);
+    }
+
+    @Override
+    public void setReplyTo(String replyTo) {
+        decodeSection(PROPERTIES);
+        super.setReplyTo(replyTo);
+    }
+
+    @Override
+    public void setCorrelationId(Object correlationId) {
+        decodeSection(PROPERTIES);
+        super.setCorrelationId(correlationId);
+    }
+
+    @Override
+    public void setMessageId(Object messageId) {
+        decodeSection(PROPERTIES);
+        super.setMessageId(messageId);
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void decodeAll() {
+        for (int section = 0; section < SECTION_COUNT; ++section) {
+            decodeSection(section);
+        }
+    }
+
+    private void discardSection(int section) {
+        sectionOffsets[section] = -1;
+    }
+
+    private void decodeSection(int section) {
+        int offset = sectionOffsets[section];
+        if (offset < 0) {
+            return;
+        }
+
+        DecoderImpl decoder = TLS_DECODER.get();
+        decoder.setByteBuffer(ByteBuffer.wrap(encoded, offset, sectionLengths[section]));
+        Object value;
+        try {
+            value = decoder.readObject();
+        } finally {
+            decoder.setByteBuffer(null);
+        }
+
+        sectionOffsets[section] = -1;
+
+        switch (section) {
+            case HEADER:
+                super.setHeader((Header) value);
+                break;
+            case DELIVERY_ANNOTATIONS:
+                super.setDeliveryAnnotations((DeliveryAnnotations) value);
+                break;
+            case MESSAGE_ANNOTATIONS:
+                super.setMessageAnnotations((MessageAnnotations) value);
+                break;
+            case PROPERTIES:
+                super.setProperties((Properties) value);
+                break;
+            case APPLICATION_PROPERTIES:
+                super.setApplicationProperties((ApplicationProperties) value);
+                break;
+            case BODY:
+                super.setBody((Section) value);
+                break;
+            case FOOTER:
+                super.setFooter((Footer) value);
+                break;
+        }
+
+        boolean pending = false;
+        for (int sectionOffset : sectionOffsets) {
+            if (sectionOffset >= 0) {
+                pending = true;
+                break;
+            }
+        }
+
+        // Release the encoded bytes once every section has been decoded.
+        if (!pending) {
+            encoded = null;
+        }
+    }
+
+    private static int getSectionIndex(long descriptor) {
+        if (descriptor >= 0x70 && descriptor <= 0x78) {
+            // The three body section types (data, sequence and value) share one slot.
+            if (descriptor <= 0x74) {
+                return (int) (descriptor - 0x70);
+            } else if (descriptor <= 0x77) {
+                return BODY;
+            } else {
+                return FOOTER;
+            }
+        }
+
+        return -1;
+    }
+
+    private static long getSymbolicDescriptorCode(String descriptor) {
+        switch (descriptor) {
+            case "amqp:header:list":
+                return 0x70;
+            case "amqp:delivery-annotations:map":
+                return 0x71;
+            case "amqp:message-annotations:map":
+                return 0x72;
+            case "amqp:properties:list":
+                return 0x73;
+            case "amqp:application-properties:map":
+                return 0x74;
+            case "amqp:data:binary":
+                return 0x75;
+            case "amqp:amqp-sequence:list":
+                return 0x76;
+            case "amqp:amqp-value:*":
+                return 0x77;
+            case "amqp:footer:map":
+                return 0x78;
+            default:
+                return -1;
+        }
+    }
+
+    /*
+     * Returns the position just past the encoded value that starts at the given
+     * position. The size of any AMQP encoded value follows from its constructor:
+     * the upper four bits of the format code give the width of the value or of its
+     * size prefix, and described types are a descriptor value followed by a value.
+     */
+    private static int skipEncodedValue(byte[] data, int position) {
+        byte code = data[position++];
+        if (code == DESCRIBED_TYPE_INDICATOR) {
+            position = skipEncodedValue(data, position);
+            return skipEncodedValue(data, position);
+        }
+
+        switch ((code >> 4) & 0x0f) {
+            case 0x4:
+                return position;
+            case 0x5:
+                return position + 1;
+            case 0x6:
+                return position + 2;
+            case 0x7:
+                return position + 4;
+            case 0x8:
+                return position + 8;
+            case 0x9:
+                return position + 16;
+            case 0xa:
+            case 0xc:
+            case 0xe:
+                return position + 1 + readSize(data, position, false);
+            case 0xb:
+            case 0xd:
+            case 0xf:
+                return position + 4 + readSize(data, position, true);
+            default:
+                throw new DecodeException("Unknown type constructor: " + code);
+        }
+    }
+
+    private static int readSize(byte[] data, int position, boolean wide) {
+        if (wide) {
+            int size = ((data[position] & 0xff) << 24) | ((data[position + 1] & 0xff) << 16) |
+                       ((data[position + 2] & 0xff) << 8) | (data[position + 3] & 0xff);
+            if (size < 0) {
+                throw new DecodeException("Encoded size exceeds the maximum supported: " + (size & 0xFFFFFFFFL));
+            }
+            return size;
+        } else {
+            return data[position] & 0xff;
+        }
+    }
+}
@@ -331,6 +331,12 @@ public class FailoverProvider extends DefaultProviderListener implements Provide
         serializer.execute(pending);
     }
 
+    @Override
+    public void send(List<JmsOutboundMessageDispatch> envelopes, List<? extends AsyncResult> requests) throws IOException, JMSException {
+        checkClosed();
+        serializer.execute(new BatchSendRequest(envelopes, requests));
+    }
+
     @Override
     public void acknowledge(final JmsSessionId sessionId, final ACK_TYPE ackType, AsyncResult request) throws IOException, JMSException {
         checkClosed();
@@ -1021,6 +1027,150 @@ public class FailoverProvider extends DefaultProviderListener implements Provide
         }
     }
 
+    /**
+     * Sends a batch of messages as one task, handing the whole batch to the connected
+     * provider at once.  The outcome of each send is tracked on its own so that should
+     * the connection be recovered part way through the batch only the sends that had not
+     * yet completed are replayed.
+     */
+    protected class BatchSendRequest extends FailoverRequest {
+
+        private final List<JmsOutboundMessageDispatch> envelopes;
+        private final BatchSendResult batch;
+
+        public BatchSendRequest(List<JmsOutboundMessageDispatch> envelopes, List<? extends AsyncResult> requests) {
+            this(envelopes, new BatchSendResult(requests));
+        }
+
+        private BatchSendRequest(List<JmsOutboundMessageDispatch> envelopes, BatchSendResult batch) {
+            super(batch);
+            this.envelopes = envelopes;
+            this.batch = batch;
+        }
+
+        @Override
+        public void doTask() throws Exception {
+            List<JmsOutboundMessageDispatch> remaining = new ArrayList<JmsOutboundMessageDispatch>(envelopes.size());
+            List<AsyncResult> results = new ArrayList<AsyncResult>(envelopes.size());
+
+            for (int i = 0; i < envelopes.size(); ++i) {
+                if (!batch.isComplete(i)) {
+                    remaining.add(envelopes.get(i));
+                    results.add(new BatchEntryResult(i));
+                }
+            }
+
+            if (remaining.isEmpty()) {
+                onSuccess();
+            } else {
+                provider.send(remaining, results);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "send batch -> " + envelopes.size() + " messages";
+        }
+
+        /*
+         * Signals the outcome of the send at one position in the batch, failures that
+         * mean the connection is gone are left for the batch to replay.
+         */
+        private final class BatchEntryResult implements AsyncResult {
+
+            private final int index;
+
+            public BatchEntryResult(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public void onFailure(Throwable result) {
+                if (result instanceof JMSException || closingConnection.get() || closed.get() || failed.get()) {
+                    batch.onFailure(index, result);
+                    if (batch.isComplete()) {
+                        BatchSendRequest.this.onSuccess();
+                    }
+                } else {
+                    BatchSendRequest.this.onFailure(result);
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                batch.onSuccess(index);
+                if (batch.isComplete()) {
+                    BatchSendRequest.this.onSuccess();
+                }
+            }
+
+            @Override
+            public boolean isComplete() {
+                return batch.isComplete(index);
+            }
+        }
+    }
+
+    /*
+     * Holds the requests of the sends in a batch and which of them have completed, the
+     * batch as a whole fails any that have not yet completed.
+     */
+    private static final class BatchSendResult implements AsyncResult {
+
+        private final List<? extends AsyncResult> requests;
+        private final boolean[] completed;
+        private int remaining;
+
+        public BatchSendResult(List<? extends AsyncResult> requests) {
+            this.requests = requests;
+            this.completed = new boolean[requests.size()];
+            this.remaining = requests.size();
+        }
+
+        public void onSuccess(int index) {
+            if (complete(index)) {
+                requests.get(index).onSuccess();
+            }
+        }
+
+        public void onFailure(int index, Throwable result) {
+            if (complete(index)) {
+                requests.get(index).onFailure(result);
+            }
+        }
+
+        public synchronized boolean isComplete(int index) {
+            return completed[index];
+        }
+
+        @Override
+        public void onFailure(Throwable result) {
+            for (int i = 0; i < completed.length; ++i) {
+                onFailure(i, result);
+            }
+        }
+
+        @Override
+        public void onSuccess() {
+            // Each send is signaled as it completes, nothing is left to do once all have.
+        }
+
+        @Override
+        public synchronized boolean isComplete() {
+            return remaining == 0;
+        }
+
+        private synchronized boolean complete(int index) {
+            if (completed[index]) {
+                return false;
+            }
+
+            completed[index] = true;
+            remaining--;
+            return true;
+        }
+    }
+
     /**
      * Captures the initial request to create a JmsConnectionInfo based resources and ensures
      * that if the connection is successfully established that the connection established event
@@ -0,0 +1,588 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.striped;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.JmsDestination;
+
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+import org.apache.qpid.jms.message.JmsMessageFactory;
+import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
+import org.apache.qpid.jms.meta.JmsConnectionInfo;
+import org.apache.qpid.jms.meta.JmsConsumerId;
+import org.apache.qpid.jms.meta.JmsConsumerInfo;
+import org.apache.qpid.jms.meta.JmsProducerId;
+import org.apache.qpid.jms.meta.JmsProducerInfo;
+import org.apache.qpid.jms.meta.JmsResource;
+import org.apache.qpid.jms.meta.JmsSessionId;
+import org.apache.qpid.jms.meta.JmsSessionInfo;
+import org.apache.qpid.jms.meta.JmsTransactionInfo;
+import org.apache.qpid.jms.provider.AsyncResult;
+import org.apache.qpid.jms.provider.Provider;
+import org.apache.qpid.jms.provider.ProviderClosedException;
+import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
+import org.apache.qpid.jms.provider.ProviderListener;
+import org.apache.qpid.jms.provider.WrappedAsyncResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Provider that spreads the sessions of one JMS Connection over several underlying
+ * Providers, each its own connection to the same remote peer, so that the work of a
+ * single busy JMS Connection is not limited to the one thread and socket of a single
+ * Provider.
+ *
+ * Sessions are assigned to the stripes in turn as they are created and everything
+ * belonging to a session, its producers, consumers, transactions and acknowledgements,
+ * follows it to its stripe.  The Connection itself is created on every stripe, each
+ * stripe using a ClientID derived from that of the Connection, while temporary
+ * destinations and unsubscribe requests go to the first stripe.  As a temporary
+ * destination belongs to the connection that created it, the consumers and producers of
+ * a temporary destination also go to the first stripe whichever stripe their session is
+ * on, and the acknowledgements and recovery of their session go to both stripes.  A
+ * transacted session cannot span stripes, its producers stay on its stripe as any
+ * connection may send to a temporary destination, but creating a consumer for one in a
+ * transacted session on another stripe fails.  A Connection with a ClientID set by the
+ * application is not striped, since that ClientID can only be in use on one connection
+ * at a time, and uses the first stripe alone.
+ *
+ * The events of all the stripes are delivered to the one ProviderListener.  The loss of
+ * any stripe is reported as the failure of the whole, so that the Connection, or a
+ * FailoverProvider wrapping this Provider, closes and recovers all stripes as a unit.
+ */
+public class StripedProvider implements Provider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StripedProvider.class);
+
+    public static final int DEFAULT_STRIPES = 2;
+
+    private final URI remoteURI;
+    private final List<Provider> stripes;
+    private final Map<JmsSessionId, Provider> sessionStripes = new ConcurrentHashMap<JmsSessionId, Provider>();
+    private final Set<JmsSessionId> transactedSessions = Collections.newSetFromMap(new ConcurrentHashMap<JmsSessionId, Boolean>());
+    private final Map<Object, JmsSessionId> pinnedResources = new ConcurrentHashMap<Object, JmsSessionId>();
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final AtomicInteger establishedStripes = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    private volatile ProviderListener listener;
+    private volatile JmsConnectionInfo[] stripeInfos;
+    private volatile int activeStripes;
+
+    /**
+     * Creates a new StripedProvider over the given Providers.
+     *
+     * @param remoteURI
+     *        the URI this Provider was created for.
+     * @param stripes
+     *        the Providers to spread the sessions over, all connecting to the same peer.
+     */
+    public StripedProvider(URI remoteURI, List<Provider> stripes) {
+        if (stripes == null || stripes.isEmpty()) {
+            throw new IllegalArgumentException("At least one stripe is required");
+        }
+
+        this.remoteURI = remoteURI;
+        this.stripes = new ArrayList<Provider>(stripes);
+        this.activeStripes = this.stripes.size();
+
+        for (Provider stripe : this.stripes) {
+            stripe.setProviderListener(new StripeListener());
+        }
+    }
+
+    @Override
+    public void connect() throws IOException {
+        checkClosed();
+
+        try {
+            for (Provider stripe : stripes) {
+                stripe.connect();
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void start() throws IOException, IllegalStateException {
+        checkClosed();
+
+        if (listener == null) {
+            throw new IllegalStateException("No ProviderListener registered.");
+        }
+
+        for (Provider stripe : stripes) {
+            stripe.start();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            for (Provider stripe : stripes) {
+                try {
+                    stripe.close();
+                } catch (Throwable error) {
+                    LOG.debug("Error while closing stripe {}: {}", stripe, error.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public URI getRemoteURI() {
+        return remoteURI;
+    }
+
+    @Override
+    public void create(JmsResource resource, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+
+        if (resource instanceof JmsConnectionInfo) {
+            JmsConnectionInfo connectionInfo = (JmsConnectionInfo) resource;
+            stripeInfos = createStripeInfos(connectionInfo);
+
+            AsyncResult aggregate = new AggregateRequest(request, activeStripes);
+            for (int i = 0; i < activeStripes; ++i) {
+                stripes.get(i).create(stripeInfos[i], aggregate);
+            }
+        } else if (resource instanceof JmsSessionInfo) {
+            JmsSessionInfo sessionInfo = (JmsSessionInfo) resource;
+            int index = (nextStripe.getAndIncrement() & Integer.MAX_VALUE) % activeStripes;
+            Provider stripe = stripes.get(index);
+
+            LOG.trace("Session {} assigned to stripe {}", sessionInfo.getId(), index);
+            sessionStripes.put(sessionInfo.getId(), stripe);
+            if (sessionInfo.isTransacted()) {
+                transactedSessions.add(sessionInfo.getId());
+            }
+            stripe.create(resource, request);
+        } else {
+            pinTemporaryDestinationResource(resource);
+            getStripe(resource).create(resource, request);
+        }
+    }
+
+    @Override
+    public void start(JmsResource resource, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+
+        if (resource instanceof JmsConnectionInfo) {
+            JmsConnectionInfo[] infos = getStripeInfos((JmsConnectionInfo) resource);
+            AsyncResult aggregate = new AggregateRequest(request, infos.length);
+            for (int i = 0; i < infos.length; ++i) {
+                stripes.get(i).start(infos[i], aggregate);
+            }
+        } else {
+            getStripe(resource).start(resource, request);
+        }
+    }
+
+    @Override
+    public void stop(JmsResource resource, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+
+        if (resource instanceof JmsConnectionInfo) {
+            JmsConnectionInfo[] infos = getStripeInfos((JmsConnectionInfo) resource);
+            AsyncResult aggregate = new AggregateRequest(request, infos.length);
+            for (int i = 0; i < infos.length; ++i) {
+                stripes.get(i).stop(infos[i], aggregate);
+            }
+        } else {
+            getStripe(resource).stop(resource, request);
+        }
+    }
+
+    @Override
+    public void destroy(JmsResource resource, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+
+        if (resource instanceof JmsConnectionInfo) {
+            JmsConnectionInfo[] infos = getStripeInfos((JmsConnectionInfo) resource);
+            AsyncResult aggregate = new AggregateRequest(request, infos.length);
+            for (int i = 0; i < infos.length; ++i) {
+                stripes.get(i).destroy(infos[i], aggregate);
+            }
+        } else {
+            getStripe(resource).destroy(resource, request);
+
+            if (resource instanceof JmsSessionInfo) {
+                sessionStripes.remove(((JmsSessionInfo) resource).getId());
+                transactedSessions.remove(((JmsSessionInfo) resource).getId());
+            } else if (resource instanceof JmsConsumerInfo) {
+                pinnedResources.remove(((JmsConsumerInfo) resource).getId());
+            } else if (resource instanceof JmsProducerInfo) {
+                pinnedResources.remove(((JmsProducerInfo) resource).getId());
+            }
+        }
+    }
+
+    @Override
+    public void send(JmsOutboundMessageDispatch envelope, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+        getStripe(envelope.getProducerId()).send(envelope, request);
+    }
+
+    @Override
+    public void send(List<JmsOutboundMessageDispatch> envelopes, List<? extends AsyncResult> requests) throws IOException, JMSException {
+        checkClosed();
+        if (!envelopes.isEmpty()) {
+            // A batch always comes from a single producer.
+            getStripe(envelopes.get(0).getProducerId()).send(envelopes, requests);
+        }
+    }
+
+    @Override
+    public void acknowledge(JmsSessionId sessionId, ACK_TYPE ackType, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+        List<Provider> targets = getSessionStripes(sessionId);
+        AsyncResult aggregate = new AggregateRequest(request, targets.size());
+        for (Provider stripe : targets) {
+            stripe.acknowledge(sessionId, ackType, aggregate);
+        }
+    }
+
+    @Override
+    public void acknowledge(JmsInboundMessageDispatch envelope, ACK_TYPE ackType, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+        getStripe(envelope.getConsumerId()).acknowledge(envelope, ackType, request);
+    }
+
+    @Override
+    public void commit(JmsSessionId sessionId, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+        getStripe(sessionId).commit(sessionId, request);
+    }
+
+    @Override
+    public void rollback(JmsSessionId sessionId, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+        getStripe(sessionId).rollback(sessionId, request);
+    }
+
+    @Override
+    public void recover(JmsSessionId sessionId, AsyncResult request) throws IOException {
+        checkClosed();
+        List<Provider> targets = getSessionStripes(sessionId);
+        AsyncResult aggregate = new AggregateRequest(request, targets.size());
+        for (Provider stripe : targets) {
+            stripe.recover(sessionId, aggregate);
+        }
+    }
+
+    @Override
+    public void unsubscribe(String subscription, AsyncResult request) throws IOException, JMSException {
+        checkClosed();
+        stripes.get(0).unsubscribe(subscription, request);
+    }
+
+    @Override
+    public void pull(JmsConsumerId consumerId, long timeout, AsyncResult request) throws IOException {
+        checkClosed();
+        getStripe(consumerId).pull(consumerId, timeout, request);
+    }
+
+    @Override
+    public JmsMessageFactory getMessageFactory() {
+        return stripes.get(0).getMessageFactory();
+    }
+
+    @Override
+    public void setProviderListener(ProviderListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public ProviderListener getProviderListener() {
+        return listener;
+    }
+
+    /**
+     * @return the Providers that this Provider spreads its sessions over.
+     */
+    public List<Provider> getStripes() {
+        return Collections.unmodifiableList(stripes);
+    }
+
+    /**
+     * @return the number of stripes in use, one if the Connection has an explicit ClientID.
+     */
+    public int getActiveStripes() {
+        return activeStripes;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedProvider: " + remoteURI + " over " + activeStripes + " stripes";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void checkClosed() throws ProviderClosedException {
+        if (closed.get()) {
+            throw new ProviderClosedException("This Provider is already closed");
+        }
+    }
+
+    private JmsConnectionInfo[] createStripeInfos(JmsConnectionInfo connectionInfo) {
+        if (connectionInfo.isExplicitClientID() && stripes.size() > 1) {
+            LOG.debug("Connection has an explicit ClientID, using a single stripe");
+            activeStripes = 1;
+            for (int i = 1; i < stripes.size(); ++i) {
+                stripes.get(i).close();
+            }
+        }
+
+        // The first stripe uses the Connection's own info so that anything the remote
+        // tells it, such as destination prefixes, is seen by the Connection.
+        JmsConnectionInfo[] infos = new JmsConnectionInfo[activeStripes];
+        infos[0] = connectionInfo;
+        for (int i = 1; i < activeStripes; ++i) {
+            infos[i] = connectionInfo.copy();
+            infos[i].setClientId(connectionInfo.getClientId() + ":" + i);
+        }
+
+        return infos;
+    }
+
+    private JmsConnectionInfo[] getStripeInfos(JmsConnectionInfo connectionInfo) {
+        JmsConnectionInfo[] infos = stripeInfos;
+        if (infos == null) {
+            infos = new JmsConnectionInfo[] { connectionInfo };
+        }
+
+        return infos;
+    }
+
+    private Provider getStripe(JmsResource resource) {
+        if (resource instanceof JmsSessionInfo) {
+            return getStripe(((JmsSessionInfo) resource).getId());
+        } else if (resource instanceof JmsConsumerInfo) {
+            return getStripe(((JmsConsumerInfo) resource).getId());
+        } else if (resource instanceof JmsProducerInfo) {
+            return getStripe(((JmsProducerInfo) resource).getId());
+        } else if (resource instanceof JmsTransactionInfo) {
+            return getStripe(((JmsTransactionInfo) resource).getParentId());
+        }
+
+        // Temporary destinations belong to the Connection and live on the first stripe.
+        return stripes.get(0);
+    }
+
+    private Provider getStripe(JmsConsumerId consumerId) {
+        if (pinnedResources.containsKey(consumerId)) {
+            return stripes.get(0);
+        }
+
+        return getStripe(consumerId.getParentId());
+    }
+
+    private Provider getStripe(JmsProducerId producerId) {
+        if (pinnedResources.containsKey(producerId)) {
+            return stripes.get(0);
+        }
+
+        return getStripe(producerId.getParentId());
+    }
+
+    /*
+     * The stripes holding resources of the session, its own and the first stripe if any
+     * of its consumers or producers were pinned there.
+     */
+    private List<Provider> getSessionStripes(JmsSessionId sessionId) {
+        Provider stripe = getStripe(sessionId);
+        if (stripe != stripes.get(0) && pinnedResources.containsValue(sessionId)) {
+            List<Provider> targets = new ArrayList<Provider>(2);
+            targets.add(stripe);
+            targets.add(stripes.get(0));
+            return targets;
+        }
+
+        return Collections.singletonList(stripe);
+    }
+
+    /*
+     * Consumers and producers of a temporary destination go to the first stripe, where the
+     * destination was created, when their session is on another one.  The producers of a
+     * transacted session stay with it so that their sends remain part of its transactions.
+     */
+    private void pinTemporaryDestinationResource(JmsResource resource) throws JMSException {
+        Object id = null;
+        JmsSessionId sessionId = null;
+        JmsDestination destination = null;
+
+        if (resource instanceof JmsConsumerInfo) {
+            JmsConsumerInfo consumerInfo = (JmsConsumerInfo) resource;
+            id = consumerInfo.getId();
+            sessionId = consumerInfo.getParentId();
+            destination = consumerInfo.getDestination();
+        } else if (resource instanceof JmsProducerInfo) {
+            JmsProducerInfo producerInfo = (JmsProducerInfo) resource;
+            id = producerInfo.getId();
+            sessionId = producerInfo.getParentId();
+            destination = producerInfo.getDestination();
+        }
+
+        if (destination == null || !destination.isTemporary() || getStripe(sessionId) == stripes.get(0)) {
+            return;
+        }
+
+        if (transactedSessions.contains(sessionId)) {
+            if (resource instanceof JmsProducerInfo) {
+                return;
+            }
+
+            throw new javax.jms.IllegalStateException(
+                "A transacted session cannot consume from a temporary destination created on another stripe");
+        }
+
+        LOG.trace("{} uses a temporary destination, assigned to the first stripe", id);
+        pinnedResources.put(id, sessionId);
+    }
+
+    private Provider getStripe(JmsSessionId sessionId) {
+        Provider stripe = sessionId != null ? sessionStripes.get(sessionId) : null;
+        if (stripe == null) {
+            stripe = stripes.get(0);
+        }
+
+        return stripe;
+    }
+
+    /*
+     * Completes the original request once every stripe has succeeded, or fails it on the
+     * first stripe to fail.
+     */
+    private static final class AggregateRequest extends WrappedAsyncResult {
+
+        private final AtomicInteger remaining;
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        public AggregateRequest(AsyncResult request, int count) {
+            super(request);
+            this.remaining = new AtomicInteger(count);
+        }
+
+        @Override
+        public void onSuccess() {
+            if (remaining.decrementAndGet() == 0 && !failed.get()) {
+                super.onSuccess();
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable result) {
+            if (failed.compareAndSet(false, true)) {
+                super.onFailure(result);
+            }
+        }
+    }
+
+    /*
+     * Passes the events of a single stripe on to the listener of this Provider.
+     */
+    private final class StripeListener implements ProviderListener {
+
+        @Override
+        public void onInboundMessage(JmsInboundMessageDispatch envelope) {
+            ProviderListener target = listener;
+            if (target != null) {
+                target.onInboundMessage(envelope);
+            }
+        }
+
+        @Override
+        public void onConnectionInterrupted(URI remoteURI) {
+            ProviderListener target = listener;
+            if (target != null) {
+                target.onConnectionInterrupted(StripedProvider.this.remoteURI);
+            }
+        }
+
+        @Override
+        public void onConnectionRecovery(Provider provider) throws Exception {
+            ProviderListener target = listener;
+            if (target != null) {
+                target.onConnectionRecovery(StripedProvider.this);
+            }
+        }
+
+        @Override
+        public void onConnectionRecovered(Provider provider) throws Exception {
+            ProviderListener target = listener;
+            if (target != null) {
+                target.onConnectionRecovered(StripedProvider.this);
+            }
+        }
+
+        @Override
+        public void onConnectionRestored(URI remoteURI) {
+            ProviderListener target = listener;
+            if (target != null) {
+                target.onConnectionRestored(StripedProvider.this.remoteURI);
+            }
+        }
+
+        @Override
+        public void onConnectionEstablished(URI remoteURI) {
+            // The Connection is established once all of its stripes are.
+            ProviderListener target = listener;
+            if (target != null && establishedStripes.incrementAndGet() == activeStripes) {
+                target.onConnectionEstablished(StripedProvider.this.remoteURI);
+            }
+        }
+
+        @Override
+        public void onConnectionFailure(IOException ex) {
+            ProviderListener target = listener;
+            if (target != null && failed.compareAndSet(false, true)) {
+                target.onConnectionFailure(ex);
+            }
+        }
+
+        @Override
+        public void onResourceRemotelyClosed(JmsResource resource, Exception cause) {
+            ProviderListener target = listener;
+            if (target != null) {
+                target.onResourceRemotelyClosed(resource, cause);
+            }
+        }
+
+        @Override
+        public void onProviderException(Exception cause) {
+            ProviderListener target = listener;
+            if (target != null) {
+                target.onProviderException(cause);
+            }
+        }
+    }
+}
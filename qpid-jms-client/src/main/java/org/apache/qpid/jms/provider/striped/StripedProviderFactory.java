@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.striped;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.jms.provider.Provider;
+import org.apache.qpid.jms.provider.ProviderFactory;
+import org.apache.qpid.jms.util.PropertyUtil;
+
+/**
+ * Factory for creating instances of the Striped Provider type.
+ *
+ * A URI such as amqp+striped://host:port?stripes=4 creates a StripedProvider over four
+ * Providers created from amqp://host:port, all other options of the URI being passed on
+ * to each of them.
+ */
+public class StripedProviderFactory extends ProviderFactory {
+
+    /**
+     * Suffix of the URI schemes handled by this factory.
+     */
+    public static final String STRIPED_SCHEME_SUFFIX = "+striped";
+
+    /**
+     * Option giving the number of underlying Providers to create.
+     */
+    public static final String STRIPES_OPTION = "stripes";
+
+    @Override
+    public Provider createProvider(URI remoteURI) throws Exception {
+        String scheme = remoteURI.getScheme();
+        if (scheme == null || !scheme.endsWith(STRIPED_SCHEME_SUFFIX)) {
+            throw new IllegalArgumentException("Not a striped URI: " + remoteURI);
+        }
+
+        Map<String, String> options = PropertyUtil.parseQuery(remoteURI.getRawQuery());
+        int stripeCount = StripedProvider.DEFAULT_STRIPES;
+        String stripesValue = options.remove(STRIPES_OPTION);
+        if (stripesValue != null) {
+            stripeCount = Integer.parseInt(stripesValue);
+        }
+
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("The number of stripes must be at least one, was: " + stripeCount);
+        }
+
+        String childScheme = scheme.substring(0, scheme.length() - STRIPED_SCHEME_SUFFIX.length());
+        URI childURI = new URI(childScheme, remoteURI.getRawAuthority(), remoteURI.getRawPath(), null, null);
+        childURI = PropertyUtil.replaceQuery(childURI, options);
+
+        List<Provider> stripes = new ArrayList<Provider>(stripeCount);
+        try {
+            for (int i = 0; i < stripeCount; ++i) {
+                stripes.add(ProviderFactory.create(childURI));
+            }
+        } catch (Exception ex) {
+            for (Provider stripe : stripes) {
+                stripe.close();
+            }
+            throw ex;
+        }
+
+        return new StripedProvider(remoteURI, stripes);
+    }
+
+    @Override
+    public String getName() {
+        return "Striped";
+    }
+}
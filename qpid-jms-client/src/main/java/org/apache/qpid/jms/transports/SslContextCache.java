@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.transports;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reference counted SSLContexts shared between the secure transports in the JVM that
+ * are configured with the same SSL options, so that the key and trust stores are read
+ * from disk only once rather than on every connect.
+ *
+ * A context is cached under a salted digest of the options that go into creating it,
+ * the stores, their passwords and type, the key alias, the context protocol and whether
+ * all servers are trusted, so no password is held by the cache.  Options applied to each
+ * SSLEngine, such as the enabled protocols and cipher suites, do not affect the context
+ * and so are not part of the key.  When asked to, the path, modification time and size
+ * of the store files are part of the digest as well, a changed store then leads to a new
+ * context for the connections made after the change.  A context is dropped once the last
+ * reference to it has been closed.
+ */
+public final class SslContextCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SslContextCache.class);
+
+    private static final Map<Key, SharedContext> CACHE = new HashMap<Key, SharedContext>();
+
+    private static final byte[] SALT = new byte[16];
+
+    static {
+        new SecureRandom().nextBytes(SALT);
+    }
+
+    private SslContextCache() {
+    }
+
+    /**
+     * Gets a reference to the SSLContext cached for the given options, creating the
+     * context if there is none in use or, if so configured, if the stores it was loaded
+     * from have since been modified.
+     *
+     * @param options
+     *        the configured options used to create the SSLContext.
+     *
+     * @return a new reference to the context which must be closed when no longer needed.
+     *
+     * @throws Exception if an error occurs while creating the context.
+     */
+    public static SslContextRef getSslContext(TransportSslOptions options) throws Exception {
+        Key key = new Key(options);
+
+        synchronized (CACHE) {
+            SharedContext shared = CACHE.get(key);
+            if (shared == null) {
+                LOG.trace("Creating shared SSLContext for the configured stores");
+                shared = new SharedContext(key, TransportSupport.createSslContext(options));
+                CACHE.put(key, shared);
+            }
+
+            shared.refCount++;
+
+            return new SharedContextRef(shared);
+        }
+    }
+
+    /**
+     * @param options
+     *        the options of the context to query.
+     *
+     * @return the number of open references to the context cached for the given options.
+     *
+     * @throws Exception if the store files cannot be inspected.
+     */
+    public static int getReferenceCount(TransportSslOptions options) throws Exception {
+        synchronized (CACHE) {
+            SharedContext shared = CACHE.get(new Key(options));
+            return shared != null ? shared.refCount : 0;
+        }
+    }
+
+    /**
+     * @return the number of SSLContexts currently cached.
+     */
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private static final class SharedContext {
+
+        private final Key key;
+        private final SSLContext context;
+        private int refCount;
+
+        public SharedContext(Key key, SSLContext context) {
+            this.key = key;
+            this.context = context;
+        }
+
+        private void release() {
+            synchronized (CACHE) {
+                if (--refCount == 0) {
+                    CACHE.remove(key);
+                }
+            }
+        }
+    }
+
+    private static final class SharedContextRef implements SslContextRef {
+
+        private final SharedContext shared;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        public SharedContextRef(SharedContext shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public SSLContext context() {
+            if (closed.get()) {
+                throw new IllegalStateException("Context reference has already been closed");
+            }
+
+            return shared.context;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                shared.release();
+            }
+        }
+    }
+
+    /*
+     * Digest of the options that determine the SSLContext created.
+     */
+    private static final class Key {
+
+        private final byte[] digest;
+        private final int hashCode;
+
+        public Key(TransportSslOptions options) throws Exception {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(SALT);
+            update(md, options.getKeyStorePassword());
+            update(md, options.getTrustStorePassword());
+            update(md, options.getStoreType());
+            update(md, options.getKeyAlias());
+            update(md, options.getContextProtocol());
+            update(md, String.valueOf(options.isTrustAll()));
+            updateStore(md, options.getKeyStoreLocation(), options.isReloadModifiedStores());
+            updateStore(md, options.getTrustStoreLocation(), options.isReloadModifiedStores());
+
+            digest = md.digest();
+            hashCode = Arrays.hashCode(digest);
+        }
+
+        private static void updateStore(MessageDigest md, String location, boolean stamped) throws Exception {
+            if (location == null || !stamped) {
+                update(md, location);
+            } else {
+                File file = new File(location);
+                update(md, file.getCanonicalPath());
+                update(md, file.lastModified() + ":" + file.length());
+            }
+        }
+
+        private static void update(MessageDigest md, String value) {
+            if (value == null) {
+                md.update((byte) 0);
+            } else {
+                // Length prefixed so that adjacent values cannot run into each other.
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                md.update((byte) 1);
+                md.update(new byte[] {
+                    (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                    (byte) (bytes.length >>> 8), (byte) bytes.length });
+                md.update(bytes);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            return Arrays.equals(digest, ((Key) other).digest);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.transports;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * A handle to an {@link SSLContext} shared through the {@link SslContextCache}.
+ *
+ * The transport that obtains a reference is responsible for closing it once its
+ * connection has closed, the cache drops a context when its last reference is closed.
+ */
+public interface SslContextRef extends AutoCloseable {
+
+    /**
+     * @return the SSLContext that is referenced by this instance.
+     */
+    SSLContext context();
+
+    /**
+     * Releases this reference to the context, once released the context returned
+     * from {@link #context()} should not be used to create new engines.
+     */
+    @Override
+    void close();
+
+}
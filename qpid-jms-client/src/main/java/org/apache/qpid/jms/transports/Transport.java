@@ -20,6 +20,7 @@ import io.netty.buffer.ByteBuf;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Base class for all QpidJMS Transport instances.
@@ -60,7 +61,8 @@ public interface Transport {
     ByteBuf allocateSendBuffer(int size) throws IOException;
 
     /**
-     * Sends a chunk of data over the Transport connection.
+     * Sends a chunk of data over the Transport connection, the data is written and
+     * flushed immediately.
      *
      * @param output
      *        The buffer of data that is to be transmitted.
@@ -69,6 +71,24 @@ public interface Transport {
      */
     void send(ByteBuf output) throws IOException;
 
+    /**
+     * Writes a chunk of data to the Transport without flushing it, the data will not
+     * be transmitted until a subsequent call to {@link #flush()} or {@link #send(ByteBuf)}.
+     *
+     * @param output
+     *        The buffer of data that is to be transmitted.
+     *
+     * @throws IOException if an error occurs during the write operation.
+     */
+    void write(ByteBuf output) throws IOException;
+
+    /**
+     * Flushes all data previously written to the Transport.
+     *
+     * @throws IOException if an error occurs during the flush operation.
+     */
+    void flush() throws IOException;
+
     /**
      * Gets the currently set TransportListener instance
      *
@@ -97,4 +117,13 @@ public interface Transport {
      */
     URI getRemoteLocation();
 
+    /**
+     * Gets the single thread that performs the IO of the connection, on which events
+     * from this Transport are delivered to its TransportListener.  Work given to this
+     * executor runs in order and never concurrently with the delivery of those events.
+     *
+     * @return the event loop of the connected Transport, or null if it has none.
+     */
+    ScheduledExecutorService getEventLoop();
+
 }
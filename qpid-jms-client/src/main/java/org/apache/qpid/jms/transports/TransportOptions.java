@@ -30,6 +30,11 @@ public class TransportOptions {
     public static final int DEFAULT_SO_TIMEOUT = -1;
     public static final int DEFAULT_CONNECT_TIMEOUT = 60000;
     public static final int DEFAULT_TCP_PORT = 5672;
+    public static final int DEFAULT_SHARED_EVENT_LOOP_THREADS = -1;
+    public static final boolean DEFAULT_USE_EPOLL = false;
+    public static final boolean DEFAULT_TCP_CORK = false;
+    public static final boolean DEFAULT_TCP_QUICK_ACK = false;
+    public static final boolean DEFAULT_EPOLL_EDGE_TRIGGERED = true;
 
     public static final TransportOptions INSTANCE = new TransportOptions();
 
@@ -42,6 +47,11 @@ public class TransportOptions {
     private boolean tcpKeepAlive = DEFAULT_TCP_KEEP_ALIVE;
     private boolean tcpNoDelay = DEFAULT_TCP_NO_DELAY;
     private int defaultTcpPort = DEFAULT_TCP_PORT;
+    private int sharedEventLoopThreads = DEFAULT_SHARED_EVENT_LOOP_THREADS;
+    private boolean useEpoll = DEFAULT_USE_EPOLL;
+    private boolean tcpCork = DEFAULT_TCP_CORK;
+    private boolean tcpQuickAck = DEFAULT_TCP_QUICK_ACK;
+    private boolean epollEdgeTriggered = DEFAULT_EPOLL_EDGE_TRIGGERED;
 
     /**
      * @return the currently set send buffer size in bytes.
@@ -163,6 +173,98 @@ public class TransportOptions {
         this.defaultTcpPort = defaultTcpPort;
     }
 
+    /**
+     * @return the number of threads in the shared event loop group, or a value &lt;= 0 if not shared.
+     */
+    public int getSharedEventLoopThreads() {
+        return sharedEventLoopThreads;
+    }
+
+    /**
+     * Sets the number of threads used by the event loop group that is shared between
+     * all transports in the JVM configured with the same value.  When set to a value
+     * &lt;= 0 (the default) each transport creates its own single threaded event loop.
+     *
+     * @param sharedEventLoopThreads
+     *        the number of threads in the shared event loop group.
+     */
+    public void setSharedEventLoopThreads(int sharedEventLoopThreads) {
+        this.sharedEventLoopThreads = sharedEventLoopThreads;
+    }
+
+    /**
+     * @return true if the native epoll transport should be used when available.
+     */
+    public boolean isUseEpoll() {
+        return useEpoll;
+    }
+
+    /**
+     * Sets whether the Netty native epoll transport should be used instead of the NIO
+     * transport.  The native transport is only available on Linux hosts, when it cannot
+     * be loaded the NIO transport is used regardless of this setting.
+     *
+     * @param useEpoll
+     *        should the native epoll transport be used if available.
+     */
+    public void setUseEpoll(boolean useEpoll) {
+        this.useEpoll = useEpoll;
+    }
+
+    /**
+     * @return true if the TCP_CORK option should be enabled on epoll based connections.
+     */
+    public boolean isTcpCork() {
+        return tcpCork;
+    }
+
+    /**
+     * Sets the TCP_CORK socket option, this option is only applied when the
+     * native epoll transport is in use.
+     *
+     * @param tcpCork
+     *        should TCP_CORK be enabled on the socket.
+     */
+    public void setTcpCork(boolean tcpCork) {
+        this.tcpCork = tcpCork;
+    }
+
+    /**
+     * @return true if the TCP_QUICKACK option should be enabled on epoll based connections.
+     */
+    public boolean isTcpQuickAck() {
+        return tcpQuickAck;
+    }
+
+    /**
+     * Sets the TCP_QUICKACK socket option, this option is only applied when the
+     * native epoll transport is in use.
+     *
+     * @param tcpQuickAck
+     *        should TCP_QUICKACK be enabled on the socket.
+     */
+    public void setTcpQuickAck(boolean tcpQuickAck) {
+        this.tcpQuickAck = tcpQuickAck;
+    }
+
+    /**
+     * @return true if epoll based connections use edge triggered mode.
+     */
+    public boolean isEpollEdgeTriggered() {
+        return epollEdgeTriggered;
+    }
+
+    /**
+     * Sets whether epoll based connections use edge triggered or level triggered
+     * mode, this option is only applied when the native epoll transport is in use.
+     *
+     * @param epollEdgeTriggered
+     *        true for edge triggered mode, false for level triggered mode.
+     */
+    public void setEpollEdgeTriggered(boolean epollEdgeTriggered) {
+        this.epollEdgeTriggered = epollEdgeTriggered;
+    }
+
     @Override
     public TransportOptions clone() {
         return copyOptions(new TransportOptions());
@@ -177,6 +279,11 @@ public class TransportOptions {
         copy.setTcpKeepAlive(isTcpKeepAlive());
         copy.setTcpNoDelay(isTcpNoDelay());
         copy.setTrafficClass(getTrafficClass());
+        copy.setSharedEventLoopThreads(getSharedEventLoopThreads());
+        copy.setUseEpoll(isUseEpoll());
+        copy.setTcpCork(isTcpCork());
+        copy.setTcpQuickAck(isTcpQuickAck());
+        copy.setEpollEdgeTriggered(isEpollEdgeTriggered());
 
         return copy;
     }
@@ -34,6 +34,8 @@ public class TransportSslOptions extends TransportOptions {
     public static final boolean DEFAULT_VERIFY_HOST = true;
     public static final List<String> DEFAULT_DISABLED_PROTOCOLS = Collections.unmodifiableList(Arrays.asList(new String[]{"SSLv2Hello", "SSLv3"}));
     public static final int DEFAULT_SSL_PORT = 5671;
+    public static final boolean DEFAULT_CACHE_SSL_CONTEXT = true;
+    public static final boolean DEFAULT_RELOAD_MODIFIED_STORES = true;
 
     public static final TransportSslOptions INSTANCE = new TransportSslOptions();
 
@@ -52,6 +54,8 @@ public class TransportSslOptions extends TransportOptions {
     private boolean verifyHost = DEFAULT_VERIFY_HOST;
     private String keyAlias;
     private int defaultSslPort = DEFAULT_SSL_PORT;
+    private boolean cacheSslContext = DEFAULT_CACHE_SSL_CONTEXT;
+    private boolean reloadModifiedStores = DEFAULT_RELOAD_MODIFIED_STORES;
 
     static {
         INSTANCE.setKeyStoreLocation(System.getProperty("javax.net.ssl.keyStore"));
@@ -262,6 +266,44 @@ public class TransportSslOptions extends TransportOptions {
         this.defaultSslPort = defaultSslPort;
     }
 
+    /**
+     * @return true if connections with the same SSL options share an SSLContext.
+     */
+    public boolean isCacheSslContext() {
+        return cacheSslContext;
+    }
+
+    /**
+     * Sets whether the SSLContext created for these options is cached and reused by
+     * later connections with the same options, sparing them from loading the key and
+     * trust stores again.
+     *
+     * @param cacheSslContext
+     *        true if the SSLContext should be cached.
+     */
+    public void setCacheSslContext(boolean cacheSslContext) {
+        this.cacheSslContext = cacheSslContext;
+    }
+
+    /**
+     * @return true if a cached SSLContext is replaced when its store files change.
+     */
+    public boolean isReloadModifiedStores() {
+        return reloadModifiedStores;
+    }
+
+    /**
+     * Sets whether a cached SSLContext is recreated when the key or trust store files it
+     * was loaded from have been modified since, so that rotated certificates are used by
+     * the connections made afterwards.
+     *
+     * @param reloadModifiedStores
+     *        true if modified store files should be loaded again.
+     */
+    public void setReloadModifiedStores(boolean reloadModifiedStores) {
+        this.reloadModifiedStores = reloadModifiedStores;
+    }
+
     @Override
     public TransportSslOptions clone() {
         return copyOptions(new TransportSslOptions());
@@ -283,6 +325,8 @@ public class TransportSslOptions extends TransportOptions {
         copy.setVerifyHost(isVerifyHost());
         copy.setKeyAlias(getKeyAlias());
         copy.setContextProtocol(getContextProtocol());
+        copy.setCacheSslContext(isCacheSslContext());
+        copy.setReloadModifiedStores(isReloadModifiedStores());
         return copy;
     }
 }
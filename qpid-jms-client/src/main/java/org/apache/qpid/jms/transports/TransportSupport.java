@@ -63,7 +63,25 @@ public class TransportSupport {
      * @throws Exception if an error occurs while creating the SslHandler instance.
      */
     public static SslHandler createSslHandler(URI remote, TransportSslOptions options) throws Exception {
-        return new SslHandler(createSslEngine(remote, createSslContext(options), options));
+        return createSslHandler(remote, createSslContext(options), options);
+    }
+
+    /**
+     * Creates a Netty SslHandler instance for use in Transports that require
+     * an SSL encoder / decoder, using an existing SSLContext such as one shared
+     * through the SslContextCache.
+     *
+     * @param context
+     *        the SSLContext to use when creating the engine.
+     * @param options
+     *        The SSL options object to configure the SSLEngine from.
+     *
+     * @return a new SslHandler that is configured from the given options.
+     *
+     * @throws Exception if an error occurs while creating the SslHandler instance.
+     */
+    public static SslHandler createSslHandler(URI remote, SSLContext context, TransportSslOptions options) throws Exception {
+        return new SslHandler(createSslEngine(remote, context, options));
     }
 
     /**
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.transports.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.qpid.jms.transports.TransportOptions;
+
+/**
+ * Utility methods for working with the Netty native epoll transport which is only
+ * available on Linux hosts where the bundled native library can be loaded.
+ */
+public final class EpollSupport {
+
+    private EpollSupport() {
+    }
+
+    /**
+     * @return true if the native epoll transport can be used on this host.
+     */
+    public static boolean isAvailable() {
+        return Epoll.isAvailable();
+    }
+
+    /**
+     * Checks if the given options request the use of epoll and if so whether the
+     * native transport is available, if not the caller should silently fall back
+     * to the NIO based transport.
+     *
+     * @param options
+     *        the transport options used to configure the socket connection.
+     *
+     * @return true if the transport should use the native epoll transport.
+     */
+    public static boolean isAvailable(TransportOptions options) {
+        return options.isUseEpoll() && Epoll.isAvailable();
+    }
+
+    public static EventLoopGroup createGroup(int threads) {
+        return new EpollEventLoopGroup(threads);
+    }
+
+    public static EventLoopGroup createGroup(int threads, ThreadFactory threadFactory) {
+        return new EpollEventLoopGroup(threads, threadFactory);
+    }
+
+    public static Class<? extends Channel> getChannelClass() {
+        return EpollSocketChannel.class;
+    }
+}
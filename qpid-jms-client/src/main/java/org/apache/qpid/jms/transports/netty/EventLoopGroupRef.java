@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.transports.netty;
+
+import io.netty.channel.EventLoopGroup;
+
+/**
+ * A handle to an {@link EventLoopGroup} used by a Netty based transport.
+ *
+ * The transport that obtains a reference is responsible for closing it once
+ * it no longer needs the group, which allows the implementation to decide if
+ * the underlying group should be shut down or remain available for other users.
+ */
+public interface EventLoopGroupRef extends AutoCloseable {
+
+    /**
+     * @return the EventLoopGroup that is referenced by this instance.
+     */
+    EventLoopGroup group();
+
+    /**
+     * Releases this reference to the group, once released the group returned
+     * from {@link #group()} should no longer be used by the caller.
+     */
+    @Override
+    void close();
+
+}
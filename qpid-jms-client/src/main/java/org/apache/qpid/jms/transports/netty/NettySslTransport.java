@@ -17,6 +17,8 @@
 package org.apache.qpid.jms.transports.netty;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
@@ -25,6 +27,8 @@ import java.net.URI;
 import java.security.Principal;
 
 import org.apache.qpid.jms.transports.SSLTransport;
+import org.apache.qpid.jms.transports.SslContextCache;
+import org.apache.qpid.jms.transports.SslContextRef;
 import org.apache.qpid.jms.transports.TransportListener;
 import org.apache.qpid.jms.transports.TransportOptions;
 import org.apache.qpid.jms.transports.TransportSslOptions;
@@ -68,7 +72,22 @@ public class NettySslTransport extends NettyTcpTransport implements SSLTransport
 
     @Override
     protected void configureChannel(Channel channel) throws Exception {
-        channel.pipeline().addLast(TransportSupport.createSslHandler(getRemoteLocation(), getSslOptions()));
+        TransportSslOptions sslOptions = getSslOptions();
+        if (sslOptions.isCacheSslContext()) {
+            // The shared context is held for as long as the channel is open.
+            final SslContextRef contextRef = SslContextCache.getSslContext(sslOptions);
+            channel.closeFuture().addListener(new ChannelFutureListener() {
+
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    contextRef.close();
+                }
+            });
+
+            channel.pipeline().addLast(TransportSupport.createSslHandler(getRemoteLocation(), contextRef.context(), sslOptions));
+        } else {
+            channel.pipeline().addLast(TransportSupport.createSslHandler(getRemoteLocation(), sslOptions));
+        }
         super.configureChannel(channel);
     }
 
@@ -18,22 +18,24 @@ package org.apache.qpid.jms.transports.netty;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.EventLoopGroup;
 import io.netty.channel.FixedRecvByteBufAllocator;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
 import io.netty.channel.socket.nio.NioSocketChannel;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.qpid.jms.transports.Transport;
@@ -50,11 +52,8 @@ public class NettyTcpTransport implements Transport {
 
     private static final Logger LOG = LoggerFactory.getLogger(NettyTcpTransport.class);
 
-    private static final int QUIET_PERIOD = 20;
-    private static final int SHUTDOWN_TIMEOUT = 100;
-
     protected Bootstrap bootstrap;
-    protected EventLoopGroup group;
+    protected EventLoopGroupRef groupRef;
     protected Channel channel;
     protected TransportListener listener;
     protected TransportOptions options;
@@ -101,11 +100,20 @@ public class NettyTcpTransport implements Transport {
             throw new IllegalStateException("A transport listener must be set before connection attempts.");
         }
 
-        group = new NioEventLoopGroup(1);
+        boolean useEpoll = EpollSupport.isAvailable(getTransportOptions());
+        if (getTransportOptions().isUseEpoll() && !useEpoll) {
+            LOG.trace("Native epoll transport not available, falling back to NIO: {}", Epoll.unavailabilityCause());
+        }
+
+        groupRef = createEventLoopGroup(getTransportOptions(), useEpoll);
 
         bootstrap = new Bootstrap();
-        bootstrap.group(group);
-        bootstrap.channel(NioSocketChannel.class);
+        bootstrap.group(groupRef.group());
+        if (useEpoll) {
+            bootstrap.channel(EpollSupport.getChannelClass());
+        } else {
+            bootstrap.channel(NioSocketChannel.class);
+        }
         bootstrap.handler(new ChannelInitializer<Channel>() {
 
             @Override
@@ -115,6 +123,9 @@ public class NettyTcpTransport implements Transport {
         });
 
         configureNetty(bootstrap, getTransportOptions());
+        if (useEpoll) {
+            configureEpoll(bootstrap, getTransportOptions());
+        }
 
         ChannelFuture future = bootstrap.connect(getRemoteHost(), getRemotePort());
         future.addListener(new ChannelFutureListener() {
@@ -145,9 +156,9 @@ public class NettyTcpTransport implements Transport {
                 channel.close();
                 channel = null;
             }
-            if (group != null) {
-                group.shutdownGracefully(QUIET_PERIOD, SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
-                group = null;
+            if (groupRef != null) {
+                groupRef.close();
+                groupRef = null;
             }
 
             throw failureCause;
@@ -177,8 +188,8 @@ public class NettyTcpTransport implements Transport {
             if (channel != null) {
                 channel.close().syncUninterruptibly();
             }
-            if (group != null) {
-                group.shutdownGracefully(QUIET_PERIOD, SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (groupRef != null) {
+                groupRef.close();
             }
         }
     }
@@ -202,6 +213,26 @@ public class NettyTcpTransport implements Transport {
         channel.writeAndFlush(output);
     }
 
+    @Override
+    public void write(ByteBuf output) throws IOException {
+        checkConnected();
+        int length = output.readableBytes();
+        if (length == 0) {
+            return;
+        }
+
+        LOG.trace("Attempted write (no flush) of: {} bytes", length);
+
+        channel.write(output);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        checkConnected();
+        LOG.trace("Attempted flush of pending writes");
+        channel.flush();
+    }
+
     @Override
     public TransportListener getTransportListener() {
         return listener;
@@ -226,6 +257,12 @@ public class NettyTcpTransport implements Transport {
         return remote;
     }
 
+    @Override
+    public ScheduledExecutorService getEventLoop() {
+        Channel current = channel;
+        return current != null ? current.eventLoop() : null;
+    }
+
     //----- Internal implementation details, can be overridden as needed --//
 
     protected String getRemoteHost() {
@@ -236,6 +273,27 @@ public class NettyTcpTransport implements Transport {
         return remote.getPort() != -1 ? remote.getPort() : getTransportOptions().getDefaultTcpPort();
     }
 
+    /**
+     * Creates the reference to the EventLoopGroup that the transport's channel will be
+     * registered with.  By default a group with a single thread is created for each
+     * connection unless the options specify a number of shared event loop threads in
+     * which case a reference to the JVM wide shared group of that size is returned.
+     *
+     * @param options
+     *        the transport options used to configure the socket connection.
+     * @param useEpoll
+     *        true if the group must use the native epoll event loop.
+     *
+     * @return a reference to the EventLoopGroup to use for this transport.
+     */
+    protected EventLoopGroupRef createEventLoopGroup(TransportOptions options, boolean useEpoll) {
+        if (options.getSharedEventLoopThreads() > 0) {
+            return SharedEventLoopGroup.sharedGroup(options.getSharedEventLoopThreads(), useEpoll);
+        } else {
+            return SharedEventLoopGroup.unsharedGroup(1, useEpoll);
+        }
+    }
+
     protected void configureNetty(Bootstrap bootstrap, TransportOptions options) {
         bootstrap.option(ChannelOption.TCP_NODELAY, options.isTcpNoDelay());
         bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, options.getConnectTimeout());
@@ -257,6 +315,17 @@ public class NettyTcpTransport implements Transport {
         }
     }
 
+    protected void configureEpoll(Bootstrap bootstrap, TransportOptions options) {
+        // The native transport reads directly into the buffer's memory address so it
+        // must be given direct buffers, which the partially pooled allocator does not
+        // hand out for IO operations.
+        bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        bootstrap.option(EpollChannelOption.TCP_CORK, options.isTcpCork());
+        bootstrap.option(EpollChannelOption.TCP_QUICKACK, options.isTcpQuickAck());
+        bootstrap.option(EpollChannelOption.EPOLL_MODE,
+            options.isEpollEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED);
+    }
+
     protected void configureChannel(Channel channel) throws Exception {
         channel.pipeline().addLast(new NettyTcpTransportHandler());
     }
@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.transports.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted {@link EventLoopGroup} that is shared between all the Netty
+ * based transports in the JVM that are configured with the same number of threads
+ * and the same type of event loop (NIO or native epoll).
+ *
+ * Channels registered with the shared group are assigned to its event loops in a
+ * round robin manner so the number of IO threads stays fixed regardless of the
+ * number of open connections.  The group is created when the first reference is
+ * requested and shut down once the last outstanding reference has been closed.
+ */
+public final class SharedEventLoopGroup {
+
+    private static final int QUIET_PERIOD = 20;
+    private static final int SHUTDOWN_TIMEOUT = 100;
+
+    private static final Map<String, SharedEventLoopGroup> SHARED_GROUPS = new HashMap<String, SharedEventLoopGroup>();
+
+    private final EventLoopGroup group;
+    private final String key;
+    private int refCount;
+
+    private SharedEventLoopGroup(int threads, boolean useEpoll) {
+        this.key = groupKey(threads, useEpoll);
+
+        ThreadFactory threadFactory = new SharedThreadFactory(threads, useEpoll);
+        if (useEpoll) {
+            this.group = EpollSupport.createGroup(threads, threadFactory);
+        } else {
+            this.group = new NioEventLoopGroup(threads, threadFactory);
+        }
+    }
+
+    /**
+     * Gets a reference to the shared group with the given number of threads, creating
+     * the group if there is no group of that size currently in use.
+     *
+     * @param threads
+     *        the number of event loop threads the shared group should use.
+     *
+     * @return a new reference to the shared group which must be closed when no longer needed.
+     *
+     * @throws IllegalArgumentException if the thread count given is not greater than zero.
+     */
+    public static EventLoopGroupRef sharedGroup(int threads) {
+        return sharedGroup(threads, false);
+    }
+
+    /**
+     * Gets a reference to the shared group with the given number of threads and event
+     * loop type, creating the group if there is no such group currently in use.
+     *
+     * @param threads
+     *        the number of event loop threads the shared group should use.
+     * @param useEpoll
+     *        should the shared group use the native epoll event loop, the caller must
+     *        check that epoll is available before requesting an epoll based group.
+     *
+     * @return a new reference to the shared group which must be closed when no longer needed.
+     *
+     * @throws IllegalArgumentException if the thread count given is not greater than zero.
+     */
+    public static EventLoopGroupRef sharedGroup(int threads, boolean useEpoll) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Shared event loop thread count must be > 0");
+        }
+
+        synchronized (SHARED_GROUPS) {
+            SharedEventLoopGroup shared = SHARED_GROUPS.get(groupKey(threads, useEpoll));
+            if (shared == null) {
+                shared = new SharedEventLoopGroup(threads, useEpoll);
+                SHARED_GROUPS.put(shared.key, shared);
+            }
+
+            shared.refCount++;
+
+            return new SharedGroupRef(shared);
+        }
+    }
+
+    /**
+     * Creates a reference to a new group that is not shared, closing the reference
+     * shuts down the group.
+     *
+     * @param threads
+     *        the number of event loop threads the new group should use.
+     *
+     * @return a new reference to an unshared event loop group.
+     */
+    public static EventLoopGroupRef unsharedGroup(int threads) {
+        return unsharedGroup(threads, false);
+    }
+
+    /**
+     * Creates a reference to a new group of the given type that is not shared, closing
+     * the reference shuts down the group.
+     *
+     * @param threads
+     *        the number of event loop threads the new group should use.
+     * @param useEpoll
+     *        should the group use the native epoll event loop.
+     *
+     * @return a new reference to an unshared event loop group.
+     */
+    public static EventLoopGroupRef unsharedGroup(int threads, boolean useEpoll) {
+        if (useEpoll) {
+            return new UnsharedGroupRef(EpollSupport.createGroup(threads));
+        } else {
+            return new UnsharedGroupRef(new NioEventLoopGroup(threads));
+        }
+    }
+
+    /**
+     * @param threads
+     *        the thread count of the shared group to query.
+     *
+     * @return the number of open references to the shared group of the given size.
+     */
+    static int getReferenceCount(int threads) {
+        synchronized (SHARED_GROUPS) {
+            SharedEventLoopGroup shared = SHARED_GROUPS.get(groupKey(threads, false));
+            return shared != null ? shared.refCount : 0;
+        }
+    }
+
+    private void release() {
+        synchronized (SHARED_GROUPS) {
+            if (--refCount == 0) {
+                SHARED_GROUPS.remove(key);
+                group.shutdownGracefully(QUIET_PERIOD, SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static String groupKey(int threads, boolean useEpoll) {
+        return (useEpoll ? "epoll:" : "nio:") + threads;
+    }
+
+    //----- Reference implementations ----------------------------------------//
+
+    private static final class SharedGroupRef implements EventLoopGroupRef {
+
+        private final SharedEventLoopGroup shared;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        public SharedGroupRef(SharedEventLoopGroup shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public EventLoopGroup group() {
+            if (closed.get()) {
+                throw new IllegalStateException("Group reference has already been closed");
+            }
+
+            return shared.group;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                shared.release();
+            }
+        }
+    }
+
+    private static final class UnsharedGroupRef implements EventLoopGroupRef {
+
+        private final EventLoopGroup group;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        public UnsharedGroupRef(EventLoopGroup group) {
+            this.group = group;
+        }
+
+        @Override
+        public EventLoopGroup group() {
+            return group;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                group.shutdownGracefully(QUIET_PERIOD, SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static final class SharedThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+        private final String prefix;
+
+        public SharedThreadFactory(int groupSize, boolean useEpoll) {
+            this.prefix = "QpidJMS Shared Netty " + (useEpoll ? "Epoll" : "NIO") + " EventLoop (" + groupSize + "): ";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.qpid.jms.util;
 
+import java.util.List;
+
 import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
 
 /**
@@ -67,6 +69,18 @@ public abstract class AbstractMessageQueue implements MessageQueue {
         }
     }
 
+    @Override
+    public final int dequeueNoWait(List<JmsInboundMessageDispatch> target, int maxMessages) {
+        synchronized (lock) {
+            int count = 0;
+            while (count < maxMessages && !closed && running && !isEmpty()) {
+                target.add(removeFirst());
+                count++;
+            }
+            return count;
+        }
+    }
+
     @Override
     public final void start() {
         synchronized (lock) {
@@ -0,0 +1,359 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+
+/**
+ * First in / first out Message Queue backed by a bounded ring array.
+ *
+ * The ring is sized to the prefetch of the consumer that owns the queue plus some
+ * headroom, link credit keeps the number of messages buffered for a consumer within
+ * its prefetch so in normal operation every message passes through the ring and an
+ * enqueue does not allocate.  Enqueue takes no lock, any number of threads may add
+ * messages and each claims its slot in the ring with a compare and set.  A consumer
+ * that is waiting for a message is parked until one arrives or the queue state changes.
+ *
+ * Should the ring be full, for instance after the prefetch was raised past the ring
+ * size, messages are not dropped and the caller, normally the connection thread, is
+ * not blocked.  They are instead added to an unbounded overflow list, and any later
+ * messages follow them there until the consumer has taken them all, so the order of
+ * the messages is kept and only messages beyond the ring allocate.
+ *
+ * The dequeue side supports a single consumer at a time, the operations on that side
+ * are serialized by a lock that the enqueue side never takes so that it is only ever
+ * contended when more than one thread consumes, such as the session thread taking
+ * back messages on recover while the application receives.  Messages added with
+ * enqueueFirst, which only happens during session recovery, are held apart and always
+ * dequeued before any message in the ring.
+ */
+public final class ArrayMessageQueue implements MessageQueue {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int HEADROOM = 16;
+    private static final int MAX_CAPACITY = 65536;
+
+    private final Object consumerLock = new Object();
+
+    private final int capacity;
+    private final int mask;
+
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+    private final AtomicReferenceArray<JmsInboundMessageDispatch> ring;
+
+    private final ConcurrentLinkedQueue<JmsInboundMessageDispatch> overflow =
+        new ConcurrentLinkedQueue<JmsInboundMessageDispatch>();
+    private final ConcurrentLinkedDeque<JmsInboundMessageDispatch> recovered =
+        new ConcurrentLinkedDeque<JmsInboundMessageDispatch>();
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+    private volatile boolean closed;
+    private volatile boolean running;
+
+    /**
+     * Creates a new queue with the default ring capacity.
+     */
+    public ArrayMessageQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new queue whose ring can hold at least the given number of messages
+     * plus some headroom, normally given the prefetch of the consumer that owns the
+     * queue.  The ring is never larger than 65536 slots.
+     *
+     * @param capacity
+     *        the number of messages the ring should hold before messages overflow.
+     */
+    public ArrayMessageQueue(int capacity) {
+        int size = HEADROOM;
+        while (size < capacity + HEADROOM && size < MAX_CAPACITY) {
+            size <<= 1;
+        }
+
+        this.capacity = size;
+        this.mask = size - 1;
+        this.ring = new AtomicReferenceArray<JmsInboundMessageDispatch>(size);
+    }
+
+    @Override
+    public void enqueue(JmsInboundMessageDispatch envelope) {
+        if (!offerRing(envelope)) {
+            overflow.add(envelope);
+        }
+
+        signalWaiters();
+    }
+
+    @Override
+    public void enqueueFirst(JmsInboundMessageDispatch envelope) {
+        recovered.addFirst(envelope);
+        signalWaiters();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return recovered.isEmpty() && producerIndex.get() == consumerIndex.get() && overflow.isEmpty();
+    }
+
+    @Override
+    public JmsInboundMessageDispatch peek() {
+        synchronized (consumerLock) {
+            JmsInboundMessageDispatch head = peekRing();
+            JmsInboundMessageDispatch first = recovered.peekFirst();
+            return first != null ? first : head;
+        }
+    }
+
+    @Override
+    public JmsInboundMessageDispatch dequeue(long timeout) throws InterruptedException {
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        Thread waiter = null;
+
+        try {
+            while (true) {
+                if (closed || !running) {
+                    return null;
+                }
+
+                JmsInboundMessageDispatch envelope = poll();
+                if (envelope != null || timeout == 0) {
+                    return envelope;
+                }
+
+                // Register before checking again so an enqueue that raced with the
+                // check above is guaranteed to unpark this thread.
+                if (waiter == null) {
+                    waiter = Thread.currentThread();
+                    waiters.add(waiter);
+                    continue;
+                }
+
+                if (timeout < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            if (waiter != null) {
+                waiters.remove(waiter);
+            }
+        }
+    }
+
+    @Override
+    public JmsInboundMessageDispatch dequeueNoWait() {
+        if (closed || !running) {
+            return null;
+        }
+
+        return poll();
+    }
+
+    @Override
+    public int dequeueNoWait(List<JmsInboundMessageDispatch> target, int maxMessages) {
+        synchronized (consumerLock) {
+            int count = 0;
+            JmsInboundMessageDispatch envelope = null;
+            while (count < maxMessages && !closed && running && (envelope = poll()) != null) {
+                target.add(envelope);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!closed) {
+            running = true;
+        }
+        signalWaiters();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        signalWaiters();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        closed = true;
+        signalWaiters();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int size() {
+        return recovered.size() + (int) (producerIndex.get() - consumerIndex.get()) + overflow.size();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (consumerLock) {
+            recovered.clear();
+
+            JmsInboundMessageDispatch envelope = null;
+            do {
+                envelope = pollRing();
+            } while (envelope != null);
+        }
+    }
+
+    @Override
+    public List<JmsInboundMessageDispatch> removeAll() {
+        synchronized (consumerLock) {
+            List<JmsInboundMessageDispatch> rc = new ArrayList<JmsInboundMessageDispatch>(size());
+
+            JmsInboundMessageDispatch envelope = null;
+            while ((envelope = recovered.pollFirst()) != null) {
+                rc.add(envelope);
+            }
+            while ((envelope = pollRing()) != null) {
+                rc.add(envelope);
+            }
+
+            return rc;
+        }
+    }
+
+    @Override
+    public Object getLock() {
+        return consumerLock;
+    }
+
+    @Override
+    public String toString() {
+        return "ArrayMessageQueue { size = " + size() + ", running = " + running + ", closed = " + closed + " }";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private boolean offerRing(JmsInboundMessageDispatch envelope) {
+        while (true) {
+            // Once messages have overflowed later ones must queue up behind them.
+            if (!overflow.isEmpty()) {
+                return false;
+            }
+
+            long index = producerIndex.get();
+            if (index - consumerIndex.get() >= capacity) {
+                return false;
+            }
+
+            if (producerIndex.compareAndSet(index, index + 1)) {
+                // A volatile write so that any waiter registered before this point
+                // is seen when waiters are signaled.
+                ring.set((int) index & mask, envelope);
+                return true;
+            }
+        }
+    }
+
+    private JmsInboundMessageDispatch poll() {
+        synchronized (consumerLock) {
+            // Look at the ring before the recovered messages, a message recovered
+            // before the ring head was written is then always seen here first.
+            JmsInboundMessageDispatch head = peekRing();
+            JmsInboundMessageDispatch first = recovered.pollFirst();
+            if (first != null) {
+                return first;
+            }
+
+            return head != null ? pollRing() : null;
+        }
+    }
+
+    private JmsInboundMessageDispatch peekRing() {
+        while (true) {
+            long index = consumerIndex.get();
+            if (index != producerIndex.get()) {
+                // Null while the producer that claimed the slot has yet to write it.
+                return ring.get((int) index & mask);
+            }
+
+            // Overflowed messages only become the head once the ring is empty, the
+            // ring is checked again in case it was written just before they were added.
+            JmsInboundMessageDispatch spilled = overflow.peek();
+            if (spilled == null || index == producerIndex.get()) {
+                return spilled;
+            }
+        }
+    }
+
+    private JmsInboundMessageDispatch pollRing() {
+        while (true) {
+            long index = consumerIndex.get();
+            if (index != producerIndex.get()) {
+                int offset = (int) index & mask;
+                JmsInboundMessageDispatch element = ring.get(offset);
+                if (element != null) {
+                    ring.lazySet(offset, null);
+                    consumerIndex.lazySet(index + 1);
+                }
+
+                return element;
+            }
+
+            if (overflow.isEmpty()) {
+                return null;
+            } else if (index == producerIndex.get()) {
+                return overflow.poll();
+            }
+        }
+    }
+
+    private void signalWaiters() {
+        if (!waiters.isEmpty()) {
+            for (Thread waiter : waiters) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+}
@@ -74,6 +74,19 @@ public interface MessageQueue {
      */
     JmsInboundMessageDispatch dequeueNoWait();
 
+    /**
+     * Removes up to the given number of enqueued Messages in a single operation and adds
+     * them in order to the given List, nothing is added if the Queue is stopped or closed.
+     *
+     * @param target
+     *        the List that receives the removed Messages.
+     * @param maxMessages
+     *        the maximum number of Messages to remove.
+     *
+     * @return the number of Messages that were added to the target List.
+     */
+    int dequeueNoWait(List<JmsInboundMessageDispatch> target, int maxMessages);
+
     /**
      * Starts the Message Queue.  An non-started Queue will always return null for
      * any of the Queue methods.
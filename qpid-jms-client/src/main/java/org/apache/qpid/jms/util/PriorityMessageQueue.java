@@ -17,7 +17,7 @@
 package org.apache.qpid.jms.util;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.jms.JMSException;
@@ -28,28 +28,36 @@ import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
  * Simple Message Priority ordered Queue.  Message envelopes are stored in the
  * Queue based on their priority value, except where {@link #enqueueFirst} is
  * used.
+ *
+ * Each priority level is held in its own ring buffer and a bitmap records which
+ * levels currently hold messages, so the highest priority message is found with a
+ * single bit operation and removing it allocates nothing.
  */
 public final class PriorityMessageQueue extends AbstractMessageQueue {
 
     // There are 10 priorities, values 0-9
-    private static final Integer MAX_PRIORITY = 9;
+    private static final int MAX_PRIORITY = 9;
+
+    private static final int INITIAL_RING_CAPACITY = 16;
 
-    private final LinkedList<JmsInboundMessageDispatch>[] lists;
-    private int size = 0;
+    private final PriorityRing[] rings;
+    private int occupied;
+    private volatile int size;
 
-    @SuppressWarnings("unchecked")
     public PriorityMessageQueue() {
-        this.lists = new LinkedList[MAX_PRIORITY + 1];
+        this.rings = new PriorityRing[MAX_PRIORITY + 1];
         for (int i = 0; i <= MAX_PRIORITY; i++) {
-            lists[i] = new LinkedList<JmsInboundMessageDispatch>();
+            rings[i] = new PriorityRing();
         }
     }
 
     @Override
     public void enqueue(JmsInboundMessageDispatch envelope) {
         synchronized (getLock()) {
-            getList(envelope).addLast(envelope);
-            this.size++;
+            int priority = getPriority(envelope);
+            rings[priority].addLast(envelope);
+            occupied |= 1 << priority;
+            size++;
             getLock().notify();
         }
     }
@@ -57,77 +65,74 @@ public final class PriorityMessageQueue extends AbstractMessageQueue {
     @Override
     public void enqueueFirst(JmsInboundMessageDispatch envelope) {
         synchronized (getLock()) {
-            getList(MAX_PRIORITY).addFirst(envelope);
-            this.size++;
+            rings[MAX_PRIORITY].addFirst(envelope);
+            occupied |= 1 << MAX_PRIORITY;
+            size++;
             getLock().notify();
         }
     }
 
     @Override
     public boolean isEmpty() {
-        synchronized (getLock()) {
-            return size == 0;
-        }
+        return size == 0;
     }
 
     @Override
     public int size() {
-        synchronized (getLock()) {
-            return size;
-        }
+        return size;
     }
 
     @Override
     public void clear() {
         synchronized (getLock()) {
             for (int i = 0; i <= MAX_PRIORITY; i++) {
-                lists[i].clear();
+                rings[i].clear();
             }
-            this.size = 0;
+            occupied = 0;
+            size = 0;
         }
     }
 
     @Override
     public List<JmsInboundMessageDispatch> removeAll() {
         synchronized (getLock()) {
-            ArrayList<JmsInboundMessageDispatch> result = new ArrayList<JmsInboundMessageDispatch>(size());
+            ArrayList<JmsInboundMessageDispatch> result = new ArrayList<JmsInboundMessageDispatch>(size);
             for (int i = MAX_PRIORITY; i >= 0; i--) {
-                List<JmsInboundMessageDispatch> list = lists[i];
-                result.addAll(list);
-                size -= list.size();
-                list.clear();
+                rings[i].drainTo(result);
             }
+            occupied = 0;
+            size = 0;
             return result;
         }
     }
 
     @Override
     protected JmsInboundMessageDispatch removeFirst() {
-        if (this.size > 0) {
-            for (int i = MAX_PRIORITY; i >= 0; i--) {
-                LinkedList<JmsInboundMessageDispatch> list = lists[i];
-                if (!list.isEmpty()) {
-                    this.size--;
-                    return list.removeFirst();
-                }
+        if (occupied != 0) {
+            int priority = highestPriority();
+            PriorityRing ring = rings[priority];
+            JmsInboundMessageDispatch envelope = ring.removeFirst();
+            if (ring.isEmpty()) {
+                occupied &= ~(1 << priority);
             }
+            size--;
+            return envelope;
         }
         return null;
     }
 
     @Override
     protected JmsInboundMessageDispatch peekFirst() {
-        if (this.size > 0) {
-            for (int i = MAX_PRIORITY; i >= 0; i--) {
-                LinkedList<JmsInboundMessageDispatch> list = lists[i];
-                if (!list.isEmpty()) {
-                    return list.peekFirst();
-                }
-            }
+        if (occupied != 0) {
+            return rings[highestPriority()].peekFirst();
         }
         return null;
     }
 
+    private int highestPriority() {
+        return 31 - Integer.numberOfLeadingZeros(occupied);
+    }
+
     private int getPriority(JmsInboundMessageDispatch envelope) {
         int priority = javax.jms.Message.DEFAULT_PRIORITY;
         if (envelope.getMessage() != null) {
@@ -140,11 +145,67 @@ public final class PriorityMessageQueue extends AbstractMessageQueue {
         return priority;
     }
 
-    private LinkedList<JmsInboundMessageDispatch> getList(JmsInboundMessageDispatch envelope) {
-        return getList(getPriority(envelope));
-    }
+    /*
+     * Double ended ring buffer holding the messages of one priority level, the
+     * backing array is only replaced when it fills.
+     */
+    private static final class PriorityRing {
+
+        private JmsInboundMessageDispatch[] elements = new JmsInboundMessageDispatch[INITIAL_RING_CAPACITY];
+        private int head;
+        private int count;
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
 
-    private LinkedList<JmsInboundMessageDispatch> getList(int priority) {
-        return lists[priority];
+        public void addLast(JmsInboundMessageDispatch envelope) {
+            ensureCapacity();
+            elements[(head + count) & (elements.length - 1)] = envelope;
+            count++;
+        }
+
+        public void addFirst(JmsInboundMessageDispatch envelope) {
+            ensureCapacity();
+            head = (head - 1) & (elements.length - 1);
+            elements[head] = envelope;
+            count++;
+        }
+
+        public JmsInboundMessageDispatch peekFirst() {
+            return elements[head];
+        }
+
+        public JmsInboundMessageDispatch removeFirst() {
+            JmsInboundMessageDispatch envelope = elements[head];
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+            count--;
+            return envelope;
+        }
+
+        public void drainTo(List<JmsInboundMessageDispatch> target) {
+            while (count > 0) {
+                target.add(removeFirst());
+            }
+            head = 0;
+        }
+
+        public void clear() {
+            Arrays.fill(elements, null);
+            head = 0;
+            count = 0;
+        }
+
+        private void ensureCapacity() {
+            if (count == elements.length) {
+                JmsInboundMessageDispatch[] expanded = new JmsInboundMessageDispatch[elements.length << 1];
+                int leading = elements.length - head;
+                System.arraycopy(elements, head, expanded, 0, leading);
+                System.arraycopy(elements, 0, expanded, leading, head);
+                elements = expanded;
+                head = 0;
+            }
+        }
     }
 }
@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounds the number of sends, and the encoded bytes they carry, that may be in flight
+ * at one time.  A send takes a Permit before it is handed to the provider and gives it
+ * back once the remote has settled it or the send has failed, a sender that finds the
+ * window full waits for a Permit to be returned.
+ *
+ * The byte limit is a soft one, a send is admitted while the bytes in flight are below
+ * the limit as its own size is not known until it has been encoded.  A window may have
+ * a parent window in which case a Permit must be had from both, this allows the sends
+ * of each producer to be bounded along with those of the connection as a whole.
+ */
+public final class SendWindow {
+
+    private final SendWindow parent;
+    private final int maxSends;
+    private final long maxBytes;
+
+    private int sends;
+    private long bytes;
+    private int generation;
+
+    /**
+     * Creates a new window, a limit of zero or less places no bound on that measure.
+     *
+     * @param maxSends
+     *        the number of sends that may be in flight at once.
+     * @param maxBytes
+     *        the number of encoded bytes that may be in flight at once.
+     * @param parent
+     *        a window that must also admit each send, or null if there is none.
+     */
+    public SendWindow(int maxSends, long maxBytes, SendWindow parent) {
+        this.maxSends = maxSends;
+        this.maxBytes = maxBytes;
+        this.parent = parent;
+    }
+
+    /**
+     * Takes a Permit from this window and any parent, waiting for space if needed.
+     *
+     * @param timeout
+     *        the time in milliseconds to wait, zero to not wait and negative to wait forever.
+     *
+     * @return a Permit for the send or null if none could be had before the timeout.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public Permit acquire(long timeout) throws InterruptedException {
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        return acquire(timeout, deadline);
+    }
+
+    /**
+     * Returns all the room in the window and wakes any waiting senders.  Permits taken
+     * before the reset no longer count against the window once it is reset, which is
+     * used when the connection drops and the sends those Permits cover are either lost
+     * or will be sent again.  A parent window is not reset along with this one.
+     */
+    public synchronized void reset() {
+        sends = 0;
+        bytes = 0;
+        generation++;
+        notifyAll();
+    }
+
+    /**
+     * @return the number of sends currently holding a Permit from this window.
+     */
+    public synchronized int getSendsInFlight() {
+        return sends;
+    }
+
+    /**
+     * @return the number of encoded bytes currently counted against this window.
+     */
+    public synchronized long getBytesInFlight() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "SendWindow { sends = " + getSendsInFlight() + ", bytes = " + getBytesInFlight() + " }";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private Permit acquire(long timeout, long deadline) throws InterruptedException {
+        int taken = reserve(timeout, deadline);
+        if (taken < 0) {
+            return null;
+        }
+
+        Permit parentPermit = null;
+        if (parent != null) {
+            parentPermit = parent.acquire(timeout, deadline);
+            if (parentPermit == null) {
+                release(taken, 0);
+                return null;
+            }
+        }
+
+        return new Permit(this, taken, parentPermit);
+    }
+
+    private synchronized int reserve(long timeout, long deadline) throws InterruptedException {
+        while (isFull()) {
+            if (timeout == 0) {
+                return -1;
+            } else if (timeout < 0) {
+                wait();
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return -1;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+
+        sends++;
+        return generation;
+    }
+
+    private boolean isFull() {
+        return (maxSends > 0 && sends >= maxSends) || (maxBytes > 0 && bytes >= maxBytes);
+    }
+
+    private synchronized void addBytes(int taken, long count) {
+        if (taken == generation) {
+            bytes += count;
+        }
+    }
+
+    private synchronized void release(int taken, long count) {
+        if (taken == generation) {
+            sends--;
+            bytes -= count;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Room for one send in a SendWindow, released once that send is done with.
+     */
+    public static final class Permit {
+
+        private final SendWindow window;
+        private final int generation;
+        private final Permit parent;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long bytes;
+
+        private Permit(SendWindow window, int generation, Permit parent) {
+            this.window = window;
+            this.generation = generation;
+            this.parent = parent;
+        }
+
+        /**
+         * Counts the encoded size of the send against the window.
+         *
+         * @param count
+         *        the number of bytes the send was encoded into.
+         */
+        public void addBytes(long count) {
+            if (!released.get()) {
+                bytes += count;
+                window.addBytes(generation, count);
+                if (parent != null) {
+                    parent.addBytes(count);
+                }
+            }
+        }
+
+        /**
+         * Returns the room held by this Permit, only the first call has any effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                window.release(generation, bytes);
+                if (parent != null) {
+                    parent.release();
+                }
+            }
+        }
+
+        public boolean isReleased() {
+            return released.get();
+        }
+    }
+}
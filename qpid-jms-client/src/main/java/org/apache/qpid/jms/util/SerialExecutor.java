@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the tasks given to it one at a time and in order on the threads of a shared
+ * Executor, so that many serial executors can share a small pool of threads.
+ *
+ * At most one task of a given SerialExecutor is ever running.  While it has tasks
+ * queued the SerialExecutor occupies a single thread of the pool, and after running
+ * a batch of tasks it gives the thread up and queues itself on the pool again so that
+ * a busy SerialExecutor cannot starve others that share the pool.  Shutting down
+ * lets the tasks already queued run but refuses any new ones, as does the single
+ * thread executor this stands in for.
+ */
+public final class SerialExecutor extends AbstractExecutorService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final Executor pool;
+    private final int batchSize;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+    private final Runnable drainTask = new Runnable() {
+
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private boolean scheduled;
+    private boolean shutdown;
+
+    /**
+     * Creates a new SerialExecutor that runs its tasks on the given Executor.
+     *
+     * @param pool
+     *        the Executor whose threads run the tasks.
+     */
+    public SerialExecutor(Executor pool) {
+        this(pool, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a new SerialExecutor that runs its tasks on the given Executor.
+     *
+     * @param pool
+     *        the Executor whose threads run the tasks.
+     * @param batchSize
+     *        the number of tasks to run before giving the thread back to the pool.
+     */
+    public SerialExecutor(Executor pool, int batchSize) {
+        if (pool == null) {
+            throw new IllegalArgumentException("An Executor to run the tasks on is required");
+        }
+
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("Cannot execute a null task");
+        }
+
+        synchronized (tasks) {
+            if (shutdown) {
+                throw new RejectedExecutionException("SerialExecutor has been shut down");
+            }
+
+            tasks.add(task);
+            if (scheduled) {
+                return;
+            }
+
+            scheduled = true;
+        }
+
+        schedule();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (tasks) {
+            shutdown = true;
+            tasks.notifyAll();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        synchronized (tasks) {
+            shutdown = true;
+            List<Runnable> pending = new ArrayList<Runnable>(tasks);
+            tasks.clear();
+            tasks.notifyAll();
+            return pending;
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized (tasks) {
+            return shutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized (tasks) {
+            return shutdown && !scheduled;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (tasks) {
+            while (!(shutdown && !scheduled)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(tasks, remaining);
+            }
+
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (tasks) {
+            return "SerialExecutor { queued = " + tasks.size() + ", shutdown = " + shutdown + " }";
+        }
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void schedule() {
+        try {
+            pool.execute(drainTask);
+        } catch (RejectedExecutionException ex) {
+            // The pool is gone so nothing queued here can run any longer.
+            synchronized (tasks) {
+                scheduled = false;
+                tasks.clear();
+                tasks.notifyAll();
+            }
+            throw ex;
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < batchSize; ++i) {
+            Runnable task = null;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    scheduled = false;
+                    tasks.notifyAll();
+                    return;
+                }
+            }
+
+            try {
+                task.run();
+            } catch (Throwable error) {
+                LOG.warn("Task run by SerialExecutor threw an error: {}", error.getMessage(), error);
+            }
+        }
+
+        synchronized (tasks) {
+            if (tasks.isEmpty()) {
+                scheduled = false;
+                tasks.notifyAll();
+                return;
+            }
+        }
+
+        try {
+            schedule();
+        } catch (RejectedExecutionException ex) {
+            LOG.debug("Pool rejected SerialExecutor, {} queued tasks dropped", ex.getMessage());
+        }
+    }
+}
@@ -46,6 +46,8 @@ public class JmsPrefetchPolicyTest {
         assertEquals(JmsPrefetchPolicy.DEFAULT_QUEUE_PREFETCH, policy.getQueuePrefetch());
         assertEquals(JmsPrefetchPolicy.DEFAULT_QUEUE_BROWSER_PREFETCH, policy.getQueueBrowserPrefetch());
         assertEquals(JmsPrefetchPolicy.MAX_PREFETCH_SIZE, policy.getMaxPrefetchSize());
+        assertFalse(policy.isAdaptive());
+        assertEquals(JmsPrefetchPolicy.DEFAULT_ADAPTIVE_MINIMUM, policy.getAdaptiveMinimum());
     }
 
     @Test
@@ -56,6 +58,8 @@ public class JmsPrefetchPolicyTest {
         policy1.setQueueBrowserPrefetch(30);
         policy1.setQueuePrefetch(40);
         policy1.setMaxPrefetchSize(100);
+        policy1.setAdaptive(true);
+        policy1.setAdaptiveMinimum(5);
 
         JmsPrefetchPolicy policy2 = new JmsPrefetchPolicy(policy1);
 
@@ -64,6 +68,9 @@ public class JmsPrefetchPolicyTest {
         assertEquals(policy1.getQueuePrefetch(), policy2.getQueuePrefetch());
         assertEquals(policy1.getQueueBrowserPrefetch(), policy2.getQueueBrowserPrefetch());
         assertEquals(policy1.getMaxPrefetchSize(), policy2.getMaxPrefetchSize());
+        assertEquals(policy1.isAdaptive(), policy2.isAdaptive());
+        assertEquals(policy1.getAdaptiveMinimum(), policy2.getAdaptiveMinimum());
+        assertEquals(policy1, policy2);
     }
 
     @Test
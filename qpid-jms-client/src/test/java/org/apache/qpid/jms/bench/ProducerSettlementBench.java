@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.bench;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+
+import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
+import org.apache.qpid.jms.message.JmsTextMessage;
+import org.apache.qpid.jms.meta.JmsProducerId;
+import org.apache.qpid.jms.meta.JmsProducerInfo;
+import org.apache.qpid.jms.provider.ProviderFuture;
+import org.apache.qpid.jms.provider.amqp.AmqpConnection;
+import org.apache.qpid.jms.provider.amqp.AmqpFixedProducer;
+import org.apache.qpid.jms.provider.amqp.AmqpSession;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsTextMessageFacade;
+import org.apache.qpid.jms.test.QpidJmsTestCase;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.engine.Collector;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.Transport;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the cost of processing a settlement in AmqpFixedProducer as the number
+ * of unsettled sends grows.  The producer runs against an in-memory proton peer
+ * that keeps a fixed window of sends in flight and accepts the oldest one at a
+ * time, the time per settlement should stay flat regardless of the window size.
+ */
+@Ignore
+public class ProducerSettlementBench extends QpidJmsTestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProducerSettlementBench.class);
+
+    private static final int[] WINDOW_SIZES = new int[] { 100, 1000, 10000 };
+    private static final int SETTLEMENTS = 20000;
+    private static final int NUM_RUNS = 5;
+
+    private Transport clientTransport;
+    private Transport serverTransport;
+    private Collector clientCollector;
+
+    @Test
+    public void testSettlementCostAsInFlightWindowGrows() throws Exception {
+        for (int window : WINDOW_SIZES) {
+            // Warm up
+            runSettlements(window);
+
+            long cumulative = 0;
+            for (int i = 0; i < NUM_RUNS; ++i) {
+                cumulative += runSettlements(window);
+            }
+
+            long perSettlement = cumulative / NUM_RUNS / SETTLEMENTS;
+            LOG.info("Window of {} unsettled sends: {} ns per settlement", window, perSettlement);
+        }
+    }
+
+    private long runSettlements(int window) throws Exception {
+        Connection clientConnection = Proton.connection();
+        clientTransport = Proton.transport();
+        clientTransport.bind(clientConnection);
+        clientCollector = Proton.collector();
+        clientConnection.collect(clientCollector);
+
+        Connection serverConnection = Proton.connection();
+        serverTransport = Proton.transport();
+        serverTransport.bind(serverConnection);
+
+        clientConnection.open();
+        Session clientSession = clientConnection.session();
+        clientSession.open();
+        Sender sender = clientSession.sender("producer");
+        sender.setTarget(new Target());
+        sender.setSource(new Source());
+        sender.open();
+        pump();
+
+        serverConnection.open();
+        Session serverSession = serverConnection.sessionHead(EnumSet.of(EndpointState.UNINITIALIZED), EnumSet.of(EndpointState.ACTIVE));
+        serverSession.open();
+        Link serverLink = serverConnection.linkHead(EnumSet.of(EndpointState.UNINITIALIZED), EnumSet.of(EndpointState.ACTIVE));
+        Receiver receiver = (Receiver) serverLink;
+        receiver.setTarget(serverLink.getRemoteTarget());
+        receiver.setSource(serverLink.getRemoteSource());
+        receiver.open();
+        receiver.flow(window);
+        pump();
+
+        AmqpFixedProducer producer = createProducer(sender);
+        ArrayDeque<Delivery> received = new ArrayDeque<Delivery>();
+
+        // Fill the window of unsettled sends.
+        for (int i = 0; i < window; ++i) {
+            send(producer);
+        }
+        pump();
+        drainReceived(receiver, received);
+        assertEquals(window, received.size());
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < SETTLEMENTS; ++i) {
+            Delivery oldest = received.poll();
+            oldest.disposition(Accepted.getInstance());
+            oldest.settle();
+            receiver.flow(1);
+            pump();
+
+            processDeliveryUpdates(producer);
+
+            send(producer);
+            pump();
+            drainReceived(receiver, received);
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        clientConnection.close();
+        serverConnection.close();
+
+        return elapsed;
+    }
+
+    private AmqpFixedProducer createProducer(Sender sender) {
+        AmqpConnection connection = Mockito.mock(AmqpConnection.class);
+        AmqpSession session = Mockito.mock(AmqpSession.class);
+        Mockito.when(session.getConnection()).thenReturn(connection);
+
+        JmsProducerInfo info = new JmsProducerInfo(new JmsProducerId("ID:bench:1:1:1"));
+        return new AmqpFixedProducer(session, info, sender);
+    }
+
+    private void send(AmqpFixedProducer producer) throws Exception {
+        AmqpJmsTextMessageFacade facade = new AmqpJmsTextMessageFacade(Mockito.mock(AmqpConnection.class));
+        facade.setText("hello");
+
+        JmsOutboundMessageDispatch envelope = new JmsOutboundMessageDispatch();
+        envelope.setMessage(new JmsTextMessage(facade));
+        envelope.setSendAsync(true);
+
+        producer.send(envelope, new ProviderFuture());
+    }
+
+    private void processDeliveryUpdates(AmqpFixedProducer producer) throws Exception {
+        Event event = null;
+        while ((event = clientCollector.peek()) != null) {
+            if (event.getType() == Event.Type.DELIVERY) {
+                producer.processDeliveryUpdates(null, event.getDelivery());
+            }
+            clientCollector.pop();
+        }
+    }
+
+    private void drainReceived(Receiver receiver, ArrayDeque<Delivery> received) {
+        byte[] buffer = new byte[1024];
+        Delivery current = null;
+        while ((current = receiver.current()) != null && current.isReadable() && !current.isPartial()) {
+            receiver.recv(buffer, 0, buffer.length);
+            receiver.advance();
+            received.add(current);
+        }
+    }
+
+    private void pump() {
+        boolean moved;
+        do {
+            moved = transfer(clientTransport, serverTransport);
+            moved |= transfer(serverTransport, clientTransport);
+        } while (moved);
+    }
+
+    private boolean transfer(Transport from, Transport to) {
+        ByteBuffer output = from.getOutputBuffer();
+        int size = output.remaining();
+        if (size == 0) {
+            return false;
+        }
+
+        while (output.hasRemaining()) {
+            ByteBuffer input = to.getInputBuffer();
+            int limit = output.limit();
+            output.limit(output.position() + Math.min(input.remaining(), output.remaining()));
+            input.put(output);
+            output.limit(limit);
+            to.processInput().checkIsOk();
+        }
+
+        from.outputConsumed();
+        return true;
+    }
+}
@@ -16,10 +16,13 @@
  */
 package org.apache.qpid.jms.consumer;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
@@ -29,6 +32,7 @@ import javax.jms.Session;
 
 import org.apache.qpid.jms.JmsConnection;
 import org.apache.qpid.jms.test.Wait;
+import org.junit.Test;
 
 /**
  * Tests MessageConsumer method contracts after the MessageConsumer connection fails.
@@ -61,4 +65,46 @@ public class JmsMessageConsumerFailedTest extends JmsMessageConsumerClosedTest {
 
         return consumer;
     }
+
+    @Test(timeout=30000)
+    public void testBlockedReceiveThrowsWhenConnectionFails() throws Exception {
+        for (int i = 0; i < 20; ++i) {
+            connection = createConnectionToMockProvider();
+            connection.setExceptionListener(new ExceptionListener() {
+
+                @Override
+                public void onException(JMSException exception) {
+                }
+            });
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageConsumer consumer = session.createConsumer(session.createQueue(_testName.getMethodName()));
+
+            // The connection is not started so the receive keeps returning to the consumer
+            // and checking for a failure, the failure must be seen at any point of that.
+            final CountDownLatch receiving = new CountDownLatch(1);
+            final AtomicReference<Throwable> result = new AtomicReference<Throwable>();
+            Thread receiver = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    receiving.countDown();
+                    try {
+                        consumer.receive();
+                    } catch (Throwable error) {
+                        result.set(error);
+                    }
+                }
+            });
+            receiver.start();
+
+            assertTrue(receiving.await(10, TimeUnit.SECONDS));
+            providerListener.onConnectionFailure(new IOException());
+
+            receiver.join(10000);
+            assertFalse(receiver.isAlive());
+            assertTrue("Receive should have thrown: " + result.get(), result.get() instanceof JMSException);
+
+            connection.close();
+        }
+    }
 }
@@ -20,12 +20,16 @@ package org.apache.qpid.jms.integration;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -41,8 +45,10 @@ import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.jms.Topic;
 
+import org.apache.qpid.jms.JmsBatchMessageListener;
 import org.apache.qpid.jms.JmsConnection;
 import org.apache.qpid.jms.JmsDefaultConnectionListener;
+import org.apache.qpid.jms.JmsMessageConsumer;
 import org.apache.qpid.jms.JmsPrefetchPolicy;
 import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
 import org.apache.qpid.jms.test.QpidJmsTestCase;
@@ -57,8 +63,11 @@ import org.apache.qpid.jms.test.testpeer.matchers.ReleasedMatcher;
 import org.apache.qpid.jms.test.testpeer.matchers.sections.MessageAnnotationsSectionMatcher;
 import org.apache.qpid.jms.test.testpeer.matchers.sections.MessageHeaderSectionMatcher;
 import org.apache.qpid.jms.test.testpeer.matchers.sections.TransferPayloadCompositeMatcher;
+import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.DescribedType;
 import org.apache.qpid.proton.amqp.UnsignedInteger;
+import org.apache.qpid.proton.codec.Data;
+import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -162,6 +171,33 @@ public class ConsumerIntegrationTest extends QpidJmsTestCase {
         }
     }
 
+    @Test(timeout = 20000)
+    public void testReceiveMessageWithProviderOnTransportEventLoop() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, "?amqp.useEventLoop=true");
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"));
+            testPeer.expectDispositionThatIsAcceptedAndSettled();
+
+            MessageConsumer messageConsumer = session.createConsumer(queue);
+            Message receivedMessage = messageConsumer.receive(3000);
+
+            assertNotNull("A message should have been recieved", receivedMessage);
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
     /**
      * Test that an Ack is not dropped when RTE is thrown from onMessage
      */
@@ -408,6 +444,444 @@ public class ConsumerIntegrationTest extends QpidJmsTestCase {
         }
     }
 
+    @Test(timeout=20000)
+    public void testReceiveWithAsyncAcknowledgements() throws Exception {
+        final int messageCount = 10;
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, "?jms.sendAcksAsync=true");
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), messageCount);
+
+            for (int i = 0; i < messageCount; i++) {
+                testPeer.expectDisposition(true, new AcceptedMatcher());
+            }
+
+            MessageConsumer consumer = session.createConsumer(destination);
+
+            for (int i = 0; i < messageCount; i++) {
+                assertNotNull("Message " + i + " was not received", consumer.receive(3000));
+            }
+
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testBatchReceiveAcknowledgesEachMessage() throws Exception {
+        final int messageCount = 5;
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), messageCount);
+
+            for (int i = 0; i < messageCount; i++) {
+                testPeer.expectDisposition(true, new AcceptedMatcher());
+            }
+
+            JmsMessageConsumer consumer = (JmsMessageConsumer) session.createConsumer(destination);
+
+            int received = 0;
+            while (received < messageCount) {
+                List<Message> batch = consumer.receive(messageCount, 3000);
+                assertFalse("No messages received in batch", batch.isEmpty());
+                assertTrue("Too many messages received", received + batch.size() <= messageCount);
+                for (Message message : batch) {
+                    assertNotNull(message);
+                    assertEquals("content", ((TextMessage) message).getText());
+                }
+                received += batch.size();
+            }
+
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testBatchMessageListenerAcceptsBatch() throws Exception {
+        doBatchMessageListenerTestImpl(false);
+    }
+
+    @Test(timeout=20000)
+    public void testBatchMessageListenerReleasesBatchOnFailure() throws Exception {
+        doBatchMessageListenerTestImpl(true);
+    }
+
+    private void doBatchMessageListenerTestImpl(final boolean throwFromListener) throws Exception {
+        final int messageCount = 5;
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), messageCount);
+
+            for (int i = 0; i < messageCount; i++) {
+                if (throwFromListener) {
+                    testPeer.expectDisposition(true, new ReleasedMatcher());
+                } else {
+                    testPeer.expectDisposition(true, new AcceptedMatcher());
+                }
+            }
+
+            final CountDownLatch delivered = new CountDownLatch(1);
+            final List<List<Message>> batches = new CopyOnWriteArrayList<List<Message>>();
+
+            JmsMessageConsumer consumer = (JmsMessageConsumer) session.createConsumer(destination);
+            consumer.setBatchMessageListener(new JmsBatchMessageListener() {
+
+                @Override
+                public void onMessages(List<Message> messages) {
+                    batches.add(messages);
+                    delivered.countDown();
+                    if (throwFromListener) {
+                        throw new RuntimeException("Batch failed");
+                    }
+                }
+            }, messageCount, 5000);
+
+            assertTrue("Batch was not delivered", delivered.await(5, TimeUnit.SECONDS));
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            assertEquals(1, batches.size());
+            assertEquals(messageCount, batches.get(0).size());
+
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testBatchMessageListenerDeliversPartialBatchOnceLingerExpires() throws Exception {
+        final int messageCount = 3;
+        final long lingerTime = 200;
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), messageCount);
+            for (int i = 0; i < messageCount; i++) {
+                testPeer.expectDisposition(true, new AcceptedMatcher());
+            }
+
+            final CountDownLatch delivered = new CountDownLatch(1);
+            final List<List<Message>> batches = new CopyOnWriteArrayList<List<Message>>();
+
+            long start = System.currentTimeMillis();
+            JmsMessageConsumer consumer = (JmsMessageConsumer) session.createConsumer(destination);
+            consumer.setBatchMessageListener(new JmsBatchMessageListener() {
+
+                @Override
+                public void onMessages(List<Message> messages) {
+                    batches.add(messages);
+                    delivered.countDown();
+                }
+            }, 10, lingerTime);
+
+            assertTrue("Batch was not delivered", delivered.await(5, TimeUnit.SECONDS));
+            assertTrue("Batch delivered before the linger time", System.currentTimeMillis() - start >= lingerTime);
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            assertEquals(1, batches.size());
+            assertEquals(messageCount, batches.get(0).size());
+
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testLingeringBatchDoesNotBlockOtherConsumersOnSession() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue batchQueue = session.createQueue(getTestName() + "-batch");
+            Queue queue = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), 1);
+
+            final CountDownLatch batchDelivered = new CountDownLatch(1);
+            JmsMessageConsumer batchConsumer = (JmsMessageConsumer) session.createConsumer(batchQueue);
+            batchConsumer.setBatchMessageListener(new JmsBatchMessageListener() {
+
+                @Override
+                public void onMessages(List<Message> messages) {
+                    batchDelivered.countDown();
+                }
+            }, 10, 1500);
+
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), 1,
+                                                       false, false, Matchers.greaterThanOrEqualTo(UnsignedInteger.ONE), 2, false);
+            testPeer.expectDisposition(true, new AcceptedMatcher());
+
+            final CountDownLatch delivered = new CountDownLatch(1);
+            MessageConsumer consumer = session.createConsumer(queue);
+            consumer.setMessageListener(new MessageListener() {
+
+                @Override
+                public void onMessage(Message message) {
+                    delivered.countDown();
+                }
+            });
+
+            assertTrue("Message was held up by the lingering batch", delivered.await(1, TimeUnit.SECONDS));
+            assertEquals("Partial batch should still be lingering", 1, batchDelivered.getCount());
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            testPeer.expectDisposition(true, new AcceptedMatcher());
+            assertTrue("Partial batch was not delivered", batchDelivered.await(5, TimeUnit.SECONDS));
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+            testPeer.expectDetach(true, true, true);
+            batchConsumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testCloseConsumerWithLingeringBatch() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), 1);
+
+            final CountDownLatch delivered = new CountDownLatch(1);
+            JmsMessageConsumer consumer = (JmsMessageConsumer) session.createConsumer(destination);
+            consumer.setBatchMessageListener(new JmsBatchMessageListener() {
+
+                @Override
+                public void onMessages(List<Message> messages) {
+                    delivered.countDown();
+                }
+            }, 10, 200);
+
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            // The prefetched message is released once the link is gone.
+            testPeer.expectDetach(true, true, true);
+            testPeer.expectDisposition(true, new ReleasedMatcher());
+            consumer.close();
+
+            assertFalse("Closed consumer delivered its lingering batch", delivered.await(600, TimeUnit.MILLISECONDS));
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testLingeringBatchDeliveredAfterConnectionRestarted() throws Exception {
+        final int messageCount = 2;
+        final long lingerTime = 300;
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), messageCount);
+
+            final CountDownLatch delivered = new CountDownLatch(1);
+            final List<List<Message>> batches = new CopyOnWriteArrayList<List<Message>>();
+
+            JmsMessageConsumer consumer = (JmsMessageConsumer) session.createConsumer(destination);
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            consumer.setBatchMessageListener(new JmsBatchMessageListener() {
+
+                @Override
+                public void onMessages(List<Message> messages) {
+                    batches.add(messages);
+                    delivered.countDown();
+                }
+            }, 10, lingerTime);
+            connection.stop();
+
+            assertFalse("Batch delivered while the connection was stopped",
+                        delivered.await(lingerTime * 3, TimeUnit.MILLISECONDS));
+
+            for (int i = 0; i < messageCount; i++) {
+                testPeer.expectDisposition(true, new AcceptedMatcher());
+            }
+
+            connection.start();
+
+            assertTrue("Batch was not delivered after restart", delivered.await(5, TimeUnit.SECONDS));
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            assertEquals(1, batches.size());
+            assertEquals(messageCount, batches.get(0).size());
+
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testDupsOkAcknowledgeAcceptsEachMessageByDefault() throws Exception {
+        final int messageCount = 3;
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.DUPS_OK_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), messageCount);
+
+            MessageConsumer consumer = session.createConsumer(destination);
+            testPeer.waitForAllHandlersToComplete(2000);
+
+            // Without batching configured each message is accepted as it is consumed.
+            for (int i = 0; i < messageCount; i++) {
+                testPeer.expectDisposition(true, new AcceptedMatcher());
+                assertNotNull("Message " + i + " was not received", consumer.receive(3000));
+                testPeer.waitForAllHandlersToComplete(500);
+            }
+
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testDupsOkAcknowledgeAcceptsConsumedMessagesInBatches() throws Exception {
+        final int messageCount = 5;
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, "?jms.dupsOkBatchSize=3&jms.dupsOkBatchTimeout=0");
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.DUPS_OK_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), messageCount);
+
+            // Only the first full batch should be accepted while the consumer is open.
+            for (int i = 0; i < 3; i++) {
+                testPeer.expectDisposition(true, new AcceptedMatcher());
+            }
+
+            MessageConsumer consumer = session.createConsumer(destination);
+
+            for (int i = 0; i < messageCount; i++) {
+                assertNotNull("Message " + i + " was not received", consumer.receive(3000));
+            }
+
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            // The partial batch is accepted before the link is closed.
+            for (int i = 0; i < 2; i++) {
+                testPeer.expectDisposition(true, new AcceptedMatcher());
+            }
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testDupsOkAcknowledgeAcceptsPartialBatchAfterTimeout() throws Exception {
+        final int messageCount = 2;
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, "?jms.dupsOkBatchSize=10&jms.dupsOkBatchTimeout=50");
+            connection.start();
+
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.DUPS_OK_ACKNOWLEDGE);
+            Queue destination = session.createQueue(getTestName());
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"), messageCount);
+
+            for (int i = 0; i < messageCount; i++) {
+                testPeer.expectDisposition(true, new AcceptedMatcher());
+            }
+
+            MessageConsumer consumer = session.createConsumer(destination);
+
+            for (int i = 0; i < messageCount; i++) {
+                assertNotNull("Message " + i + " was not received", consumer.receive(3000));
+            }
+
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            testPeer.expectDetach(true, true, true);
+            consumer.close();
+
+            testPeer.waitForAllHandlersToComplete(2000);
+        }
+    }
+
     @Test(timeout=20000)
     public void testNoReceivedMessagesWhenConnectionNotStarted() throws Exception {
         try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
@@ -569,6 +1043,116 @@ public class ConsumerIntegrationTest extends QpidJmsTestCase {
         }
     }
 
+    @Test(timeout=20000)
+    public void testAdaptivePrefetchStartsAtMinimum() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer,
+                "?jms.prefetchPolicy.adaptive=true&jms.prefetchPolicy.adaptiveMinimum=5");
+
+            testPeer.expectBegin();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlow(false, equalTo(UnsignedInteger.valueOf(5)));
+
+            JmsMessageConsumer consumer = (JmsMessageConsumer) session.createConsumer(queue);
+            testPeer.waitForAllHandlersToComplete(1000);
+
+            assertEquals(JmsPrefetchPolicy.DEFAULT_QUEUE_PREFETCH, consumer.getPrefetchSize());
+            assertEquals(5, consumer.getCurrentPrefetchSize());
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testCreditWithheldWhilePrefetchMemoryLimitIsReached() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer,
+                "?jms.prefetchPolicy.all=2&jms.prefetchMemoryLimit=1");
+            connection.start();
+
+            testPeer.expectBegin();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+
+            // A message larger than the limit is let through one at a time.
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"),
+                                                       1, false, false, equalTo(UnsignedInteger.ONE), 1, false, false);
+
+            MessageConsumer consumer = session.createConsumer(queue);
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            // Consuming the message frees the budget and the next credit is granted.
+            testPeer.expectLinkFlow(false, equalTo(UnsignedInteger.ONE));
+            testPeer.expectDisposition(true, new AcceptedMatcher());
+            assertNotNull(consumer.receive(3000));
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testPrefetchMemoryLimitSharedBetweenConsumers() throws Exception {
+        DescribedType content = new AmqpValueDescribedType("content");
+        Data encoded = Proton.data(1024);
+        encoded.putDescribedType(content);
+        long messageSize = encoded.encode().getLength();
+
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer,
+                "?jms.prefetchPolicy.all=5&jms.prefetchMemoryLimit=" + (2 * messageSize));
+            connection.start();
+
+            testPeer.expectBegin();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+
+            // Until the size of a message is known a single credit is granted, once it is
+            // known the credit granted is sized to the room left for two messages.
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, content,
+                                                       1, false, false, equalTo(UnsignedInteger.ONE), 1, false, false);
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, content,
+                                                       1, false, false, equalTo(UnsignedInteger.ONE), 2, false, false);
+
+            MessageConsumer first = session.createConsumer(queue);
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            // With the budget spent a second consumer grants no credit at all.
+            testPeer.expectReceiverAttach();
+            session.createConsumer(queue);
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            // Consuming one message makes room for exactly one credit across both consumers.
+            testPeer.expectLinkFlow(false, equalTo(UnsignedInteger.ONE));
+            testPeer.expectDisposition(true, new AcceptedMatcher());
+            assertNotNull(first.receive(3000));
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            // Closing the first consumer returns all it held and the second may fill the limit.
+            testPeer.expectLinkFlow(false, equalTo(UnsignedInteger.valueOf(2)));
+            testPeer.expectDetach(true, true, true);
+            testPeer.expectDisposition(true, new ReleasedMatcher());
+            first.close();
+            testPeer.waitForAllHandlersToComplete(3000);
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
     @Test(timeout=30000)
     public void testReceiveWithTimoutDrainsOnNoMessage() throws IOException, Exception {
         doDrainOnNoMessageTestImpl(false, true);
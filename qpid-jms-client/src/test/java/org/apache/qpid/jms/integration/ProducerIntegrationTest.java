@@ -26,15 +26,21 @@ import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.jms.Connection;
 import javax.jms.DeliveryMode;
@@ -42,18 +48,26 @@ import javax.jms.ExceptionListener;
 import javax.jms.IllegalStateException;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
 import javax.jms.MessageProducer;
 import javax.jms.Queue;
 import javax.jms.Session;
 
+import org.apache.qpid.jms.JmsCompletionListener;
 import org.apache.qpid.jms.JmsConnection;
 import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsMessageProducer;
+import org.apache.qpid.jms.exceptions.JmsSendBatchException;
+import org.apache.qpid.jms.exceptions.JmsSendTimedOutException;
 import org.apache.qpid.jms.provider.amqp.message.AmqpMessageSupport;
 import org.apache.qpid.jms.test.QpidJmsTestCase;
 import org.apache.qpid.jms.test.Wait;
 import org.apache.qpid.jms.test.testpeer.ListDescribedType;
 import org.apache.qpid.jms.test.testpeer.TestAmqpPeer;
 import org.apache.qpid.jms.test.testpeer.basictypes.AmqpError;
+import org.apache.qpid.jms.test.testpeer.describedtypes.sections.AmqpValueDescribedType;
+import org.apache.qpid.jms.test.testpeer.describedtypes.Accepted;
 import org.apache.qpid.jms.test.testpeer.describedtypes.Modified;
 import org.apache.qpid.jms.test.testpeer.describedtypes.Rejected;
 import org.apache.qpid.jms.test.testpeer.describedtypes.Released;
@@ -798,6 +812,54 @@ public class ProducerIntegrationTest extends QpidJmsTestCase {
         }
     }
 
+    @Test(timeout = 20000)
+    public void testAsyncSendsWithCoalescedWrites() throws Exception {
+        doAsyncSendsWithCoalescedWritesTestImpl("?amqp.coalesceWrites=true");
+    }
+
+    @Test(timeout = 20000)
+    public void testAsyncSendsWithCoalescedWritesFlushedAtThreshold() throws Exception {
+        doAsyncSendsWithCoalescedWritesTestImpl("?amqp.coalesceWrites=true&amqp.coalesceWritesThreshold=1");
+    }
+
+    private void doAsyncSendsWithCoalescedWritesTestImpl(String options) throws Exception {
+        final int MSG_COUNT = 50;
+
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, options);
+
+            JmsConnection jmsConnection = (JmsConnection) connection;
+            jmsConnection.setForceAsyncSend(true);
+
+            testPeer.expectBegin();
+            testPeer.expectSenderAttach();
+            testPeer.expectSenderAttach();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+            MessageProducer producer = session.createProducer(queue);
+
+            // Create a second producer which allows for a safe wait for credit for the
+            // first producer so that the sends are all actually performed async.
+            session.createProducer(queue);
+
+            for (int i = 0; i < MSG_COUNT; ++i) {
+                testPeer.expectTransfer(new TransferPayloadCompositeMatcher());
+            }
+
+            for (int i = 0; i < MSG_COUNT; ++i) {
+                producer.send(session.createTextMessage("content:" + i));
+            }
+
+            testPeer.waitForAllHandlersToComplete(2000);
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
     @Test(timeout = 20000)
     public void testSyncSendMessageRejected() throws Exception {
         doSyncSendMessageNotAcceptedTestImpl(new Rejected());
@@ -860,6 +922,368 @@ public class ProducerIntegrationTest extends QpidJmsTestCase {
         }
     }
 
+    @Test(timeout = 20000)
+    public void testSendBatch() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            testPeer.expectBegin();
+            testPeer.expectSenderAttach();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+            JmsMessageProducer producer = (JmsMessageProducer) session.createProducer(queue);
+
+            List<Message> messages = new ArrayList<Message>();
+            for (int i = 0; i < 3; i++) {
+                messages.add(session.createTextMessage("content-" + i));
+                testPeer.expectTransfer(new TransferPayloadCompositeMatcher());
+            }
+
+            producer.send(messages);
+
+            for (Message message : messages) {
+                assertEquals(queue, message.getJMSDestination());
+                assertNotNull(message.getJMSMessageID());
+            }
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testSendBatchReportsEachFailedMessage() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            testPeer.expectBegin();
+            testPeer.expectSenderAttach();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+            JmsMessageProducer producer = (JmsMessageProducer) session.createProducer(queue);
+
+            List<Message> messages = new ArrayList<Message>();
+            for (int i = 0; i < 3; i++) {
+                messages.add(session.createTextMessage("content-" + i));
+            }
+
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher());
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher(), nullValue(), false, new Rejected(), true);
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher());
+
+            try {
+                producer.send(messages);
+                fail("Expected an exception to be thrown");
+            } catch (JmsSendBatchException e) {
+                assertEquals(1, e.getFailedCount());
+                assertEquals(3, e.getFailures().size());
+                assertNull(e.getFailures().get(0));
+                assertNotNull(e.getFailures().get(1));
+                assertNull(e.getFailures().get(2));
+            }
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testSendWithCompletionListener() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            testPeer.expectBegin();
+            testPeer.expectSenderAttach();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+            JmsMessageProducer producer = (JmsMessageProducer) session.createProducer(queue);
+
+            final List<Message> completed = new CopyOnWriteArrayList<Message>();
+            final List<Message> failed = new CopyOnWriteArrayList<Message>();
+            final List<Message> order = new CopyOnWriteArrayList<Message>();
+            final CountDownLatch done = new CountDownLatch(3);
+
+            JmsCompletionListener listener = new JmsCompletionListener() {
+
+                @Override
+                public void onCompletion(Message message) {
+                    completed.add(message);
+                    order.add(message);
+                    done.countDown();
+                }
+
+                @Override
+                public void onException(Message message, Exception exception) {
+                    failed.add(message);
+                    order.add(message);
+                    done.countDown();
+                }
+            };
+
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher());
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher(), nullValue(), false, new Rejected(), true);
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher());
+
+            List<Message> messages = new ArrayList<Message>();
+            for (int i = 0; i < 3; i++) {
+                Message message = session.createTextMessage("content-" + i);
+                messages.add(message);
+                producer.send(message, listener);
+            }
+
+            assertTrue("Did not get all completions", done.await(5, TimeUnit.SECONDS));
+
+            assertEquals(messages, order);
+            assertEquals(2, completed.size());
+            assertEquals(1, failed.size());
+            assertSame(messages.get(1), failed.get(0));
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testCompletionListenersSignaledInSendOrderWhenOutcomesArriveOutOfOrder() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer);
+            testPeer.expectBegin();
+            testPeer.expectSenderAttach();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+            JmsMessageProducer producer = (JmsMessageProducer) session.createProducer(queue);
+
+            final List<Message> order = new CopyOnWriteArrayList<Message>();
+            final CountDownLatch done = new CountDownLatch(2);
+
+            JmsCompletionListener listener = new JmsCompletionListener() {
+
+                @Override
+                public void onCompletion(Message message) {
+                    order.add(message);
+                    done.countDown();
+                }
+
+                @Override
+                public void onException(Message message, Exception exception) {
+                    order.add(message);
+                    done.countDown();
+                }
+            };
+
+            // The outcome of the second send arrives before that of the first.
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher(), nullValue(), false, false, null, false);
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher());
+            testPeer.remotelySendDispositionOnLastOpenedSession(UnsignedInteger.ZERO, new Accepted(), true);
+
+            List<Message> messages = new ArrayList<Message>();
+            for (int i = 0; i < 2; i++) {
+                Message message = session.createTextMessage("content-" + i);
+                messages.add(message);
+                producer.send(message, listener);
+            }
+
+            assertTrue("Did not get all completions", done.await(5, TimeUnit.SECONDS));
+            assertEquals(messages, order);
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testCloseFailsCompletionListenerSendsWithoutOutcome() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, "?jms.closeTimeout=500");
+            testPeer.expectBegin();
+            testPeer.expectSenderAttach();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+            JmsMessageProducer producer = (JmsMessageProducer) session.createProducer(queue);
+
+            final CountDownLatch failed = new CountDownLatch(1);
+            final AtomicReference<Thread> listenerThread = new AtomicReference<Thread>();
+            JmsCompletionListener listener = new JmsCompletionListener() {
+
+                @Override
+                public void onCompletion(Message message) {
+                }
+
+                @Override
+                public void onException(Message message, Exception exception) {
+                    listenerThread.set(Thread.currentThread());
+                    failed.countDown();
+                }
+            };
+
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher(), nullValue(), false, false, null, false);
+            producer.send(session.createTextMessage("content"), listener);
+            testPeer.waitForAllHandlersToComplete(1000);
+
+            testPeer.expectClose();
+            connection.close();
+
+            assertEquals("Send was not failed before close returned", 0, failed.getCount());
+            assertNotSame(Thread.currentThread(), listenerThread.get());
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testCloseSessionFromMessageListenerWithOutstandingCompletionSend() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, "?jms.closeTimeout=10000");
+            connection.start();
+
+            testPeer.expectBegin();
+            testPeer.expectSenderAttach();
+            testPeer.expectReceiverAttach();
+            testPeer.expectLinkFlowRespondWithTransfer(null, null, null, null, new AmqpValueDescribedType("content"));
+
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+            final JmsMessageProducer producer = (JmsMessageProducer) session.createProducer(queue);
+            MessageConsumer consumer = session.createConsumer(queue);
+            testPeer.waitForAllHandlersToComplete(1000);
+
+            // The send is never settled, its outcome can only come from the close.
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher(), nullValue(), false, false, null, false);
+            testPeer.expectEnd();
+
+            final CountDownLatch closed = new CountDownLatch(1);
+            final AtomicReference<Thread> completionThread = new AtomicReference<Thread>();
+            final AtomicReference<Thread> deliveryThread = new AtomicReference<Thread>();
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            final JmsCompletionListener listener = new JmsCompletionListener() {
+
+                @Override
+                public void onCompletion(Message message) {
+                }
+
+                @Override
+                public void onException(Message message, Exception exception) {
+                    completionThread.set(Thread.currentThread());
+                }
+            };
+
+            final long[] closeTime = new long[1];
+            consumer.setMessageListener(new MessageListener() {
+
+                @Override
+                public void onMessage(Message message) {
+                    deliveryThread.set(Thread.currentThread());
+                    try {
+                        producer.send(session.createTextMessage("content"), listener);
+
+                        long start = System.currentTimeMillis();
+                        session.close();
+                        closeTime[0] = System.currentTimeMillis() - start;
+                    } catch (Throwable t) {
+                        error.set(t);
+                    } finally {
+                        closed.countDown();
+                    }
+                }
+            });
+
+            assertTrue("Session was not closed from the listener", closed.await(15, TimeUnit.SECONDS));
+            assertNull("Close from the listener failed: " + error.get(), error.get());
+            assertTrue("Close waited on its own dispatcher: " + closeTime[0] + "ms", closeTime[0] < 5000);
+            assertSame("Send was not failed before close returned", deliveryThread.get(), completionThread.get());
+
+            testPeer.waitForAllHandlersToComplete(1000);
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testHeldSendTimesOutWithoutCredit() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, "?jms.sendTimeout=200");
+            testPeer.expectBegin();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+
+            // Expect the producer to attach, delay the credit for longer than the send timeout.
+            testPeer.expectSenderAttach(1000);
+
+            MessageProducer producer = session.createProducer(queue);
+
+            try {
+                producer.send(session.createTextMessage("content"));
+                fail("Expected the held send to time out");
+            } catch (JmsSendTimedOutException jmsEx) {
+                LOG.debug("Caught expected exception: {}", jmsEx.getMessage());
+            }
+
+            testPeer.waitForAllHandlersToComplete(2000);
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testSendBlocksWhileInFlightWindowIsFull() throws Exception {
+        try (TestAmqpPeer testPeer = new TestAmqpPeer();) {
+            Connection connection = testFixture.establishConnecton(testPeer, "?jms.maxInFlightSends=1&jms.sendTimeout=200&jms.closeTimeout=500");
+            testPeer.expectBegin();
+            testPeer.expectSenderAttach();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("myQueue");
+            JmsMessageProducer producer = (JmsMessageProducer) session.createProducer(queue);
+
+            JmsCompletionListener listener = new JmsCompletionListener() {
+
+                @Override
+                public void onCompletion(Message message) {
+                }
+
+                @Override
+                public void onException(Message message, Exception exception) {
+                }
+            };
+
+            // The first send is never settled so it holds the only room in the window.
+            testPeer.expectTransfer(new TransferPayloadCompositeMatcher(), nullValue(), false, false, null, false);
+            producer.send(session.createTextMessage("first"), listener);
+            testPeer.waitForAllHandlersToComplete(1000);
+
+            long start = System.currentTimeMillis();
+            try {
+                producer.send(session.createTextMessage("second"));
+                fail("Expected the send to time out waiting for room in the window");
+            } catch (JmsSendTimedOutException jmsEx) {
+                LOG.debug("Caught expected exception: {}", jmsEx.getMessage());
+            }
+            assertTrue("Send did not wait for the window", System.currentTimeMillis() - start >= 150);
+
+            testPeer.expectClose();
+            connection.close();
+
+            testPeer.waitForAllHandlersToComplete(1000);
+        }
+    }
+
     @Test(timeout = 20000)
     public void testAsyncSendMessageRejected() throws Exception {
         doAsyncSendMessageNotAcceptedTestImpl(new Rejected());
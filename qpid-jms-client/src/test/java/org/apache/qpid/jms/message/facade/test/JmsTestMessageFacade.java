@@ -131,6 +131,10 @@ public class JmsTestMessageFacade implements JmsMessageFacade {
     public void onSend(boolean disableMessageId, boolean disableTimestamp, long producerTtl) throws JMSException {
     }
 
+    @Override
+    public void prepareForSend() throws JMSException {
+    }
+
     @Override
     public void onDispatch() throws JMSException {
     }
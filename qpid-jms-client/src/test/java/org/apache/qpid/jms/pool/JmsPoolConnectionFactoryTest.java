@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionConsumer;
+import javax.jms.IllegalStateException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsQueue;
+import org.apache.qpid.jms.JmsTemporaryQueue;
+import org.apache.qpid.jms.meta.JmsProducerInfo;
+import org.apache.qpid.jms.meta.JmsSessionInfo;
+import org.apache.qpid.jms.provider.mock.MockRemotePeer;
+import org.apache.qpid.jms.test.QpidJmsTestCase;
+import org.apache.qpid.jms.test.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test the reuse of connections, sessions and producers by the pooled ConnectionFactory.
+ */
+public class JmsPoolConnectionFactoryTest extends QpidJmsTestCase {
+
+    private MockRemotePeer mockPeer;
+    private JmsPoolConnectionFactory pooledFactory;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        mockPeer = new MockRemotePeer();
+        mockPeer.start();
+
+        pooledFactory = new JmsPoolConnectionFactory(new JmsConnectionFactory("mock://localhost"));
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        pooledFactory.stop();
+        if (mockPeer != null) {
+            mockPeer.shutdown();
+        }
+
+        super.tearDown();
+    }
+
+    @Test(timeout = 20000)
+    public void testConnectionsShareUnderlyingConnection() throws Exception {
+        JmsPoolConnection first = (JmsPoolConnection) pooledFactory.createConnection();
+        first.start();
+        first.close();
+
+        JmsPoolConnection second = (JmsPoolConnection) pooledFactory.createConnection();
+        second.start();
+
+        assertSame(first.getConnection(), second.getConnection());
+        assertEquals(1, pooledFactory.getStatistics().getConnectionsCreated());
+        assertEquals(2, pooledFactory.getStatistics().getConnectionsBorrowed());
+        assertEquals(1, mockPeer.getContextStats().getProvidersCreated());
+        second.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testConnectionsSpreadOverMaxConnections() throws Exception {
+        pooledFactory.setMaxConnections(2);
+
+        JmsPoolConnection first = (JmsPoolConnection) pooledFactory.createConnection();
+        JmsPoolConnection second = (JmsPoolConnection) pooledFactory.createConnection();
+        JmsPoolConnection third = (JmsPoolConnection) pooledFactory.createConnection();
+
+        assertNotSame(first.getConnection(), second.getConnection());
+        assertSame(first.getConnection(), third.getConnection());
+        assertEquals(2, pooledFactory.getNumConnections());
+        assertEquals(2, pooledFactory.getStatistics().getConnectionsCreated());
+
+        first.close();
+        second.close();
+        third.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testSessionsAndProducersReused() throws Exception {
+        for (int i = 0; i < 3; ++i) {
+            Connection connection = pooledFactory.createConnection();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("test");
+            MessageProducer producer = session.createProducer(queue);
+            producer.send(session.createTextMessage("message " + i));
+            connection.close();
+        }
+
+        JmsPoolStatistics statistics = pooledFactory.getStatistics();
+        assertEquals(1, statistics.getSessionsCreated());
+        assertEquals(2, statistics.getSessionsReused());
+        assertEquals(1, statistics.getProducersCreated());
+        assertEquals(2, statistics.getProducersReused());
+        assertEquals(1, pooledFactory.getNumIdleSessions());
+
+        assertEquals(1, mockPeer.getContextStats().getCreateResourceCalls(JmsSessionInfo.class));
+        assertEquals(1, mockPeer.getContextStats().getCreateResourceCalls(JmsProducerInfo.class));
+        assertEquals(3, mockPeer.getContextStats().getSendCalls());
+    }
+
+    @Test(timeout = 20000)
+    public void testSessionsPooledByAcknowledgementMode() throws Exception {
+        Connection connection = pooledFactory.createConnection();
+        connection.createSession(false, Session.AUTO_ACKNOWLEDGE).close();
+        connection.createSession(true, Session.SESSION_TRANSACTED).close();
+        connection.createSession(false, Session.AUTO_ACKNOWLEDGE).close();
+        connection.close();
+
+        assertEquals(2, pooledFactory.getStatistics().getSessionsCreated());
+        assertEquals(1, pooledFactory.getStatistics().getSessionsReused());
+        assertEquals(2, pooledFactory.getNumIdleSessions());
+    }
+
+    @Test(timeout = 20000)
+    public void testTemporaryQueueDeletedAndProducerNotCachedWhenConnectionClosed() throws Exception {
+        Connection connection = pooledFactory.createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createTemporaryQueue();
+        session.createProducer(queue).send(session.createMessage());
+        connection.close();
+
+        assertEquals(1, mockPeer.getContextStats().getDestroyResourceCalls(JmsTemporaryQueue.class));
+        assertEquals(1, mockPeer.getContextStats().getDestroyResourceCalls(JmsProducerInfo.class));
+    }
+
+    @Test(timeout = 20000)
+    public void testIdleConnectionsAndSessionsEvicted() throws Exception {
+        pooledFactory.setIdleTimeout(1);
+
+        Connection connection = pooledFactory.createConnection();
+        connection.createSession(false, Session.AUTO_ACKNOWLEDGE).close();
+        connection.close();
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return pooledFactory.getNumConnections() == 0;
+            }
+        }, 5000, 10));
+
+        assertEquals(1, pooledFactory.getStatistics().getConnectionsClosed());
+    }
+
+    @Test(timeout = 20000)
+    public void testFailedConnectionIsReplaced() throws Exception {
+        final JmsPoolConnection connection = (JmsPoolConnection) pooledFactory.createConnection();
+        connection.start();
+
+        mockPeer.shutdown();
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisified() throws Exception {
+                return connection.getConnection().isFailed();
+            }
+        }, 5000, 10));
+
+        mockPeer = new MockRemotePeer();
+        mockPeer.start();
+
+        JmsPoolConnection replacement = (JmsPoolConnection) pooledFactory.createConnection();
+        replacement.start();
+
+        assertNotSame(connection.getConnection(), replacement.getConnection());
+        assertEquals(2, pooledFactory.getStatistics().getConnectionsCreated());
+
+        connection.close();
+        replacement.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testStartAppliesToAllHandlesAndStopIsIgnored() throws Exception {
+        JmsPoolConnection first = (JmsPoolConnection) pooledFactory.createConnection();
+        JmsPoolConnection second = (JmsPoolConnection) pooledFactory.createConnection();
+        assertSame(first.getConnection(), second.getConnection());
+
+        first.start();
+        assertTrue(second.getConnection().isStarted());
+
+        second.stop();
+        assertTrue(first.getConnection().isStarted());
+
+        first.close();
+        second.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testConnectionConsumersClosedWithHandle() throws Exception {
+        JmsConnection connection = Mockito.mock(JmsConnection.class);
+        ConnectionConsumer closedEarly = Mockito.mock(ConnectionConsumer.class);
+        ConnectionConsumer leftOpen = Mockito.mock(ConnectionConsumer.class);
+        Mockito.when(connection.createConnectionConsumer(
+            Mockito.any(Queue.class), Mockito.anyString(), Mockito.any(ServerSessionPool.class), Mockito.anyInt()))
+            .thenReturn(closedEarly, leftOpen);
+
+        ConnectionPool pool = new ConnectionPool(connection, new JmsPoolStatistics(), 1, 1);
+        JmsPoolConnection handle = new JmsPoolConnection(pool);
+
+        Queue queue = new JmsQueue("test");
+        ConnectionConsumer first = handle.createConnectionConsumer(queue, "", null, 1);
+        ConnectionConsumer second = handle.createConnectionConsumer(queue, "", null, 1);
+
+        first.close();
+        Mockito.verify(closedEarly).close();
+
+        handle.close();
+        Mockito.verify(leftOpen).close();
+        Mockito.verify(closedEarly, Mockito.times(1)).close();
+        Mockito.verify(connection, Mockito.never()).close();
+
+        // Closing one again after the handle is closed does nothing.
+        second.close();
+        Mockito.verify(leftOpen, Mockito.times(1)).close();
+    }
+
+    @Test(timeout = 20000)
+    public void testSetClientIDOnPooledConnectionFails() throws Exception {
+        Connection connection = pooledFactory.createConnection();
+        try {
+            connection.setClientID("client");
+            fail("Should not be able to set the ClientID of a pooled connection");
+        } catch (IllegalStateException ise) {
+        }
+        connection.close();
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.amqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test the sizing of an adaptive consumer credit window.
+ */
+public class AmqpAdaptiveCreditTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testStartsAtMinimum() {
+        AmqpAdaptiveCredit credit = new AmqpAdaptiveCredit(10, 1000);
+        assertEquals(10, credit.getWindow());
+    }
+
+    @Test
+    public void testBoundsAreSanitized() {
+        AmqpAdaptiveCredit credit = new AmqpAdaptiveCredit(0, 1000);
+        assertEquals(1, credit.getMinimum());
+
+        credit = new AmqpAdaptiveCredit(500, 100);
+        assertEquals(100, credit.getMinimum());
+        assertEquals(100, credit.getMaximum());
+    }
+
+    @Test
+    public void testFastConsumerOnSlowLinkGrowsWindow() {
+        AmqpAdaptiveCredit credit = new AmqpAdaptiveCredit(10, 1000);
+
+        // A 10ms round trip and a consumer that takes 0.1ms per message gets through a
+        // hundred messages per round trip, so the window must hold that at the refill point.
+        long now = runBurst(credit, 0, 10 * MILLIS, 20, MILLIS / 10);
+
+        int expected = (int) Math.ceil(100 / AmqpAdaptiveCredit.REFILL_THRESHOLD);
+        assertEquals(expected, credit.getWindow());
+
+        // The window is never allowed past the configured maximum.
+        credit = new AmqpAdaptiveCredit(10, 200);
+        runBurst(credit, now, 10 * MILLIS, 20, MILLIS / 10);
+        assertEquals(200, credit.getWindow());
+    }
+
+    @Test
+    public void testSlowConsumerKeepsMinimumWindow() {
+        AmqpAdaptiveCredit credit = new AmqpAdaptiveCredit(10, 1000);
+
+        runBurst(credit, 0, MILLIS, 20, 100 * MILLIS);
+
+        assertEquals(10, credit.getWindow());
+    }
+
+    @Test
+    public void testIdleTimeIsNotServiceTime() {
+        AmqpAdaptiveCredit credit = new AmqpAdaptiveCredit(10, 1000);
+
+        long now = runBurst(credit, 0, 10 * MILLIS, 20, MILLIS / 10);
+        int window = credit.getWindow();
+
+        // Single messages consumed as soon as each arrives, with long gaps between them,
+        // say nothing about how fast the consumer is and leave the window alone.
+        for (int i = 0; i < 10; ++i) {
+            now += 1000 * MILLIS;
+            credit.onDelivery(now);
+            credit.onConsumed(now + MILLIS / 10);
+        }
+
+        assertEquals(window, credit.getWindow());
+    }
+
+    @Test
+    public void testDiscardedMessagesLeaveBacklog() {
+        AmqpAdaptiveCredit credit = new AmqpAdaptiveCredit(10, 1000);
+
+        credit.onFlow(true, 0);
+        credit.onDelivery(10 * MILLIS);
+        credit.onDelivery(10 * MILLIS);
+        credit.onDiscarded();
+        credit.onConsumed(11 * MILLIS);
+
+        // With the discarded message gone nothing was waiting, so the next consume after
+        // a long pause must not be taken as the consumer's service time.
+        credit.onDelivery(1000 * MILLIS);
+        credit.onConsumed(1000 * MILLIS + MILLIS / 10);
+
+        assertEquals(10, credit.getWindow());
+    }
+
+    @Test
+    public void testFirstDeliveryAfterIdleGapIsNotRoundTrip() {
+        AmqpAdaptiveCredit credit = new AmqpAdaptiveCredit(10, 1000);
+
+        // Nothing was on offer when the first credit was granted, the first message then
+        // arrives long after and is followed by a backlog that is consumed quickly.
+        credit.onFlow(true, 0);
+        long now = 10000 * MILLIS;
+        for (int i = 0; i < 10; ++i) {
+            credit.onDelivery(now);
+        }
+        for (int i = 0; i < 10; ++i) {
+            now += MILLIS / 10;
+            credit.onConsumed(now);
+        }
+
+        assertEquals(10, credit.getWindow());
+
+        // The source may run dry just as the credit is used up, a single idle gap taken
+        // as the first round trip can at most double the window.
+        credit.onFlow(true, now);
+        now += 10000 * MILLIS;
+        for (int i = 0; i < 10; ++i) {
+            credit.onDelivery(now);
+        }
+        for (int i = 0; i < 10; ++i) {
+            now += MILLIS / 10;
+            credit.onConsumed(now);
+        }
+
+        assertEquals(20, credit.getWindow());
+    }
+
+    @Test
+    public void testIdleGapRoundTripIsClamped() {
+        AmqpAdaptiveCredit credit = new AmqpAdaptiveCredit(10, 1000);
+
+        long now = runBurst(credit, 0, 10 * MILLIS, 20, MILLIS);
+        int window = credit.getWindow();
+        assertEquals((int) Math.ceil(10 / AmqpAdaptiveCredit.REFILL_THRESHOLD), window);
+
+        // One round trip that includes a long idle gap moves the average by no more than a
+        // bounded outlier would.
+        now = runBurst(credit, now, 10000 * MILLIS, 20, MILLIS, 1);
+
+        assertTrue(credit.getWindow() <= Math.ceil(window * (1 + 3.0 / 8)));
+    }
+
+    private long runBurst(AmqpAdaptiveCredit credit, long now, long roundTrip, int count, long serviceTime) {
+        return runBurst(credit, now, roundTrip, count, serviceTime, 50);
+    }
+
+    /*
+     * Starves the link, delivers a burst after the given round trip and consumes the
+     * burst back to back with the given service time.
+     */
+    private long runBurst(AmqpAdaptiveCredit credit, long now, long roundTrip, int count, long serviceTime, int rounds) {
+        for (int round = 0; round < rounds; ++round) {
+            credit.onFlow(true, now);
+            now += roundTrip;
+            for (int i = 0; i < count; ++i) {
+                credit.onDelivery(now);
+            }
+            for (int i = 0; i < count; ++i) {
+                now += serviceTime;
+                credit.onConsumed(now);
+            }
+        }
+
+        return now;
+    }
+}
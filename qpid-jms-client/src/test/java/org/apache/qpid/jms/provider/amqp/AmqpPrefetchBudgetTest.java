@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.amqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+/**
+ * Test the accounting of the connection wide prefetch budget.
+ */
+public class AmqpPrefetchBudgetTest {
+
+    @Test
+    public void testExhaustedOnceLimitIsReached() {
+        AmqpPrefetchBudget budget = new AmqpPrefetchBudget(100);
+
+        budget.charge(50);
+        assertFalse(budget.isExhausted());
+        budget.charge(50);
+        assertTrue(budget.isExhausted());
+        assertEquals(100, budget.getUsed());
+
+        budget.release(50);
+        assertFalse(budget.isExhausted());
+    }
+
+    @Test
+    public void testReleaseNeverGoesNegative() {
+        AmqpPrefetchBudget budget = new AmqpPrefetchBudget(100);
+
+        budget.charge(10);
+        budget.release(20);
+        assertEquals(0, budget.getUsed());
+
+        budget.reserve(2);
+        budget.reserve(-3);
+        assertEquals(0, budget.getCredit());
+    }
+
+    @Test
+    public void testGrantSizedToRemainingBudget() {
+        AmqpPrefetchBudget budget = new AmqpPrefetchBudget(1000);
+
+        // Until a message is seen a single credit could take all of the limit.
+        assertEquals(1, budget.getGrantable(100));
+        budget.reserve(1);
+        assertEquals(0, budget.getGrantable(100));
+
+        // Each credit is then counted as the largest message seen.
+        budget.charge(100);
+        budget.reserve(-1);
+        assertEquals(9, budget.getGrantable(100));
+        assertEquals(5, budget.getGrantable(5));
+
+        budget.reserve(5);
+        assertEquals(600, budget.getOutstanding());
+        assertEquals(4, budget.getGrantable(100));
+
+        budget.charge(200);
+        budget.reserve(-1);
+        assertEquals(0, budget.getGrantable(100));
+        assertTrue(budget.isExhausted());
+    }
+
+    @Test
+    public void testSingleCreditGrantedWhenNothingOutstanding() {
+        AmqpPrefetchBudget budget = new AmqpPrefetchBudget(10);
+
+        budget.charge(100);
+        assertTrue(budget.isExhausted());
+
+        // A message larger than the whole limit must not stall consumers forever.
+        budget.release(100);
+        assertEquals(1, budget.getGrantable(10));
+    }
+
+    @Test
+    public void testOutstandingBytesNeverExceedLimitAcrossConsumers() {
+        final int limit = 10000;
+        final int messageSize = 300;
+        final int prefetch = 20;
+
+        AmqpPrefetchBudget budget = new AmqpPrefetchBudget(limit);
+        int[] credit = new int[4];
+        int[] buffered = new int[credit.length];
+        Random random = new Random(42);
+
+        // Consumers grant credit, have it used by arriving messages and consume them, in
+        // an arbitrary interleaving.  Once a message has been seen the bytes buffered plus
+        // those the outstanding credit can bring never exceed the limit.
+        budget.charge(messageSize);
+        budget.release(messageSize);
+
+        for (int step = 0; step < 10000; ++step) {
+            int consumer = random.nextInt(credit.length);
+            switch (random.nextInt(3)) {
+                case 0:
+                    if (credit[consumer] <= prefetch * AmqpAdaptiveCredit.REFILL_THRESHOLD) {
+                        int granted = budget.getGrantable(prefetch - credit[consumer]);
+                        credit[consumer] += granted;
+                        budget.reserve(granted);
+                    }
+                    break;
+                case 1:
+                    if (credit[consumer] > 0) {
+                        credit[consumer]--;
+                        buffered[consumer]++;
+                        budget.charge(messageSize);
+                        budget.reserve(-1);
+                    }
+                    break;
+                default:
+                    if (buffered[consumer] > 0) {
+                        buffered[consumer]--;
+                        budget.release(messageSize);
+                    }
+                    break;
+            }
+
+            assertTrue("Outstanding bytes exceeded the limit: " + budget, budget.getOutstanding() <= limit);
+            assertTrue(budget.getUsed() + budget.getCredit() * messageSize <= limit);
+        }
+    }
+
+    @Test
+    public void testWaitingConsumersWokenInOrderOnceBudgetFrees() {
+        AmqpPrefetchBudget budget = new AmqpPrefetchBudget(100);
+        AmqpConsumer first = Mockito.mock(AmqpConsumer.class);
+        AmqpConsumer second = Mockito.mock(AmqpConsumer.class);
+
+        budget.charge(50);
+        budget.charge(50);
+        budget.reserve(1);
+        budget.await(first);
+        budget.await(second);
+
+        budget.release(50);
+        Mockito.verifyZeroInteractions(first, second);
+
+        budget.reserve(-1);
+        InOrder order = Mockito.inOrder(first, second);
+        order.verify(first).onPrefetchBudgetAvailable();
+        order.verify(second).onPrefetchBudgetAvailable();
+
+        // Each consumer is woken only once per wait.
+        budget.charge(50);
+        budget.release(50);
+        Mockito.verifyNoMoreInteractions(first, second);
+    }
+
+    @Test
+    public void testRemovedConsumerIsNotWoken() {
+        AmqpPrefetchBudget budget = new AmqpPrefetchBudget(100);
+        AmqpConsumer consumer = Mockito.mock(AmqpConsumer.class);
+
+        budget.charge(100);
+        budget.await(consumer);
+        budget.remove(consumer);
+        budget.release(100);
+
+        Mockito.verifyZeroInteractions(consumer);
+    }
+}
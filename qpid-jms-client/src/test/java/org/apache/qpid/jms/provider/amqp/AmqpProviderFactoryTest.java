@@ -112,7 +112,9 @@ public class AmqpProviderFactoryTest extends QpidJmsTestCase {
             "&amqp.presettleProducers=true" +
             "&amqp.traceFrames=true" +
             "&amqp.traceBytes=true" +
-            "&amqp.channelMax=32");
+            "&amqp.channelMax=32" +
+            "&amqp.coalesceWrites=true" +
+            "&amqp.coalesceWritesThreshold=1024");
         Provider provider = AmqpProviderFactory.create(configuredURI);
         assertNotNull(provider);
         assertTrue(provider instanceof AmqpProvider);
@@ -124,6 +126,8 @@ public class AmqpProviderFactoryTest extends QpidJmsTestCase {
         assertEquals(true, amqpProvider.isTraceBytes());
         assertEquals(true, amqpProvider.isTraceFrames());
         assertEquals(32, amqpProvider.getChannelMax());
+        assertEquals(true, amqpProvider.isCoalesceWrites());
+        assertEquals(1024, amqpProvider.getCoalesceWritesThreshold());
     }
 
     @Test(timeout = 20000)
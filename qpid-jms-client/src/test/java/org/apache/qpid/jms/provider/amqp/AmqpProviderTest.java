@@ -18,11 +18,15 @@ package org.apache.qpid.jms.provider.amqp;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import io.netty.channel.EventLoop;
+
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.jms.JMSException;
@@ -117,6 +121,29 @@ public class AmqpProviderTest extends QpidJmsTestCase {
         }
     }
 
+    @Test(timeout=20000)
+    public void testUseEventLoopMovesSerializerOntoTransport() throws Exception {
+        provider = new AmqpProvider(peerURI);
+        provider.setUseEventLoop(true);
+
+        ScheduledExecutorService dedicated = provider.getScheduler();
+        provider.connect();
+
+        assertTrue(provider.getScheduler() instanceof EventLoop);
+        assertTrue(dedicated.isShutdown());
+    }
+
+    @Test(timeout=20000)
+    public void testDedicatedSerializerUsedByDefault() throws Exception {
+        provider = new AmqpProvider(peerURI);
+        assertFalse(provider.isUseEventLoop());
+
+        ScheduledExecutorService dedicated = provider.getScheduler();
+        provider.connect();
+
+        assertSame(dedicated, provider.getScheduler());
+    }
+
     @Test(timeout=20000)
     public void testToString() throws IOException {
         provider = new AmqpProvider(peerURI);
@@ -25,6 +25,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Map;
@@ -247,4 +250,110 @@ public class AmqpJmsTextMessageFacadeTest extends AmqpJmsMessageTypesTestCase {
             // expected
         }
     }
+
+    //---------- Test encoding of copies sent to the remote ------------------//
+
+    @Test
+    public void testEncodedCopiesOfUnchangedMessageMatch() throws Exception {
+        AmqpJmsTextMessageFacade amqpTextMessageFacade = createNewTextMessageFacade();
+        amqpTextMessageFacade.setText("myText");
+        amqpTextMessageFacade.setApplicationProperty("myProperty", 1);
+
+        for (int i = 0; i < 3; ++i) {
+            AmqpJmsTextMessageFacade copy = amqpTextMessageFacade.copy();
+            copy.setMessageId("ID:myMessageId" + i);
+
+            Message decoded = encodeAndDecode(copy);
+            assertEquals("myMessageId" + i, decoded.getMessageId());
+            assertEquals("myText", ((AmqpValue) decoded.getBody()).getValue());
+            assertEquals(1, decoded.getApplicationProperties().getValue().get("myProperty"));
+        }
+    }
+
+    @Test
+    public void testEncodedCopyReflectsUpdatedText() throws Exception {
+        AmqpJmsTextMessageFacade amqpTextMessageFacade = createNewTextMessageFacade();
+        amqpTextMessageFacade.setText("myText");
+
+        encodeAndDecode(amqpTextMessageFacade.copy());
+        encodeAndDecode(amqpTextMessageFacade.copy());
+
+        amqpTextMessageFacade.setText("myUpdatedText");
+
+        Message decoded = encodeAndDecode(amqpTextMessageFacade.copy());
+        assertEquals("myUpdatedText", ((AmqpValue) decoded.getBody()).getValue());
+    }
+
+    @Test
+    public void testEncodedCopyReflectsUpdatedApplicationProperties() throws Exception {
+        AmqpJmsTextMessageFacade amqpTextMessageFacade = createNewTextMessageFacade();
+        amqpTextMessageFacade.setApplicationProperty("myProperty", 1);
+
+        encodeAndDecode(amqpTextMessageFacade.copy());
+        encodeAndDecode(amqpTextMessageFacade.copy());
+
+        amqpTextMessageFacade.setApplicationProperty("myProperty", 2);
+
+        Message decoded = encodeAndDecode(amqpTextMessageFacade.copy());
+        assertEquals(2, decoded.getApplicationProperties().getValue().get("myProperty"));
+
+        amqpTextMessageFacade.clearProperties();
+
+        decoded = encodeAndDecode(amqpTextMessageFacade.copy());
+        assertNull(decoded.getApplicationProperties());
+    }
+
+    @Test
+    public void testPrepareForSendEncodesMessageOnce() throws Exception {
+        AmqpJmsTextMessageFacade amqpTextMessageFacade = createNewTextMessageFacade();
+        amqpTextMessageFacade.setText("myText");
+
+        assertNull(amqpTextMessageFacade.takeEncodedForSend());
+
+        amqpTextMessageFacade.prepareForSend();
+
+        ByteBuf encoded = amqpTextMessageFacade.takeEncodedForSend();
+        assertNotNull(encoded);
+        assertNull("Encoded bytes should only be handed over once", amqpTextMessageFacade.takeEncodedForSend());
+
+        Message message = Message.Factory.create();
+        message.decode(encoded.array(), encoded.arrayOffset() + encoded.readerIndex(), encoded.readableBytes());
+        assertEquals("myText", ((AmqpValue) message.getBody()).getValue());
+    }
+
+    @Test
+    public void testPrepareForSendOfCopyUsesCachedSections() throws Exception {
+        AmqpJmsTextMessageFacade amqpTextMessageFacade = createNewTextMessageFacade();
+        amqpTextMessageFacade.setText("myText");
+        amqpTextMessageFacade.setApplicationProperty("myProperty", 1);
+
+        encodeAndDecode(amqpTextMessageFacade.copy());
+        encodeAndDecode(amqpTextMessageFacade.copy());
+
+        AmqpJmsTextMessageFacade copy = amqpTextMessageFacade.copy();
+        copy.setMessageId("ID:myMessageId");
+        copy.prepareForSend();
+
+        ByteBuf encoded = copy.takeEncodedForSend();
+        assertNotNull(encoded);
+        assertTrue("Cached sections should be handed over without a copy", encoded.nioBufferCount() > 1);
+
+        byte[] bytes = new byte[encoded.readableBytes()];
+        encoded.getBytes(encoded.readerIndex(), bytes);
+
+        Message message = Message.Factory.create();
+        message.decode(bytes, 0, bytes.length);
+        assertEquals("myMessageId", message.getMessageId());
+        assertEquals("myText", ((AmqpValue) message.getBody()).getValue());
+        assertEquals(1, message.getApplicationProperties().getValue().get("myProperty"));
+    }
+
+    private Message encodeAndDecode(AmqpJmsMessageFacade facade) {
+        ByteBuf buffer = Unpooled.buffer(16);
+        facade.encodeMessage(buffer);
+
+        Message message = Message.Factory.create();
+        message.decode(buffer.array(), buffer.arrayOffset(), buffer.readableBytes());
+        return message;
+    }
 }
@@ -0,0 +1,303 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.amqp.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.jms.test.QpidJmsTestCase;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.UnsignedByte;
+import org.apache.qpid.proton.amqp.messaging.AmqpSequence;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.DeliveryAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Footer;
+import org.apache.qpid.proton.amqp.messaging.Header;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Properties;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.apache.qpid.proton.codec.AMQPDefinedTypes;
+import org.apache.qpid.proton.codec.DecodeException;
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+public class AmqpLazyDecodedMessageTest extends QpidJmsTestCase {
+
+    @Test
+    public void testDecodeEmptyMessage() {
+        Message lazy = new AmqpLazyDecodedMessage();
+        lazy.decode(new byte[0], 0, 0);
+
+        assertNull(lazy.getHeader());
+        assertNull(lazy.getDeliveryAnnotations());
+        assertNull(lazy.getMessageAnnotations());
+        assertNull(lazy.getProperties());
+        assertNull(lazy.getApplicationProperties());
+        assertNull(lazy.getBody());
+        assertNull(lazy.getFooter());
+    }
+
+    @Test
+    public void testSectionsDecodeToOriginalValues() {
+        Message original = createMessageWithAllSections();
+        Message lazy = decodeLazily(encode(original));
+
+        assertEquals(original.isDurable(), lazy.isDurable());
+        assertEquals(original.getPriority(), lazy.getPriority());
+        assertEquals(original.getTtl(), lazy.getTtl());
+        assertEquals(original.getDeliveryAnnotations().getValue(), lazy.getDeliveryAnnotations().getValue());
+        assertEquals(original.getMessageAnnotations().getValue(), lazy.getMessageAnnotations().getValue());
+        assertEquals(original.getMessageId(), lazy.getMessageId());
+        assertEquals(original.getSubject(), lazy.getSubject());
+        assertEquals(original.getContentType(), lazy.getContentType());
+        assertEquals(original.getApplicationProperties().getValue(), lazy.getApplicationProperties().getValue());
+        assertEquals(((AmqpValue) original.getBody()).getValue(), ((AmqpValue) lazy.getBody()).getValue());
+        assertEquals(original.getFooter().getValue(), lazy.getFooter().getValue());
+    }
+
+    @Test
+    public void testReEncodeProducesSameBytes() {
+        byte[] encoded = encode(createMessageWithAllSections());
+        Message lazy = decodeLazily(encoded);
+
+        // Touch only one section then encode it all again.
+        lazy.getSubject();
+
+        assertArrayEquals(encoded, encode(lazy));
+    }
+
+    @Test
+    public void testSetSectionBeforeAccessReplacesEncodedSection() {
+        Message lazy = decodeLazily(encode(createMessageWithAllSections()));
+
+        lazy.setBody(new Data(new Binary(new byte[] { 1, 2, 3 })));
+        lazy.setApplicationProperties(null);
+
+        assertTrue(lazy.getBody() instanceof Data);
+        assertNull(lazy.getApplicationProperties());
+
+        Message decoded = Proton.message();
+        byte[] encoded = encode(lazy);
+        decoded.decode(encoded, 0, encoded.length);
+
+        assertTrue(decoded.getBody() instanceof Data);
+        assertNull(decoded.getApplicationProperties());
+        assertEquals("subject", decoded.getSubject());
+    }
+
+    @Test
+    public void testConvenienceSetterRetainsOtherEncodedFields() {
+        Message lazy = decodeLazily(encode(createMessageWithAllSections()));
+
+        lazy.setSubject("updated");
+
+        assertEquals("updated", lazy.getSubject());
+        assertEquals("text/plain", lazy.getContentType());
+        assertEquals("ID:1", lazy.getMessageId());
+    }
+
+    @Test
+    public void testDecodeFromBufferOffset() {
+        byte[] encoded = encode(createMessageWithAllSections());
+        byte[] padded = new byte[encoded.length + 10];
+        System.arraycopy(encoded, 0, padded, 5, encoded.length);
+
+        Message lazy = new AmqpLazyDecodedMessage();
+        lazy.decode(padded, 5, encoded.length);
+
+        assertEquals("subject", lazy.getSubject());
+        assertEquals("body", ((AmqpValue) lazy.getBody()).getValue());
+    }
+
+    @Test
+    public void testLargeBinaryBodySection() {
+        byte[] payload = new byte[70000];
+        Arrays.fill(payload, (byte) 7);
+
+        Message original = Proton.message();
+        original.setBody(new Data(new Binary(payload)));
+        original.setContentType("application/octet-stream");
+
+        Message lazy = decodeLazily(encode(original));
+
+        assertEquals("application/octet-stream", lazy.getContentType());
+        assertEquals(new Binary(payload), ((Data) lazy.getBody()).getValue());
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testDecodeTruncatedMessageThrows() {
+        byte[] encoded = encode(createMessageWithAllSections());
+        decodeLazily(Arrays.copyOf(encoded, encoded.length - 4));
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testDecodeNonSectionDataThrows() {
+        decodeLazily(new byte[] { 0x40, 0x40 });
+    }
+
+    @Test
+    public void testRepeatedBodySectionsDecodeLikeProton() {
+        assertDecodesLikeProton(new Data(new Binary(new byte[] { 1 })), new Data(new Binary(new byte[] { 2 })));
+        assertDecodesLikeProton(new AmqpSequence(Arrays.asList("one")), new AmqpSequence(Arrays.asList("two")));
+        assertDecodesLikeProton(new AmqpValue("value"), new Data(new Binary(new byte[] { 1 })), createFooter());
+    }
+
+    @Test
+    public void testRepeatedAnnotationSectionsDecodeLikeProton() {
+        assertDecodesLikeProton(createMessageAnnotations("first"), createMessageAnnotations("second"), new AmqpValue("body"));
+        assertDecodesLikeProton(createHeader(), createMessageAnnotations("first"), createMessageAnnotations("second"));
+    }
+
+    @Test
+    public void testOutOfOrderSectionsDecodeLikeProton() {
+        assertDecodesLikeProton(createProperties(), createHeader(), new AmqpValue("body"));
+        assertDecodesLikeProton(new AmqpValue("body"), createHeader());
+        assertDecodesLikeProton(createFooter(), new AmqpValue("body"));
+        assertDecodesLikeProton(new AmqpValue("body"), createFooter(), createFooter());
+    }
+
+    @Test
+    public void testAllSectionsDecodeLikeProton() {
+        assertDecodesLikeProton(createHeader(), new DeliveryAnnotations(new HashMap<Symbol, Object>()),
+                                createMessageAnnotations("value"), createProperties(),
+                                new ApplicationProperties(new HashMap<String, Object>()), new AmqpValue("body"),
+                                createFooter());
+    }
+
+    private void assertDecodesLikeProton(Section... sections) {
+        byte[] encoded = encodeSections(sections);
+
+        Message expected = Proton.message();
+        Message actual = new AmqpLazyDecodedMessage();
+        assertEquals(expected.decode(encoded, 0, encoded.length), actual.decode(encoded, 0, encoded.length));
+
+        assertSectionEquals(expected.getHeader(), actual.getHeader());
+        assertSectionEquals(expected.getDeliveryAnnotations(), actual.getDeliveryAnnotations());
+        assertSectionEquals(expected.getMessageAnnotations(), actual.getMessageAnnotations());
+        assertSectionEquals(expected.getProperties(), actual.getProperties());
+        assertSectionEquals(expected.getApplicationProperties(), actual.getApplicationProperties());
+        assertSectionEquals(expected.getBody(), actual.getBody());
+        assertSectionEquals(expected.getFooter(), actual.getFooter());
+    }
+
+    private void assertSectionEquals(Section expected, Section actual) {
+        if (expected == null) {
+            assertNull(actual);
+        } else {
+            assertNotNull(actual);
+            assertArrayEquals(encodeSections(expected), encodeSections(actual));
+        }
+    }
+
+    private byte[] encodeSections(Section... sections) {
+        DecoderImpl decoder = new DecoderImpl();
+        EncoderImpl encoder = new EncoderImpl(decoder);
+        AMQPDefinedTypes.registerAllTypes(decoder, encoder);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        encoder.setByteBuffer(buffer);
+        for (Section section : sections) {
+            encoder.writeObject(section);
+        }
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private Header createHeader() {
+        Header header = new Header();
+        header.setDurable(true);
+        header.setPriority(UnsignedByte.valueOf((byte) 6));
+        return header;
+    }
+
+    private Properties createProperties() {
+        Properties properties = new Properties();
+        properties.setMessageId("ID:1");
+        properties.setSubject("subject");
+        return properties;
+    }
+
+    private MessageAnnotations createMessageAnnotations(String value) {
+        Map<Symbol, Object> annotations = new HashMap<Symbol, Object>();
+        annotations.put(Symbol.valueOf("annotation"), value);
+        return new MessageAnnotations(annotations);
+    }
+
+    private Footer createFooter() {
+        Map<Object, Object> footer = new HashMap<Object, Object>();
+        footer.put(Symbol.valueOf("footer"), "value");
+        return new Footer(footer);
+    }
+
+    private Message createMessageWithAllSections() {
+        Message message = Proton.message();
+
+        message.setDurable(true);
+        message.setPriority((short) 7);
+        message.setTtl(5000);
+
+        Map<Symbol, Object> deliveryAnnotations = new HashMap<Symbol, Object>();
+        deliveryAnnotations.put(Symbol.valueOf("da"), "value");
+        message.setDeliveryAnnotations(new DeliveryAnnotations(deliveryAnnotations));
+
+        Map<Symbol, Object> messageAnnotations = new HashMap<Symbol, Object>();
+        messageAnnotations.put(Symbol.valueOf("ma"), (byte) 1);
+        message.setMessageAnnotations(new MessageAnnotations(messageAnnotations));
+
+        message.setMessageId("ID:1");
+        message.setSubject("subject");
+        message.setContentType("text/plain");
+
+        Map<String, Object> applicationProperties = new HashMap<String, Object>();
+        applicationProperties.put("property", 42);
+        message.setApplicationProperties(new ApplicationProperties(applicationProperties));
+
+        message.setBody(new AmqpValue("body"));
+
+        Map<Object, Object> footer = new HashMap<Object, Object>();
+        footer.put(Symbol.valueOf("footer"), "value");
+        message.setFooter(new Footer(footer));
+
+        return message;
+    }
+
+    private byte[] encode(Message message) {
+        byte[] buffer = new byte[128 * 1024];
+        int length = message.encode(buffer, 0, buffer.length);
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private Message decodeLazily(byte[] encoded) {
+        Message message = new AmqpLazyDecodedMessage();
+        message.decode(encoded, 0, encoded.length);
+        return message;
+    }
+}
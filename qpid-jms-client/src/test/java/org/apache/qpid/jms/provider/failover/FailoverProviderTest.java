@@ -36,11 +36,13 @@ import java.util.concurrent.TimeUnit;
 import javax.jms.Connection;
 import javax.jms.Destination;
 import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageProducer;
 import javax.jms.Queue;
 import javax.jms.Session;
 
 import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsMessageProducer;
 import org.apache.qpid.jms.meta.JmsConnectionInfo;
 import org.apache.qpid.jms.meta.JmsConsumerInfo;
 import org.apache.qpid.jms.meta.JmsProducerInfo;
@@ -377,6 +379,29 @@ public class FailoverProviderTest extends FailoverProviderTestSupport {
         assertEquals(1, mockPeer.getContextStats().getSendCalls());
     }
 
+    @Test(timeout = 30000)
+    public void testSendBatchPassedThroughAsOneBatch() throws Exception {
+        JmsConnectionFactory factory = new JmsConnectionFactory(
+            "failover:(mock://localhost)");
+
+        Connection connection = factory.createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        Queue queue = session.createQueue(getTestName());
+        JmsMessageProducer producer = (JmsMessageProducer) session.createProducer(queue);
+
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < 3; ++i) {
+            messages.add(session.createMessage());
+        }
+        producer.send(messages);
+
+        connection.close();
+
+        assertEquals(1, mockPeer.getContextStats().getBatchSendCalls());
+        assertEquals(3, mockPeer.getContextStats().getSendCalls());
+    }
+
     @Test(timeout=10000)
     public void testTimeoutsSetFromConnectionInfo() throws IOException, JMSException {
         final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(4);
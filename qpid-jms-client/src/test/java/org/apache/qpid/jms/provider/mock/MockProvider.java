@@ -18,6 +18,7 @@ package org.apache.qpid.jms.provider.mock;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -281,6 +282,15 @@ public class MockProvider implements Provider {
         });
     }
 
+    @Override
+    public void send(List<JmsOutboundMessageDispatch> envelopes, List<? extends AsyncResult> requests) throws IOException, JMSException {
+        checkClosed();
+        stats.recordBatchSendCall();
+        for (int i = 0; i < envelopes.size(); ++i) {
+            send(envelopes.get(i), requests.get(i));
+        }
+    }
+
     @Override
     public void acknowledge(final JmsSessionId sessionId, final ACK_TYPE ackType, final AsyncResult request) throws IOException, JMSException {
         checkClosed();
@@ -37,6 +37,7 @@ public class MockProviderStats {
     private final AtomicInteger stopResourceCalls = new AtomicInteger();
     private final AtomicInteger destroyResourceCalls = new AtomicInteger();
     private final AtomicInteger sendCalls = new AtomicInteger();
+    private final AtomicInteger batchSendCalls = new AtomicInteger();
     private final AtomicInteger acknowledgeCalls = new AtomicInteger();
     private final AtomicInteger sessionAcknowledgeCalls = new AtomicInteger();
     private final AtomicInteger commitCalls = new AtomicInteger();
@@ -218,6 +219,18 @@ public class MockProviderStats {
         sendCalls.incrementAndGet();
     }
 
+    public int getBatchSendCalls() {
+        return batchSendCalls.get();
+    }
+
+    public void recordBatchSendCall() {
+        if (parent != null) {
+            parent.recordBatchSendCall();
+        }
+
+        batchSendCalls.incrementAndGet();
+    }
+
     public int getAcnkowledgeCalls() {
         return acknowledgeCalls.get();
     }
@@ -311,6 +324,7 @@ public class MockProviderStats {
         stopResourceCalls.set(0);
         destroyResourceCalls.set(0);
         sendCalls.set(0);
+        batchSendCalls.set(0);
         acknowledgeCalls.set(0);
         sessionAcknowledgeCalls.set(0);
         commitCalls.set(0);
@@ -0,0 +1,332 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.provider.striped;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.IllegalStateException;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsQueue;
+import org.apache.qpid.jms.JmsTemporaryQueue;
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
+import org.apache.qpid.jms.meta.JmsConnectionId;
+import org.apache.qpid.jms.meta.JmsConnectionInfo;
+import org.apache.qpid.jms.meta.JmsConsumerInfo;
+import org.apache.qpid.jms.meta.JmsProducerInfo;
+import org.apache.qpid.jms.meta.JmsResource;
+import org.apache.qpid.jms.meta.JmsSessionInfo;
+import org.apache.qpid.jms.provider.AsyncResult;
+import org.apache.qpid.jms.provider.Provider;
+import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
+import org.apache.qpid.jms.provider.ProviderFuture;
+import org.apache.qpid.jms.provider.ProviderListener;
+import org.apache.qpid.jms.provider.amqp.AmqpProvider;
+import org.apache.qpid.jms.test.QpidJmsTestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Test the spreading of a connection's work over the stripes of a StripedProvider.
+ */
+public class StripedProviderTest extends QpidJmsTestCase {
+
+    private final URI stripedURI = URI.create("amqp+striped://localhost:5672?stripes=3");
+
+    private List<Provider> stripes;
+    private List<ProviderListener> stripeListeners;
+    private ProviderListener listener;
+    private StripedProvider provider;
+    private JmsConnectionInfo connectionInfo;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        stripes = new ArrayList<Provider>();
+        for (int i = 0; i < 3; ++i) {
+            stripes.add(Mockito.mock(Provider.class));
+        }
+
+        listener = Mockito.mock(ProviderListener.class);
+        provider = new StripedProvider(stripedURI, stripes);
+        provider.setProviderListener(listener);
+
+        stripeListeners = new ArrayList<ProviderListener>();
+        for (Provider stripe : stripes) {
+            ArgumentCaptor<ProviderListener> captor = ArgumentCaptor.forClass(ProviderListener.class);
+            Mockito.verify(stripe).setProviderListener(captor.capture());
+            stripeListeners.add(captor.getValue());
+        }
+
+        connectionInfo = new JmsConnectionInfo(new JmsConnectionId("ID:test:1"));
+        connectionInfo.setClientId("client");
+    }
+
+    @Test(timeout = 20000)
+    public void testFactoryCreatesStripesFromChildURI() throws Exception {
+        StripedProviderFactory factory = new StripedProviderFactory();
+        Provider created = factory.createProvider(
+            new URI("amqp+striped://localhost:5672?stripes=4&amqp.idleTimeout=1234"));
+        try {
+            assertTrue(created instanceof StripedProvider);
+            StripedProvider striped = (StripedProvider) created;
+
+            assertEquals(4, striped.getStripes().size());
+            for (Provider stripe : striped.getStripes()) {
+                assertTrue(stripe instanceof AmqpProvider);
+                assertEquals("amqp", stripe.getRemoteURI().getScheme());
+                assertEquals("localhost", stripe.getRemoteURI().getHost());
+                assertEquals(5672, stripe.getRemoteURI().getPort());
+                assertEquals(1234, ((AmqpProvider) stripe).getIdleTimeout());
+            }
+        } finally {
+            created.close();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testFactoryRejectsInvalidStripeCount() throws Exception {
+        try {
+            new StripedProviderFactory().createProvider(new URI("amqp+striped://localhost:5672?stripes=0"));
+            fail("Should not allow zero stripes");
+        } catch (IllegalArgumentException iae) {
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testConnectionCreatedOnEveryStripeWithDistinctClientIDs() throws Exception {
+        ProviderFuture request = new ProviderFuture();
+        provider.create(connectionInfo, request);
+
+        List<JmsConnectionInfo> created = new ArrayList<JmsConnectionInfo>();
+        List<AsyncResult> results = new ArrayList<AsyncResult>();
+        for (Provider stripe : stripes) {
+            ArgumentCaptor<JmsResource> info = ArgumentCaptor.forClass(JmsResource.class);
+            ArgumentCaptor<AsyncResult> result = ArgumentCaptor.forClass(AsyncResult.class);
+            Mockito.verify(stripe).create(info.capture(), result.capture());
+            created.add((JmsConnectionInfo) info.getValue());
+            results.add(result.getValue());
+        }
+
+        assertTrue(created.get(0) == connectionInfo);
+        assertEquals("client", created.get(0).getClientId());
+        assertNotEquals(created.get(0).getClientId(), created.get(1).getClientId());
+        assertNotEquals(created.get(1).getClientId(), created.get(2).getClientId());
+
+        results.get(0).onSuccess();
+        results.get(1).onSuccess();
+        assertFalse(request.isComplete());
+        results.get(2).onSuccess();
+        assertTrue(request.isComplete());
+    }
+
+    @Test(timeout = 20000)
+    public void testConnectionCreateFailsWhenAnyStripeFails() throws Exception {
+        ProviderFuture request = new ProviderFuture();
+        provider.create(connectionInfo, request);
+
+        ArgumentCaptor<AsyncResult> result = ArgumentCaptor.forClass(AsyncResult.class);
+        Mockito.verify(stripes.get(1)).create(any(JmsResource.class), result.capture());
+        result.getValue().onFailure(new IOException("Expected"));
+
+        try {
+            request.sync();
+            fail("Request should have failed");
+        } catch (IOException ioe) {
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testExplicitClientIDUsesSingleStripe() throws Exception {
+        connectionInfo.setExplicitClientID(true);
+        provider.create(connectionInfo, new ProviderFuture());
+
+        assertEquals(1, provider.getActiveStripes());
+        Mockito.verify(stripes.get(0)).create(eq(connectionInfo), any(AsyncResult.class));
+        Mockito.verify(stripes.get(1)).close();
+        Mockito.verify(stripes.get(2)).close();
+        Mockito.verify(stripes.get(1), Mockito.never()).create(any(JmsResource.class), any(AsyncResult.class));
+
+        JmsSessionInfo session1 = new JmsSessionInfo(connectionInfo, 1);
+        JmsSessionInfo session2 = new JmsSessionInfo(connectionInfo, 2);
+        provider.create(session1, new ProviderFuture());
+        provider.create(session2, new ProviderFuture());
+        Mockito.verify(stripes.get(0)).create(eq(session1), any(AsyncResult.class));
+        Mockito.verify(stripes.get(0)).create(eq(session2), any(AsyncResult.class));
+    }
+
+    @Test(timeout = 20000)
+    public void testSessionsSpreadAcrossStripesAndConsumersFollowTheirSession() throws Exception {
+        provider.create(connectionInfo, new ProviderFuture());
+
+        List<JmsSessionInfo> sessions = new ArrayList<JmsSessionInfo>();
+        for (int i = 1; i <= 4; ++i) {
+            JmsSessionInfo session = new JmsSessionInfo(connectionInfo, i);
+            sessions.add(session);
+            provider.create(session, new ProviderFuture());
+        }
+
+        Mockito.verify(stripes.get(0)).create(eq(sessions.get(0)), any(AsyncResult.class));
+        Mockito.verify(stripes.get(1)).create(eq(sessions.get(1)), any(AsyncResult.class));
+        Mockito.verify(stripes.get(2)).create(eq(sessions.get(2)), any(AsyncResult.class));
+        Mockito.verify(stripes.get(0)).create(eq(sessions.get(3)), any(AsyncResult.class));
+
+        JmsConsumerInfo consumer = new JmsConsumerInfo(sessions.get(1), 1);
+        provider.create(consumer, new ProviderFuture());
+        provider.commit(sessions.get(1).getId(), new ProviderFuture());
+
+        Mockito.verify(stripes.get(1)).create(eq(consumer), any(AsyncResult.class));
+        Mockito.verify(stripes.get(1)).commit(eq(sessions.get(1).getId()), any(AsyncResult.class));
+        Mockito.verify(stripes.get(0), Mockito.never()).create(eq(consumer), any(AsyncResult.class));
+        Mockito.verify(stripes.get(2), Mockito.never()).create(eq(consumer), any(AsyncResult.class));
+    }
+
+    @Test(timeout = 20000)
+    public void testTemporaryDestinationResourcesUseFirstStripe() throws Exception {
+        provider.create(connectionInfo, new ProviderFuture());
+
+        JmsSessionInfo first = new JmsSessionInfo(connectionInfo, 1);
+        JmsSessionInfo session = new JmsSessionInfo(connectionInfo, 2);
+        session.setAcknowledgementMode(Session.AUTO_ACKNOWLEDGE);
+        provider.create(first, new ProviderFuture());
+        provider.create(session, new ProviderFuture());
+        Mockito.verify(stripes.get(1)).create(eq(session), any(AsyncResult.class));
+
+        JmsTemporaryQueue tempQueue = new JmsTemporaryQueue("temp");
+        provider.create(tempQueue, new ProviderFuture());
+        Mockito.verify(stripes.get(0)).create(eq(tempQueue), any(AsyncResult.class));
+
+        JmsConsumerInfo tempConsumer = new JmsConsumerInfo(session, 1);
+        tempConsumer.setDestination(tempQueue);
+        JmsConsumerInfo consumer = new JmsConsumerInfo(session, 2);
+        consumer.setDestination(new JmsQueue("queue"));
+        JmsProducerInfo tempProducer = new JmsProducerInfo(session, 1);
+        tempProducer.setDestination(tempQueue);
+
+        provider.create(tempConsumer, new ProviderFuture());
+        provider.create(consumer, new ProviderFuture());
+        provider.create(tempProducer, new ProviderFuture());
+
+        Mockito.verify(stripes.get(0)).create(eq(tempConsumer), any(AsyncResult.class));
+        Mockito.verify(stripes.get(1)).create(eq(consumer), any(AsyncResult.class));
+        Mockito.verify(stripes.get(0)).create(eq(tempProducer), any(AsyncResult.class));
+
+        // Everything done through the pinned resources goes to the first stripe as well.
+        JmsInboundMessageDispatch delivery = new JmsInboundMessageDispatch(1);
+        delivery.setConsumerId(tempConsumer.getId());
+        provider.acknowledge(delivery, ACK_TYPE.DELIVERED, new ProviderFuture());
+        provider.pull(tempConsumer.getId(), 0, new ProviderFuture());
+
+        JmsOutboundMessageDispatch envelope = new JmsOutboundMessageDispatch();
+        envelope.setProducerId(tempProducer.getId());
+        provider.send(envelope, new ProviderFuture());
+
+        Mockito.verify(stripes.get(0)).acknowledge(eq(delivery), eq(ACK_TYPE.DELIVERED), any(AsyncResult.class));
+        Mockito.verify(stripes.get(0)).pull(eq(tempConsumer.getId()), eq(0L), any(AsyncResult.class));
+        Mockito.verify(stripes.get(0)).send(eq(envelope), any(AsyncResult.class));
+
+        // Acknowledging the session covers both stripes its consumers are on.
+        ProviderFuture request = new ProviderFuture();
+        provider.acknowledge(session.getId(), ACK_TYPE.CONSUMED, request);
+
+        ArgumentCaptor<AsyncResult> onSessionStripe = ArgumentCaptor.forClass(AsyncResult.class);
+        ArgumentCaptor<AsyncResult> onFirstStripe = ArgumentCaptor.forClass(AsyncResult.class);
+        Mockito.verify(stripes.get(1)).acknowledge(eq(session.getId()), eq(ACK_TYPE.CONSUMED), onSessionStripe.capture());
+        Mockito.verify(stripes.get(0)).acknowledge(eq(session.getId()), eq(ACK_TYPE.CONSUMED), onFirstStripe.capture());
+
+        onSessionStripe.getValue().onSuccess();
+        assertFalse(request.isComplete());
+        onFirstStripe.getValue().onSuccess();
+        assertTrue(request.isComplete());
+
+        // Once destroyed the session is back to a single stripe.
+        provider.destroy(tempConsumer, new ProviderFuture());
+        provider.destroy(tempProducer, new ProviderFuture());
+        Mockito.verify(stripes.get(0)).destroy(eq(tempConsumer), any(AsyncResult.class));
+        Mockito.verify(stripes.get(0)).destroy(eq(tempProducer), any(AsyncResult.class));
+
+        provider.recover(session.getId(), new ProviderFuture());
+        Mockito.verify(stripes.get(1)).recover(eq(session.getId()), any(AsyncResult.class));
+        Mockito.verify(stripes.get(0), Mockito.never()).recover(eq(session.getId()), any(AsyncResult.class));
+    }
+
+    @Test(timeout = 20000)
+    public void testTransactedSessionCannotConsumeTemporaryDestinationOfAnotherStripe() throws Exception {
+        provider.create(connectionInfo, new ProviderFuture());
+
+        JmsSessionInfo first = new JmsSessionInfo(connectionInfo, 1);
+        JmsSessionInfo session = new JmsSessionInfo(connectionInfo, 2);
+        session.setAcknowledgementMode(Session.SESSION_TRANSACTED);
+        provider.create(first, new ProviderFuture());
+        provider.create(session, new ProviderFuture());
+
+        JmsTemporaryQueue tempQueue = new JmsTemporaryQueue("temp");
+        JmsConsumerInfo consumer = new JmsConsumerInfo(session, 1);
+        consumer.setDestination(tempQueue);
+
+        try {
+            provider.create(consumer, new ProviderFuture());
+            fail("Should not be able to consume from the temporary destination");
+        } catch (IllegalStateException ise) {
+        }
+
+        // Sends stay within the session's transactions.
+        JmsProducerInfo producer = new JmsProducerInfo(session, 1);
+        producer.setDestination(tempQueue);
+        provider.create(producer, new ProviderFuture());
+        Mockito.verify(stripes.get(1)).create(eq(producer), any(AsyncResult.class));
+    }
+
+    @Test(timeout = 20000)
+    public void testConnectionEstablishedOnceAllStripesAre() throws Exception {
+        URI stripeURI = URI.create("amqp://localhost:5672");
+
+        stripeListeners.get(0).onConnectionEstablished(stripeURI);
+        stripeListeners.get(1).onConnectionEstablished(stripeURI);
+        Mockito.verify(listener, Mockito.never()).onConnectionEstablished(any(URI.class));
+
+        stripeListeners.get(2).onConnectionEstablished(stripeURI);
+        Mockito.verify(listener).onConnectionEstablished(stripedURI);
+    }
+
+    @Test(timeout = 20000)
+    public void testStripeFailuresReportedOnce() throws Exception {
+        IOException first = new IOException("First");
+
+        stripeListeners.get(2).onConnectionFailure(first);
+        stripeListeners.get(0).onConnectionFailure(new IOException("Second"));
+
+        Mockito.verify(listener).onConnectionFailure(first);
+        Mockito.verify(listener, Mockito.times(1)).onConnectionFailure(any(IOException.class));
+    }
+}
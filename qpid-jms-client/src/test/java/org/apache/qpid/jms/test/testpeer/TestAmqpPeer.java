@@ -1510,6 +1510,27 @@ public class TestAmqpPeer implements AutoCloseable
         }
     }
 
+    public void remotelySendDispositionOnLastOpenedSession(final UnsignedInteger deliveryId, ListDescribedType state, boolean settled) {
+        synchronized (_handlersLock) {
+            CompositeAmqpPeerRunnable comp = insertCompsiteActionForLastHandler();
+
+            final DispositionFrame dispositionFrame = new DispositionFrame()
+                                                    .setRole(Role.RECEIVER)
+                                                    .setFirst(deliveryId)
+                                                    .setSettled(settled)
+                                                    .setState(state);
+
+            final FrameSender frameSender = new FrameSender(this, FrameType.AMQP, -1, dispositionFrame, null);
+            frameSender.setValueProvider(new ValueProvider() {
+                @Override
+                public void setValues() {
+                    frameSender.setChannel(_lastInitiatedChannel);
+                }
+            });
+            comp.add(frameSender);
+        }
+    }
+
     public void remotelyCloseConnection(boolean expectCloseResponse) {
         remotelyCloseConnection(expectCloseResponse, null, null, null);
     }
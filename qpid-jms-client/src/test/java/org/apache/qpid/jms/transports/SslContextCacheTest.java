@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.transports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.jms.test.QpidJmsTestCase;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the sharing of SSLContexts between transports with the same options.
+ */
+public class SslContextCacheTest extends QpidJmsTestCase {
+
+    private final List<SslContextRef> references = new ArrayList<SslContextRef>();
+    private File keyStoreCopy;
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        for (SslContextRef reference : references) {
+            reference.close();
+        }
+        if (keyStoreCopy != null) {
+            keyStoreCopy.delete();
+        }
+        super.tearDown();
+    }
+
+    @Test
+    public void testSameOptionsShareContext() throws Exception {
+        SSLContext first = acquire(createJksSslOptions(TransportSupportTest.CLIENT_JKS_KEYSTORE));
+        SSLContext second = acquire(createJksSslOptions(TransportSupportTest.CLIENT_JKS_KEYSTORE));
+
+        assertSame(first, second);
+        assertEquals(1, SslContextCache.size());
+        assertEquals(2, SslContextCache.getReferenceCount(createJksSslOptions(TransportSupportTest.CLIENT_JKS_KEYSTORE)));
+    }
+
+    @Test
+    public void testEngineOnlyOptionsDoNotAffectTheKey() throws Exception {
+        TransportSslOptions options = createJksSslOptions(TransportSupportTest.CLIENT_JKS_KEYSTORE);
+        SSLContext first = acquire(options);
+
+        options.setEnabledProtocols(TransportSupportTest.ENABLED_PROTOCOLS);
+        options.setVerifyHost(false);
+        assertSame(first, acquire(options));
+    }
+
+    @Test
+    public void testDifferentStoresUseDifferentContexts() throws Exception {
+        SSLContext first = acquire(createJksSslOptions(TransportSupportTest.CLIENT_JKS_KEYSTORE));
+
+        TransportSslOptions other = createJksSslOptions(TransportSupportTest.CLIENT_JKS_KEYSTORE);
+        other.setContextProtocol("TLSv1.2");
+        SSLContext second = acquire(other);
+
+        assertNotSame(first, second);
+        assertEquals(2, SslContextCache.size());
+    }
+
+    @Test
+    public void testContextDroppedWhenLastReferenceClosed() throws Exception {
+        TransportSslOptions options = createJksSslOptions(TransportSupportTest.CLIENT_JKS_KEYSTORE);
+        SslContextRef first = SslContextCache.getSslContext(options);
+        SslContextRef second = SslContextCache.getSslContext(options);
+
+        first.close();
+        first.close();
+        assertEquals(1, SslContextCache.getReferenceCount(options));
+        assertSame(second.context(), acquire(options));
+
+        second.close();
+        assertEquals(1, SslContextCache.size());
+
+        references.get(0).close();
+        assertEquals(0, SslContextCache.size());
+
+        try {
+            second.context();
+            fail("Should not return the context of a closed reference");
+        } catch (IllegalStateException ise) {
+        }
+    }
+
+    @Test
+    public void testModifiedStoreIsReloaded() throws Exception {
+        TransportSslOptions options = createJksSslOptions(copyKeyStore());
+        SslContextRef first = SslContextCache.getSslContext(options);
+
+        assertTrue(keyStoreCopy.setLastModified(keyStoreCopy.lastModified() - 60000));
+
+        // Connections made after the change use a context loaded from the changed store
+        // while the context of those made before it is kept until they have all closed.
+        SSLContext second = acquire(options);
+        assertNotSame(first.context(), second);
+        assertSame(second, acquire(options));
+        assertEquals(2, SslContextCache.size());
+
+        first.close();
+        assertEquals(1, SslContextCache.size());
+        assertSame(second, acquire(options));
+    }
+
+    @Test
+    public void testModifiedStoreNotReloadedWhenDisabled() throws Exception {
+        TransportSslOptions options = createJksSslOptions(copyKeyStore());
+        options.setReloadModifiedStores(false);
+        SSLContext first = acquire(options);
+
+        assertTrue(keyStoreCopy.setLastModified(keyStoreCopy.lastModified() - 60000));
+
+        assertSame(first, acquire(options));
+    }
+
+    private SSLContext acquire(TransportSslOptions options) throws Exception {
+        SslContextRef reference = SslContextCache.getSslContext(options);
+        references.add(reference);
+        return reference.context();
+    }
+
+    private String copyKeyStore() throws Exception {
+        keyStoreCopy = File.createTempFile("client-jks", ".keystore");
+        Files.copy(new File(TransportSupportTest.CLIENT_JKS_KEYSTORE).toPath(), keyStoreCopy.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+        return keyStoreCopy.getAbsolutePath();
+    }
+
+    private TransportSslOptions createJksSslOptions(String keyStoreLocation) {
+        TransportSslOptions options = new TransportSslOptions();
+
+        options.setKeyStoreLocation(keyStoreLocation);
+        options.setTrustStoreLocation(TransportSupportTest.CLIENT_JKS_TRUSTSTORE);
+        options.setStoreType(TransportSupportTest.KEYSTORE_JKS_TYPE);
+        options.setKeyStorePassword(TransportSupportTest.PASSWORD);
+        options.setTrustStorePassword(TransportSupportTest.PASSWORD);
+
+        return options;
+    }
+}
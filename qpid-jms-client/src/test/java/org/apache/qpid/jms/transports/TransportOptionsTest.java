@@ -35,12 +35,22 @@ public class TransportOptionsTest extends QpidJmsTestCase {
     public static final int TEST_SO_LINGER = Short.MAX_VALUE;
     public static final int TEST_SO_TIMEOUT = 10;
     public static final int TEST_CONNECT_TIMEOUT = 90000;
+    public static final int TEST_SHARED_EVENT_LOOP_THREADS = 4;
+    public static final boolean TEST_USE_EPOLL = true;
+    public static final boolean TEST_TCP_CORK = true;
+    public static final boolean TEST_TCP_QUICK_ACK = true;
+    public static final boolean TEST_EPOLL_EDGE_TRIGGERED = false;
 
     @Test
     public void testCreate() {
         TransportOptions options = new TransportOptions();
 
         assertEquals(TransportOptions.DEFAULT_TCP_NO_DELAY, options.isTcpNoDelay());
+        assertEquals(TransportOptions.DEFAULT_SHARED_EVENT_LOOP_THREADS, options.getSharedEventLoopThreads());
+        assertEquals(TransportOptions.DEFAULT_USE_EPOLL, options.isUseEpoll());
+        assertEquals(TransportOptions.DEFAULT_TCP_CORK, options.isTcpCork());
+        assertEquals(TransportOptions.DEFAULT_TCP_QUICK_ACK, options.isTcpQuickAck());
+        assertEquals(TransportOptions.DEFAULT_EPOLL_EDGE_TRIGGERED, options.isEpollEdgeTriggered());
     }
 
     @Test
@@ -55,6 +65,11 @@ public class TransportOptionsTest extends QpidJmsTestCase {
         assertEquals(TEST_SO_LINGER, options.getSoLinger());
         assertEquals(TEST_SO_TIMEOUT, options.getSoTimeout());
         assertEquals(TEST_CONNECT_TIMEOUT, options.getConnectTimeout());
+        assertEquals(TEST_SHARED_EVENT_LOOP_THREADS, options.getSharedEventLoopThreads());
+        assertEquals(TEST_USE_EPOLL, options.isUseEpoll());
+        assertEquals(TEST_TCP_CORK, options.isTcpCork());
+        assertEquals(TEST_TCP_QUICK_ACK, options.isTcpQuickAck());
+        assertEquals(TEST_EPOLL_EDGE_TRIGGERED, options.isEpollEdgeTriggered());
     }
 
     @Test
@@ -69,6 +84,11 @@ public class TransportOptionsTest extends QpidJmsTestCase {
         assertEquals(TEST_SO_LINGER, options.getSoLinger());
         assertEquals(TEST_SO_TIMEOUT, options.getSoTimeout());
         assertEquals(TEST_CONNECT_TIMEOUT, options.getConnectTimeout());
+        assertEquals(TEST_SHARED_EVENT_LOOP_THREADS, options.getSharedEventLoopThreads());
+        assertEquals(TEST_USE_EPOLL, options.isUseEpoll());
+        assertEquals(TEST_TCP_CORK, options.isTcpCork());
+        assertEquals(TEST_TCP_QUICK_ACK, options.isTcpQuickAck());
+        assertEquals(TEST_EPOLL_EDGE_TRIGGERED, options.isEpollEdgeTriggered());
     }
 
     @Test
@@ -135,6 +155,11 @@ public class TransportOptionsTest extends QpidJmsTestCase {
         options.setSoLinger(TEST_SO_LINGER);
         options.setSoTimeout(TEST_SO_TIMEOUT);
         options.setConnectTimeout(TEST_CONNECT_TIMEOUT);
+        options.setSharedEventLoopThreads(TEST_SHARED_EVENT_LOOP_THREADS);
+        options.setUseEpoll(TEST_USE_EPOLL);
+        options.setTcpCork(TEST_TCP_CORK);
+        options.setTcpQuickAck(TEST_TCP_QUICK_ACK);
+        options.setEpollEdgeTriggered(TEST_EPOLL_EDGE_TRIGGERED);
 
         return options;
     }
@@ -36,6 +36,8 @@ public class TransportSslOptionsTest extends QpidJmsTestCase {
     public static final String CONTEXT_PROTOCOL = "TLSv1.1";
     public static final boolean TRUST_ALL = true;
     public static final boolean VERIFY_HOST = true;
+    public static final boolean CACHE_SSL_CONTEXT = false;
+    public static final boolean RELOAD_MODIFIED_STORES = false;
 
     public static final int TEST_SEND_BUFFER_SIZE = 128 * 1024;
     public static final int TEST_RECEIVE_BUFFER_SIZE = TEST_SEND_BUFFER_SIZE;
@@ -70,6 +72,8 @@ public class TransportSslOptionsTest extends QpidJmsTestCase {
         assertNull(options.getTrustStoreLocation());
         assertNull(options.getTrustStorePassword());
         assertNull(options.getKeyAlias());
+        assertEquals(TransportSslOptions.DEFAULT_CACHE_SSL_CONTEXT, options.isCacheSslContext());
+        assertEquals(TransportSslOptions.DEFAULT_RELOAD_MODIFIED_STORES, options.isReloadModifiedStores());
     }
 
     @Test
@@ -102,6 +106,9 @@ public class TransportSslOptionsTest extends QpidJmsTestCase {
     public void testClone() {
         TransportSslOptions options = createSslOptions().clone();
 
+        assertEquals(CACHE_SSL_CONTEXT, options.isCacheSslContext());
+        assertEquals(RELOAD_MODIFIED_STORES, options.isReloadModifiedStores());
+
         assertEquals(TEST_SEND_BUFFER_SIZE, options.getSendBufferSize());
         assertEquals(TEST_RECEIVE_BUFFER_SIZE, options.getReceiveBufferSize());
         assertEquals(TEST_TRAFFIC_CLASS, options.getTrafficClass());
@@ -140,6 +147,8 @@ public class TransportSslOptionsTest extends QpidJmsTestCase {
         options.setDisabledProtocols(DISABLED_PROTOCOLS);
         options.setEnabledCipherSuites(ENABLED_CIPHERS);
         options.setDisabledCipherSuites(DISABLED_CIPHERS);
+        options.setCacheSslContext(CACHE_SSL_CONTEXT);
+        options.setReloadModifiedStores(RELOAD_MODIFIED_STORES);
 
         options.setSendBufferSize(TEST_SEND_BUFFER_SIZE);
         options.setReceiveBufferSize(TEST_RECEIVE_BUFFER_SIZE);
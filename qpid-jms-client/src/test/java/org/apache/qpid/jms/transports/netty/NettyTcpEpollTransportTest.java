@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.transports.netty;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.net.URI;
+
+import org.apache.qpid.jms.transports.TransportOptions;
+import org.junit.Test;
+
+/**
+ * Runs the TCP transport tests with the native epoll transport requested, on hosts
+ * where epoll is not available the transport falls back to NIO.
+ */
+public class NettyTcpEpollTransportTest extends NettyTcpTransportTest {
+
+    @Test(timeout = 60 * 1000)
+    public void testEpollChannelUsedWhenAvailable() throws Exception {
+        assumeTrue(EpollSupport.isAvailable());
+
+        try (NettyEchoServer server = new NettyEchoServer(createServerOptions())) {
+            server.start();
+
+            URI serverLocation = new URI("tcp://localhost:" + server.getServerPort());
+
+            NettyTcpTransport transport = (NettyTcpTransport) createTransport(serverLocation, testListener, createClientOptions());
+            transport.connect();
+
+            assertTrue(transport.channel instanceof EpollSocketChannel);
+
+            transport.close();
+        }
+
+        assertTrue(exceptions.isEmpty());
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testNioChannelUsedWhenEpollNotRequested() throws Exception {
+        try (NettyEchoServer server = new NettyEchoServer(createServerOptions())) {
+            server.start();
+
+            URI serverLocation = new URI("tcp://localhost:" + server.getServerPort());
+
+            TransportOptions options = createClientOptions();
+            options.setUseEpoll(false);
+
+            NettyTcpTransport transport = (NettyTcpTransport) createTransport(serverLocation, testListener, options);
+            transport.connect();
+
+            assertTrue(transport.channel instanceof NioSocketChannel);
+            assertFalse(transport.channel instanceof EpollSocketChannel);
+
+            transport.close();
+        }
+
+        assertTrue(exceptions.isEmpty());
+    }
+
+    @Override
+    protected TransportOptions createClientOptions() {
+        TransportOptions options = TransportOptions.INSTANCE.clone();
+        options.setUseEpoll(true);
+        return options;
+    }
+}
@@ -427,6 +427,52 @@ public class NettyTcpTransportTest extends QpidJmsTestCase {
         assertTrue(exceptions.isEmpty());
     }
 
+    @Test(timeout = 60 * 1000)
+    public void testMultipleWritesAreReceivedAfterFlush() throws Exception {
+        final int WRITE_COUNT = 10;
+
+        try (NettyEchoServer server = new NettyEchoServer(createServerOptions())) {
+            server.start();
+
+            int port = server.getServerPort();
+            URI serverLocation = new URI("tcp://localhost:" + port);
+
+            Transport transport = createTransport(serverLocation, testListener, createClientOptions());
+            try {
+                transport.connect();
+                LOG.info("Connected to server:{} as expected.", serverLocation);
+            } catch (Exception e) {
+                fail("Should have connected to the server: " + serverLocation);
+            }
+
+            assertTrue(transport.isConnected());
+
+            for (int i = 0; i < WRITE_COUNT; ++i) {
+                ByteBuf sendBuffer = transport.allocateSendBuffer(SEND_BYTE_COUNT);
+                for (int j = 0; j < SEND_BYTE_COUNT; ++j) {
+                    sendBuffer.writeByte('A');
+                }
+
+                transport.write(sendBuffer);
+            }
+
+            transport.flush();
+
+            assertTrue(Wait.waitFor(new Wait.Condition() {
+
+                @Override
+                public boolean isSatisified() throws Exception {
+                    return bytesRead.get() == (SEND_BYTE_COUNT * WRITE_COUNT);
+                }
+            }));
+
+            transport.close();
+        }
+
+        assertTrue(!transportClosed);  // Normal shutdown does not trigger the event.
+        assertTrue(exceptions.isEmpty());
+    }
+
     @Test(timeout = 60 * 1000)
     public void testSendToClosedTransportFails() throws Exception {
         Transport transport = null;
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.transports.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.EventLoopGroup;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.qpid.jms.test.QpidJmsTestCase;
+import org.apache.qpid.jms.transports.TransportListener;
+import org.apache.qpid.jms.transports.TransportOptions;
+import org.junit.Test;
+
+/**
+ * Tests for the reference counted shared Netty event loop group.
+ */
+public class SharedEventLoopGroupTest extends QpidJmsTestCase {
+
+    @Test(timeout = 60 * 1000)
+    public void testSharedGroupIsReferenceCounted() throws Exception {
+        EventLoopGroupRef ref1 = SharedEventLoopGroup.sharedGroup(3);
+        EventLoopGroupRef ref2 = SharedEventLoopGroup.sharedGroup(3);
+
+        assertSame(ref1.group(), ref2.group());
+        assertEquals(2, SharedEventLoopGroup.getReferenceCount(3));
+
+        EventLoopGroup group = ref1.group();
+
+        ref1.close();
+        ref1.close();
+        assertEquals(1, SharedEventLoopGroup.getReferenceCount(3));
+        assertTrue(!group.isShuttingDown());
+
+        ref2.close();
+        assertEquals(0, SharedEventLoopGroup.getReferenceCount(3));
+        assertTrue(group.isShuttingDown());
+
+        EventLoopGroupRef ref3 = SharedEventLoopGroup.sharedGroup(3);
+        assertNotSame(group, ref3.group());
+        ref3.close();
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testSharedGroupsAreKeyedByThreadCount() throws Exception {
+        EventLoopGroupRef ref1 = SharedEventLoopGroup.sharedGroup(1);
+        EventLoopGroupRef ref2 = SharedEventLoopGroup.sharedGroup(2);
+
+        assertNotSame(ref1.group(), ref2.group());
+
+        ref1.close();
+        ref2.close();
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testClosedReferenceCannotAccessGroup() throws Exception {
+        EventLoopGroupRef ref = SharedEventLoopGroup.sharedGroup(1);
+        ref.close();
+
+        try {
+            ref.group();
+            fail("Should not be able to access group from closed reference");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testInvalidThreadCount() throws Exception {
+        try {
+            SharedEventLoopGroup.sharedGroup(0);
+            fail("Should not be able to create group with zero threads");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testTransportsShareGroupAndReleaseOnClose() throws Exception {
+        final int CONNECTION_COUNT = 8;
+        final int SHARED_THREADS = 2;
+
+        try (NettyEchoServer server = new NettyEchoServer(TransportOptions.INSTANCE.clone())) {
+            server.start();
+
+            URI serverLocation = new URI("tcp://localhost:" + server.getServerPort());
+
+            TransportOptions options = TransportOptions.INSTANCE.clone();
+            options.setSharedEventLoopThreads(SHARED_THREADS);
+
+            List<NettyTcpTransport> transports = new ArrayList<NettyTcpTransport>();
+            for (int i = 0; i < CONNECTION_COUNT; ++i) {
+                NettyTcpTransport transport = new NettyTcpTransport(new NoOpTransportListener(), serverLocation, options);
+                transport.connect();
+                transports.add(transport);
+            }
+
+            assertEquals(CONNECTION_COUNT, SharedEventLoopGroup.getReferenceCount(SHARED_THREADS));
+
+            EventLoopGroup group = transports.get(0).groupRef.group();
+            for (NettyTcpTransport transport : transports) {
+                assertSame(group, transport.groupRef.group());
+                assertSame(group, transport.channel.eventLoop().parent());
+            }
+
+            for (NettyTcpTransport transport : transports) {
+                transport.close();
+            }
+
+            assertEquals(0, SharedEventLoopGroup.getReferenceCount(SHARED_THREADS));
+            assertTrue(group.isShuttingDown());
+        }
+    }
+
+    private static class NoOpTransportListener implements TransportListener {
+
+        @Override
+        public void onData(ByteBuf incoming) {
+        }
+
+        @Override
+        public void onTransportClosed() {
+        }
+
+        @Override
+        public void onTransportError(Throwable cause) {
+        }
+    }
+}
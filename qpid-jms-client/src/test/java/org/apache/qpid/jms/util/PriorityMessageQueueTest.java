@@ -364,6 +364,65 @@ public class PriorityMessageQueueTest {
         assertNull(queue.dequeue(-1));
     }
 
+    @Test
+    public void testDequeueBatchInPriorityOrder() throws JMSException {
+        List<JmsInboundMessageDispatch> messages = createFullRangePrioritySet();
+        Collections.shuffle(messages);
+
+        for (JmsInboundMessageDispatch envelope: messages) {
+            queue.enqueue(envelope);
+        }
+
+        List<JmsInboundMessageDispatch> batch = new ArrayList<JmsInboundMessageDispatch>();
+        assertEquals(4, queue.dequeueNoWait(batch, 4));
+        assertEquals(6, queue.size());
+
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(9 - i, batch.get(i).getMessage().getJMSPriority());
+        }
+    }
+
+    @Test
+    public void testSamePriorityDequeuedInOrderAcrossRingGrowth() {
+        List<JmsInboundMessageDispatch> messages = new ArrayList<JmsInboundMessageDispatch>();
+        for (int i = 0; i < 100; ++i) {
+            JmsInboundMessageDispatch envelope = createEnvelope(5);
+            messages.add(envelope);
+            queue.enqueue(envelope);
+
+            // Keep the ring head moving so that growth happens on a wrapped ring.
+            if (i % 3 == 0) {
+                assertSame(messages.remove(0), queue.dequeueNoWait());
+            }
+        }
+
+        assertEquals(messages.size(), queue.size());
+        for (JmsInboundMessageDispatch envelope : messages) {
+            assertSame(envelope, queue.dequeueNoWait());
+        }
+
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testEnqueueFirstAcrossRingGrowth() {
+        JmsInboundMessageDispatch last = createEnvelope(9);
+        queue.enqueue(last);
+
+        List<JmsInboundMessageDispatch> recovered = new ArrayList<JmsInboundMessageDispatch>();
+        for (int i = 0; i < 40; ++i) {
+            JmsInboundMessageDispatch envelope = createEnvelope(i % 10);
+            recovered.add(0, envelope);
+            queue.enqueueFirst(envelope);
+        }
+
+        for (JmsInboundMessageDispatch envelope : recovered) {
+            assertSame(envelope, queue.dequeueNoWait());
+        }
+        assertSame(last, queue.dequeueNoWait());
+        assertTrue(queue.isEmpty());
+    }
+
     @Test
     public void testRestartingClosedQueueHasNoEffect() throws InterruptedException {
         JmsInboundMessageDispatch message = createEnvelope();
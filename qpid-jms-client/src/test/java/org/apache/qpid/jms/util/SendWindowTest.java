@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Test the window that bounds in-flight sends.
+ */
+public class SendWindowTest {
+
+    @Test
+    public void testUnboundedWindowAlwaysAdmits() throws Exception {
+        SendWindow window = new SendWindow(0, 0, null);
+        for (int i = 0; i < 100; ++i) {
+            assertNotNull(window.acquire(0));
+        }
+        assertEquals(100, window.getSendsInFlight());
+    }
+
+    @Test
+    public void testSendLimitAndRelease() throws Exception {
+        SendWindow window = new SendWindow(2, 0, null);
+
+        SendWindow.Permit first = window.acquire(0);
+        assertNotNull(window.acquire(0));
+        assertNull(window.acquire(0));
+
+        first.release();
+        assertEquals(1, window.getSendsInFlight());
+        assertNotNull(window.acquire(0));
+    }
+
+    @Test
+    public void testReleaseOnlyCountsOnce() throws Exception {
+        SendWindow window = new SendWindow(2, 0, null);
+
+        SendWindow.Permit permit = window.acquire(0);
+        window.acquire(0);
+        permit.release();
+        permit.release();
+
+        assertTrue(permit.isReleased());
+        assertEquals(1, window.getSendsInFlight());
+    }
+
+    @Test
+    public void testByteLimit() throws Exception {
+        SendWindow window = new SendWindow(0, 100, null);
+
+        SendWindow.Permit permit = window.acquire(0);
+        permit.addBytes(150);
+        assertEquals(150, window.getBytesInFlight());
+        assertNull(window.acquire(0));
+
+        permit.release();
+        assertEquals(0, window.getBytesInFlight());
+        assertNotNull(window.acquire(0));
+    }
+
+    @Test
+    public void testTimedAcquireExpires() throws Exception {
+        SendWindow window = new SendWindow(1, 0, null);
+        window.acquire(0);
+
+        long start = System.nanoTime();
+        assertNull(window.acquire(100));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+    }
+
+    @Test
+    public void testParentWindowBoundsChildren() throws Exception {
+        SendWindow parent = new SendWindow(2, 0, null);
+        SendWindow child1 = new SendWindow(2, 0, parent);
+        SendWindow child2 = new SendWindow(2, 0, parent);
+
+        SendWindow.Permit permit = child1.acquire(0);
+        assertNotNull(child2.acquire(0));
+        assertNull(child1.acquire(0));
+        assertEquals("Child should not hold room the parent refused", 1, child1.getSendsInFlight());
+
+        permit.addBytes(10);
+        assertEquals(10, parent.getBytesInFlight());
+
+        permit.release();
+        assertEquals(1, parent.getSendsInFlight());
+        assertEquals(0, parent.getBytesInFlight());
+        assertNotNull(child1.acquire(0));
+    }
+
+    @Test(timeout = 10000)
+    public void testWaitingSenderWokenByRelease() throws Exception {
+        final SendWindow window = new SendWindow(1, 0, null);
+        SendWindow.Permit permit = window.acquire(0);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread sender = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    if (window.acquire(-1) != null) {
+                        acquired.countDown();
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        sender.start();
+
+        assertEquals(1, acquired.getCount());
+        permit.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testResetWakesWaitersAndIgnoresOldPermits() throws Exception {
+        final SendWindow window = new SendWindow(1, 0, null);
+        SendWindow.Permit old = window.acquire(0);
+
+        final AtomicReference<SendWindow.Permit> acquired = new AtomicReference<SendWindow.Permit>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread sender = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    acquired.set(window.acquire(5000));
+                } catch (InterruptedException e) {
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        sender.start();
+
+        window.reset();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNotNull(acquired.get());
+
+        old.release();
+        assertEquals(1, window.getSendsInFlight());
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the serial execution of tasks on a shared pool.
+ */
+public class SerialExecutorTest {
+
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void testTasksRunInOrderOneAtATime() throws Exception {
+        SerialExecutor executor = new SerialExecutor(pool, 4);
+
+        final int taskCount = 1000;
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(taskCount);
+
+        for (int i = 0; i < taskCount; ++i) {
+            final int taskNumber = i;
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() != 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    order.add(taskNumber);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < taskCount; ++i) {
+            assertEquals(Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testExecutorsShareThePool() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            SerialExecutor first = new SerialExecutor(single, 1);
+            SerialExecutor second = new SerialExecutor(single, 1);
+
+            final CountDownLatch blocker = new CountDownLatch(1);
+            final CountDownLatch secondRan = new CountDownLatch(1);
+
+            first.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        blocker.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            first.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                }
+            });
+            second.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    secondRan.countDown();
+                }
+            });
+
+            // The second executor must get its turn after a single task of the first.
+            blocker.countDown();
+            assertTrue(secondRan.await(5, TimeUnit.SECONDS));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testShutdownRunsQueuedTasksAndRejectsNewOnes() throws Exception {
+        SerialExecutor executor = new SerialExecutor(pool);
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch queuedRan = new CountDownLatch(1);
+
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                queuedRan.countDown();
+            }
+        });
+
+        executor.shutdown();
+        assertTrue(executor.isShutdown());
+        assertFalse(executor.isTerminated());
+
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                }
+            });
+            fail("Should not accept tasks once shut down");
+        } catch (RejectedExecutionException ree) {
+        }
+
+        blocker.countDown();
+        assertTrue(queuedRan.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test(timeout = 10000)
+    public void testFailingTaskDoesNotStopLaterTasks() throws Exception {
+        SerialExecutor executor = new SerialExecutor(pool);
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                throw new RuntimeException("Expected failure");
+            }
+        });
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}